@@ -234,6 +234,10 @@
 # If the specified path is not absolute, it will be relative to `$SOLR_HOME`.
 #SOLR_OPTS="$SOLR_OPTS -Dsolr.sharedLib=/path/to/lib"
 
+# Runs shard requests, update distribution and recovery on virtual threads instead of pooled platform threads.
+# Only takes effect on a JVM that supports virtual threads; the thread pool sizing options in solr.xml are ignored.
+#SOLR_OPTS="$SOLR_OPTS -Dsolr.virtualThreads.enabled=true"
+
 # Runs solr in java security manager sandbox. This can protect against some attacks.
 # Runtime properties are passed to the security policy file (server/etc/security.policy)
 # You can also tweak via standard JDK files such as ~/.java.policy, see https://s.apache.org/java8policy
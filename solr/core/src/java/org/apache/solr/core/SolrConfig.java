@@ -69,6 +69,7 @@ import org.apache.solr.schema.IndexSchemaFactory;
 import org.apache.solr.search.CacheConfig;
 import org.apache.solr.search.CaffeineCache;
 import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.SegmentCache;
 import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.search.stats.StatsCache;
@@ -227,6 +228,7 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     queryResultWindowSize = Math.max(1, getInt("query/queryResultWindowSize", 1));
     queryResultMaxDocsCached = getInt("query/queryResultMaxDocsCached", Integer.MAX_VALUE);
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
+    persistUnInvertedFields = getBool("query/persistUnInvertedFields", false);
     
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
     queryResultCacheConfig = CacheConfig.getConfig(this, "query/queryResultCache");
@@ -241,6 +243,15 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
       conf = new CacheConfig(CaffeineCache.class, args, null);
     }
     fieldValueCacheConfig = conf;
+    conf = CacheConfig.getConfig(this, "query/segmentCache");
+    if (conf == null && getNode("query/segmentCache", false) == null) {
+      Map<String, String> args = new HashMap<>();
+      args.put(NAME, SegmentCache.NAME);
+      args.put("maxRamMB", "128");
+      args.put("autowarmCount", "100%");
+      conf = new CacheConfig(CaffeineCache.class, args, null);
+    }
+    segmentCacheConfig = conf;
     useColdSearcher = getBool("query/useColdSearcher", false);
     dataDir = get("dataDir", null);
     if (dataDir != null && dataDir.length() == 0) dataDir = null;
@@ -515,12 +526,14 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
   public final CacheConfig queryResultCacheConfig;
   public final CacheConfig documentCacheConfig;
   public final CacheConfig fieldValueCacheConfig;
+  public final CacheConfig segmentCacheConfig;
   public final Map<String, CacheConfig> userCacheConfigs;
   // SolrIndexSearcher - more...
   public final boolean useFilterForSortedQuery;
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  public final boolean persistUnInvertedFields;
 
   // IndexConfig settings
   public final SolrIndexConfig indexConfig;
@@ -870,6 +883,7 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     m.put("queryResultWindowSize", queryResultWindowSize);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
+    m.put("persistUnInvertedFields", persistUnInvertedFields);
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
 
     for (SolrPluginInfo plugin : plugins) {
@@ -902,7 +916,8 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     }
 
 
-    addCacheConfig(m, filterCacheConfig, queryResultCacheConfig, documentCacheConfig, fieldValueCacheConfig);
+    addCacheConfig(m, filterCacheConfig, queryResultCacheConfig, documentCacheConfig, fieldValueCacheConfig,
+        segmentCacheConfig);
     m = new LinkedHashMap<>();
     result.put("requestDispatcher", m);
     m.put("handleSelect", handleSelect);
@@ -144,6 +144,7 @@ import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
+import org.apache.solr.search.facet.UnInvertedField;
 import org.apache.solr.search.stats.LocalStatsCache;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.update.DefaultSolrCoreState;
@@ -998,6 +999,9 @@ public final class SolrCore implements SolrInfoBean, Closeable {
       this.slowQueryThresholdMillis = solrConfig.slowQueryThresholdMillis;
 
       initListeners();
+      if (solrConfig.persistUnInvertedFields) {
+        addCloseHook(UnInvertedField.newSaveHook());
+      }
 
       this.snapshotMgr = initSnapshotMetaDataManager();
       this.solrDelPolicy = initDeletionPolicy(delPolicy);
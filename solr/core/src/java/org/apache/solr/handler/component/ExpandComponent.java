@@ -41,6 +41,7 @@ import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.LeafCollector;
@@ -163,6 +164,7 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     String[] fqs = params.getParams(ExpandParams.EXPAND_FQ);
     String qs = params.get(ExpandParams.EXPAND_Q);
     int limit = params.getInt(ExpandParams.EXPAND_ROWS, 5);
+    boolean batch = params.getBool(ExpandParams.EXPAND_BATCH, false);
 
     Sort sort = null;
 
@@ -255,6 +257,15 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     int nextDocBase = (currentContext+1)<contexts.size() ? contexts.get(currentContext+1).docBase : Integer.MAX_VALUE;
     IntObjectHashMap<BytesRef> ordBytes = null;
     if(values != null) {
+      // the groups of the heads, if the collapse recorded them
+      CollapsingQParserPlugin.GroupHeadOrds groupHeadOrds = null;
+      if (batch) {
+        groupHeadOrds = (CollapsingQParserPlugin.GroupHeadOrds) req.getContext().get(CollapsingQParserPlugin.GROUP_HEAD_ORDS + field);
+        if (groupHeadOrds != null && !groupHeadOrds.isUsable(searcher, hint)) {
+          groupHeadOrds = null;
+        }
+      }
+
       groupBits = new FixedBitSet(values.getValueCount());
       OrdinalMap ordinalMap = null;
       SortedDocValues[] sortedDocValues = null;
@@ -281,6 +292,16 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
           }
         }
         collapsedSet.add(globalDoc);
+        int headOrd = groupHeadOrds == null ? -2 : groupHeadOrds.getOrd(globalDoc);
+        if (headOrd == -1) {
+          nullGroupOnCurrentPage = true;
+          continue;
+        } else if (headOrd >= 0) {
+          if (!groupBits.getAndSet(headOrd)) {
+            ordBytes.put(headOrd, BytesRef.deepCopyOf(values.lookupOrd(headOrd)));
+          }
+          continue;
+        }
         int contextDoc = globalDoc - currentDocBase;
         if(ordinalMap != null) {
           if (contextDoc > currentValues.docID()) {
@@ -378,7 +399,11 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
 
     GroupCollector groupExpandCollector = null;
 
-    if(values != null) {
+    if (values != null && batch && !CollapsingQParserPlugin.HINT_TOP_FC.equals(hint)) {
+      groupExpandCollector = new SegmentGroupExpandCollector(limit, sort, query, expandNullGroup,
+                                                             fieldType, ordBytes,
+                                                             field, groupBits, collapsedSet);
+    } else if(values != null) {
       //Get The Top Level SortedDocValues again so we can re-iterate:
       if(CollapsingQParserPlugin.HINT_TOP_FC.equals(hint)) {
         LeafReader uninvertingReader = CollapsingQParserPlugin.getTopFieldCacheReader(searcher, field);
@@ -402,6 +427,9 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     }
 
     SolrIndexSearcher.ProcessedFilter pfilter = searcher.getProcessedFilter(null, newFilters);
+    if (groupExpandCollector instanceof SegmentGroupExpandCollector) {
+      ((SegmentGroupExpandCollector) groupExpandCollector).skipSegments = pfilter.postFilter == null;
+    }
     if (pfilter.postFilter != null) {
       pfilter.postFilter.setLastDelegate(groupExpandCollector);
       collector = pfilter.postFilter;
@@ -582,6 +610,84 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     }
   }
 
+  /**
+   * Expands groups of a string field by looking up the groups of the page in each segment, so segments without any of
+   * them are skipped entirely, and documents are matched against segment ordinals rather than global ordinals.
+   */
+  private static class SegmentGroupExpandCollector extends GroupCollector {
+    private final String field;
+    private final LongObjectHashMap<Collector> groups;
+    private final IntHashSet collapsedSet;
+    // post filters may hold on to documents, and ask for the leaf collector of a segment later
+    boolean skipSegments = true;
+
+    public SegmentGroupExpandCollector(int limit, Sort sort, Query query, boolean expandNulls,
+                                       FieldType fieldType, IntObjectHashMap<BytesRef> ordBytes,
+                                       String field, FixedBitSet groupBits, IntHashSet collapsedSet) throws IOException {
+      super(limit, sort, query, expandNulls, fieldType, ordBytes);
+
+      this.groups = new LongObjectHashMap<>(ordBytes.size());
+      DocIdSetIterator iterator = new BitSetIterator(groupBits, 0); // cost is not useful here
+      int group;
+      while ((group = iterator.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        groups.put(group, getCollector());
+      }
+
+      this.field = field;
+      this.collapsedSet = collapsedSet;
+    }
+
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+      final int docBase = context.docBase;
+
+      final SortedDocValues segmentValues = DocValues.getSorted(context.reader(), field);
+      final IntObjectHashMap<LeafCollector> leafCollectors = new IntObjectHashMap<>();
+      for (LongObjectCursor<Collector> entry : groups) {
+        final int segmentOrd = segmentValues.lookupTerm(ordBytes.get((int) entry.key));
+        if (segmentOrd >= 0) {
+          leafCollectors.put(segmentOrd, entry.value.getLeafCollector(context));
+        }
+      }
+      if (leafCollectors.isEmpty() && !expandNullGroup && skipSegments) {
+        throw new CollectionTerminatedException(); // none of the groups are in this segment
+      }
+      final LeafCollector leafNullGroupCollector = expandNullGroup ? nullGroupCollector.getLeafCollector(context) : null;
+
+      return new LeafCollector() {
+
+        @Override
+        public void setScorer(Scorable scorer) throws IOException {
+          for (ObjectCursor<LeafCollector> c : leafCollectors.values()) {
+            c.value.setScorer(scorer);
+          }
+          if (expandNullGroup) {
+            leafNullGroupCollector.setScorer(scorer);
+          }
+        }
+
+        @Override
+        public void collect(int docId) throws IOException {
+          if (collapsedSet.contains(docId + docBase)) {
+            return; // this doc is already a group head
+          }
+          if (segmentValues.advanceExact(docId)) {
+            final LeafCollector c = leafCollectors.get(segmentValues.ordValue());
+            if (c != null) {
+              c.collect(docId);
+            }
+          } else if (expandNullGroup) {
+            leafNullGroupCollector.collect(docId);
+          }
+        }
+      };
+    }
+
+    @Override
+    protected LongObjectHashMap<Collector> getGroups() {
+      return groups;
+    }
+  }
+
   private static class NumericGroupExpandCollector extends GroupCollector {
 
     private final String field;
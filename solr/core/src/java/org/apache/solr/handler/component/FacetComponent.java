@@ -75,7 +75,6 @@ public class FacetComponent extends SearchComponent {
   public static final String FACET_INTERVALS_KEY = "facet_intervals";
 
   private static final String PIVOT_KEY = "facet_pivot";
-  private static final String PIVOT_REFINE_PREFIX = "{!"+PivotFacet.REFINE_PARAM+"=";
 
   @Override
   public void prepare(ResponseBuilder rb) throws IOException {
@@ -483,38 +482,79 @@ public class FacetComponent extends SearchComponent {
     shardsRefineRequestPivot.params.remove(FacetParams.FACET_OFFSET);
     
     for (int pivotIndex = 0; pivotIndex < fi.pivotFacets.size(); pivotIndex++) {
-      String pivotFacetKey = fi.pivotFacets.getName(pivotIndex);
       PivotFacet pivotFacet = fi.pivotFacets.getVal(pivotIndex);
 
+      if (pivotFacet.incremental) {
+        // the refined values must be returned even if they don't meet the mincount
+        // (the per-field mincount for the sub-pivots of expanded values is set below)
+        for (String pivotField : pivotFacet.getFields()) {
+          shardsRefineRequestPivot.params.remove("f." + pivotField + "." + FacetParams.FACET_PIVOT_MINCOUNT);
+        }
+      }
+
       List<PivotFacetValue> queuedRefinementsForShard = 
         pivotFacet.getQueuedRefinements(shardNum);
 
       if ( ! queuedRefinementsForShard.isEmpty() ) {
-        
-        String fieldsKey = PivotFacet.REFINE_PARAM + fi.pivotRefinementCounter;
-        String command;
-        
-        if (pivotFacet.localParams != null) {
-          command = PIVOT_REFINE_PREFIX + fi.pivotRefinementCounter + " "
-            + pivotFacet.facetStr.substring(2);
-        } else {
-          command = PIVOT_REFINE_PREFIX + fi.pivotRefinementCounter + "}"
-            + pivotFacet.getKey();
-        }
-        
-        shardsRefineRequestPivot.params.add(FacetParams.FACET_PIVOT, command);
-        for (PivotFacetValue refinementValue : queuedRefinementsForShard) {
-          String refinementStr = PivotFacetHelper
-            .encodeRefinementValuePath(refinementValue.getValuePath());
-          shardsRefineRequestPivot.params.add(fieldsKey, refinementStr);
-          
+        String localParams = PivotFacet.REFINE_PARAM + "=" + fi.pivotRefinementCounter;
+        if (pivotFacet.incremental) {
+          // the sub-pivots of these values are requested separately, once they are needed
+          localParams += " " + PivotFacet.DEPTH_PARAM + "=0";
         }
+        addPivotRefinements(shardsRefineRequestPivot, pivotFacet, localParams,
+                            PivotFacet.REFINE_PARAM + fi.pivotRefinementCounter, 
+                            queuedRefinementsForShard);
       }
       fi.pivotRefinementCounter++;
+
+      List<PivotFacetValue> queuedExpansionsForShard = 
+        pivotFacet.getQueuedExpansions(shardNum);
+
+      if ( ! queuedExpansionsForShard.isEmpty() ) {
+        // just the next level below each value, computed the same way as the top level
+        // was in the initial request (the refinement params above don't apply to it)
+        String localParams = PivotFacet.REFINE_PARAM + "=" + fi.pivotRefinementCounter
+          + " " + PivotFacet.DEPTH_PARAM + "=1";
+        ModifiableSolrParams fieldParams = new ModifiableSolrParams();
+        for (String pivotField : pivotFacet.getFields()) {
+          modifyRequestForIndividualPivotFacets(rb, fieldParams, pivotField);
+          fieldParams.set("f." + pivotField + "." + FacetParams.FACET_OFFSET, 0);
+        }
+        for (Iterator<String> it = fieldParams.getParameterNamesIterator(); it.hasNext();) {
+          String name = it.next();
+          localParams += " " + name + "=" + fieldParams.get(name);
+        }
+        addPivotRefinements(shardsRefineRequestPivot, pivotFacet, localParams,
+                            PivotFacet.REFINE_PARAM + fi.pivotRefinementCounter,
+                            queuedExpansionsForShard);
+        fi.pivotRefinementCounter++;
+      }
     }
     
     rb.addRequest(this, shardsRefineRequestPivot);
   }
+
+  private void addPivotRefinements(ShardRequest sreq, PivotFacet pivotFacet, String localParams,
+                                   String fieldsKey, List<PivotFacetValue> values) {
+    sreq.params.add(FacetParams.FACET_PIVOT, getPivotCommand(pivotFacet, localParams));
+    for (PivotFacetValue refinementValue : values) {
+      String refinementStr = PivotFacetHelper
+        .encodeRefinementValuePath(refinementValue.getValuePath());
+      sreq.params.add(fieldsKey, refinementStr);
+    }
+  }
+
+  /**
+   * The original {@link FacetParams#FACET_PIVOT} param of the pivot, with the specified 
+   * local params added to any it already has
+   */
+  private static String getPivotCommand(PivotFacet pivotFacet, String localParams) {
+    if (pivotFacet.localParams != null) {
+      return "{!" + localParams + " " + pivotFacet.facetStr.substring(2);
+    } else {
+      return "{!" + localParams + "}" + pivotFacet.facetStr;
+    }
+  }
   
   public void modifyRequest(ResponseBuilder rb, SearchComponent who,ShardRequest sreq) {
 
@@ -611,15 +651,28 @@ public class FacetComponent extends SearchComponent {
   private void modifyRequestForPivotFacets(ResponseBuilder rb,
                                            ShardRequest sreq, 
                                            SimpleOrderedMap<PivotFacet> pivotFacets) {
+    boolean anyIncremental = false;
     for (Entry<String,PivotFacet> pfwEntry : pivotFacets) {
       PivotFacet pivot = pfwEntry.getValue();
       for (String pivotField : StrUtils.splitSmart(pivot.getKey(), ',')) {
-        modifyRequestForIndividualPivotFacets(rb, sreq, pivotField);
+        modifyRequestForIndividualPivotFacets(rb, sreq.params, pivotField);
+      }
+      anyIncremental |= pivot.incremental;
+    }
+    
+    if (anyIncremental) {
+      // only the top level of those pivots, the rest is requested during refinement
+      sreq.params.remove(FacetParams.FACET_PIVOT);
+      for (Entry<String,PivotFacet> pfwEntry : pivotFacets) {
+        PivotFacet pivot = pfwEntry.getValue();
+        sreq.params.add(FacetParams.FACET_PIVOT, pivot.incremental
+                        ? getPivotCommand(pivot, PivotFacet.DEPTH_PARAM + "=1")
+                        : pivot.facetStr);
       }
     }
   }
   
-  private void modifyRequestForIndividualPivotFacets(ResponseBuilder rb, ShardRequest sreq, 
+  private void modifyRequestForIndividualPivotFacets(ResponseBuilder rb, ModifiableSolrParams shardParams, 
                                                      String fieldToOverRequest) {
 
     final SolrParams originalParams = rb.req.getParams();
@@ -627,23 +680,23 @@ public class FacetComponent extends SearchComponent {
 
     final int requestedLimit = originalParams.getFieldInt(fieldToOverRequest,
                                                           FacetParams.FACET_LIMIT, 100);
-    sreq.params.remove(paramStart + FacetParams.FACET_LIMIT);
+    shardParams.remove(paramStart + FacetParams.FACET_LIMIT);
 
     final int offset = originalParams.getFieldInt(fieldToOverRequest,
                                                   FacetParams.FACET_OFFSET, 0);
-    sreq.params.remove(paramStart + FacetParams.FACET_OFFSET);
+    shardParams.remove(paramStart + FacetParams.FACET_OFFSET);
     
     final double overRequestRatio = originalParams.getFieldDouble
       (fieldToOverRequest, FacetParams.FACET_OVERREQUEST_RATIO, 1.5);
-    sreq.params.remove(paramStart + FacetParams.FACET_OVERREQUEST_RATIO);
+    shardParams.remove(paramStart + FacetParams.FACET_OVERREQUEST_RATIO);
     
     final int overRequestCount = originalParams.getFieldInt
       (fieldToOverRequest, FacetParams.FACET_OVERREQUEST_COUNT, 10);
-    sreq.params.remove(paramStart + FacetParams.FACET_OVERREQUEST_COUNT);
+    shardParams.remove(paramStart + FacetParams.FACET_OVERREQUEST_COUNT);
     
     final int requestedMinCount = originalParams.getFieldInt
       (fieldToOverRequest, FacetParams.FACET_PIVOT_MINCOUNT, 1);
-    sreq.params.remove(paramStart + FacetParams.FACET_PIVOT_MINCOUNT);
+    shardParams.remove(paramStart + FacetParams.FACET_PIVOT_MINCOUNT);
 
     final String defaultSort = (requestedLimit > 0)
       ? FacetParams.FACET_SORT_COUNT : FacetParams.FACET_SORT_INDEX;
@@ -672,8 +725,8 @@ public class FacetComponent extends SearchComponent {
         shardLimit = doOverRequestMath(shardLimit, overRequestRatio, overRequestCount);
       }
     } 
-    sreq.params.set(paramStart + FacetParams.FACET_LIMIT, shardLimit);
-    sreq.params.set(paramStart + FacetParams.FACET_PIVOT_MINCOUNT, shardMinCount);
+    shardParams.set(paramStart + FacetParams.FACET_LIMIT, shardLimit);
+    shardParams.set(paramStart + FacetParams.FACET_PIVOT_MINCOUNT, shardMinCount);
   }
   
   private int doOverRequestMath(int limit, double ratio, int count) {
@@ -1061,7 +1114,7 @@ public class FacetComponent extends SearchComponent {
                                                                  int shardNum) {
     for (int i = 0; i < fi.pivotFacets.size(); i++) {
       PivotFacet pf = fi.pivotFacets.getVal(i);
-      if ( ! pf.getQueuedRefinements(shardNum).isEmpty() ) {
+      if ( ! (pf.getQueuedRefinements(shardNum).isEmpty() && pf.getQueuedExpansions(shardNum).isEmpty()) ) {
         return true;
       }
     }
@@ -125,6 +125,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // Ask shards to compress large responses, see CompressingResponseOutputStream
+  static final String INIT_RESPONSE_COMPRESSION = "responseCompression";
+
   /**
    * Get {@link ShardHandler} that uses the default http client.
    */
@@ -233,20 +236,27 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
       r.setSeed(Long.parseLong(v));
     }
 
-    BlockingQueue<Runnable> blockingQueue = (this.queueSize == -1) ?
-        new SynchronousQueue<Runnable>(this.accessPolicy) :
-        new ArrayBlockingQueue<Runnable>(this.queueSize, this.accessPolicy);
-
-    this.commExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
-        this.corePoolSize,
-        this.maximumPoolSize,
-        this.keepAliveTime, TimeUnit.SECONDS,
-        blockingQueue,
-        new SolrNamedThreadFactory("httpShardExecutor"),
-        // the Runnable added to this executor handles all exceptions so we disable stack trace collection as an optimization
-        // see SOLR-11880 for more details
-        false
-    );
+    if (ExecutorUtil.isVirtualThreadsEnabled()) {
+      // shard requests mostly block on I/O, so a virtual thread per request replaces the pool sizing knobs
+      log.info("Using virtual threads for httpShardExecutor, ignoring {}, {}, {} and {}",
+          INIT_CORE_POOL_SIZE, INIT_MAX_POOL_SIZE, MAX_THREAD_IDLE_TIME, INIT_SIZE_OF_QUEUE);
+      this.commExecutor = ExecutorUtil.newMDCAwareVirtualThreadPerTaskExecutor("httpShardExecutor", false);
+    } else {
+      BlockingQueue<Runnable> blockingQueue = (this.queueSize == -1) ?
+          new SynchronousQueue<Runnable>(this.accessPolicy) :
+          new ArrayBlockingQueue<Runnable>(this.queueSize, this.accessPolicy);
+
+      this.commExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
+          this.corePoolSize,
+          this.maximumPoolSize,
+          this.keepAliveTime, TimeUnit.SECONDS,
+          blockingQueue,
+          new SolrNamedThreadFactory("httpShardExecutor"),
+          // the Runnable added to this executor handles all exceptions so we disable stack trace collection as an optimization
+          // see SOLR-11880 for more details
+          false
+      );
+    }
 
     this.httpListenerFactory = new InstrumentedHttpListenerFactory(this.metricNameStrategy);
     int connectionTimeout = getParameter(args, HttpClientUtil.PROP_CONNECTION_TIMEOUT,
@@ -255,11 +265,14 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
         HttpClientUtil.DEFAULT_MAXCONNECTIONSPERHOST, sb);
     int soTimeout = getParameter(args, HttpClientUtil.PROP_SO_TIMEOUT,
         HttpClientUtil.DEFAULT_SO_TIMEOUT, sb);
+    boolean responseCompression = getParameter(args, INIT_RESPONSE_COMPRESSION,
+        Boolean.getBoolean("solr.shardHandler.responseCompression"), sb);
 
     this.defaultClient = new Http2SolrClient.Builder()
         .connectionTimeout(connectionTimeout)
         .idleTimeout(soTimeout)
         .withExecutor(commExecutor)
+        .withResponseCompression(responseCompression)
         .maxConnectionsPerHost(maxConnectionsPerHost).build();
     this.defaultClient.addListenerFactory(this.httpListenerFactory);
     this.loadbalancer = new LBHttp2SolrClient(defaultClient);
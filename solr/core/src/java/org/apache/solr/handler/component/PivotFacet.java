@@ -25,6 +25,7 @@ import java.util.Map;
 
 import org.apache.solr.common.params.FacetParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.handler.component.FacetComponent.FacetBase;
 
 /**
@@ -43,11 +44,30 @@ public class PivotFacet extends FacetBase {
    * refinement.
    */
   public static final String REFINE_PARAM = "fpt";
+
+  /**
+   * Local param used on shard requests to limit the number of levels of the pivot computed 
+   * below the refinement values (or below the top of the pivot, if not refining).
+   *
+   * @see FacetParams#FACET_PIVOT_INCREMENTAL
+   */
+  public static final String DEPTH_PARAM = "fpd";
   
   // TODO: is this really needed? can't we just loop over 0<=i<rb.shards.length ?
   public final BitSet knownShards = new BitSet();
   
   private final Map<Integer, List<PivotFacetValue>> queuedRefinements = new HashMap<>();
+
+  private final Map<Integer, List<PivotFacetValue>> queuedExpansions = new HashMap<>();
+
+  /** 
+   * If true, shards are asked for one level of the pivot at a time
+   * @see FacetParams#FACET_PIVOT_INCREMENTAL
+   */
+  public final boolean incremental;
+
+  /** The number of fields in this pivot */
+  public final int numberOfFields;
   
   // if null, then either we haven't collected any responses from shards
   // or all the shards that have responded so far haven't had any values for the top
@@ -57,6 +77,13 @@ public class PivotFacet extends FacetBase {
   
   public PivotFacet(ResponseBuilder rb, String facetStr) {
     super(rb, FacetParams.FACET_PIVOT, facetStr);
+    incremental = rb.req.getParams().getBool(FacetParams.FACET_PIVOT_INCREMENTAL, false);
+    numberOfFields = getFields().size();
+  }
+
+  /** The fields of this pivot, in order */
+  public List<String> getFields() {
+    return StrUtils.splitSmart(facetOn, ",", true);
   }
   
   /**
@@ -74,6 +101,17 @@ public class PivotFacet extends FacetBase {
     queuedRefinements.get(shardNumber).add(value);
   }
   
+  /**
+   * Tracks that the specified shard needs to be asked for the next level of the
+   * pivot below the specified {@link PivotFacetValue}, when the pivot is computed 
+   * {@link #incremental}ly
+   *
+   * @see #getQueuedExpansions
+   */
+  public void addExpansion(int shardNumber, PivotFacetValue value) {
+    queuedExpansions.computeIfAbsent(shardNumber, k -> new ArrayList<>()).add(value);
+  }
+
   /**
    * An immutable List of the {@link PivotFacetValue}s that need to be
    * refined for this pivot.  Once these refinements have been processed, 
@@ -92,13 +130,30 @@ public class PivotFacet extends FacetBase {
   }
 
   /**
-   * Clears the list of queued refinements for the specified shard
+   * An immutable List of the {@link PivotFacetValue}s whose sub-pivots need to be
+   * requested from the specified shard.  These are cleared along with the refinements
+   * by {@link #removeAllRefinementsForShard}
+   *
+   * @see #addExpansion
+   * @return a list of the values to expand, or an empty list.
+   */
+  public List<PivotFacetValue> getQueuedExpansions(int shardNumber) {
+    List<PivotFacetValue> raw = queuedExpansions.get(shardNumber);
+    if (null == raw) {
+      raw = Collections.<PivotFacetValue>emptyList();
+    }
+    return Collections.unmodifiableList(raw);
+  }
+
+  /**
+   * Clears the lists of queued refinements and expansions for the specified shard
    *
    * @see #addRefinement
    * @see #getQueuedRefinements
    */
   public void removeAllRefinementsForShard(int shardNumber) {
     queuedRefinements.remove(shardNumber);
+    queuedExpansions.remove(shardNumber);
   }
   
   /**
@@ -108,7 +163,7 @@ public class PivotFacet extends FacetBase {
    * @see #getQueuedRefinements
    */
   public boolean isRefinementsRequired() {
-    return ! queuedRefinements.isEmpty();
+    return ! (queuedRefinements.isEmpty() && queuedExpansions.isEmpty());
   }
   
   /** 
@@ -46,6 +46,9 @@ public class PivotFacetField {
   public final PivotFacetValue parentValue;
 
   public final PivotFacetFieldValueCollection valueCollection;
+
+  // the position of this field in the pivot, 0 for the top level field
+  private final int depth;
   
   // Facet parameters relating to this field
   private final int facetFieldLimit;
@@ -57,11 +60,13 @@ public class PivotFacetField {
   private final Map<Integer, Integer> shardLowestCount = new HashMap<>();
 
   private boolean needRefinementAtThisLevel = true;
+  private boolean trimmedAtThisLevel = false;
     
   private PivotFacetField(ResponseBuilder rb, PivotFacetValue parent, String fieldName) {
     
     field = fieldName;
     parentValue = parent;
+    depth = (null == parent) ? 0 : parent.getValuePath().size();
     
     // facet params
     SolrParams parameters = rb.req.getParams();
@@ -153,11 +158,8 @@ public class PivotFacetField {
    * @see PivotFacetFieldValueCollection#trim
    */
   public void trim() {
-    // SOLR-6331...
-    //
-    // we can probably optimize the memory usage by trimming each level of the pivot once
-    // we know we've fully refined the values at that level 
-    // (ie: fold this logic into refineNextLevelOfFacets)
+    // NOTE: each level has already been trimmed once its values were fully refined
+    // (see queuePivotRefinementRequests) but that leaves the values skipped by the offset
     this.valueCollection.trim();
   }
   
@@ -248,8 +250,13 @@ public class PivotFacetField {
       // see how the picture may change before drilling down to child pivot fields 
       return;
     } else {
-      // Since outstanding requests have been filled, then we can drill down 
-      // to the next deeper level and check it.
+      // Since outstanding requests have been filled, the counts at this level are
+      // final: prune the values that can't make it into the response (SOLR-6331) so we 
+      // don't hold on to their sub-pivots, then drill down to the next deeper level and check it.
+      if ( ! trimmedAtThisLevel ) {
+        valueCollection.trimLevel();
+        trimmedAtThisLevel = true;
+      }
       refineNextLevelOfFacets(pf);
     }
   }
@@ -326,6 +333,20 @@ public class PivotFacetField {
 
     List<PivotFacetValue> explicitValsToRefine 
       = valueCollection.getNextLevelValuesToRefine();
+    PivotFacetValue missing = this.valueCollection.getMissingValue();
+
+    if (pf.incremental && depth + 1 < pf.numberOfFields) {
+      // the shards haven't been asked for the sub-pivots of these values yet
+      for (PivotFacetValue value : explicitValsToRefine) {
+        processExpansionElement(pf, value);
+      }
+      if (null != missing) {
+        processExpansionElement(pf, missing);
+      }
+      if ( pf.isRefinementsRequired() ) {
+        return;
+      }
+    }
     
     for (PivotFacetValue value : explicitValsToRefine) {
       if (null != value.getChildPivot()) {
@@ -333,12 +354,29 @@ public class PivotFacetField {
       }
     }
 
-    PivotFacetValue missing = this.valueCollection.getMissingValue();
     if(null != missing && null != missing.getChildPivot()) {
       missing.getChildPivot().queuePivotRefinementRequests(pf);
     }
   }
   
+  /**
+   * Asks each shard that contributed to the value for the next level of the pivot below
+   * it, unless that has already been done.  Shards that didn't contribute don't have any
+   * docs matching the value (or it wouldn't be fully refined) so they can be skipped.
+   */
+  private void processExpansionElement(PivotFacet pf, PivotFacetValue value) {
+    if ( ! value.markExpansionRequested() ) {
+      return;
+    }
+    for (int shard = pf.knownShards.nextSetBit(0); 
+         0 <= shard; 
+         shard = pf.knownShards.nextSetBit(shard+1)) {
+      if (value.shardHasContributed(shard)) {
+        pf.addExpansion(shard, value);
+      }
+    }
+  }
+  
   private void incrementShardValueCount(int shardNumber) {
     if (!numberOfValuesContributedByShard.containsKey(shardNumber)) {
       numberOfValuesContributedByShard.put(shardNumber, 1);
@@ -213,6 +213,45 @@ public class PivotFacetFieldValueCollection implements Iterable<PivotFacetValue>
     trimNullValue();
   }
   
+  /**
+   * Destructive, <b>NON-Recursive</b>, method that prunes the values that can no longer
+   * be part of the response, ie: values that don't meet the mincount and values after the
+   * first offset + limit.  The values skipped by the offset are kept, so {@link #trim}
+   * can still be used once all refinement is completed.
+   * <p>
+   * This method should only be called once the counts of the values in this collection
+   * are fully refined, to drop the sub-pivots of the pruned values as early as possible.
+   * </p>
+   *
+   * @see PivotFacetField#queuePivotRefinementRequests
+   */
+  public void trimLevel() {   // NOTE: destructive
+    sort();
+
+    final int maxValues = (facetFieldLimit > 0)
+      ? facetFieldOffset + facetFieldLimit : Integer.MAX_VALUE;
+    ArrayList<PivotFacetValue> trimmedValues
+      = new ArrayList<>(Math.min(maxValues, explicitValues.size()));
+    for (PivotFacetValue pivotValue : explicitValues) {
+      if (pivotValue.getCount() >= facetFieldMinimumCount) {
+        trimmedValues.add(pivotValue);
+        if (trimmedValues.size() >= maxValues) {
+          break;
+        }
+      }
+    }
+    explicitValues = trimmedValues;
+    if (null != missingValue && missingValue.getCount() < facetFieldMinimumCount) {
+      missingValue = null;
+    }
+
+    // refinements of deeper levels still need to find the remaining values
+    valuesMap.clear();
+    for (PivotFacetValue pivotValue : this) {
+      valuesMap.put(pivotValue.getValue(), pivotValue);
+    }
+  }
+
   private void trimNullValue(){
     if (missingValue == null) {
       return;
@@ -102,12 +102,18 @@ public class PivotFacetProcessor extends SimpleFacets
       // start by assuming no local params...
 
       String refineKey = null; // no local => no refinement
+      int depth = Integer.MAX_VALUE; // no local => the whole pivot
       List<StatsField> statsFields = Collections.emptyList(); // no local => no stats
       List<FacetComponent.FacetBase> facetQueries = Collections.emptyList();
       List<RangeFacetRequest> facetRanges = Collections.emptyList();
       if (null != parsed.localParams) {
         // we might be refining..
         refineKey = parsed.localParams.get(PivotFacet.REFINE_PARAM);
+        depth = parsed.localParams.getInt(PivotFacet.DEPTH_PARAM, Integer.MAX_VALUE);
+        if (depth < 0) {
+          throw new SolrException(ErrorCode.BAD_REQUEST,
+                                  PivotFacet.DEPTH_PARAM + " local param of " + FacetParams.FACET_PIVOT + " must not be negative: " + pivotList);
+        }
         
         String statsLocalParam = parsed.localParams.get(StatsParams.STATS);
         if (null != refineKey
@@ -163,10 +169,10 @@ public class PivotFacetProcessor extends SimpleFacets
           = params.getParams(PivotFacet.REFINE_PARAM + refineKey);
 
         for(String refinements : refinementValuesByField){
-          pivotResponse.addAll(processSingle(pivotFields, refinements, statsFields, parsed, facetQueries, facetRanges));
+          pivotResponse.addAll(processSingle(pivotFields, refinements, depth, statsFields, parsed, facetQueries, facetRanges));
         }
       } else{
-        pivotResponse.addAll(processSingle(pivotFields, null, statsFields, parsed, facetQueries, facetRanges));
+        pivotResponse.addAll(processSingle(pivotFields, null, depth, statsFields, parsed, facetQueries, facetRanges));
       }
     }
     return pivotResponse;
@@ -176,6 +182,7 @@ public class PivotFacetProcessor extends SimpleFacets
    * Process a single branch of refinement values for a specific pivot
    * @param pivotFields the ordered list of fields in this pivot
    * @param refinements the comma separate list of refinement values corresponding to each field in the pivot, or null if there are no refinements
+   * @param depth the number of levels of the pivot to compute below the refinement values (or below the top if there are no refinements)
    * @param statsFields List of {@link StatsField} instances to compute for each pivot value
    * @param facetQueries the list of facet queries hung under this pivot
    * @param facetRanges the list of facet ranges hung under this pivot
@@ -183,6 +190,7 @@ public class PivotFacetProcessor extends SimpleFacets
   private SimpleOrderedMap<List<NamedList<Object>>> processSingle
   (List<String> pivotFields,
    String refinements,
+   int depth,
    List<StatsField> statsFields,
    final ParsedParams parsed,
    List<FacetComponent.FacetBase> facetQueries,
@@ -191,6 +199,15 @@ public class PivotFacetProcessor extends SimpleFacets
     SolrIndexSearcher searcher = rb.req.getSearcher();
     SimpleOrderedMap<List<NamedList<Object>>> pivotResponse = new SimpleOrderedMap<>();
 
+    // All refinement values (if any), split by the field they should go to
+    List<String> refinementValuesByField = (null == refinements)
+      ? Collections.<String>emptyList() : PivotFacetHelper.decodeRefinementValuePath(refinements);
+
+    // don't compute (or hold on to) any levels the caller didn't ask for
+    if (depth < pivotFields.size() - refinementValuesByField.size()) {
+      pivotFields = pivotFields.subList(0, Math.max(1, refinementValuesByField.size() + depth));
+    }
+
     String field = pivotFields.get(0);
     SchemaField sfield = searcher.getSchema().getField(field);
       
@@ -203,10 +220,6 @@ public class PivotFacetProcessor extends SimpleFacets
     Deque<String> vnames = new LinkedList<>();
 
     if (null != refinements) {
-      // All values, split by the field they should go to
-      List<String> refinementValuesByField
-        = PivotFacetHelper.decodeRefinementValuePath(refinements);
-
       for( int i=refinementValuesByField.size()-1; i>0; i-- ) {
         vnames.push(refinementValuesByField.get(i));//Only for [1] and on
       }
@@ -45,6 +45,7 @@ public class PivotFacetValue {
   // child can't be final, circular ref on construction
   private PivotFacetField childPivot = null; 
   private int count; // mutable
+  private boolean expansionRequested = false;
   private Map<String, StatsValues> statsValues = null;
   // named list with objects because depending on how big the counts are we may get either a long or an int
   private NamedList<Number> queryCounts;
@@ -183,6 +184,21 @@ public class PivotFacetValue {
     return sourceShards.get(shardNum);
   }
   
+  /**
+   * Records that the sub-pivots of this value have been requested from the shards,
+   * when the pivot is computed incrementally.
+   *
+   * @return false if they had already been requested
+   * @see PivotFacet#incremental
+   */
+  public boolean markExpansionRequested() {
+    if (expansionRequested) {
+      return false;
+    }
+    expansionRequested = true;
+    return true;
+  }
+  
   /** 
    * A recursive method for generating a NamedList from this value suitable for 
    * including in a pivot facet response to the original distributed request.
@@ -1481,7 +1481,9 @@ public class QueryComponent extends SearchComponent
         .setDefaultTotalCount(defaultTotalCount)
         .setDocsPerGroupDefault(withinGroupSortSpec.getCount())
         .setGroupOffsetDefault(withinGroupSortSpec.getOffset())
-        .setGetGroupedDocSet(groupingSpec.isTruncateGroups());
+        .setGetGroupedDocSet(groupingSpec.isTruncateGroups())
+        .setSinglePass(params.getBool(GroupParams.GROUP_SINGLE_PASS, false))
+        .setApproximateGroupCount(params.getBool(GroupParams.GROUP_TOTAL_COUNT_APPROXIMATE, false));
 
     if (groupingSpec.getFields() != null) {
       for (String field : groupingSpec.getFields()) {
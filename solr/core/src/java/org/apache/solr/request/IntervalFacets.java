@@ -191,6 +191,7 @@ public class IntervalFacets implements Iterable<FacetInterval> {
       throw new IllegalStateException();
     }
     final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+    final FacetInterval[] disjointIntervals = getDisjointIntervals();
 
     final Iterator<LeafReaderContext> ctxIt = leaves.iterator();
     LeafReaderContext ctx = null;
@@ -235,10 +236,32 @@ public class IntervalFacets implements Iterable<FacetInterval> {
         valuesDocID = longs.advance(doc - ctx.docBase);
       }
       if (valuesDocID == doc - ctx.docBase) {
-        accumIntervalWithValue(longs.longValue());
+        if (disjointIntervals != null) {
+          accumDisjointIntervalWithValue(disjointIntervals, longs.longValue());
+        } else {
+          accumIntervalWithValue(longs.longValue());
+        }
       }
     }
   }
+
+  /**
+   * Returns the intervals that can include any value, in order, if none of them overlap. A value is then in at most
+   * one of them, which can be found with a binary search. Returns null if some intervals overlap.
+   */
+  private FacetInterval[] getDisjointIntervals() {
+    final List<FacetInterval> disjoint = new ArrayList<>(intervals.length);
+    for (FacetInterval interval : intervals) {
+      if (interval.startLimit > interval.endLimit) {
+        continue; // can't include anything
+      }
+      if (!disjoint.isEmpty() && disjoint.get(disjoint.size() - 1).endLimit >= interval.startLimit) {
+        return null;
+      }
+      disjoint.add(interval);
+    }
+    return disjoint.toArray(new FacetInterval[disjoint.size()]);
+  }
   
   private void getCountMultiValuedNumeric() throws IOException {
     final FieldType ft = schemaField.getType();
@@ -420,6 +443,23 @@ public class IntervalFacets implements Iterable<FacetInterval> {
     }
   }
 
+  private static void accumDisjointIntervalWithValue(FacetInterval[] disjointIntervals, long value) {
+    int low = 0;
+    int high = disjointIntervals.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final FacetInterval interval = disjointIntervals[mid];
+      if (interval.startLimit > value) {
+        high = mid - 1;
+      } else if (interval.endLimit < value) {
+        low = mid + 1;
+      } else {
+        interval.incCount();
+        return;
+      }
+    }
+  }
+
   static enum IntervalCompareResult {
     LOWER_THAN_START,
     INCLUDED,
@@ -233,7 +233,8 @@ public class SolrRequestInfo {
       @Override
       public void clean(@SuppressWarnings({"rawtypes"})AtomicReference ctx) {
         if (ctx.get() != null) {
-          SolrRequestInfo.clearRequestInfo();
+          // the request is still running in the thread that submitted the task, which closes its hooks when done
+          threadLocal.get().pop();
         }
         SolrRequestInfo.reset();
       }
@@ -151,6 +151,11 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
 
     protected void writeResultsBody( ResultContext res, JavaBinCodec codec ) throws IOException {
       codec.writeTag(JavaBinCodec.ARR, res.getDocList().size());
+      DocValuesDocsWriter dvWriter = DocValuesDocsWriter.create(res, this);
+      if (dvWriter != null) {
+        dvWriter.write(codec);
+        return;
+      }
       Iterator<SolrDocument> docStreamer = res.getProcessedDocuments();
       while (docStreamer.hasNext()) {
         SolrDocument doc = docStreamer.next();
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.schema.AbstractEnumField;
+import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.LatLonPointSpatialField;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrReturnFields;
+
+/**
+ * Writes the documents of a result straight from docValues into a {@link JavaBinCodec}, for
+ * requests where every returned field is read from docValues and no transformer is involved.
+ * <p>
+ * The output is identical to writing the {@link org.apache.solr.common.SolrDocument}s built by
+ * {@link DocsStreamer}, but field values are encoded directly from the docValues iterators and
+ * term {@link BytesRef}s, without creating a document, boxed numbers or Strings per hit.
+ *
+ * @see BinaryResponseWriter.Resolver#writeResultsBody(ResultContext, JavaBinCodec)
+ */
+class DocValuesDocsWriter {
+
+  private final DocList docs;
+  private final List<LeafReaderContext> leaves;
+  private final DVField[] fields;
+
+  private DocValuesDocsWriter(DocList docs, List<LeafReaderContext> leaves, DVField[] fields) {
+    this.docs = docs;
+    this.leaves = leaves;
+    this.fields = fields;
+  }
+
+  /**
+   * @return a writer for the given result, or null if it can't be written directly from docValues
+   */
+  static DocValuesDocsWriter create(ResultContext ctx, JavaBinCodec.WritableDocFields writableDocFields) {
+    if (!(ctx instanceof BasicResultContext) || !(ctx.getReturnFields() instanceof SolrReturnFields)) {
+      return null;
+    }
+    SolrReturnFields returnFields = (SolrReturnFields) ctx.getReturnFields();
+    SolrIndexSearcher searcher = ctx.getSearcher();
+    if (searcher == null || returnFields.getTransformer() != null || returnFields.wantsAllFields()) {
+      return null;
+    }
+    Set<String> dvFields = searcher.getDocFetcher().getDocValuesOnlyFields(returnFields);
+    if (dvFields == null || dvFields.isEmpty()) {
+      return null;
+    }
+    DVField[] fields = new DVField[dvFields.size()];
+    int i = 0;
+    for (String name : dvFields) {
+      SchemaField sf = searcher.getSchema().getFieldOrNull(name);
+      FieldInfo fi = searcher.getFieldInfos().fieldInfo(name);
+      if (sf == null || !sf.hasDocValues() || fi == null || !writableDocFields.isWritable(name)) {
+        // such fields are silently skipped by the regular path, keep that logic in one place
+        return null;
+      }
+      DVField field = DVField.create(sf, fi.getDocValuesType());
+      if (field == null) {
+        return null;
+      }
+      fields[i++] = field;
+    }
+    returnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_DV);
+    return new DocValuesDocsWriter(ctx.getDocList(), searcher.getLeafContexts(), fields);
+  }
+
+  /**
+   * Writes every document of the {@link DocList} as a {@link JavaBinCodec#SOLRDOC}
+   */
+  void write(JavaBinCodec codec) throws IOException {
+    DocIterator iterator = docs.iterator();
+    int currentLeaf = -1;
+    LeafReaderContext leaf = null;
+    while (iterator.hasNext()) {
+      int docId = iterator.nextDoc();
+      int leafIdx = ReaderUtil.subIndex(docId, leaves);
+      if (leafIdx != currentLeaf) {
+        currentLeaf = leafIdx;
+        leaf = leaves.get(leafIdx);
+        for (DVField field : fields) {
+          field.setLeaf(leafIdx, leaf.reader());
+        }
+      }
+      int segDoc = docId - leaf.docBase;
+      int count = 0;
+      for (DVField field : fields) {
+        if (field.advance(leaf.reader(), segDoc)) {
+          count++;
+        }
+      }
+      codec.writeTag(JavaBinCodec.SOLRDOC);
+      codec.writeTag(JavaBinCodec.ORDERED_MAP, count);
+      for (DVField field : fields) {
+        if (field.hasValue) {
+          codec.writeExternString(field.name);
+          field.writeValue(codec);
+        }
+      }
+    }
+  }
+
+  /** Per-field docValues access; iterators are kept per segment and only pulled again when going backwards */
+  private abstract static class DVField {
+    final SchemaField sf;
+    final String name;
+    int leafIdx = -1;
+    boolean hasValue;
+
+    DVField(SchemaField sf) {
+      this.sf = sf;
+      this.name = sf.getName();
+    }
+
+    static DVField create(SchemaField sf, DocValuesType dvType) {
+      if (sf.getType() instanceof LatLonPointSpatialField || sf.getType() instanceof AbstractEnumField) {
+        return null;
+      }
+      switch (dvType) {
+        case NUMERIC:
+          return sf.getType().getNumberType() == null ? null : new NumericDVField(sf);
+        case SORTED_NUMERIC:
+          return sf.getType().getNumberType() == null ? null : new SortedNumericDVField(sf);
+        case SORTED:
+          return sf.getType() instanceof BoolField ? null : new SortedDVField(sf);
+        case SORTED_SET:
+          return sf.getType() instanceof StrField ? new SortedSetDVField(sf) : null;
+        default:
+          return null;
+      }
+    }
+
+    void setLeaf(int leafIdx, LeafReader reader) throws IOException {
+      if (this.leafIdx != leafIdx) {
+        this.leafIdx = leafIdx;
+        reset(reader);
+      }
+    }
+
+    boolean advance(LeafReader reader, int segDoc) throws IOException {
+      DocIdSetIterator it = iterator();
+      if (it != null && it.docID() > segDoc) {
+        // docs are not in index order (e.g. sorted by score), start over on this segment
+        reset(reader);
+        it = iterator();
+      }
+      hasValue = it != null && advanceExact(segDoc);
+      return hasValue;
+    }
+
+    abstract void reset(LeafReader reader) throws IOException;
+
+    abstract DocIdSetIterator iterator();
+
+    abstract boolean advanceExact(int segDoc) throws IOException;
+
+    abstract void writeValue(JavaBinCodec codec) throws IOException;
+
+    /** Mirrors SolrDocumentFetcher#decodeNumberFromDV without boxing */
+    void writeNumber(JavaBinCodec codec, long value, boolean sortableNumeric) throws IOException {
+      NumberType numberType = sf.getType().getNumberType();
+      switch (numberType) {
+        case INTEGER:
+          codec.writeInt((int) value);
+          break;
+        case LONG:
+          codec.writeLong(value);
+          break;
+        case FLOAT:
+          codec.writeFloat(sortableNumeric ? NumericUtils.sortableIntToFloat((int) value) : Float.intBitsToFloat((int) value));
+          break;
+        case DOUBLE:
+          codec.writeDouble(sortableNumeric ? NumericUtils.sortableLongToDouble(value) : Double.longBitsToDouble(value));
+          break;
+        case DATE:
+          codec.writeDate(value);
+          break;
+        default:
+          throw new AssertionError("Unknown number type " + numberType);
+      }
+    }
+  }
+
+  private static class NumericDVField extends DVField {
+    NumericDocValues values;
+
+    NumericDVField(SchemaField sf) {
+      super(sf);
+    }
+
+    @Override
+    void reset(LeafReader reader) throws IOException {
+      values = reader.getNumericDocValues(name);
+    }
+
+    @Override
+    DocIdSetIterator iterator() {
+      return values;
+    }
+
+    @Override
+    boolean advanceExact(int segDoc) throws IOException {
+      return values.advanceExact(segDoc);
+    }
+
+    @Override
+    void writeValue(JavaBinCodec codec) throws IOException {
+      writeNumber(codec, values.longValue(), false);
+    }
+  }
+
+  private static class SortedNumericDVField extends DVField {
+    SortedNumericDocValues values;
+
+    SortedNumericDVField(SchemaField sf) {
+      super(sf);
+    }
+
+    @Override
+    void reset(LeafReader reader) throws IOException {
+      values = reader.getSortedNumericDocValues(name);
+    }
+
+    @Override
+    DocIdSetIterator iterator() {
+      return values;
+    }
+
+    @Override
+    boolean advanceExact(int segDoc) throws IOException {
+      return values.advanceExact(segDoc);
+    }
+
+    @Override
+    void writeValue(JavaBinCodec codec) throws IOException {
+      int count = values.docValueCount();
+      if (sf.multiValued()) {
+        codec.writeTag(JavaBinCodec.ARR, count);
+        for (int i = 0; i < count; i++) {
+          writeNumber(codec, values.nextValue(), true);
+        }
+      } else {
+        writeNumber(codec, values.nextValue(), true);
+      }
+    }
+  }
+
+  private static class SortedDVField extends DVField {
+    SortedDocValues values;
+
+    SortedDVField(SchemaField sf) {
+      super(sf);
+    }
+
+    @Override
+    void reset(LeafReader reader) throws IOException {
+      values = reader.getSortedDocValues(name);
+    }
+
+    @Override
+    DocIdSetIterator iterator() {
+      return values;
+    }
+
+    @Override
+    boolean advanceExact(int segDoc) throws IOException {
+      return values.advanceExact(segDoc);
+    }
+
+    @Override
+    void writeValue(JavaBinCodec codec) throws IOException {
+      BytesRef term = values.lookupOrd(values.ordValue());
+      codec.writeUTF8Str(term.bytes, term.offset, term.length);
+    }
+  }
+
+  private static class SortedSetDVField extends DVField {
+    SortedSetDocValues values;
+    long[] ords = new long[8];
+
+    SortedSetDVField(SchemaField sf) {
+      super(sf);
+    }
+
+    @Override
+    void reset(LeafReader reader) throws IOException {
+      values = reader.getSortedSetDocValues(name);
+      if (values != null && values.getValueCount() == 0) {
+        values = null;
+      }
+    }
+
+    @Override
+    DocIdSetIterator iterator() {
+      return values;
+    }
+
+    @Override
+    boolean advanceExact(int segDoc) throws IOException {
+      return values.advanceExact(segDoc);
+    }
+
+    @Override
+    void writeValue(JavaBinCodec codec) throws IOException {
+      int count = 0;
+      for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+        ords = ArrayUtil.grow(ords, count + 1);
+        ords[count++] = ord;
+      }
+      codec.writeTag(JavaBinCodec.ARR, count);
+      for (int i = 0; i < count; i++) {
+        BytesRef term = values.lookupOrd(ords[i]);
+        codec.writeUTF8Str(term.bytes, term.offset, term.length);
+      }
+    }
+  }
+}
@@ -20,11 +20,16 @@ package org.apache.solr.response.transform;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.carrotsearch.hppc.IntObjectHashMap;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import org.apache.lucene.index.DocValues;
@@ -37,13 +42,17 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BitSet;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.response.ResultContext;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.search.BitsFilteredPostingsEnum;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocList;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SolrReturnFields;
@@ -66,6 +75,8 @@ class ChildDocTransformer extends DocTransformer {
   private final boolean isNestedSchema;
   private final SolrReturnFields childReturnFields;
   private String[] extraRequestedFields;
+  // the selected children of the roots of the current page by root doc id; null until the page's first transform
+  private IntObjectHashMap<Block> pageBlocks;
 
   ChildDocTransformer(String name, BitSetProducer parentsFilter, DocSet childDocSet,
                       SolrReturnFields returnFields, boolean isNestedSchema, int limit,
@@ -118,128 +129,249 @@ class ChildDocTransformer extends DocTransformer {
     return segRootId - 1; // thus no child docs
   }
 
+  @Override
+  public void setContext(ResultContext context) {
+    super.setContext(context);
+    pageBlocks = null; // a new page
+  }
+
   @Override
   public void transform(SolrDocument rootDoc, int rootDocId) {
     // note: this algorithm works if both if we have have _nest_path_  and also if we don't!
 
     try {
-
-      // lookup what the *previous* rootDocId is, and figure which segment this is
-      final SolrIndexSearcher searcher = context.getSearcher();
-      final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
-      final int seg = ReaderUtil.subIndex(rootDocId, leaves);
-      final LeafReaderContext leafReaderContext = leaves.get(seg);
-      final Bits liveDocs = leafReaderContext.reader().getLiveDocs();
-      final int segBaseId = leafReaderContext.docBase;
-      final int segRootId = rootDocId - segBaseId;
-
-      // can return be -1 and that's okay  (happens for very first block)
-      final int segPrevRootId;
-      if (parentsFilter != null) {
-        segPrevRootId = getPrevRootGivenFilter(leafReaderContext, segRootId);
+      if (parentsFilter != null && pageBlocks == null) {
+        pageBlocks = new IntObjectHashMap<>(); // stays empty if this fails, so each root is done on its own
+        selectPage(rootDocId);
+      }
+      final Block block = pageBlocks == null ? null : pageBlocks.remove(rootDocId);
+      if (block != null) {
+        addChildrenToRoot(rootDoc, block);
       } else {
-        final IndexSchema schema = searcher.getSchema();
-        final String idStr = schema.printableUniqueKey(rootDoc);
-        if (idStr == null) {
-          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
-              "[child] requires fl to include the ID");
-        }
-        final BytesRef idBytes = schema.indexableUniqueKey(idStr);
-        segPrevRootId = getPrevRootGivenId(leafReaderContext, rootDocId, idBytes);
+        transformAlone(rootDoc, rootDocId);
+      }
+    } catch (IOException e) {
+      //TODO DWS: reconsider this unusual error handling approach; shouldn't we rethrow?
+      log.warn("Could not fetch child documents", e);
+      rootDoc.put(getName(), "Could not fetch child documents");
+    }
+  }
+
+  /**
+   * Selects the children of all the roots of the page at once, reading the nest paths of each segment in doc id
+   * order, then loads all of them in doc id order.  Roots whose blocks overlap the block of a previous root are left
+   * for {@link #transformAlone}.
+   */
+  private void selectPage(int rootDocId) throws IOException {
+    final DocList docList = context.getDocList();
+    if (docList == null) {
+      return;
+    }
+    final int[] roots = new int[docList.size()];
+    int numRoots = 0;
+    boolean inPage = false;
+    for (DocIterator iter = docList.iterator(); iter.hasNext(); ) {
+      roots[numRoots] = iter.nextDoc();
+      inPage |= roots[numRoots++] == rootDocId;
+    }
+    if (!inPage) {
+      return; // e.g. we transform children of another transformer's docs
+    }
+    Arrays.sort(roots, 0, numRoots);
+
+    final List<LeafReaderContext> leaves = context.getSearcher().getIndexReader().leaves();
+    final IntObjectHashMap<Block> blocksByRoot = new IntObjectHashMap<>(numRoots);
+    final List<Block> blocks = new ArrayList<>(numRoots);
+    LeafReaderContext leafReaderContext = null;
+    SegmentPaths rootPaths = null;
+    SegmentPaths childPaths = null;
+    int lastRootId = -1;
+    for (int i = 0; i < numRoots; i++) {
+      final int root = roots[i];
+      if (root <= lastRootId) {
+        continue; // the same root twice
+      }
+      if (leafReaderContext == null || root >= leafReaderContext.docBase + leafReaderContext.reader().maxDoc()) {
+        leafReaderContext = leaves.get(ReaderUtil.subIndex(root, leaves));
+        rootPaths = new SegmentPaths(leafReaderContext.reader());
+        childPaths = new SegmentPaths(leafReaderContext.reader());
+      }
+      final int segRootId = root - leafReaderContext.docBase;
+      final int segPrevRootId = getPrevRootGivenFilter(leafReaderContext, segRootId);
+      if (leafReaderContext.docBase + segPrevRootId >= lastRootId) {
+        final Block block = selectChildren(leafReaderContext, segPrevRootId, segRootId, rootPaths, childPaths);
+        blocksByRoot.put(root, block);
+        blocks.add(block);
+        lastRootId = root;
       }
+    }
+    loadChildren(blocks);
+    pageBlocks.putAll(blocksByRoot);
+  }
 
-      if (segPrevRootId == (segRootId - 1)) {
-        // doc has no children, return fast
-        return;
+  /** Attaches the children of a root that isn't part of the page, or whose block overlaps another one */
+  private void transformAlone(SolrDocument rootDoc, int rootDocId) throws IOException {
+    // lookup what the *previous* rootDocId is, and figure which segment this is
+    final SolrIndexSearcher searcher = context.getSearcher();
+    final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+    final int seg = ReaderUtil.subIndex(rootDocId, leaves);
+    final LeafReaderContext leafReaderContext = leaves.get(seg);
+    final int segRootId = rootDocId - leafReaderContext.docBase;
+
+    // can return be -1 and that's okay  (happens for very first block)
+    final int segPrevRootId;
+    if (parentsFilter != null) {
+      segPrevRootId = getPrevRootGivenFilter(leafReaderContext, segRootId);
+    } else {
+      final IndexSchema schema = searcher.getSchema();
+      final String idStr = schema.printableUniqueKey(rootDoc);
+      if (idStr == null) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            "[child] requires fl to include the ID");
       }
+      final BytesRef idBytes = schema.indexableUniqueKey(idStr);
+      segPrevRootId = getPrevRootGivenId(leafReaderContext, rootDocId, idBytes);
+    }
 
-      // we'll need this soon...
-      final SortedDocValues segPathDocValues = DocValues.getSorted(leafReaderContext.reader(), NEST_PATH_FIELD_NAME);
-      // passing a different SortedDocValues obj since the child documents which come after are of smaller docIDs,
-      // and the iterator can not be reversed.
-      // The root doc is the input document to be transformed, and is not necessarily the root doc of the block of docs.
-      final String rootDocPath = getPathByDocId(segRootId, DocValues.getSorted(leafReaderContext.reader(), NEST_PATH_FIELD_NAME));
-
-      // the key in the Map is the document's ancestors key (one above the parent), while the key in the intermediate
-      // MultiMap is the direct child document's key(of the parent document)
-      final Map<String, Multimap<String, SolrDocument>> pendingParentPathsToChildren = new HashMap<>();
-
-      final int firstChildId = segBaseId + segPrevRootId + 1;
-      int matches = 0;
-      // Loop each child ID up to the parent (exclusive).
-      for (int docId = firstChildId; docId < rootDocId; ++docId) {
-        final int segDocId = docId - segBaseId;
-
-        // check whether doc is "live"
-        if (liveDocs != null && !liveDocs.get(segDocId)) {
-          // doc is not "live"; return fast
-          continue;
-        }
+    // passing a different reader for the root's path since the child documents come before it,
+    // and the iterator can not be reversed.
+    final Block block = selectChildren(leafReaderContext, segPrevRootId, segRootId,
+        new SegmentPaths(leafReaderContext.reader()), new SegmentPaths(leafReaderContext.reader()));
+    loadChildren(Collections.singletonList(block));
+    addChildrenToRoot(rootDoc, block);
+  }
 
-        // get the path.  (note will default to ANON_CHILD_KEY if schema is not nested or empty string if blank)
-        final String fullDocPath = getPathByDocId(segDocId, segPathDocValues);
+  /**
+   * Selects the live descendants of the root that match the child filter, up to the limit, and their ancestors,
+   * without loading them yet.
+   */
+  private Block selectChildren(LeafReaderContext leafReaderContext, int segPrevRootId, int segRootId,
+                               SegmentPaths rootPaths, SegmentPaths childPaths) throws IOException {
+    final Block block = new Block();
+    if (segPrevRootId == (segRootId - 1)) {
+      // doc has no children, return fast
+      return block;
+    }
+
+    final Bits liveDocs = leafReaderContext.reader().getLiveDocs();
+    final int segBaseId = leafReaderContext.docBase;
+    // The root doc is the input document to be transformed, and is not necessarily the root doc of the block of docs.
+    final String rootDocPath = rootPaths.get(segRootId);
+
+    // the parent paths of the docs selected so far, whose parent we haven't seen yet
+    final Set<String> pendingParentPaths = new HashSet<>();
+
+    int matches = 0;
+    // Loop each child ID up to the parent (exclusive).
+    for (int segDocId = segPrevRootId + 1; segDocId < segRootId; ++segDocId) {
 
-        if (isNestedSchema && !fullDocPath.startsWith(rootDocPath)) {
-          // is not a descendant of the transformed doc; return fast.
+      // check whether doc is "live"
+      if (liveDocs != null && !liveDocs.get(segDocId)) {
+        // doc is not "live"; return fast
+        continue;
+      }
+
+      // get the path.  (note will default to ANON_CHILD_KEY if schema is not nested or empty string if blank)
+      final String fullDocPath = childPaths.get(segDocId);
+
+      if (isNestedSchema && !fullDocPath.startsWith(rootDocPath)) {
+        // is not a descendant of the transformed doc; return fast.
+        continue;
+      }
+
+      // Is this doc a direct ancestor of another doc we've selected?
+      final boolean isAncestor = pendingParentPaths.remove(fullDocPath);
+
+      // Do we need to do anything with this doc (either ancestor or matched the child query)
+      final int docId = segBaseId + segDocId;
+      if (isAncestor || childDocSet == null || childDocSet.exists(docId)) {
+
+        // If we reached the limit, only add if it's an ancestor
+        if (limit != -1 && matches >= limit && !isAncestor) {
           continue;
         }
+        ++matches; // note: includes ancestors that are not necessarily in childDocSet
+
+        block.add(docId, fullDocPath);
+        pendingParentPaths.add(getParentPath(fullDocPath));
+      }
+    }
+    return block;
+  }
 
-        // Is this doc a direct ancestor of another doc we've seen?
-        boolean isAncestor = pendingParentPathsToChildren.containsKey(fullDocPath);
-
-        // Do we need to do anything with this doc (either ancestor or matched the child query)
-        if (isAncestor || childDocSet == null || childDocSet.exists(docId)) {
-
-          // If we reached the limit, only add if it's an ancestor
-          if (limit != -1 && matches >= limit && !isAncestor) {
-            continue;
-          }
-          ++matches; // note: includes ancestors that are not necessarily in childDocSet
-
-          // load the doc
-          SolrDocument doc = searcher.getDocFetcher().solrDoc(docId, childReturnFields);
-          if(childReturnFields.getTransformer() != null) {
-            if(childReturnFields.getTransformer().context == null) {
-              childReturnFields.getTransformer().setContext(context);
-            }
-            childReturnFields.getTransformer().transform(doc, docId);
-          }
-
-          if (isAncestor) {
-            // if this path has pending child docs, add them.
-            addChildrenToParent(doc, pendingParentPathsToChildren.remove(fullDocPath)); // no longer pending
-          }
-
-          // get parent path
-          String parentDocPath = getParentPath(fullDocPath);
-          String lastPath = getLastPath(fullDocPath);
-          // put into pending:
-          // trim path if the doc was inside array, see trimPathIfArrayDoc()
-          // e.g. toppings#1/ingredients#1 -> outer map key toppings#1
-          // -> inner MultiMap key ingredients
-          // or lonely#/lonelyGrandChild# -> outer map key lonely#
-          // -> inner MultiMap key lonelyGrandChild#
-          pendingParentPathsToChildren.computeIfAbsent(parentDocPath, x -> ArrayListMultimap.create())
-              .put(trimLastPoundIfArray(lastPath), doc); // multimap add (won't replace)
+  /** Loads the selected docs of all the blocks in doc id order */
+  private void loadChildren(List<Block> blocks) throws IOException {
+    int numDocs = 0;
+    for (Block block : blocks) {
+      numDocs += block.size;
+    }
+    final int[] docIds = new int[numDocs];
+    numDocs = 0;
+    for (Block block : blocks) {
+      System.arraycopy(block.docIds, 0, docIds, numDocs, block.size);
+      numDocs += block.size;
+    }
+    Arrays.sort(docIds); // already sorted unless blocks came from different pages
+
+    final SolrIndexSearcher searcher = context.getSearcher();
+    final IntObjectHashMap<SolrDocument> docs = new IntObjectHashMap<>(numDocs);
+    for (int docId : docIds) {
+      SolrDocument doc = searcher.getDocFetcher().solrDoc(docId, childReturnFields);
+      if(childReturnFields.getTransformer() != null) {
+        if(childReturnFields.getTransformer().context == null) {
+          childReturnFields.getTransformer().setContext(context);
         }
+        childReturnFields.getTransformer().transform(doc, docId);
       }
+      docs.put(docId, doc);
+    }
 
-      if (pendingParentPathsToChildren.isEmpty()) {
-        // no child docs matched the child filter; return fast.
-        return;
+    for (Block block : blocks) {
+      block.docs = new SolrDocument[block.size];
+      for (int i = 0; i < block.size; i++) {
+        block.docs[i] = docs.get(block.docIds[i]);
       }
+    }
+  }
 
-      // only children of parent remain
-      assert pendingParentPathsToChildren.keySet().size() == 1;
+  /** Builds the hierarchy of the loaded docs of the block under the root */
+  private void addChildrenToRoot(SolrDocument rootDoc, Block block) {
+    // the key in the Map is the document's ancestors key (one above the parent), while the key in the intermediate
+    // MultiMap is the direct child document's key(of the parent document)
+    final Map<String, Multimap<String, SolrDocument>> pendingParentPathsToChildren = new HashMap<>();
 
-      // size == 1, so get the last remaining entry
-      addChildrenToParent(rootDoc, pendingParentPathsToChildren.values().iterator().next());
+    for (int i = 0; i < block.size; i++) {
+      final String fullDocPath = block.paths[i];
+      final SolrDocument doc = block.docs[i];
 
-    } catch (IOException e) {
-      //TODO DWS: reconsider this unusual error handling approach; shouldn't we rethrow?
-      log.warn("Could not fetch child documents", e);
-      rootDoc.put(getName(), "Could not fetch child documents");
+      if (pendingParentPathsToChildren.containsKey(fullDocPath)) {
+        // if this path has pending child docs, add them.
+        addChildrenToParent(doc, pendingParentPathsToChildren.remove(fullDocPath)); // no longer pending
+      }
+
+      // get parent path
+      String parentDocPath = getParentPath(fullDocPath);
+      String lastPath = getLastPath(fullDocPath);
+      // put into pending:
+      // trim path if the doc was inside array, see trimPathIfArrayDoc()
+      // e.g. toppings#1/ingredients#1 -> outer map key toppings#1
+      // -> inner MultiMap key ingredients
+      // or lonely#/lonelyGrandChild# -> outer map key lonely#
+      // -> inner MultiMap key lonelyGrandChild#
+      pendingParentPathsToChildren.computeIfAbsent(parentDocPath, x -> ArrayListMultimap.create())
+          .put(trimLastPoundIfArray(lastPath), doc); // multimap add (won't replace)
     }
+
+    if (pendingParentPathsToChildren.isEmpty()) {
+      // no child docs matched the child filter; return fast.
+      return;
+    }
+
+    // only children of parent remain
+    assert pendingParentPathsToChildren.keySet().size() == 1;
+
+    // size == 1, so get the last remaining entry
+    addChildrenToParent(rootDoc, pendingParentPathsToChildren.values().iterator().next());
   }
 
   private static void addChildrenToParent(SolrDocument parent, Multimap<String, SolrDocument> children) {
@@ -304,14 +436,55 @@ class ChildDocTransformer extends DocTransformer {
     return lastPathIndex == -1 ? null : currDocPath.substring(0, lastPathIndex);
   }
 
-  /** Looks up the nest path.  If there is none, returns {@link #ANON_CHILD_KEY}. */
-  private String getPathByDocId(int segDocId, SortedDocValues segPathDocValues) throws IOException {
-    if (!isNestedSchema) {
-      return ANON_CHILD_KEY;
+  /** The docs selected under one root, in doc id order, with their nest paths */
+  private static final class Block {
+    int[] docIds = new int[0];
+    String[] paths = new String[0];
+    int size;
+    SolrDocument[] docs; // set once loaded
+
+    void add(int docId, String path) {
+      if (size == docIds.length) {
+        docIds = ArrayUtil.grow(docIds, size + 1);
+        paths = ArrayUtil.grow(paths, docIds.length);
+      }
+      docIds[size] = docId;
+      paths[size] = path;
+      size++;
+    }
+  }
+
+  /**
+   * Reads the nest paths of a segment's docs in doc id order, starting over if asked for an earlier doc.  Paths are
+   * decoded once per ord, since the same paths come back in every block.
+   */
+  private final class SegmentPaths {
+    private final LeafReader reader;
+    private final IntObjectHashMap<String> pathsByOrd = new IntObjectHashMap<>();
+    private SortedDocValues segPathDocValues;
+
+    SegmentPaths(LeafReader reader) {
+      this.reader = reader;
+    }
+
+    /** Looks up the nest path.  If there is none, returns {@link #ANON_CHILD_KEY}. */
+    String get(int segDocId) throws IOException {
+      if (!isNestedSchema) {
+        return ANON_CHILD_KEY;
+      }
+      if (segPathDocValues == null || segPathDocValues.docID() > segDocId) {
+        segPathDocValues = DocValues.getSorted(reader, NEST_PATH_FIELD_NAME);
+      }
+      if (!segPathDocValues.advanceExact(segDocId)) {
+        return "";
+      }
+      final int ord = segPathDocValues.ordValue();
+      String path = pathsByOrd.get(ord);
+      if (path == null) {
+        path = segPathDocValues.lookupOrd(ord).utf8ToString();
+        pathsByOrd.put(ord, path);
+      }
+      return path;
     }
-    int numToAdvance = segPathDocValues.docID() == -1 ? segDocId : segDocId - (segPathDocValues.docID());
-    assert numToAdvance >= 0;
-    boolean advanced = segPathDocValues.advanceExact(segDocId);
-    return advanced ? segPathDocValues.lookupOrd(segPathDocValues.ordValue()).utf8ToString(): "";
   }
 }
@@ -24,7 +24,6 @@ import org.apache.lucene.search.DocValuesFieldExistsQuery;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.join.BitSetProducer;
-import org.apache.lucene.search.join.QueryBitSetProducer;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
@@ -36,6 +35,7 @@ import org.apache.solr.search.QParser;
 import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrReturnFields;
 import org.apache.solr.search.SyntaxError;
+import org.apache.solr.search.join.ParentBitSetCache;
 
 import static org.apache.solr.schema.IndexSchema.NEST_PATH_FIELD_NAME;
 
@@ -177,11 +177,11 @@ public class ChildDocTransformerFactory extends TransformerFactory {
   public static BitSetProducer getCachedBitSetProducer(final SolrQueryRequest request, Query query) {
     @SuppressWarnings("unchecked")
     SolrCache<Query, BitSetProducer> parentCache = request.getSearcher().getCache(CACHE_NAME);
-    // lazily retrieve from solr cache
+    // lazily retrieve from solr cache; the producer caches its bit sets per segment regardless
     if (parentCache != null) {
-      return parentCache.computeIfAbsent(query, QueryBitSetProducer::new);
+      return parentCache.computeIfAbsent(query, ParentBitSetCache::newProducer);
     } else {
-      return new QueryBitSetProducer(query);
+      return ParentBitSetCache.newProducer(query);
     }
   }
 }
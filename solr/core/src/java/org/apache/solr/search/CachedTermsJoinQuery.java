@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link JoinQuery} implementation that reads the "from" terms of the documents matching the "from" query from
+ * docValues, and ORs the documents of those terms in the "to" field per segment from a {@link JoinTermsCache}.
+ * <p>
+ * The "from" query goes through the filterCache on its own, so a join whose "from" query changes only reads the
+ * postings of the "to" terms that weren't joined on before.  Falls back to {@link JoinQuery} unless the "from" field
+ * is a string field with docValues and the "to" field is indexed.
+ */
+public class CachedTermsJoinQuery extends JoinQuery {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public CachedTermsJoinQuery(String fromField, String toField, String coreName, Query subQuery) {
+    super(fromField, toField, coreName, subQuery);
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+    if (! (searcher instanceof SolrIndexSearcher)) {
+      log.debug("Falling back to JoinQueryWeight because searcher [{}] is not the required SolrIndexSearcher", searcher);
+      return super.createWeight(searcher, scoreMode, boost);
+    }
+
+    final JoinQueryWeight weight = new JoinQueryWeight((SolrIndexSearcher) searcher, scoreMode, boost);
+    final SchemaField fromSchemaField = weight.fromSearcher.getSchema().getFieldOrNull(fromField);
+    final SchemaField toSchemaField = weight.toSearcher.getSchema().getFieldOrNull(toField);
+    if (fromSchemaField == null || !fromSchemaField.hasDocValues() || !(fromSchemaField.getType() instanceof StrField)
+        || toSchemaField == null || !toSchemaField.indexed() || toSchemaField.getType().isPointField()) {
+      log.debug("Falling back to JoinQueryWeight because from field [{}] is not a string field with docValues, or to field [{}] is not indexed",
+          fromField, toField);
+      return weight;
+    }
+
+    return new ConstantScoreWeight(this, boost) {
+      private BytesRef[] fromTerms;
+
+      private synchronized BytesRef[] getFromTerms() throws IOException {
+        if (fromTerms == null) {
+          final DocSet fromSet = weight.fromSearcher.getDocSet(q);
+          fromTerms = collectFromTerms(weight.fromSearcher, fromSet);
+          if (weight.rb != null && weight.rb.isDebug()) {
+            SimpleOrderedMap<Object> dbg = new SimpleOrderedMap<>();
+            dbg.add("fromSetSize", fromSet.size());
+            dbg.add("fromTermCount", fromTerms.length);
+            weight.rb.addDebug(dbg, "join", CachedTermsJoinQuery.this.toString());
+          }
+        }
+        return fromTerms;
+      }
+
+      @Override
+      public Scorer scorer(LeafReaderContext context) throws IOException {
+        final BytesRef[] terms = getFromTerms();
+        if (terms.length == 0) {
+          return null;
+        }
+        final LeafReader reader = context.reader();
+        final Terms toTerms = reader.terms(toField);
+        if (toTerms == null) {
+          return null;
+        }
+        final TermsEnum termsEnum = toTerms.iterator();
+        final DocIdSetBuilder builder = new DocIdSetBuilder(reader.maxDoc(), toTerms);
+        for (BytesRef term : terms) {
+          JoinTermsCache.addTo(weight.toSearcher, reader, toField, term, termsEnum, builder);
+        }
+        final DocIdSetIterator disi = builder.build().iterator();
+        return disi == null ? null : new ConstantScoreScorer(this, score(), scoreMode, disi);
+      }
+
+      private BytesRef[] collectFromTerms(SolrIndexSearcher fromSearcher, DocSet fromSet) throws IOException {
+        final BytesRefHash terms = new BytesRefHash();
+        for (LeafReaderContext leaf : fromSearcher.getTopReaderContext().leaves()) {
+          final DocIdSetIterator docs = fromSet.iterator(leaf);
+          if (docs == null) {
+            continue;
+          }
+          final SortedSetDocValues values = DocValues.getSortedSet(leaf.reader(), fromField);
+          if (values.getValueCount() == 0) {
+            continue;
+          }
+          // gather the ords of the segment first, so every distinct term is looked up once
+          final LongBitSet ords = new LongBitSet(values.getValueCount());
+          for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+            if (values.advanceExact(doc)) {
+              for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                ords.set(ord);
+              }
+            }
+          }
+          for (long ord = ords.nextSetBit(0); ord >= 0; ord = ord + 1 < ords.length() ? ords.nextSetBit(ord + 1) : -1) {
+            terms.add(values.lookupOrd(ord));
+          }
+        }
+
+        final int[] ids = terms.sort();
+        final BytesRef[] sorted = new BytesRef[terms.size()];
+        for (int i = 0; i < sorted.length; i++) {
+          sorted[i] = terms.get(ids[i], new BytesRef());
+        }
+        return sorted;
+      }
+
+      @Override
+      public boolean isCacheable(LeafReaderContext ctx) {
+        return false;
+      }
+    };
+  }
+}
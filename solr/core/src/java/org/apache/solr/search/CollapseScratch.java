@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.SparseFixedBitSet;
+import org.apache.solr.util.DynamicMap;
+import org.apache.solr.util.IntFloatDynamicMap;
+import org.apache.solr.util.IntIntDynamicMap;
+import org.apache.solr.util.IntLongDynamicMap;
+
+/**
+ * Scratch structures for the collapse post filter, kept per {@link SolrIndexSearcher} so that collapsing doesn't
+ * allocate a maxDoc sized bit set and ordinal sized arrays on every request.
+ * <p>
+ * A collector takes what it needs when it is created and releases it once it has finished, after which the
+ * structures are cleared and kept for the next request.  A collector that never finishes (e.g. because the request
+ * failed) simply doesn't release them.  Only a few structures of each kind are kept, which is enough for the usual
+ * number of concurrent requests; any others are left to the garbage collector as before.
+ *
+ * @lucene.internal
+ */
+final class CollapseScratch {
+  /** the most structures of each kind that are kept */
+  static final int MAX_POOLED = 4;
+
+  private final int maxDoc;
+  private final Queue<FixedBitSet> bitSets = new ConcurrentLinkedQueue<>();
+  private final Map<MapKey, Queue<DynamicMap>> maps = new ConcurrentHashMap<>();
+
+  CollapseScratch(int maxDoc) {
+    this.maxDoc = maxDoc;
+  }
+
+  /** Identifies maps that can be reused for each other */
+  private static final class MapKey {
+    final Class<?> type;
+    final int expectedKeyMax;
+    final long emptyValue; // the bits of the empty value
+
+    MapKey(Class<?> type, int expectedKeyMax, long emptyValue) {
+      this.type = type;
+      this.expectedKeyMax = expectedKeyMax;
+      this.emptyValue = emptyValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof MapKey)) return false;
+      MapKey other = (MapKey) o;
+      return type == other.type && expectedKeyMax == other.expectedKeyMax && emptyValue == other.emptyValue;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, expectedKeyMax, emptyValue);
+    }
+  }
+
+  /**
+   * Returns an empty bit set of maxDoc bits to collect group heads in.
+   *
+   * @param maxHeads an upper bound of the number of bits that will be set, or -1 if there isn't one.  If it is small
+   *                 compared to maxDoc, a {@link SparseFixedBitSet} is returned, which only allocates what is set.
+   */
+  BitSet getCollapsedSet(int maxHeads) {
+    if (maxHeads >= 0 && maxHeads < (maxDoc >>> 8)) {
+      return new SparseFixedBitSet(maxDoc);
+    }
+    final FixedBitSet bits = bitSets.poll();
+    return bits != null ? bits : new FixedBitSet(maxDoc);
+  }
+
+  IntIntDynamicMap getIntIntMap(int expectedKeyMax, int emptyValue) {
+    final DynamicMap map = poll(new MapKey(IntIntDynamicMap.class, expectedKeyMax, emptyValue));
+    return map != null ? (IntIntDynamicMap) map : new IntIntDynamicMap(expectedKeyMax, emptyValue);
+  }
+
+  IntFloatDynamicMap getIntFloatMap(int expectedKeyMax, float emptyValue) {
+    final DynamicMap map = poll(new MapKey(IntFloatDynamicMap.class, expectedKeyMax, Float.floatToIntBits(emptyValue)));
+    return map != null ? (IntFloatDynamicMap) map : new IntFloatDynamicMap(expectedKeyMax, emptyValue);
+  }
+
+  IntLongDynamicMap getIntLongMap(int expectedKeyMax, long emptyValue) {
+    final DynamicMap map = poll(new MapKey(IntLongDynamicMap.class, expectedKeyMax, emptyValue));
+    return map != null ? (IntLongDynamicMap) map : new IntLongDynamicMap(expectedKeyMax, emptyValue);
+  }
+
+  private DynamicMap poll(MapKey key) {
+    final Queue<DynamicMap> queue = maps.get(key);
+    return queue == null ? null : queue.poll();
+  }
+
+  /** Clears the bit set and keeps it for reuse, if there's room */
+  void release(BitSet bits) {
+    if (bits instanceof FixedBitSet && bits.length() == maxDoc && bitSets.size() < MAX_POOLED) {
+      bits.clear(0, maxDoc);
+      bitSets.offer((FixedBitSet) bits);
+    }
+  }
+
+  /** Clears the map and keeps it for reuse, if there's room; null is ignored */
+  void release(DynamicMap map) {
+    final MapKey key;
+    if (map instanceof IntIntDynamicMap) {
+      key = new MapKey(IntIntDynamicMap.class, map.getExpectedKeyMax(), ((IntIntDynamicMap) map).getEmptyValue());
+    } else if (map instanceof IntFloatDynamicMap) {
+      key = new MapKey(IntFloatDynamicMap.class, map.getExpectedKeyMax(),
+          Float.floatToIntBits(((IntFloatDynamicMap) map).getEmptyValue()));
+    } else if (map instanceof IntLongDynamicMap) {
+      key = new MapKey(IntLongDynamicMap.class, map.getExpectedKeyMax(), ((IntLongDynamicMap) map).getEmptyValue());
+    } else {
+      return;
+    }
+    final Queue<DynamicMap> queue = maps.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+    if (queue.size() < MAX_POOLED) {
+      map.clear();
+      queue.offer(map);
+    }
+  }
+
+  /** Drops everything that is kept */
+  void clear() {
+    bitSets.clear();
+    maps.clear();
+  }
+}
@@ -25,6 +25,7 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import com.carrotsearch.hppc.FloatArrayList;
@@ -62,11 +63,12 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitSet;
 import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.LongValues;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ExpandParams;
 import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
@@ -164,6 +166,12 @@ public class CollapsingQParserPlugin extends QParserPlugin {
   @Deprecated
   public static final String HINT_MULTI_DOCVALUES = "multi_docvalues";
 
+  /**
+   * Prefix of the request context key, followed by the collapse field, of the {@link GroupHeadOrds} of a collapse on a
+   * string field.  They are only recorded when the request asks for {@link ExpandParams#EXPAND_BATCH}.
+   */
+  public static final String GROUP_HEAD_ORDS = "collapse.groupHeadOrds.";
+
   public enum NullPolicy {
     IGNORE("ignore", 0),
     COLLAPSE("collapse", 1),
@@ -220,6 +228,78 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     }
   }
 
+  /**
+   * The global ordinals of the groups of the group heads of a collapse on a string field, so that the
+   * ExpandComponent doesn't need to look up the groups of the documents on the page again.  Ordinals are those of the
+   * top level sorted values of the field, which are only the same for the same searcher and hint.
+   * <p>
+   * At most {@link #MAX_HEADS} heads are recorded, beyond which the ExpandComponent looks up the groups of the page
+   * itself, as that is cheaper than keeping the groups of every head.
+   */
+  public static final class GroupHeadOrds {
+    /** the most group heads that are recorded */
+    public static final int MAX_HEADS = 1 << 16;
+
+    private final IndexSearcher searcher;
+    private final String hint;
+    private int[] docs = new int[16]; // sorted
+    private int[] ords = new int[16];
+    private int size;
+    private boolean overflowed;
+    private boolean complete;
+    private int found;
+
+    GroupHeadOrds(IndexSearcher searcher, String hint) {
+      this.searcher = searcher;
+      this.hint = hint;
+    }
+
+    /** Adds a group head, in increasing order of doc ids */
+    void add(int globalDoc, int ord) {
+      if (overflowed) {
+        return;
+      }
+      if (size == MAX_HEADS) {
+        overflowed = true;
+        docs = ords = null;
+        return;
+      }
+      if (size == docs.length) {
+        docs = ArrayUtil.grow(docs, size + 1);
+        ords = ArrayUtil.growExact(ords, docs.length);
+      }
+      docs[size] = globalDoc;
+      ords[size++] = ord;
+    }
+
+    void finish() {
+      complete = !overflowed;
+    }
+
+    /** @return whether all group heads were recorded, by a collapse with the searcher and hint */
+    public boolean isUsable(IndexSearcher searcher, String hint) {
+      return complete && this.searcher == searcher && Objects.equals(this.hint, hint);
+    }
+
+    /**
+     * @return the global ordinal of the group of a group head, -1 if it has no value, or -2 if the document isn't a
+     * group head
+     */
+    public int getOrd(int globalDoc) {
+      final int index = Arrays.binarySearch(docs, 0, size, globalDoc);
+      if (index < 0) {
+        return -2;
+      }
+      found++;
+      return ords[index];
+    }
+
+    /** @return the number of group heads {@link #getOrd} found, which tells tests whether the groups were reused */
+    public int getFound() {
+      return found;
+    }
+  }
+
   public static enum GroupHeadSelectorType {
     MIN, MAX, SORT, SCORE;
     public static EnumSet<GroupHeadSelectorType> MIN_MAX = EnumSet.of(MIN, MAX);
@@ -451,7 +531,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         }
 
         boostDocsMap = QueryElevationComponent.getBoostDocs(searcher, this.boosted, context);
-        return collectorFactory.getCollector(this.collapseField,
+        DelegatingCollector collector = collectorFactory.getCollector(this.collapseField,
                                              this.groupHeadSelector,
                                              this.sortSpec,
                                              this.nullPolicy.getCode(),
@@ -462,6 +542,20 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                              boostDocsMap,
                                              searcher);
 
+        if (context != null && info.getReq().getParams().getBool(ExpandParams.EXPAND, false)
+            && info.getReq().getParams().getBool(ExpandParams.EXPAND_BATCH, false)) {
+          // let the ExpandComponent reuse the groups of the heads
+          GroupHeadOrds groupHeadOrds = new GroupHeadOrds(searcher, this.hint);
+          if (collector instanceof OrdScoreCollector) {
+            ((OrdScoreCollector) collector).groupHeadOrds = groupHeadOrds;
+            context.put(GROUP_HEAD_ORDS + this.collapseField, groupHeadOrds);
+          } else if (collector instanceof OrdFieldValueCollector) {
+            ((OrdFieldValueCollector) collector).groupHeadOrds = groupHeadOrds;
+            context.put(GROUP_HEAD_ORDS + this.collapseField, groupHeadOrds);
+          }
+        }
+        return collector;
+
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -571,7 +665,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
     private LeafReaderContext[] contexts;
     private final DocValuesProducer collapseValuesProducer;
-    private FixedBitSet collapsedSet;
+    private final CollapseScratch scratch;
+    private BitSet collapsedSet;
     private SortedDocValues collapseValues;
     private OrdinalMap ordinalMap;
     private SortedDocValues segmentValues;
@@ -585,6 +680,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private int nullDoc = -1;
     private boolean collectElevatedDocsWhenCollapsing;
     private FloatArrayList nullScores;
+    GroupHeadOrds groupHeadOrds; // if not null, records the groups of the heads
 
     private final BoostedDocsCollector boostedDocsCollector;
 
@@ -594,6 +690,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                              int nullPolicy,
                              IntIntHashMap boostDocsMap,
                              IndexSearcher searcher,
+                             CollapseScratch scratch,
                              boolean collectElevatedDocsWhenCollapsing) throws IOException {
       this.maxDoc = maxDoc;
       this.contexts = new LeafReaderContext[segments];
@@ -603,7 +700,6 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         contexts[i] = con.get(i);
       }
 
-      this.collapsedSet = new FixedBitSet(maxDoc);
       this.collapseValuesProducer = collapseValuesProducer;
       this.collapseValues = collapseValuesProducer.getSorted(null);
 
@@ -612,13 +708,16 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         this.multiSortedDocValues = (MultiDocValues.MultiSortedDocValues)collapseValues;
         this.ordinalMap = multiSortedDocValues.mapping;
       }
-      this.ords = new IntIntDynamicMap(valueCount, -1);
-      this.scores = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE);
       this.nullPolicy = nullPolicy;
       if(nullPolicy == NullPolicy.EXPAND.getCode()) {
         nullScores = new FloatArrayList();
       }
       this.boostedDocsCollector = BoostedDocsCollector.build(boostDocsMap);
+
+      this.scratch = scratch;
+      this.collapsedSet = scratch.getCollapsedSet(maxHeads(valueCount, nullPolicy, boostedDocsCollector));
+      this.ords = scratch.getIntIntMap(valueCount, -1);
+      this.scores = scratch.getIntFloatMap(valueCount, -Float.MAX_VALUE);
     }
 
     @Override public ScoreMode scoreMode() { return ScoreMode.COMPLETE; }
@@ -752,6 +851,10 @@ public class CollapsingQParserPlugin extends QParserPlugin {
           }
         }
 
+        if (groupHeadOrds != null) {
+          groupHeadOrds.add(docId, ord);
+        }
+
         if(ord > -1) {
           dummy.score = scores.get(ord);
         } else if(mergeBoost.boost(docId)) {
@@ -766,6 +869,17 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         leafDelegate.collect(contextDoc);
       }
 
+      if (groupHeadOrds != null) {
+        groupHeadOrds.finish();
+      }
+
+      scratch.release(collapsedSet);
+      scratch.release(ords);
+      scratch.release(scores);
+      collapsedSet = null;
+      ords = null;
+      scores = null;
+
       if(delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).finish();
       }
@@ -779,7 +893,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
   static class IntScoreCollector extends DelegatingCollector {
 
     private LeafReaderContext[] contexts;
-    private FixedBitSet collapsedSet;
+    private final CollapseScratch scratch;
+    private BitSet collapsedSet;
     private NumericDocValues collapseValues;
     private IntLongHashMap cmap;
     private int maxDoc;
@@ -799,6 +914,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                              String field,
                              IntIntHashMap boostDocsMap,
                              IndexSearcher searcher,
+                             CollapseScratch scratch,
                              boolean collectElevatedDocsWhenCollapsing) {
       this.maxDoc = maxDoc;
       this.contexts = new LeafReaderContext[segments];
@@ -808,7 +924,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         contexts[i] = con.get(i);
       }
 
-      this.collapsedSet = new FixedBitSet(maxDoc);
+      this.scratch = scratch;
+      this.collapsedSet = scratch.getCollapsedSet(-1);
       this.nullPolicy = nullPolicy;
       if(nullPolicy == NullPolicy.EXPAND.getCode()) {
         nullScores = new FloatArrayList();
@@ -943,6 +1060,9 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         leafDelegate.collect(contextDoc);
       }
 
+      scratch.release(collapsedSet);
+      collapsedSet = null;
+
       if(delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).finish();
       }
@@ -971,6 +1091,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private boolean needsScores;
 
     private boolean collectElevatedDocsWhenCollapsing;
+    GroupHeadOrds groupHeadOrds; // if not null, records the groups of the heads
 
     private final BoostedDocsCollector boostedDocsCollector;
 
@@ -985,6 +1106,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                   FieldType fieldType,
                                   IntIntHashMap boostDocsMap,
                                   FunctionQuery funcQuery, IndexSearcher searcher,
+                                  CollapseScratch scratch,
                                   boolean collectElevatedDocsWhenCollapsing) throws IOException{
 
       assert ! GroupHeadSelectorType.SCORE.equals(groupHeadSelector.type);
@@ -1010,9 +1132,9 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.needsScores4Collapsing = needsScores4Collapsing;
       this.needsScores = needsScores;
       if (null != sortSpec) {
-        this.collapseStrategy = new OrdSortSpecStrategy(maxDoc, nullPolicy, valueCount, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, sortSpec, searcher, collapseValues);
+        this.collapseStrategy = new OrdSortSpecStrategy(scratch, nullPolicy, valueCount, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, sortSpec, searcher, collapseValues);
       } else if (funcQuery != null) {
-        this.collapseStrategy =  new OrdValueSourceStrategy(maxDoc, nullPolicy, valueCount, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, funcQuery, searcher, collapseValues);
+        this.collapseStrategy =  new OrdValueSourceStrategy(scratch, nullPolicy, valueCount, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, funcQuery, searcher, collapseValues);
       } else {
         NumberType numType = fieldType.getNumberType();
         if (null == numType) {
@@ -1020,15 +1142,15 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         }
         switch (numType) {
           case INTEGER: {
-            this.collapseStrategy = new OrdIntStrategy(maxDoc, nullPolicy, valueCount, groupHeadSelector, this.needsScores, boostedDocsCollector, collapseValues);
+            this.collapseStrategy = new OrdIntStrategy(scratch, nullPolicy, valueCount, groupHeadSelector, this.needsScores, boostedDocsCollector, collapseValues);
             break;
           }
           case FLOAT: {
-            this.collapseStrategy = new OrdFloatStrategy(maxDoc, nullPolicy, valueCount, groupHeadSelector, this.needsScores, boostedDocsCollector, collapseValues);
+            this.collapseStrategy = new OrdFloatStrategy(scratch, nullPolicy, valueCount, groupHeadSelector, this.needsScores, boostedDocsCollector, collapseValues);
             break;
           }
           case LONG: {
-            this.collapseStrategy =  new OrdLongStrategy(maxDoc, nullPolicy, valueCount, groupHeadSelector, this.needsScores, boostedDocsCollector, collapseValues);
+            this.collapseStrategy =  new OrdLongStrategy(scratch, nullPolicy, valueCount, groupHeadSelector, this.needsScores, boostedDocsCollector, collapseValues);
             break;
           }
           default: {
@@ -1130,7 +1252,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
         int contextDoc = globalDoc-currentDocBase;
 
-        if(this.needsScores){
+        if(this.needsScores || groupHeadOrds != null){
           int ord = -1;
           if(this.ordinalMap != null) {
             //Handle ordinalMapping case
@@ -1144,15 +1266,21 @@ public class CollapsingQParserPlugin extends QParserPlugin {
             }
           }
 
-          if(ord > -1) {
-            dummy.score = scores.get(ord);
-          } else if (mergeBoost.boost(globalDoc)) {
-            //It's an elevated doc so no score is needed (and should not have been populated)
-            dummy.score = 0F;
-          } else if (nullPolicy == NullPolicy.COLLAPSE.getCode()) {
-            dummy.score = nullScore;
-          } else if(nullPolicy == NullPolicy.EXPAND.getCode()) {
-            dummy.score = nullScores.get(nullScoreIndex++);
+          if (groupHeadOrds != null) {
+            groupHeadOrds.add(globalDoc, ord);
+          }
+
+          if (this.needsScores) {
+            if(ord > -1) {
+              dummy.score = scores.get(ord);
+            } else if (mergeBoost.boost(globalDoc)) {
+              //It's an elevated doc so no score is needed (and should not have been populated)
+              dummy.score = 0F;
+            } else if (nullPolicy == NullPolicy.COLLAPSE.getCode()) {
+              dummy.score = nullScore;
+            } else if(nullPolicy == NullPolicy.EXPAND.getCode()) {
+              dummy.score = nullScores.get(nullScoreIndex++);
+            }
           }
         }
 
@@ -1160,6 +1288,12 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         leafDelegate.collect(contextDoc);
       }
 
+      if (groupHeadOrds != null) {
+        groupHeadOrds.finish();
+      }
+
+      collapseStrategy.release();
+
       if(delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).finish();
       }
@@ -1198,6 +1332,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                   IntIntHashMap boostDocsMap,
                                   FunctionQuery funcQuery,
                                   IndexSearcher searcher,
+                                  CollapseScratch scratch,
                                   boolean collectElevatedDocsWhenCollapsing) throws IOException{
       this.collectElevatedDocsWhenCollapsing = collectElevatedDocsWhenCollapsing;
 
@@ -1217,19 +1352,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.boostedDocsCollector = BoostedDocsCollector.build(boostDocsMap);
       
       if (null != sortSpec) {
-        this.collapseStrategy = new IntSortSpecStrategy(maxDoc, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, sortSpec, searcher);
+        this.collapseStrategy = new IntSortSpecStrategy(scratch, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, sortSpec, searcher);
       } else if (funcQuery != null) {
-        this.collapseStrategy =  new IntValueSourceStrategy(maxDoc, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, funcQuery, searcher);
+        this.collapseStrategy =  new IntValueSourceStrategy(scratch, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores4Collapsing, this.needsScores, boostedDocsCollector, funcQuery, searcher);
       } else {
         NumberType numType = fieldType.getNumberType();
         assert null != numType; // shouldn't make it here for non-numeric types
         switch (numType) {
           case INTEGER: {
-            this.collapseStrategy = new IntIntStrategy(maxDoc, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores, boostedDocsCollector);
+            this.collapseStrategy = new IntIntStrategy(scratch, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores, boostedDocsCollector);
             break;
           }
           case FLOAT: {
-            this.collapseStrategy = new IntFloatStrategy(maxDoc, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores, boostedDocsCollector);
+            this.collapseStrategy = new IntFloatStrategy(scratch, size, collapseField, nullPolicy, groupHeadSelector, this.needsScores, boostedDocsCollector);
             break;
           }
           default: {
@@ -1333,6 +1468,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         leafDelegate.collect(contextDoc);
       }
 
+      collapseStrategy.release();
+
       if(delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).finish();
       }
@@ -1833,6 +1970,17 @@ public class CollapsingQParserPlugin extends QParserPlugin {
   }
 
   
+  /**
+   * An upper bound of the number of docs an ordinal based collector collects: a head for every ordinal, one for the
+   * null group and every boosted doc.  Returns -1 if nulls are expanded, since every null doc is collected then.
+   */
+  private static int maxHeads(int valueCount, int nullPolicy, BoostedDocsCollector boostedDocsCollector) {
+    if (nullPolicy == NullPolicy.EXPAND.getCode()) {
+      return -1;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, (long) valueCount + 1 + boostedDocsCollector.size());
+  }
+
   private static class CollectorFactory {
     /** @see #isNumericCollapsible */
     private final static EnumSet<NumberType> NUMERIC_COLLAPSIBLE_TYPES = EnumSet.of(NumberType.INTEGER,
@@ -1914,6 +2062,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       int maxDoc = searcher.maxDoc();
       int leafCount = searcher.getTopReaderContext().leaves().size();
+      CollapseScratch scratch = searcher.getCollapseScratch();
 
       SolrRequestInfo req = SolrRequestInfo.getRequestInfo();
       boolean collectElevatedDocsWhenCollapsing = req != null && req.getReq().getParams().getBool(COLLECT_ELEVATED_DOCS_WHEN_COLLAPSING, true);
@@ -1924,14 +2073,14 @@ public class CollapsingQParserPlugin extends QParserPlugin {
           if (blockCollapse) {
             return new BlockOrdScoreCollector(collapseField, nullPolicy, boostDocs);
           }
-          return new OrdScoreCollector(maxDoc, leafCount, docValuesProducer, nullPolicy, boostDocs, searcher, collectElevatedDocsWhenCollapsing);
+          return new OrdScoreCollector(maxDoc, leafCount, docValuesProducer, nullPolicy, boostDocs, searcher, scratch, collectElevatedDocsWhenCollapsing);
 
         } else if (isNumericCollapsible(collapseFieldType)) {
           if (blockCollapse) {
             return new BlockIntScoreCollector(collapseField, nullPolicy, boostDocs);
           }
 
-          return new IntScoreCollector(maxDoc, leafCount, nullPolicy, size, collapseField, boostDocs, searcher, collectElevatedDocsWhenCollapsing);
+          return new IntScoreCollector(maxDoc, leafCount, nullPolicy, size, collapseField, boostDocs, searcher, scratch, collectElevatedDocsWhenCollapsing);
 
         } else {
           throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
@@ -1962,6 +2111,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                             boostDocs,
                                             funcQuery,
                                             searcher,
+                                            scratch,
                                             collectElevatedDocsWhenCollapsing);
 
         } else if (isNumericCollapsible(collapseFieldType)) {
@@ -1988,6 +2138,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                             boostDocs,
                                             funcQuery,
                                             searcher,
+                                            scratch,
                                             collectElevatedDocsWhenCollapsing);
         } else {
           throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
@@ -2048,37 +2199,39 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     protected FloatArrayList nullScores;
     protected float nullScore;
     protected IntFloatDynamicMap scores;
-    protected FixedBitSet collapsedSet;
+    protected BitSet collapsedSet;
     protected int nullDoc = -1;
     protected boolean needsScores;
+    protected final CollapseScratch scratch;
     
     private final BoostedDocsCollector boostedDocsCollector;
 
     public abstract void collapse(int ord, int contextDoc, int globalDoc) throws IOException;
     public abstract void setNextReader(LeafReaderContext context) throws IOException;
 
-    public OrdFieldValueStrategy(int maxDoc,
+    public OrdFieldValueStrategy(CollapseScratch scratch,
                                  int valueCount,
                                  int nullPolicy,
                                  boolean needsScores,
                                  BoostedDocsCollector boostedDocsCollector,
                                  SortedDocValues values) {
-      this.ords = new IntIntDynamicMap(valueCount, -1);
+      this.scratch = scratch;
+      this.ords = scratch.getIntIntMap(valueCount, -1);
       this.nullPolicy = nullPolicy;
       this.needsScores = needsScores;
-      this.collapsedSet = new FixedBitSet(maxDoc);
+      this.collapsedSet = scratch.getCollapsedSet(maxHeads(valueCount, nullPolicy, boostedDocsCollector));
 
       this.boostedDocsCollector = boostedDocsCollector;
       
       if (this.needsScores) {
-        this.scores = new IntFloatDynamicMap(valueCount, 0.0f);
+        this.scores = scratch.getIntFloatMap(valueCount, 0.0f);
         if(nullPolicy == NullPolicy.EXPAND.getCode()) {
           nullScores = new FloatArrayList();
         }
       }
     }
 
-    public FixedBitSet getCollapsedSet() {
+    public BitSet getCollapsedSet() {
       // Handle the boosted docs.
       boostedDocsCollector.purgeGroupsThatHaveBoostedDocs(collapsedSet,
                                                           (ord) -> { ords.remove(ord); },
@@ -2108,6 +2261,18 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     public IntFloatDynamicMap getScores() {
       return scores;
     }
+
+    /** Hands the scratch structures back once the group heads have been collected */
+    public void release() {
+      scratch.release(collapsedSet);
+      scratch.release(ords);
+      if (scores != null) {
+        scratch.release(scores);
+      }
+      collapsedSet = null;
+      ords = null;
+      scores = null;
+    }
   }
 
   /*
@@ -2121,28 +2286,35 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private int nullVal;
     private IntIntDynamicMap ordVals;
 
-    public OrdIntStrategy(int maxDoc,
+    public OrdIntStrategy(CollapseScratch scratch,
                           int nullPolicy,
                           int valueCount,
                           GroupHeadSelector groupHeadSelector,
                           boolean needsScores,
                           BoostedDocsCollector boostedDocsCollector,
                           SortedDocValues values) throws IOException {
-      super(maxDoc, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
+      super(scratch, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
       this.field = groupHeadSelector.selectorText;
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxIntComp();
-        this.ordVals = new IntIntDynamicMap(valueCount, Integer.MIN_VALUE);
+        this.ordVals = scratch.getIntIntMap(valueCount, Integer.MIN_VALUE);
       } else {
         comp = new MinIntComp();
-        this.ordVals = new IntIntDynamicMap(valueCount, Integer.MAX_VALUE);
+        this.ordVals = scratch.getIntIntMap(valueCount, Integer.MAX_VALUE);
         this.nullVal = Integer.MAX_VALUE;
       }
     }
 
+    @Override
+    public void release() {
+      super.release();
+      scratch.release(ordVals);
+      ordVals = null;
+    }
+
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxValues = DocValues.getNumeric(context.reader(), this.field);
     }
@@ -2193,29 +2365,36 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private float nullVal;
     private IntFloatDynamicMap ordVals;
 
-    public OrdFloatStrategy(int maxDoc,
+    public OrdFloatStrategy(CollapseScratch scratch,
                             int nullPolicy,
                             int valueCount,
                             GroupHeadSelector groupHeadSelector,
                             boolean needsScores,
                             BoostedDocsCollector boostedDocsCollector,
                             SortedDocValues values) throws IOException {
-      super(maxDoc, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
+      super(scratch, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
       this.field = groupHeadSelector.selectorText;
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE);
+        this.ordVals = scratch.getIntFloatMap(valueCount, -Float.MAX_VALUE);
         this.nullVal = -Float.MAX_VALUE;
       } else {
         comp = new MinFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, Float.MAX_VALUE);
+        this.ordVals = scratch.getIntFloatMap(valueCount, Float.MAX_VALUE);
         this.nullVal = Float.MAX_VALUE;
       }
     }
 
+    @Override
+    public void release() {
+      super.release();
+      scratch.release(ordVals);
+      ordVals = null;
+    }
+
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxValues = DocValues.getNumeric(context.reader(), this.field);
     }
@@ -2269,28 +2448,35 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private long nullVal;
     private IntLongDynamicMap ordVals;
 
-    public OrdLongStrategy(int maxDoc,
+    public OrdLongStrategy(CollapseScratch scratch,
                            int nullPolicy,
                            int valueCount,
                            GroupHeadSelector groupHeadSelector,
                            boolean needsScores,
                            BoostedDocsCollector boostedDocsCollector,
                            SortedDocValues values) throws IOException {
-      super(maxDoc, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
+      super(scratch, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
       this.field = groupHeadSelector.selectorText;
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxLongComp();
-        this.ordVals = new IntLongDynamicMap(valueCount, Long.MIN_VALUE);
+        this.ordVals = scratch.getIntLongMap(valueCount, Long.MIN_VALUE);
       } else {
         this.nullVal = Long.MAX_VALUE;
         comp = new MinLongComp();
-        this.ordVals = new IntLongDynamicMap(valueCount, Long.MAX_VALUE);
+        this.ordVals = scratch.getIntLongMap(valueCount, Long.MAX_VALUE);
       }
     }
 
+    @Override
+    public void release() {
+      super.release();
+      scratch.release(ordVals);
+      ordVals = null;
+    }
+
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxVals = DocValues.getNumeric(context.reader(), this.field);
     }
@@ -2345,7 +2531,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private final CollapseScore collapseScore = new CollapseScore();
     private boolean needsScores4Collapsing;
 
-    public OrdValueSourceStrategy(int maxDoc,
+    public OrdValueSourceStrategy(CollapseScratch scratch,
                                   int nullPolicy,
                                   int valueCount,
                                   GroupHeadSelector groupHeadSelector,
@@ -2355,7 +2541,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                   FunctionQuery funcQuery,
                                   IndexSearcher searcher,
                                   SortedDocValues values) throws IOException {
-      super(maxDoc, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
+      super(scratch, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
       this.needsScores4Collapsing = needsScores4Collapsing;
       this.valueSource = funcQuery.getValueSource();
       this.rcontext = ValueSource.newContext(searcher);
@@ -2364,16 +2550,23 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE);
+        this.ordVals = scratch.getIntFloatMap(valueCount, -Float.MAX_VALUE);
       } else {
         this.nullVal = Float.MAX_VALUE;
         comp = new MinFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, Float.MAX_VALUE);
+        this.ordVals = scratch.getIntFloatMap(valueCount, Float.MAX_VALUE);
       }
 
       collapseScore.setupIfNeeded(groupHeadSelector, rcontext);
     }
 
+    @Override
+    public void release() {
+      super.release();
+      scratch.release(ordVals);
+      ordVals = null;
+    }
+
     @SuppressWarnings({"unchecked"})
     public void setNextReader(LeafReaderContext context) throws IOException {
       functionValues = this.valueSource.getValues(rcontext, context);
@@ -2436,7 +2629,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private float score;
     private boolean needsScores4Collapsing;
 
-    public OrdSortSpecStrategy(int maxDoc,
+    public OrdSortSpecStrategy(CollapseScratch scratch,
                                int nullPolicy,
                                int valueCount,
                                GroupHeadSelector groupHeadSelector,
@@ -2446,7 +2639,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                SortSpec sortSpec,
                                IndexSearcher searcher,
                                SortedDocValues values) throws IOException {
-      super(maxDoc, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
+      super(scratch, valueCount, nullPolicy, needsScores, boostedDocsCollector, values);
       this.needsScores4Collapsing = needsScores4Collapsing;
 
       assert GroupHeadSelectorType.SORT.equals(groupHeadSelector.type);
@@ -2544,19 +2737,20 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     protected FloatArrayList nullScores;
     protected float nullScore;
     protected IntFloatDynamicMap scores;
-    protected FixedBitSet collapsedSet;
+    protected BitSet collapsedSet;
     protected int nullDoc = -1;
     protected boolean needsScores;
     protected String collapseField;
     protected IntIntDynamicMap docs;
     
     private final BoostedDocsCollector boostedDocsCollector;
+    private final CollapseScratch scratch;
 
     public abstract void collapseNullGroup(int contextDoc, int globalDoc) throws IOException;
     public abstract void collapse(int collapseKey, int contextDoc, int globalDoc) throws IOException;
     public abstract void setNextReader(LeafReaderContext context) throws IOException;
 
-    public IntFieldValueStrategy(int maxDoc,
+    public IntFieldValueStrategy(CollapseScratch scratch,
                                  int size,
                                  String collapseField,
                                  int nullPolicy,
@@ -2565,7 +2759,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.collapseField = collapseField;
       this.nullPolicy = nullPolicy;
       this.needsScores = needsScores;
-      this.collapsedSet = new FixedBitSet(maxDoc);
+      this.scratch = scratch;
+      this.collapsedSet = scratch.getCollapsedSet(-1);
       this.cmap = new IntIntHashMap(size);
       this.docs = new IntIntDynamicMap(size, 0);
 
@@ -2579,7 +2774,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
     }
 
-    public FixedBitSet getCollapsedSet() {
+    public BitSet getCollapsedSet() {
 
       // Handle the boosted docs.
       boostedDocsCollector.purgeGroupsThatHaveBoostedDocs(collapsedSet,
@@ -2622,6 +2817,12 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
     public IntIntDynamicMap getDocs() { return docs;}
 
+    /** Hands the scratch structures back once the group heads have been collected */
+    public void release() {
+      scratch.release(collapsedSet);
+      collapsedSet = null;
+    }
+
   }
 
   /*
@@ -2638,7 +2839,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
     private int index=-1;
 
-    public IntIntStrategy(int maxDoc,
+    public IntIntStrategy(CollapseScratch scratch,
                           int size,
                           String collapseField,
                           int nullPolicy,
@@ -2646,7 +2847,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                           boolean needsScores,
                           BoostedDocsCollector boostedDocsCollector) throws IOException {
 
-      super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
+      super(scratch, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
       this.field = groupHeadSelector.selectorText;
       this.testValues = new IntIntDynamicMap(size, 0);
 
@@ -2724,7 +2925,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
     private int index=-1;
 
-    public IntFloatStrategy(int maxDoc,
+    public IntFloatStrategy(CollapseScratch scratch,
                             int size,
                             String collapseField,
                             int nullPolicy,
@@ -2732,7 +2933,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                             boolean needsScores,
                             BoostedDocsCollector boostedDocsCollector) throws IOException {
 
-      super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
+      super(scratch, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
       this.field = groupHeadSelector.selectorText;
       this.testValues = new IntFloatDynamicMap(size, 0.0f);
 
@@ -2818,7 +3019,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private int index=-1;
     private boolean needsScores4Collapsing;
 
-    public IntValueSourceStrategy(int maxDoc,
+    public IntValueSourceStrategy(CollapseScratch scratch,
                                   int size,
                                   String collapseField,
                                   int nullPolicy,
@@ -2829,7 +3030,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                   FunctionQuery funcQuery,
                                   IndexSearcher searcher) throws IOException {
 
-      super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
+      super(scratch, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
 
       this.needsScores4Collapsing = needsScores4Collapsing;
       this.testValues = new IntFloatDynamicMap(size, 0.0f);
@@ -2935,7 +3136,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private int index=-1;
     private boolean needsScores4Collapsing;
 
-    public IntSortSpecStrategy(int maxDoc,
+    public IntSortSpecStrategy(CollapseScratch scratch,
                                int size,
                                String collapseField,
                                int nullPolicy,
@@ -2946,7 +3147,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                SortSpec sortSpec,
                                IndexSearcher searcher) throws IOException {
 
-      super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
+      super(scratch, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
       this.needsScores4Collapsing = needsScores4Collapsing;
 
       assert GroupHeadSelectorType.SORT.equals(groupHeadSelector.type);
@@ -3076,7 +3277,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
           return false;
         }
         @Override
-        public void purgeGroupsThatHaveBoostedDocs(final FixedBitSet collapsedSet,
+        public void purgeGroupsThatHaveBoostedDocs(final BitSet collapsedSet,
                                                    final IntProcedure removeGroupKey,
                                                    final Runnable resetNullGroupHead) {
           return;
@@ -3099,6 +3300,11 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       boostedDocsIdsIter = getMergeBoost();
     }
 
+    /** The number of requested boosts (regardless of wether any have been collected) */
+    public int size() {
+      return sortedGlobalDocIds.length;
+    }
+
     /** True if there are any requested boosts (regardless of wether any have been collected) */
     public boolean hasBoosts() {
       return hasBoosts;
@@ -3139,7 +3345,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
      * Kludgy API neccessary to deal with diff collectors/strategies using diff
      * data structs for tracking collapse keys...
      */
-    public void purgeGroupsThatHaveBoostedDocs(final FixedBitSet collapsedSet,
+    public void purgeGroupsThatHaveBoostedDocs(final BitSet collapsedSet,
                                                final IntProcedure removeGroupKey,
                                                final Runnable resetNullGroupHead) {
       // Add the (collected) boosted docs to the collapsedSet
@@ -66,6 +66,7 @@ import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.schema.StrFieldSource;
 import org.apache.solr.search.grouping.collector.FilterCollector;
+import org.apache.solr.search.grouping.collector.SinglePassGroupingCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -95,6 +96,8 @@ public class Grouping {
   private int groupOffsetDefault;
   private Format defaultFormat;
   private TotalCount defaultTotalCount;
+  private boolean singlePass;
+  private boolean approximateGroupCount;
 
   private int maxDoc;
   private boolean needScores;
@@ -283,6 +286,22 @@ public class Grouping {
     return this;
   }
 
+  /**
+   * Groups by fields in one pass where possible, see {@link SinglePassGroupingCollector}.
+   */
+  public Grouping setSinglePass(boolean singlePass) {
+    this.singlePass = singlePass;
+    return this;
+  }
+
+  /**
+   * Lets the number of groups be estimated when grouping by fields in one pass.
+   */
+  public Grouping setApproximateGroupCount(boolean approximateGroupCount) {
+    this.approximateGroupCount = approximateGroupCount;
+    return this;
+  }
+
   public Grouping setGetGroupedDocSet(boolean getGroupedDocSet) {
     this.getGroupedDocSet = getGroupedDocSet;
     return this;
@@ -706,6 +725,7 @@ public class Grouping {
 
     public String groupBy;
     FirstPassGroupingCollector<BytesRef> firstPass;
+    SinglePassGroupingCollector singlePassCollector;
     TopGroupsCollector<BytesRef> secondPass;
 
     AllGroupsCollector<BytesRef> allGroupsCollector;
@@ -721,6 +741,16 @@ public class Grouping {
 
     @Override
     protected Collector createFirstPassCollector() throws IOException {
+      if (singlePass && canGroupInSinglePass()) {
+        groupSort = groupSort == null ? Sort.RELEVANCE : groupSort;
+        SinglePassGroupingCollector.GroupCount groupCount = totalCount != TotalCount.grouped
+            ? SinglePassGroupingCollector.GroupCount.NONE
+            : approximateGroupCount ? SinglePassGroupingCollector.GroupCount.APPROXIMATE : SinglePassGroupingCollector.GroupCount.EXACT;
+        singlePassCollector = new SinglePassGroupingCollector(groupBy, groupSort, Math.max(actualGroupsToFind, 0),
+            getGroupedDocsToCollect(), needScores, groupCount);
+        return singlePassCollector;
+      }
+
       // Ok we don't want groups, but do want a total count
       if (actualGroupsToFind <= 0) {
         fallBackCollector = new TotalHitCountCollector();
@@ -732,8 +762,40 @@ public class Grouping {
       return firstPass;
     }
 
+    private int getGroupedDocsToCollect() {
+      return Math.max(getMax(groupOffset, docsPerGroup, maxDoc), 1);
+    }
+
+    /**
+     * The groups can be found in one pass if the field is single valued with docValues, groups are sorted by their
+     * top document, and not too many documents are requested.
+     */
+    private boolean canGroupInSinglePass() {
+      SchemaField schemaField = searcher.getSchema().getField(groupBy);
+      return SinglePassGroupingCollector.supports(schemaField.hasDocValues() && !schemaField.multiValued(),
+          groupSort, withinGroupSort)
+          && (long) Math.max(actualGroupsToFind, 0) * getGroupedDocsToCollect() <= SinglePassGroupingCollector.MAX_SLOTS;
+    }
+
     @Override
     protected Collector createSecondPassCollector() throws IOException {
+      if (singlePassCollector != null) {
+        if (singlePassCollector.isComplete()) {
+          return null;
+        }
+        // some top groups may have dropped documents before they became competitive, or their hit counts weren't kept
+        // with an approximate number of groups, so collect them again
+        topGroups = singlePassCollector.getSearchGroups(format == Format.grouped ? offset : 0);
+        if (topGroups == null) {
+          return null;
+        }
+        Sort withinGroupSort = this.withinGroupSort != null ? this.withinGroupSort : Sort.RELEVANCE;
+        secondPass = new TopGroupsCollector<>(new TermGroupSelector(groupBy),
+            topGroups, groupSort, withinGroupSort, getGroupedDocsToCollect(), needScores
+        );
+        return secondPass;
+      }
+
       if (actualGroupsToFind <= 0) {
         allGroupsCollector = new AllGroupsCollector<>(new TermGroupSelector(groupBy));
         return totalCount == TotalCount.grouped ? allGroupsCollector : null;
@@ -751,11 +813,9 @@ public class Grouping {
         }
       }
 
-      int groupedDocsToCollect = getMax(groupOffset, docsPerGroup, maxDoc);
-      groupedDocsToCollect = Math.max(groupedDocsToCollect, 1);
       Sort withinGroupSort = this.withinGroupSort != null ? this.withinGroupSort : Sort.RELEVANCE;
       secondPass = new TopGroupsCollector<>(new TermGroupSelector(groupBy),
-          topGroups, groupSort, withinGroupSort, groupedDocsToCollect, needScores
+          topGroups, groupSort, withinGroupSort, getGroupedDocsToCollect(), needScores
       );
 
       if (totalCount == TotalCount.grouped) {
@@ -778,6 +838,11 @@ public class Grouping {
       if (secondPass != null) {
         result = secondPass.getTopGroups(0);
         populateScoresIfNecessary();
+      } else if (singlePassCollector != null && actualGroupsToFind > 0) {
+        result = singlePassCollector.getTopGroups(format == Format.grouped ? offset : 0);
+        if (result != null) {
+          populateScoresIfNecessary();
+        }
       }
       if (main) {
         mainResult = createSimpleResponse();
@@ -836,6 +901,9 @@ public class Grouping {
 
     @Override
     public int getMatches() {
+      if (singlePassCollector != null) {
+        return singlePassCollector.getTotalHitCount();
+      }
       if (result == null && fallBackCollector == null) {
         return 0;
       }
@@ -845,6 +913,13 @@ public class Grouping {
 
     @Override
     protected Integer getNumberOfGroups() {
+      if (singlePassCollector != null) {
+        try {
+          return singlePassCollector.getGroupCount();
+        } catch (IOException e) {
+          throw new SolrException(ErrorCode.SERVER_ERROR, e);
+        }
+      }
       return allGroupsCollector == null ? null : allGroupsCollector.getGroupCount();
     }
   }
@@ -112,6 +112,20 @@ public class JoinQParserPlugin extends QParserPlugin {
                 (jparams.fromField != null && jparams.fromField.equals(jparams.toField));
       }
     },
+    cachedTerms {
+      @Override
+      Query makeFilter(QParser qparser, JoinQParserPlugin plugin) throws SyntaxError {
+        final JoinParams jParams = parseJoin(qparser);
+        final JoinQuery q = new CachedTermsJoinQuery(jParams.fromField, jParams.toField, jParams.fromCore, jParams.fromQuery);
+        q.fromCoreOpenTime = jParams.fromCoreOpenTime;
+        return q;
+      }
+
+      @Override
+      Query makeJoinDirectFromParams(JoinParams jParams) {
+        return new CachedTermsJoinQuery(jParams.fromField, jParams.toField, null, jParams.fromQuery);
+      }
+    },
     crossCollection {
       @Override
       Query makeFilter(QParser qparser, JoinQParserPlugin plugin) throws SyntaxError {
@@ -210,7 +224,7 @@ public class JoinQParserPlugin extends QParserPlugin {
     };
   }
 
-  private static final EnumSet<Method> JOIN_METHOD_WHITELIST = EnumSet.of(Method.index, Method.topLevelDV, Method.dvWithScore);
+  private static final EnumSet<Method> JOIN_METHOD_WHITELIST = EnumSet.of(Method.index, Method.topLevelDV, Method.dvWithScore, Method.cachedTerms);
   /**
    * A helper method for other plugins to create (non-scoring) JoinQueries wrapped around arbitrary queries against the same core.
    * 
@@ -218,7 +232,7 @@ public class JoinQParserPlugin extends QParserPlugin {
    * @param fromField "left side" field name to use in the join
    * @param toField "right side" field name to use in the join
    * @param method indicates which implementation should be used to process the join.  Currently only 'index',
-   *               'dvWithScore', and 'topLevelDV' are supported.
+   *               'dvWithScore', 'topLevelDV' and 'cachedTerms' are supported.
    */
   public static Query createJoinQuery(Query subQuery, String fromField, String toField, String method) {
     // no method defaults to 'index' for back compatibility
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Caches the documents of the terms of a join's "to" field per segment, so that a join only reads the postings of the
+ * terms it didn't join on before, and otherwise is an OR of cached sets.  That keeps joins cheap whose "from" side
+ * changes a little from request to request, e.g. by user, where caching the whole join in the filterCache doesn't help.
+ * <p>
+ * Sets are kept in the searcher's {@link SegmentCache} for the segment's core, including deleted documents, so they
+ * stay valid when documents are deleted and are carried over to new searchers that still have the segment.  Sets of
+ * frequent terms are kept as bit sets, others as sorted doc ids.
+ * <p>
+ * Only terms with at least {@link #MIN_DOC_FREQ} documents in a segment are cached.  The postings of rarer terms are
+ * about as cheap to read as a cached set, and caching them would add an entry for each of the many rare terms of a
+ * typical join field, e.g. ids.
+ */
+final class JoinTermsCache {
+
+  /** the fewest documents a term needs in a segment to be cached, one block of postings */
+  static final int MIN_DOC_FREQ = 128;
+
+  private JoinTermsCache() {}
+
+  /** Identifies a term of a field */
+  private static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class)
+        + RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+
+    final String field;
+    final BytesRef term;
+
+    Key(String field, BytesRef term) {
+      this.field = field;
+      this.term = term;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return field.equals(other.field) && term.bytesEquals(other.term);
+    }
+
+    @Override
+    public int hashCode() {
+      return field.hashCode() * 31 + term.hashCode();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(field) + RamUsageEstimator.sizeOf(term.bytes);
+    }
+
+    @Override
+    public String toString() {
+      return "joinTerm(" + field + ":" + term.utf8ToString() + ")";
+    }
+  }
+
+  /** The documents of one term in one segment */
+  private static final class TermDocs implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(TermDocs.class);
+
+    final int[] docs; // sorted, or null if bits is used
+    final int numDocs;
+    final FixedBitSet bits;
+
+    TermDocs(int[] docs, int numDocs) {
+      this.docs = docs;
+      this.numDocs = numDocs;
+      this.bits = null;
+    }
+
+    TermDocs(FixedBitSet bits, int numDocs) {
+      this.docs = null;
+      this.numDocs = numDocs;
+      this.bits = bits;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + (bits != null ? bits.ramBytesUsed() : RamUsageEstimator.sizeOf(docs));
+    }
+
+    void addTo(DocIdSetBuilder builder) throws IOException {
+      if (bits != null) {
+        builder.add(new BitSetIterator(bits, numDocs));
+      } else {
+        final DocIdSetBuilder.BulkAdder adder = builder.grow(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+          adder.add(docs[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the documents of the term in the segment to the builder, from the cache if the term is frequent enough.
+   * Deleted documents may be added too.
+   *
+   * @param searcher the searcher whose segment cache to use
+   * @param termsEnum an enum of the field's terms in the segment, used to read postings that aren't cached
+   */
+  static void addTo(SolrIndexSearcher searcher, LeafReader reader, String field, BytesRef term, TermsEnum termsEnum,
+                    DocIdSetBuilder builder) throws IOException {
+    if (!termsEnum.seekExact(term)) {
+      return;
+    }
+    if (termsEnum.docFreq() < MIN_DOC_FREQ) {
+      builder.add(termsEnum.postings(null, PostingsEnum.NONE));
+      return;
+    }
+    final TermDocs termDocs = SegmentCache.computeIfAbsent(searcher, reader.getCoreCacheHelper(),
+        new Key(field, BytesRef.deepCopyOf(term)), () -> readTermDocs(termsEnum, reader.maxDoc()));
+    termDocs.addTo(builder);
+  }
+
+  private static TermDocs readTermDocs(TermsEnum termsEnum, int maxDoc) throws IOException {
+    final int docFreq = termsEnum.docFreq();
+    final PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+    if (docFreq > (maxDoc >>> 5)) {
+      // more than one doc in 32, where a bit set is smaller than the doc ids
+      final FixedBitSet bits = new FixedBitSet(maxDoc);
+      int numDocs = 0;
+      for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+        bits.set(doc);
+        numDocs++;
+      }
+      return new TermDocs(bits, numDocs);
+    }
+    int[] docs = new int[docFreq];
+    int numDocs = 0;
+    for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+      if (numDocs == docs.length) {
+        docs = ArrayUtil.grow(docs, numDocs + 1);
+      }
+      docs[numDocs++] = doc;
+    }
+    return new TermDocs(docs, numDocs);
+  }
+}
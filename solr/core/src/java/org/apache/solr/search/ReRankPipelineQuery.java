@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Rescorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrRequestInfo;
+
+/**
+ * Reranks the top documents in stages, where each stage reranks the top documents of the previous one, up to its own
+ * <code>reRankDocs</code>.  That lets a cheap stage rerank many documents, and an expensive one only the best of them.
+ * Documents that a stage doesn't rerank keep the order of the previous stage below the ones it did.
+ * <p>
+ * Any {@link AbstractReRankQuery} can be a stage, e.g. <code>{!rerank}</code> or <code>{!ltr}</code>.  With debug
+ * enabled, the time and number of documents of every stage are added to the debug output under "rerank".
+ */
+final class ReRankPipelineQuery extends AbstractReRankQuery {
+  private static final Query defaultQuery = new MatchAllDocsQuery();
+
+  private final AbstractReRankQuery[] stages;
+
+  ReRankPipelineQuery(AbstractReRankQuery[] stages) {
+    super(defaultQuery, stages[0].reRankDocs, new PipelineRescorer(stages));
+    this.stages = stages;
+  }
+
+  /** Returns the stages of the query, flattening stages that are pipelines themselves */
+  static AbstractReRankQuery[] flatten(List<AbstractReRankQuery> queries) {
+    final List<AbstractReRankQuery> stages = new ArrayList<>();
+    for (AbstractReRankQuery query : queries) {
+      if (query instanceof ReRankPipelineQuery) {
+        stages.addAll(Arrays.asList(((ReRankPipelineQuery) query).stages));
+      } else {
+        stages.add(query);
+      }
+    }
+    return stages.toArray(new AbstractReRankQuery[0]);
+  }
+
+  @Override
+  public RankQuery wrap(Query _mainQuery) {
+    super.wrap(_mainQuery);
+    for (AbstractReRankQuery stage : stages) {
+      stage.wrap(_mainQuery); // stages like ltr use the main query for features
+    }
+    return this;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * classHash() + mainQuery.hashCode() + Arrays.hashCode(stages);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return sameClassAs(other) &&
+           equalsTo(getClass().cast(other));
+  }
+
+  private boolean equalsTo(ReRankPipelineQuery other) {
+    return mainQuery.equals(other.mainQuery) &&
+           Arrays.equals(stages, other.stages);
+  }
+
+  @Override
+  public String toString(String s) {
+    final StringBuilder sb = new StringBuilder(100);
+    sb.append("{!").append(ReRankQParserPlugin.NAME);
+    sb.append(" mainQuery='").append(mainQuery.toString()).append("' stages=[");
+    for (int i = 0; i < stages.length; i++) {
+      if (i > 0) sb.append(", ");
+      sb.append(stages[i].toString(s));
+    }
+    return sb.append("]}").toString();
+  }
+
+  @Override
+  protected Query rewrite(Query rewrittenMainQuery) throws IOException {
+    // new stages, since wrapping these would change the main query of this (e.g. cached) query
+    final AbstractReRankQuery[] rewrittenStages = new AbstractReRankQuery[stages.length];
+    for (int i = 0; i < stages.length; i++) {
+      rewrittenStages[i] = (AbstractReRankQuery) stages[i].rewrite(rewrittenMainQuery);
+    }
+    return new ReRankPipelineQuery(rewrittenStages).wrap(rewrittenMainQuery);
+  }
+
+  /** Runs the rescorers of the stages one after the other, on fewer documents each time */
+  private static final class PipelineRescorer extends Rescorer {
+    private final AbstractReRankQuery[] stages;
+
+    PipelineRescorer(AbstractReRankQuery[] stages) {
+      this.stages = stages;
+    }
+
+    @Override
+    public TopDocs rescore(IndexSearcher searcher, TopDocs firstPassTopDocs, int topN) throws IOException {
+      final ScoreDoc[] ranked = firstPassTopDocs.scoreDocs.clone();
+      final List<SimpleOrderedMap<Object>> timings = new ArrayList<>(stages.length);
+      int window = ranked.length;
+      for (AbstractReRankQuery stage : stages) {
+        window = Math.min(window, stage.reRankDocs);
+        if (window == 0) {
+          break;
+        }
+        final long start = System.nanoTime();
+        final ScoreDoc[] stageDocs = Arrays.copyOf(ranked, window);
+        final TopDocs rescored = stage.reRankQueryRescorer
+            .rescore(searcher, new TopDocs(firstPassTopDocs.totalHits, stageDocs), window);
+        // the stage's order on top, then the documents it didn't rerank
+        System.arraycopy(rescored.scoreDocs, 0, ranked, 0, rescored.scoreDocs.length);
+        window = rescored.scoreDocs.length;
+
+        final SimpleOrderedMap<Object> timing = new SimpleOrderedMap<>();
+        timing.add("stage", stage.toString());
+        timing.add("reRankDocs", window);
+        timing.add("time", (System.nanoTime() - start) / 1_000_000.0);
+        timings.add(timing);
+      }
+      addDebug(timings);
+
+      return new TopDocs(firstPassTopDocs.totalHits, Arrays.copyOf(ranked, Math.min(topN, ranked.length)));
+    }
+
+    private static void addDebug(List<SimpleOrderedMap<Object>> timings) {
+      final SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+      final ResponseBuilder rb = info == null ? null : info.getResponseBuilder();
+      if (rb != null && rb.isDebug()) {
+        rb.addDebug(timings, "rerank");
+      }
+    }
+
+    /**
+     * Chains the explanations of all stages.  Which stages reranked a document depends on its rank after the previous
+     * ones, which isn't known here, so the explanation says so rather than guessing.
+     */
+    @Override
+    public Explanation explain(IndexSearcher searcher, Explanation firstPassExplanation, int docID) throws IOException {
+      Explanation explanation = firstPassExplanation;
+      for (AbstractReRankQuery stage : stages) {
+        explanation = stage.reRankQueryRescorer.explain(searcher, explanation, docID);
+      }
+      return Explanation.match(explanation.getValue(), "reranked in " + stages.length
+          + " stages, explained as if every stage's reRankDocs included this document", explanation);
+    }
+  }
+}
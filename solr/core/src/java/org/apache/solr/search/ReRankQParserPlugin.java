@@ -17,6 +17,8 @@
 package org.apache.solr.search;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
@@ -31,6 +33,9 @@ import org.apache.commons.lang3.StringUtils;
 *
 *  Syntax: q=*:*&rq={!rerank reRankQuery=$rqq reRankDocs=300 reRankWeight=3}
 *
+*  Stages: q=*:*&rq={!rerank reRankQuery=$rqq reRankDocs=1000 reRankNext=$rq2 reRankNext=$rq3}
+*          &rq2={!ltr model=cheap reRankDocs=200}&rq3={!ltr model=expensive reRankDocs=20}
+*
 */
 
 public class ReRankQParserPlugin extends QParserPlugin {
@@ -46,6 +51,9 @@ public class ReRankQParserPlugin extends QParserPlugin {
   public static final String RERANK_WEIGHT = "reRankWeight";
   public static final double RERANK_WEIGHT_DEFAULT = 2.0d;
 
+  /** rank queries, e.g. <code>{!ltr}</code>, that rerank the top documents of this one in turn; may be repeated */
+  public static final String RERANK_NEXT = "reRankNext";
+
   public QParser createParser(String query, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
     return new ReRankQParser(query, localParams, params, req);
   }
@@ -69,7 +77,23 @@ public class ReRankQParserPlugin extends QParserPlugin {
 
       double reRankWeight = localParams.getDouble(RERANK_WEIGHT, RERANK_WEIGHT_DEFAULT);
 
-      return new ReRankQuery(reRankQuery, reRankDocs, reRankWeight);
+      final ReRankQuery query = new ReRankQuery(reRankQuery, reRankDocs, reRankWeight);
+
+      final String[] nextStages = localParams.getParams(RERANK_NEXT);
+      if (nextStages == null || nextStages.length == 0) {
+        return query;
+      }
+      final List<AbstractReRankQuery> stages = new ArrayList<>(nextStages.length + 1);
+      stages.add(query);
+      for (String nextStage : nextStages) {
+        final Query stage = QParser.getParser(nextStage, req).getQuery();
+        if (!(stage instanceof AbstractReRankQuery)) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+              RERANK_NEXT + " must be a rerank query, e.g. {!rerank} or {!ltr}: " + nextStage);
+        }
+        stages.add((AbstractReRankQuery) stage);
+      }
+      return new ReRankPipelineQuery(ReRankPipelineQuery.flatten(stages));
     }
   }
 
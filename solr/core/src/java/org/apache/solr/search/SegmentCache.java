@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Access to the <code>segmentCache</code> of a {@link SolrIndexSearcher}, which holds data computed for a single
+ * segment (or a single reader), such as the parent bit sets of block joins or the term sets of cachedTerms joins.
+ * <p>
+ * Entries are keyed by the cache key of the reader they were computed for, and a key of the component that computed
+ * them; keys of different components must not be equal to each other.  When a new searcher is opened, its cache is
+ * warmed with the entries of the readers that the new searcher still has, so after a commit only new (or, for
+ * entries of readers including deletions, changed) segments are computed again.  Like the other searcher caches,
+ * it is configured in <code>solrconfig.xml</code>, bounded by <code>maxRamMB</code> or <code>size</code>, and
+ * reports its statistics as metrics.
+ *
+ * @lucene.internal
+ */
+public final class SegmentCache {
+  public static final String NAME = "segmentCache";
+
+  private SegmentCache() {}
+
+  /** Computes a value to cache */
+  @FunctionalInterface
+  public interface Computer<V> {
+    /** @return the value, or null if there is nothing to cache */
+    V compute() throws IOException;
+  }
+
+  /** The key of an entry: the reader it was computed for, and the key of the component */
+  public static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final IndexReader.CacheKey reader;
+    final Object key;
+
+    Key(IndexReader.CacheKey reader, Object key) {
+      this.reader = reader;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return reader == other.reader && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(reader) * 31 + key.hashCode();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOfObject(key, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED);
+    }
+
+    @Override
+    public String toString() {
+      return key.toString();
+    }
+  }
+
+  /**
+   * Returns the value cached for the reader and key, and otherwise computes it and caches it.  Concurrent requests
+   * may compute the same value, which is cheaper than making them wait on each other.  Nothing is cached if the
+   * searcher has no segment cache, or the reader no cache helper.
+   *
+   * @param searcher the searcher whose cache to use, which needn't be the searcher of the reader
+   * @param helper the core cache helper of a segment (to cache data that doesn't depend on deletions) or the
+   *               reader cache helper of a segment or top-level reader; may be null
+   * @param key the key of the component, which is held by the cache
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> V computeIfAbsent(SolrIndexSearcher searcher, IndexReader.CacheHelper helper, Object key,
+                                      Computer<V> computer) throws IOException {
+    final SolrCache<Key, Object> cache = searcher == null ? null : searcher.getSegmentCache();
+    if (cache == null || helper == null) {
+      return computer.compute();
+    }
+    final Key cacheKey = new Key(helper.getKey(), key);
+    V value = (V) cache.get(cacheKey);
+    if (value == null) {
+      value = computer.compute();
+      if (value != null) {
+        cache.put(cacheKey, value);
+      }
+    }
+    return value;
+  }
+
+  /** Warms the segment cache of a new searcher with the entries of the readers that the new searcher still has */
+  static final class Regenerator implements CacheRegenerator {
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache,
+                                  Object oldKey, Object oldVal) {
+      if (hasReader(newSearcher, ((Key) oldKey).reader)) {
+        newCache.put(oldKey, oldVal);
+      }
+      return true;
+    }
+
+    private static boolean hasReader(SolrIndexSearcher searcher, IndexReader.CacheKey key) {
+      for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+        final LeafReader reader = leaf.reader();
+        final IndexReader.CacheHelper coreHelper = reader.getCoreCacheHelper();
+        final IndexReader.CacheHelper readerHelper = reader.getReaderCacheHelper();
+        if ((coreHelper != null && coreHelper.getKey() == key) || (readerHelper != null && readerHelper.getKey() == key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -288,6 +288,16 @@ public class SolrDocumentFetcher {
     return solrReturnFields.getFetchOptimizer(rfoSupplier).getSolrDoc(luceneDocId);
   }
 
+  /**
+   * Returns the docValues fields to return when every requested field can be read from docValues, so that
+   * the stored document need not be loaded at all; or null if stored fields must be read.
+   * The result must not be modified.
+   */
+  public Set<String> getDocValuesOnlyFields(SolrReturnFields solrReturnFields) {
+    RetrieveFieldsOptimizer rfo = solrReturnFields.getFetchOptimizer(() -> new RetrieveFieldsOptimizer(solrReturnFields));
+    return rfo.returnStoredFields() ? null : rfo.getDvFields();
+  }
+
   /** {@link StoredFieldVisitor} which loads the specified fields eagerly (or all if null).
    * If {@link #enableLazyFieldLoading} then the rest get special lazy field entries.  Designated "large"
    * fields will always get a special field entry. */
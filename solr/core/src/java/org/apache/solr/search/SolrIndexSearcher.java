@@ -123,6 +123,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final SolrCache<Query,DocSet> filterCache;
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
   private final SolrCache<String,UnInvertedField> fieldValueCache;
+  private final SolrCache<SegmentCache.Key,Object> segmentCache;
 
   // map of generic caches - not synchronized since it's read-only after the constructor.
   @SuppressWarnings({"rawtypes"})
@@ -294,6 +295,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       fieldValueCache = solrConfig.fieldValueCacheConfig == null ? null
           : solrConfig.fieldValueCacheConfig.newInstance();
       if (fieldValueCache != null) clist.add(fieldValueCache);
+      segmentCache = solrConfig.segmentCacheConfig == null ? null : solrConfig.segmentCacheConfig.newInstance();
+      if (segmentCache != null) clist.add(segmentCache);
       filterCache = solrConfig.filterCacheConfig == null ? null : solrConfig.filterCacheConfig.newInstance();
       if (filterCache != null) clist.add(filterCache);
       queryResultCache = solrConfig.queryResultCacheConfig == null ? null
@@ -320,6 +323,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       this.filterCache = null;
       this.queryResultCache = null;
       this.fieldValueCache = null;
+      this.segmentCache = null;
       this.cacheMap = NO_GENERIC_CACHES;
       this.cacheList = NO_CACHES;
     }
@@ -482,6 +486,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
     core.getInfoRegistry().remove(name);
 
+    final CollapseScratch scratch = collapseScratch;
+    if (scratch != null) {
+      scratch.clear();
+    }
+
     // super.close();
     // can't use super.close() since it just calls reader.close() and that may only be called once
     // per reader (even if incRef() was previously called).
@@ -555,6 +564,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       });
     }
 
+    if (solrConfig.segmentCacheConfig != null && solrConfig.segmentCacheConfig.getRegenerator() == null) {
+      solrConfig.segmentCacheConfig.setRegenerator(new SegmentCache.Regenerator());
+    }
+
     if (solrConfig.filterCacheConfig != null && solrConfig.filterCacheConfig.getRegenerator() == null) {
       solrConfig.filterCacheConfig.setRegenerator(new CacheRegenerator() {
         @Override
@@ -669,6 +682,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return fieldValueCache;
   }
 
+  /** expert: internal API, subject to change; see {@link SegmentCache} */
+  public SolrCache<SegmentCache.Key,Object> getSegmentCache() {
+    return segmentCache;
+  }
+
   /** Returns a weighted sort according to this searcher */
   public Sort weightSort(Sort sort) throws IOException {
     return (sort != null) ? sort.rewrite(this) : null;
@@ -853,6 +871,18 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return getIndexReader().hasDeletions() ? getLiveDocSet().getBits() : null;
   }
 
+  private volatile CollapseScratch collapseScratch;
+
+  /** The reusable scratch structures of the collapse post filter for this searcher.  Never null. */
+  CollapseScratch getCollapseScratch() {
+    CollapseScratch scratch = collapseScratch;
+    if (scratch == null) {
+      // racing requests may each create one, only one of which is kept
+      collapseScratch = scratch = new CollapseScratch(maxDoc());
+    }
+    return scratch;
+  }
+
   /** @lucene.internal */
   public boolean isLiveDocsInstantiated() {
     return liveDocs != null;
@@ -1363,7 +1393,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     // check if we should try and use the filter cache
     boolean useFilterCache = false;
     if ((flags & (GET_SCORES | NO_CHECK_FILTERCACHE)) == 0 && useFilterForSortedQuery && cmd.getSort() != null
-        && filterCache != null) {
+        && filterCache != null && !canTerminateOnIndexSort(cmd)) {
       useFilterCache = true;
       SortField[] sfields = cmd.getSort().getSort();
       for (SortField sf : sfields) {
@@ -1526,13 +1556,26 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       final float[] topscore = new float[] {Float.NEGATIVE_INFINITY};
       final int[] numHits = new int[1];
 
+      // counting can stop once the count may be approximate, like top docs collectors do; not with post filters,
+      // which may collect in finish()
+      final int countThreshold = !needScores && pf.postFilter == null ? cmd.getMinExactCount() : Integer.MAX_VALUE;
+
       Collector collector;
 
       if (!needScores) {
         collector = new SimpleCollector() {
+          @Override
+          protected void doSetNextReader(LeafReaderContext context) {
+            if (numHits[0] > countThreshold) {
+              throw new CollectionTerminatedException();
+            }
+          }
+
           @Override
           public void collect(int doc) {
-            numHits[0]++;
+            if (++numHits[0] > countThreshold) {
+              throw new CollectionTerminatedException();
+            }
           }
 
           @Override
@@ -1572,12 +1615,15 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       maxScore = totalHits > 0 ? topscore[0] : 0.0f;
       // no docs on this page, so cursor doesn't change
       qr.setNextCursorMark(cmd.getCursorMark());
-      hitsRelation = Relation.EQUAL_TO;
+      hitsRelation = totalHits > countThreshold ? Relation.GREATER_THAN_OR_EQUAL_TO : Relation.EQUAL_TO;
     } else {
       final TopDocsCollector<?> topCollector = buildTopDocsCollector(len, cmd);
+      // the max score is taken from the returned docs if the first one has it, or if segments can stop early;
+      // a MaxScoreCollector would visit every match, keeping the top docs collector from skipping any
+      final boolean maxScoreFromTopDocs = isSortedByScore(cmd) || canTerminateOnIndexSort(cmd);
       MaxScoreCollector maxScoreCollector = null;
       Collector collector = topCollector;
-      if ((cmd.getFlags() & GET_SCORES) != 0) {
+      if ((cmd.getFlags() & GET_SCORES) != 0 && !maxScoreFromTopDocs) {
         maxScoreCollector = new MaxScoreCollector();
         collector = MultiCollector.wrap(topCollector, maxScoreCollector);
       }
@@ -1604,6 +1650,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         ids[i] = scoreDoc.doc;
         if (scores != null) scores[i] = scoreDoc.score;
       }
+      if (scores != null && maxScoreCollector == null && nDocsReturned > 0) {
+        maxScore = scores[0];
+        for (float score : scores) maxScore = Math.max(maxScore, score);
+      }
     }
 
     int sliceLen = Math.min(lastDocRequested, nDocsReturned);
@@ -1611,6 +1661,44 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     qr.setDocList(new DocSlice(0, sliceLen, ids, scores, totalHits, maxScore, hitsRelation));
   }
 
+  /**
+   * Returns whether the top docs of the command are in descending score order, so the first one has the max score.
+   * Their collector then skips documents that can't compete by score when hit counts may be approximate.
+   */
+  private static boolean isSortedByScore(QueryCommand cmd) {
+    if (cmd.getQuery() instanceof RankQuery) {
+      return false; // reranked scores
+    }
+    final Sort sort = cmd.getSort();
+    if (sort == null) {
+      return true;
+    }
+    final SortField first = sort.getSort()[0];
+    return first.getType() == SortField.Type.SCORE && !first.getReverse();
+  }
+
+  /**
+   * Returns whether collecting the top docs of the command can stop early in each segment, which is when the hit
+   * count may be approximate (see {@link QueryCommand#getMinExactCount()}), and the sort is a prefix of the index
+   * sort of all segments, including newly flushed ones (see {@link org.apache.lucene.index.IndexWriterConfig#setIndexSort}).
+   * {@link TopFieldCollector} then stops collecting a segment once it has enough hits and counted enough matches,
+   * so the collector chain must not need every match.
+   */
+  private boolean canTerminateOnIndexSort(QueryCommand cmd) throws IOException {
+    if (cmd.getMinExactCount() == Integer.MAX_VALUE || cmd.getSort() == null || cmd.getQuery() instanceof RankQuery
+        || leafContexts.isEmpty()) {
+      return false;
+    }
+    final Sort sort = weightSort(cmd.getSort());
+    for (LeafReaderContext leaf : leafContexts) {
+      final Sort indexSort = leaf.reader().getMetaData().getSort();
+      if (indexSort == null || !EarlyTerminatingSortingCollector.canEarlyTerminate(sort, indexSort)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   // any DocSet returned is for the query only, without any filtering... that way it may
   // be cached if desired.
   private DocSet getDocListAndSetNC(QueryResult qr, QueryCommand cmd) throws IOException {
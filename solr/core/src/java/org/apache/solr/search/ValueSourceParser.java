@@ -58,6 +58,7 @@ import org.apache.solr.search.facet.AvgAgg;
 import org.apache.solr.search.facet.CountAgg;
 import org.apache.solr.search.facet.CountValsAgg;
 import org.apache.solr.search.facet.HLLAgg;
+import org.apache.solr.search.facet.HLLUnionAgg;
 import org.apache.solr.search.facet.MinMaxAgg;
 import org.apache.solr.search.facet.MissingAgg;
 import org.apache.solr.search.facet.PercentileAgg;
@@ -979,6 +980,13 @@ public abstract class ValueSourceParser implements NamedListInitializedPlugin {
       }
     });
 
+    addParser("agg_hllunion", new ValueSourceParser() {
+      @Override
+      public ValueSource parse(FunctionQParser fp) throws SyntaxError {
+        return new HLLUnionAgg(fp.parseArg());
+      }
+    });
+
     addParser("agg_sum", new ValueSourceParser() {
       @Override
       public ValueSource parse(FunctionQParser fp) throws SyntaxError {
@@ -1068,7 +1076,9 @@ public abstract class ValueSourceParser implements NamedListInitializedPlugin {
           throw new SyntaxError("expected percentile(valsource,percent1[,percent2]*)  EXAMPLE:percentile(myfield,50)");
         }
 
-        return new PercentileAgg(vs, percentiles);
+        PercentileAgg agg = new PercentileAgg(vs, percentiles);
+        agg.setOpts(fp);
+        return agg;
       }
     });
     
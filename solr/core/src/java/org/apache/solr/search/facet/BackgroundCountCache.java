@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.search.SegmentCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Caches the number of documents matching a query for every term of a field, such as the background counts of
+ * {@link RelatednessAgg}, whose background query rarely changes between requests.
+ * <p>
+ * Counts are kept in the searcher's {@link SegmentCache}, per segment keyed on the segment including its deletions,
+ * so after a commit only new or changed segments are counted again; and per top-level reader, so repeated requests
+ * against one searcher don't even need to map segment ordinals to global ordinals.  Only queries whose matches in a
+ * segment only depend on that segment may be cached, see {@link org.apache.lucene.search.Weight#isCacheable}.
+ */
+final class BackgroundCountCache {
+
+  private BackgroundCountCache() {}
+
+  /** Counts the documents by ordinal of the reader's terms */
+  @FunctionalInterface
+  interface Counter {
+    /** @return the counts, or null if there are no terms */
+    int[] count() throws IOException;
+  }
+
+  /** The field and query counts are cached for */
+  static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final String field;
+    final Query query;
+
+    Key(String field, Query query) {
+      this.field = field;
+      this.query = query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return field.equals(other.field) && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(field, query);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(field)
+          + RamUsageEstimator.sizeOfObject(query, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED);
+    }
+
+    @Override
+    public String toString() {
+      return "backgroundCounts(" + field + "," + query + ")";
+    }
+  }
+
+  /**
+   * @param searcher the searcher whose segment cache to use
+   * @param reader a segment or top-level reader; if it has no cache helper the counts are computed but not cached
+   * @param counter computes the counts if they are not cached
+   */
+  static int[] getCounts(SolrIndexSearcher searcher, IndexReader reader, Key key, Counter counter) throws IOException {
+    return SegmentCache.computeIfAbsent(searcher, reader.getReaderCacheHelper(), key, counter::count);
+  }
+}
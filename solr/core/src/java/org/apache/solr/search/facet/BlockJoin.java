@@ -18,7 +18,10 @@ package org.apache.solr.search.facet;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.util.BitSet;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocIterator;
@@ -72,4 +75,53 @@ public class BlockJoin {
     return collector.getDocSet();
   }
 
+  /**
+   * Like {@link #toChildren(DocSet, BitDocSet, DocSet, QueryContext)}, but walks the blocks segment by segment using
+   * the per segment parent bit sets of the producer, so the parents don't have to be a top level set.
+   */
+  public static DocSet toChildren(DocSet parentInput, BitSetProducer parentList, DocSet acceptDocs, QueryContext qcontext) throws IOException {
+    DocSetCollector collector = new DocSetCollector(qcontext.searcher().maxDoc());
+    for (LeafReaderContext leaf : qcontext.searcher().getTopReaderContext().leaves()) {
+      DocIdSetIterator parentIter = parentInput.iterator(leaf);
+      if (parentIter == null) continue;
+      BitSet parentBits = parentList.getBitSet(leaf);
+      if (parentBits == null) continue;
+      for (int parentDoc = parentIter.nextDoc(); parentDoc != DocIdSetIterator.NO_MORE_DOCS; parentDoc = parentIter.nextDoc()) {
+        if (!parentBits.get(parentDoc) || parentDoc == 0) {
+          // not a parent, or parent has no children
+          continue;
+        }
+        int prevParent = parentBits.prevSetBit(parentDoc - 1);
+        for (int childDoc = leaf.docBase + prevParent + 1; childDoc < leaf.docBase + parentDoc; childDoc++) {
+          if (acceptDocs != null && !acceptDocs.exists(childDoc)) continue;  // only select live docs
+          collector.collect(childDoc);
+        }
+      }
+    }
+    return collector.getDocSet();
+  }
+
+  /**
+   * Like {@link #toParents(DocSet, BitDocSet, QueryContext)}, but uses the per segment parent bit sets of the producer.
+   */
+  public static DocSet toParents(DocSet childInput, BitSetProducer parentList, QueryContext qcontext) throws IOException {
+    DocSetCollector collector = new DocSetCollector(qcontext.searcher().maxDoc());
+    for (LeafReaderContext leaf : qcontext.searcher().getTopReaderContext().leaves()) {
+      DocIdSetIterator childIter = childInput.iterator(leaf);
+      if (childIter == null) continue;
+      BitSet parentBits = parentList.getBitSet(leaf);
+      if (parentBits == null) continue;
+      for (int childDoc = childIter.nextDoc(); childDoc != DocIdSetIterator.NO_MORE_DOCS; ) {
+        int currentParent = parentBits.nextSetBit(childDoc);
+        if (currentParent == DocIdSetIterator.NO_MORE_DOCS) {
+          break; // no parent left in this segment
+        }
+        collector.collect(leaf.docBase + currentParent);
+        // skip the rest of this block, including the parent itself
+        childDoc = currentParent + 1 < leaf.reader().maxDoc() ? childIter.advance(currentParent + 1) : DocIdSetIterator.NO_MORE_DOCS;
+      }
+    }
+    return collector.getDocSet();
+  }
+
 }
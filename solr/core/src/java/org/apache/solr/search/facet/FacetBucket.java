@@ -31,6 +31,8 @@ public class FacetBucket {
   final int bucketNumber;  // this is just for internal correlation (the first bucket created is bucket 0, the next bucket 1, across all field buckets)
 
   long count;
+  long countError;  // the maximum over-estimation of count, only for approximate counts
+  boolean hasCountError;
   Map<String, FacetMerger> subs;
 
   public FacetBucket(@SuppressWarnings("rawtypes") FacetModule.FacetBucketMerger parent
@@ -82,6 +84,11 @@ public class FacetBucket {
         count += ((Number)val).longValue();
         continue;
       }
+      if ("countError".equals(key)) {
+        countError += ((Number)val).longValue();
+        hasCountError = true;
+        continue;
+      }
       if ("val".equals(key)) {
         // this is taken care of at a higher level...
         continue;
@@ -102,6 +109,9 @@ public class FacetBucket {
       out.add("val", bucketValue);
     }
     out.add("count", count);
+    if (hasCountError) {
+      out.add("countError", countError);
+    }
     if (subs != null) {
       for (Map.Entry<String,FacetMerger> mergerEntry : subs.entrySet()) {
         FacetMerger subMerger = mergerEntry.getValue();
@@ -23,6 +23,7 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QueryContext;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.ParallelTaskRunner;
 
 public class FacetContext {
   // Context info for actually executing a local facet command
@@ -41,6 +42,7 @@ public class FacetContext {
   boolean cache = true;
   int flags;
   FacetDebugInfo debugInfo;
+  ParallelTaskRunner parallel; // null when facets are computed serially
 
   public void setDebugInfo(FacetDebugInfo debugInfo) {
     this.debugInfo = debugInfo;
@@ -106,6 +108,7 @@ public class FacetContext {
     ctx.qcontext = qcontext;
     ctx.req = req;
     ctx.searcher = searcher;
+    ctx.parallel = parallel;
 
     return ctx;
   }
@@ -33,6 +33,7 @@ public class FacetField extends FacetRequestSorted {
   String prefix;
   FacetMethod method;
   int cacheDf;  // 0 means "default", -1 means "never cache"
+  int sketchSize; // number of values tracked by method:approx, 0 means "default"
 
   // experimental - force perSeg collection when using dv method, currently for testing purposes only.
   Boolean perSeg;
@@ -49,6 +50,7 @@ public class FacetField extends FacetRequestSorted {
     DVHASH, // DocValues, collect into hash
     ENUM, // TermsEnum then intersect DocSet (stream-able)
     STREAM, // presently equivalent to ENUM
+    APPROX, // DocValues, approximate top buckets by count from a fixed size sketch
     SMART,
     ;
 
@@ -61,6 +63,7 @@ public class FacetField extends FacetRequestSorted {
         case "enum": return ENUM;
         case "stream": return STREAM; // TODO replace with enum?
         case "smart": return SMART;
+        case "approx": return APPROX;
         default:
           throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown FacetField method " + method);
       }
@@ -86,6 +89,10 @@ public class FacetField extends FacetRequestSorted {
       return new FacetFieldProcessorByArrayDV(fcontext, this, sf);
     }
 
+    if (method == FacetMethod.APPROX) {
+      return new FacetFieldProcessorByApproxDV(fcontext, this, sf);
+    }
+
     NumberType ntype = ft.getNumberType();
     // ensure we can support the requested options for numeric faceting:
     if (ntype != null) {
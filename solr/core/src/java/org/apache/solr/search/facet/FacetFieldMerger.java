@@ -38,6 +38,7 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
   // LinkedHashMap<Object,FacetBucket> buckets = new LinkedHashMap<>();
   // List<FacetBucket> sortedBuckets;
   int numReturnedBuckets; // the number of buckets in the bucket lists returned from all of the shards
+  long[] countErrorBoundPerShard; // method:approx only, the max count of a value the shard did not return
 
 
   public FacetFieldMerger(FacetField freq) {
@@ -81,6 +82,14 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     numReturnedBuckets += bucketList.size();
     mergeBucketList(bucketList , mcontext);
 
+    Object countErrorBound = facetResult.get("countErrorBound");
+    if (countErrorBound != null) {
+      if (countErrorBoundPerShard == null) {
+        countErrorBoundPerShard = new long[mcontext.numShards];
+      }
+      countErrorBoundPerShard[mcontext.shardNum] = ((Number)countErrorBound).longValue();
+    }
+
     if (freq.numBuckets) {
       Object nb = facetResult.get("numBuckets");
       if (nb != null) {
@@ -104,6 +113,8 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
       result.add("numBuckets", ((Number)numBuckets.getMergedResult()).longValue());
     }
 
+    long countErrorBound = addMissingShardCountErrors();
+
     sortBuckets(freq.sort);
 
     long first = freq.offset;
@@ -147,6 +158,14 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
 
 
     result.add("buckets", resultBuckets);
+    if (countErrorBoundPerShard != null) {
+      if (resultBuckets.size() < sortedBuckets.size() && !resultBuckets.isEmpty()) {
+        // buckets that were merged but not returned
+        long lastCount = ((Number) resultBuckets.get(resultBuckets.size() - 1).get("count")).longValue();
+        countErrorBound = Math.max(countErrorBound, lastCount);
+      }
+      result.add("countErrorBound", countErrorBound);
+    }
     if (missingBucket != null) {
       result.add("missing", missingBucket.getMergedBucket());
     }
@@ -158,6 +177,32 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
   }
 
 
+  /**
+   * For approximate counts, a shard that did not return a bucket may still have counted up to its
+   * {@code countErrorBound} for it.  Adds that to both the count and the count error of the bucket, so that
+   * counts remain upper bounds of the true counts.
+   *
+   * @return the bound on the count of a value no shard returned, or 0 if counts are exact
+   */
+  private long addMissingShardCountErrors() {
+    if (countErrorBoundPerShard == null) {
+      return 0;
+    }
+    long sum = 0;
+    for (long shardBound : countErrorBoundPerShard) {
+      sum += shardBound;
+    }
+    for (FacetBucket bucket : buckets.values()) {
+      for (int shard = 0; shard < countErrorBoundPerShard.length; shard++) {
+        if (countErrorBoundPerShard[shard] > 0 && !mcontext.getShardFlag(bucket.bucketNumber, shard)) {
+          bucket.count += countErrorBoundPerShard[shard];
+          bucket.countError += countErrorBoundPerShard[shard];
+        }
+      }
+    }
+    return sum;
+  }
+
   @Override
   public void finish(Context mcontext) {
     // TODO: check refine of subs?
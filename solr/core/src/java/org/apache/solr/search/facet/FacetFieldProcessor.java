@@ -292,15 +292,8 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     }
   }
 
-  /** Processes the collected data to finds the top slots, and composes it in the response NamedList. */
-  SimpleOrderedMap<Object> findTopSlots(final int numSlots, final int slotCardinality,
-                                        @SuppressWarnings("rawtypes") IntFunction<Comparable> bucketValFromSlotNumFunc,
-                                        @SuppressWarnings("rawtypes") Function<Comparable, String> fieldQueryValFunc) throws IOException {
-    assert this.sortAcc != null;
-    long numBuckets = 0;
-
-    final int off = fcontext.isShard() ? 0 : (int) freq.offset;
-
+  /** The number of buckets after the offset that {@link #findTopSlots} collects, including any over-request */
+  long getEffectiveLimit() {
     long effectiveLimit = Integer.MAX_VALUE; // use max-int instead of max-long to avoid overflow
     if (freq.limit >= 0) {
       effectiveLimit = freq.limit;
@@ -318,6 +311,19 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
         effectiveLimit += freq.overrequest;
       }
     }
+    return effectiveLimit;
+  }
+
+  /** Processes the collected data to finds the top slots, and composes it in the response NamedList. */
+  SimpleOrderedMap<Object> findTopSlots(final int numSlots, final int slotCardinality,
+                                        @SuppressWarnings("rawtypes") IntFunction<Comparable> bucketValFromSlotNumFunc,
+                                        @SuppressWarnings("rawtypes") Function<Comparable, String> fieldQueryValFunc) throws IOException {
+    assert this.sortAcc != null;
+    long numBuckets = 0;
+
+    final int off = fcontext.isShard() ? 0 : (int) freq.offset;
+
+    final long effectiveLimit = getEffectiveLimit();
 
     final int sortMul = sort.sortDirection.getMultiplier();
 
@@ -449,6 +455,7 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
 
       bucketList.add(bucket);
     }
+    processDeferredBucketSubs();
 
     res.add("buckets", bucketList);
       
@@ -545,7 +552,7 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
       }
     }
 
-    processSubs(target, filter, subDomain, false, null);
+    processBucketSubs(target, filter, subDomain);
   }
 
   /** 
@@ -778,6 +785,18 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     }
   }
 
+  /**
+   * Lets a {@link SweepableSlotAcc} avoid sweeping a domain whose counts this processor can get otherwise, e.g.
+   * from {@link BackgroundCountCache}.
+   *
+   * @param query the query {@code docs} were computed from, for caching
+   * @param docs the domain to count
+   * @return the counts of {@code docs} by slot, or null if they have to be collected by sweeping
+   */
+  ReadOnlyCountSlotAcc getCachedSweepCounts(Query query, DocSet docs) throws IOException {
+    return null;
+  }
+
   /**
    * Helper method that subclasses can use to indicate they with to use sweeping.
    * If {@link #countAcc} and {@link #collectAcc} support sweeping, then this method will: 
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.LongValues;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSetUtil;
+import org.apache.solr.search.facet.SlotAcc.SlotContext;
+
+/**
+ * Finds the approximate top buckets by count using a fixed size {@link SpaceSavingSketch}, so memory is bounded by
+ * the sketch size rather than by the number of distinct values in the field or the domain.
+ * The sketch is keyed by raw numeric DocValues values, or by term global ordinals.
+ * <p>
+ * Bucket counts are over-estimates; each bucket carries a {@code countError} such that
+ * {@code count - countError <= trueCount <= count}, and the facet carries a {@code countErrorBound}, an upper bound
+ * on the count of any value that was not returned.  Stats and sub-facets of the returned buckets are computed
+ * exactly over the bucket domain.
+ * Limitations:
+ * <ul>
+ *   <li>only sorts by count descending</li>
+ *   <li>doesn't handle prefix, mincount==0, allBuckets, numBuckets or refinement</li>
+ * </ul>
+ */
+class FacetFieldProcessorByApproxDV extends FacetFieldProcessor {
+  static final int DEFAULT_MIN_SKETCH_SIZE = 1024;
+  static final int MAX_SKETCH_SIZE = 1 << 20;
+  /** The default sketch size is this many times the number of buckets needed */
+  static final int SKETCH_SIZE_MULTIPLIER = 64;
+
+  final boolean multiToken;
+  final boolean numeric;
+  FacetRangeProcessor.Calc calc; // numerics only
+  SortedSetDocValues globalOrdValues; // strings only
+  SpaceSavingSketch sketch;
+
+  FacetFieldProcessorByApproxDV(FacetContext fcontext, FacetField freq, SchemaField sf) {
+    super(fcontext, freq, sf);
+    if (!FacetRequest.FacetSort.COUNT_DESC.equals(freq.sort) || freq.prelim_sort != null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "method:approx only supports sort 'count desc' for field " + sf.getName());
+    }
+    if (freq.limit < 0) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "method:approx requires a limit for field " + sf.getName());
+    }
+    if (freq.mincount == 0 || freq.prefix != null || freq.allBuckets || freq.numBuckets) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "method:approx doesn't support mincount=0, prefix, allBuckets or numBuckets for field " + sf.getName());
+    }
+    if (freq.refine != null && freq.refine != FacetRequest.RefineMethod.NONE) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "method:approx doesn't support refine for field " + sf.getName());
+    }
+    multiToken = sf.multiValued() || sf.getType().multiValuedFieldCache();
+    // the same split as FacetField.createFacetProcessor uses between hash (numeric) and ordinal faceting
+    numeric = sf.getType().getNumberType() != null && (!multiToken || (sf.hasDocValues() && sf.getType().isPointField()));
+  }
+
+  /** The number of keys tracked by the sketch; either the {@code sketchSize} option or a multiple of the limit */
+  int getSketchSize() {
+    if (freq.sketchSize > 0) {
+      return Math.min(freq.sketchSize, MAX_SKETCH_SIZE);
+    }
+    long needed = Math.max(1L, freq.offset + getEffectiveLimit());
+    return (int) Math.min(MAX_SKETCH_SIZE, Math.max(DEFAULT_MIN_SKETCH_SIZE, needed * SKETCH_SIZE_MULTIPLIER));
+  }
+
+  @Override
+  public void process() throws IOException {
+    super.process();
+    response = calcFacets();
+    sketch = null;//gc
+  }
+
+  private SimpleOrderedMap<Object> calcFacets() throws IOException {
+    if (numeric) {
+      calc = FacetRangeProcessor.getNumericCalc(sf);
+    } else if (multiToken) {
+      globalOrdValues = FieldUtil.getSortedSetDocValues(fcontext.qcontext, sf, null);
+    } else {
+      globalOrdValues = DocValues.singleton(FieldUtil.getSortedDocValues(fcontext.qcontext, sf, null));
+    }
+
+    sketch = new SpaceSavingSketch(getSketchSize());
+
+    createCollectAcc();
+
+    collectDocs();
+
+    SimpleOrderedMap<Object> res = super.findTopSlots(sketch.size(), sketch.size(),
+        this::bucketValFromSlot, // getBucketValFromSlotNum
+        this::valueObjToString); // getFieldQueryVal
+
+    // any value that wasn't returned has a count of at most the sketch minimum, or the smallest returned count
+    // if not every tracked value was returned
+    @SuppressWarnings("unchecked")
+    List<SimpleOrderedMap<Object>> buckets = (List<SimpleOrderedMap<Object>>) res.get("buckets");
+    long countErrorBound = sketch.minCount();
+    if (buckets.size() < sketch.size()) {
+      long lastCount = buckets.isEmpty() ? Math.max(0, effectiveMincount - 1)
+          : ((Number) buckets.get(buckets.size() - 1).get("count")).longValue();
+      countErrorBound = Math.max(countErrorBound, lastCount);
+    }
+    res.add("countErrorBound", countErrorBound);
+
+    FacetDebugInfo fdebug = fcontext.getDebugInfo();
+    if (fdebug != null) {
+      fdebug.putInfoItem("sketchSize", (long) sketch.capacity());
+      fdebug.putInfoItem("sketchMinCount", sketch.minCount());
+    }
+    return res;
+  }
+
+  @SuppressWarnings({"rawtypes"})
+  private Comparable bucketValFromSlot(int slot) {
+    long key = sketch.key(slot);
+    if (numeric) {
+      return calc.bitsToValue(key);
+    }
+    try {
+      return (Comparable) sf.getType().toObject(sf, globalOrdValues.lookupOrd(key));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private String valueObjToString(Object obj) {
+    if (numeric) {
+      @SuppressWarnings({"rawtypes"})
+      Comparable val = (Comparable) obj;
+      return calc.formatValue(val);
+    }
+    return (obj instanceof Date) ? ((Date)obj).toInstant().toString() : obj.toString();
+  }
+
+  private void createCollectAcc() throws IOException {
+    indexOrderAcc = new SlotAcc(fcontext) {
+      @Override
+      public void collect(int doc, int slot, IntFunction<SlotContext> slotContext) throws IOException {
+      }
+
+      @Override
+      public int compare(int slotA, int slotB) {
+        long k1 = sketch.key(slotA);
+        long k2 = sketch.key(slotB);
+        return numeric ? Long.compare(calc.bitsToSortableBits(k1), calc.bitsToSortableBits(k2)) : Long.compare(k1, k2);
+      }
+
+      @Override
+      public Object getValue(int slotNum) throws IOException {
+        return null;
+      }
+
+      @Override
+      public void reset() {
+      }
+
+      @Override
+      public void resize(Resizer resizer) {
+      }
+    };
+
+    // a virtual count backed by the sketch
+    countAcc = new SlotAcc.CountSlotAcc(fcontext) {
+      @Override
+      public void incrementCount(int slot, long count) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public long getCount(int slot) {
+        return sketch.count(slot);
+      }
+
+      @Override
+      public Object getValue(int slotNum) {
+        return getCount(slotNum);
+      }
+
+      @Override
+      public void setValues(SimpleOrderedMap<Object> bucket, int slotNum) throws IOException {
+        super.setValues(bucket, slotNum);
+        bucket.add("countError", sketch.error(slotNum));
+      }
+
+      @Override
+      public void reset() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void collect(int doc, int slot, IntFunction<SlotContext> slotContext) throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int compare(int slotA, int slotB) {
+        return Long.compare(sketch.count(slotA), sketch.count(slotB));
+      }
+
+      @Override
+      public void resize(Resizer resizer) {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    // we set the countAcc & indexAcc first so generic ones won't be created for us.
+    // Since we sort by count, every stat is deferred and computed over the domain of the returned buckets,
+    // so nothing but the sketch is collected per slot (slots get re-used for different values as keys are evicted).
+    super.createCollectAcc(fcontext.base.size(), sketch.capacity());
+    assert collectAcc == null && allBucketsAcc == null;
+  }
+
+  private void collectDocs() throws IOException {
+    if (!numeric) {
+      final SortedSetDocValues globalDocValues = globalOrdValues;
+      final SortedDocValues globalSingle = DocValues.unwrapSingleton(globalDocValues);
+      DocSetUtil.collectSortedDocSet(fcontext.base, fcontext.searcher.getIndexReader(), new SimpleCollector() {
+        SortedSetDocValues docValues = globalDocValues; // this segment/leaf. NN
+        SortedDocValues singleValues = globalSingle; // this segment/leaf, if single valued
+        LongValues toGlobal = LongValues.IDENTITY; // this segment to global ordinal. NN
+
+        @Override public ScoreMode scoreMode() { return ScoreMode.COMPLETE_NO_SCORES; }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext ctx) throws IOException {
+          if (globalSingle instanceof MultiDocValues.MultiSortedDocValues) {
+            MultiDocValues.MultiSortedDocValues multiDocValues = (MultiDocValues.MultiSortedDocValues) globalSingle;
+            singleValues = multiDocValues.values[ctx.ord];
+            toGlobal = multiDocValues.mapping.getGlobalOrds(ctx.ord);
+          } else if (globalDocValues instanceof MultiDocValues.MultiSortedSetDocValues) {
+            MultiDocValues.MultiSortedSetDocValues multiDocValues = (MultiDocValues.MultiSortedSetDocValues) globalDocValues;
+            docValues = multiDocValues.values[ctx.ord];
+            toGlobal = multiDocValues.mapping.getGlobalOrds(ctx.ord);
+          }
+        }
+
+        @Override
+        public void collect(int segDoc) throws IOException {
+          if (singleValues != null) {
+            if (singleValues.advanceExact(segDoc)) {
+              sketch.add(toGlobal.get(singleValues.ordValue()));
+            }
+          } else if (docValues.advanceExact(segDoc)) {
+            // ords of a document are distinct
+            for (long ord = docValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = docValues.nextOrd()) {
+              sketch.add(toGlobal.get(ord));
+            }
+          }
+        }
+      });
+
+    } else if (sf.multiValued()) {
+      DocSetUtil.collectSortedDocSet(fcontext.base, fcontext.searcher.getIndexReader(), new SimpleCollector() {
+        SortedNumericDocValues values = null; //NN
+
+        @Override public ScoreMode scoreMode() { return ScoreMode.COMPLETE_NO_SCORES; }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext ctx) throws IOException {
+          values = DocValues.getSortedNumeric(ctx.reader(), sf.getName());
+        }
+
+        @Override
+        public void collect(int segDoc) throws IOException {
+          if (values.advanceExact(segDoc)) {
+            long l = values.nextValue(); // This document must have at least one value
+            sketch.add(l);
+            for (int i = 1, count = values.docValueCount(); i < count; i++) {
+              long lnew = values.nextValue();
+              if (lnew != l) { // Skip the value if it's equal to the last one, we don't want to double-count it
+                sketch.add(lnew);
+              }
+              l = lnew;
+            }
+          }
+        }
+      });
+
+    } else {
+      DocSetUtil.collectSortedDocSet(fcontext.base, fcontext.searcher.getIndexReader(), new SimpleCollector() {
+        NumericDocValues values = null; //NN
+
+        @Override public ScoreMode scoreMode() { return ScoreMode.COMPLETE_NO_SCORES; }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext ctx) throws IOException {
+          values = DocValues.getNumeric(ctx.reader(), sf.getName());
+        }
+
+        @Override
+        public void collect(int segDoc) throws IOException {
+          if (values.advanceExact(segDoc)) {
+            sketch.add(values.longValue());
+          }
+        }
+      });
+    }
+  }
+}
@@ -17,8 +17,12 @@
 package org.apache.solr.search.facet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.carrotsearch.hppc.IntHashSet;
 
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
@@ -27,11 +31,17 @@ import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.PriorityQueue;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.facet.SlotAcc.CountSlotAcc;
 import org.apache.solr.search.facet.SlotAcc.SweepCountAccStruct;
 import org.apache.solr.search.facet.SlotAcc.SweepingCountSlotAcc;
@@ -127,6 +137,12 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
 
     final int maxSize = others.size() + 1; // others + base
     final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+
+    if (accumSeg && others.isEmpty() && fcontext.parallel != null && leaves.size() > 1) {
+      collectPerSegParallel(leaves);
+      return;
+    }
+
     final DocIdSetIterator[] subIterators = new DocIdSetIterator[maxSize];
     final CountSlotAcc[] activeCountAccs = new CountSlotAcc[maxSize];
 
@@ -199,6 +215,247 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     Arrays.fill(reuse, null);  // better GC
   }
 
+  /**
+   * Counts every segment into its own segment-local count array, using the threads of the request's
+   * {@link org.apache.solr.util.ParallelTaskRunner}, and then adds them to the global counts. When only the top buckets by count are
+   * needed, {@link #countTopCandidates} may avoid mapping most segment ordinals to global ordinals.
+   */
+  private void collectPerSegParallel(List<LeafReaderContext> leaves) throws IOException {
+    final DocSet domain = fcontext.base;
+    final List<Callable<int[]>> tasks = new ArrayList<>(leaves.size());
+    for (LeafReaderContext leaf : leaves) {
+      tasks.add(() -> countSegment(leaf, domain));
+    }
+    final List<int[]> segCounts = fcontext.parallel.invokeAll(tasks);
+
+    final FacetDebugInfo debugInfo = fcontext.getDebugInfo();
+    if (debugInfo != null) debugInfo.putInfoItem("perSegParallel", true);
+
+    final int needed = topCountsNeeded();
+    if (needed > 0 && countTopCandidates(leaves, segCounts, needed)) {
+      return;
+    }
+
+    for (int subIdx = 0; subIdx < leaves.size(); subIdx++) {
+      final int[] counts = segCounts.get(subIdx);
+      if (counts == null) continue;
+      final LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+      for (int segOrd = 0; segOrd < counts.length; segOrd++) {
+        if (counts[segOrd] > 0) {
+          countAcc.incrementCount(toGlobal == null ? segOrd : (int) toGlobal.get(segOrd), counts[segOrd]);
+        }
+      }
+    }
+  }
+
+  /** @return the segment-local counts of the domain in this segment, or null if the segment has no values */
+  private int[] countSegment(LeafReaderContext leaf, DocSet domain) throws IOException {
+    final DocIdSetIterator disi = domain.iterator(leaf);
+    if (disi == null) {
+      return null;
+    }
+    SortedDocValues singleDv;
+    if (multiValuedField) {
+      final SortedSetDocValues multiDv = leaf.reader().getSortedSetDocValues(sf.getName());
+      if (multiDv == null || multiDv.getValueCount() < 1) {
+        return null;
+      }
+      singleDv = unwrap_singleValued_multiDv ? DocValues.unwrapSingleton(multiDv) : null;
+      if (singleDv == null) {
+        final int[] counts = new int[(int) multiDv.getValueCount()];
+        for (int doc = disi.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = disi.nextDoc()) {
+          if (multiDv.advanceExact(doc)) {
+            for (long segOrd = multiDv.nextOrd(); segOrd != SortedSetDocValues.NO_MORE_ORDS; segOrd = multiDv.nextOrd()) {
+              counts[(int) segOrd]++;
+            }
+          }
+        }
+        return counts;
+      }
+    } else {
+      singleDv = leaf.reader().getSortedDocValues(sf.getName());
+      if (singleDv == null || singleDv.getValueCount() < 1) {
+        return null;
+      }
+    }
+
+    final int[] counts = new int[singleDv.getValueCount()];
+    for (int doc = disi.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = disi.nextDoc()) {
+      if (singleDv.advanceExact(doc)) {
+        counts[singleDv.ordValue()]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * This impl counts {@code docs} per segment, and caches the segment counts as well as their sum by global
+   * ordinal, so that requests with the same query only count segments that changed since.
+   */
+  @Override
+  ReadOnlyCountSlotAcc getCachedSweepCounts(Query query, DocSet docs) throws IOException {
+    if (nTerms <= 0) {
+      return null;
+    }
+    final SolrIndexSearcher searcher = fcontext.searcher;
+    final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+    final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+    for (LeafReaderContext leaf : leaves) {
+      if (!weight.isCacheable(leaf)) {
+        return null;
+      }
+    }
+
+    final BackgroundCountCache.Key cacheKey = new BackgroundCountCache.Key(sf.getName(), query);
+    final int[] counts = BackgroundCountCache.getCounts(searcher, searcher.getIndexReader(), cacheKey, () -> {
+      final int[] globalCounts = new int[(int) si.getValueCount()];
+      for (int subIdx = 0; subIdx < leaves.size(); subIdx++) {
+        final LeafReaderContext leaf = leaves.get(subIdx);
+        final int[] segCounts = BackgroundCountCache.getCounts(searcher, leaf.reader(), cacheKey,
+            () -> countSegment(leaf, docs));
+        if (segCounts == null) continue;
+        final LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+        for (int segOrd = 0; segOrd < segCounts.length; segOrd++) {
+          if (segCounts[segOrd] > 0) {
+            globalCounts[toGlobal == null ? segOrd : (int) toGlobal.get(segOrd)] += segCounts[segOrd];
+          }
+        }
+      }
+      return globalCounts;
+    });
+
+    final FacetDebugInfo debugInfo = fcontext.getDebugInfo();
+    if (debugInfo != null) debugInfo.putInfoItem("cachedSweepCounts", query.toString());
+
+    final int offset = startTermIndex;
+    final int numTermSlots = nTerms;
+    return new ReadOnlyCountSlotAcc() {
+      @Override
+      public long getCount(int slot) {
+        // no counts for the allBuckets slot
+        return slot < numTermSlots ? counts[slot + offset] : 0;
+      }
+
+      @Override
+      public int compare(int slotA, int slotB) {
+        return Long.compare(getCount(slotA), getCount(slotB));
+      }
+
+      @Override
+      public Object getValue(int slotNum) {
+        return getCount(slotNum);
+      }
+    };
+  }
+
+  /**
+   * @return the number of top buckets by count that {@link #findTopSlots} will look at, or -1 if the buckets are
+   * sorted by anything else or all counts are needed (e.g. for numBuckets)
+   */
+  private int topCountsNeeded() {
+    if (sortAcc != countAcc || sort.sortDirection != FacetRequest.SortDirection.desc || resort != null
+        || freq.numBuckets || freq.limit < 0) {
+      return -1;
+    }
+    final long needed = freq.offset + getEffectiveLimit();
+    return needed > 0 && needed < nTerms / 4 ? (int) needed : -1;
+  }
+
+  /**
+   * Finds the top {@code needed} buckets from the top candidates of every segment, and only maps those candidates
+   * to global ordinals. A term that is no candidate of a segment can't have a higher count in that segment than
+   * the lowest candidate there, so the sum of those lowest counts bounds the count of any term that is no candidate
+   * at all. The result is only used if the top buckets are all above that bound, which makes it exact.
+   *
+   * @return true if the counts of the top buckets were set, false if all counts need to be mapped instead
+   */
+  private boolean countTopCandidates(List<LeafReaderContext> leaves, List<int[]> segCounts, int needed) throws IOException {
+    final int perSegment = needed * 2 + 10;
+    final IntHashSet candidates = new IntHashSet();
+    long unseenBound = 0;
+    for (int subIdx = 0; subIdx < leaves.size(); subIdx++) {
+      final int[] counts = segCounts.get(subIdx);
+      if (counts == null) continue;
+      final LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+      final int[] top = topOrds(counts, perSegment);
+      if (top.length == perSegment) {
+        unseenBound += counts[top[top.length - 1]];
+      }
+      for (int segOrd : top) {
+        candidates.add(toGlobal == null ? segOrd : (int) toGlobal.get(segOrd));
+      }
+    }
+
+    if (candidates.size() <= needed) {
+      return false;
+    }
+
+    // exact counts of the candidates, looking up their terms in every segment
+    final int[] ords = candidates.toArray();
+    final long[] exact = new long[ords.length];
+    final BytesRef[] terms = new BytesRef[ords.length];
+    for (int i = 0; i < ords.length; i++) {
+      terms[i] = BytesRef.deepCopyOf(si.lookupOrd(ords[i]));
+    }
+    for (int subIdx = 0; subIdx < leaves.size(); subIdx++) {
+      final int[] counts = segCounts.get(subIdx);
+      if (counts == null) continue;
+      final LeafReaderContext leaf = leaves.get(subIdx);
+      final SortedSetDocValues segDv = multiValuedField
+          ? leaf.reader().getSortedSetDocValues(sf.getName())
+          : DocValues.singleton(leaf.reader().getSortedDocValues(sf.getName()));
+      for (int i = 0; i < ords.length; i++) {
+        final long segOrd = segDv.lookupTerm(terms[i]);
+        if (segOrd >= 0) {
+          exact[i] += counts[(int) segOrd];
+        }
+      }
+    }
+
+    final long[] sorted = exact.clone();
+    Arrays.sort(sorted);
+    final long nth = sorted[sorted.length - needed];
+    final long next = sorted[sorted.length - needed - 1];
+    if (nth <= unseenBound || next < Math.max(1, effectiveMincount)) {
+      // a term that is no candidate could still make it into the top buckets,
+      // or we could not tell findTopSlots whether there are more buckets
+      return false;
+    }
+
+    for (int i = 0; i < ords.length; i++) {
+      countAcc.incrementCount(ords[i], exact[i]);
+    }
+    final FacetDebugInfo debugInfo = fcontext.getDebugInfo();
+    if (debugInfo != null) debugInfo.putInfoItem("topCandidates", (long) ords.length);
+    return true;
+  }
+
+  /** @return the segment ordinals of the (at most) {@code n} highest non-zero counts */
+  private static int[] topOrds(int[] counts, int n) {
+    final PriorityQueue<int[]> queue = new PriorityQueue<>(n) {
+      @Override
+      protected boolean lessThan(int[] a, int[] b) {
+        return a[1] < b[1] || (a[1] == b[1] && a[0] > b[0]);
+      }
+    };
+    int[] spare = null;
+    for (int segOrd = 0; segOrd < counts.length; segOrd++) {
+      final int count = counts[segOrd];
+      if (count == 0 || (queue.size() == n && count <= queue.top()[1])) continue;
+      if (spare == null) spare = new int[2];
+      spare[0] = segOrd;
+      spare[1] = count;
+      spare = queue.insertWithOverflow(spare);
+    }
+    final int[] ords = new int[queue.size()];
+    for (int i = ords.length - 1; i >= 0; i--) {
+      ords[i] = queue.pop()[0];
+    }
+    return ords;
+  }
+
   @Override
   protected BytesRef lookupOrd(int ord) throws IOException {
     return si.lookupOrd(ord);
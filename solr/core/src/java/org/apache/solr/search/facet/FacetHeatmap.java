@@ -27,20 +27,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.spatial.prefix.HeatmapFacetCounter;
 import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
 import org.apache.lucene.spatial.query.SpatialArgs;
 import org.apache.lucene.spatial.query.SpatialOperation;
 import org.apache.lucene.util.Bits;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.schema.AbstractSpatialPrefixTreeFieldType;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.RptWithGeometrySpatialField;
@@ -225,15 +231,23 @@ public class FacetHeatmap extends FacetRequest {
       super.process(); // handles domain changes
 
       //Compute!
-      final HeatmapFacetCounter.Heatmap heatmap;
+      HeatmapFacetCounter.Heatmap heatmap = null;
       try {
-        heatmap = HeatmapFacetCounter.calcFacets(
-            strategy,
-            fcontext.searcher.getTopReaderContext(),
-            getTopAcceptDocs(fcontext.base, fcontext.searcher), // turn DocSet into Bits
-            boundsShape,
-            gridLevel,
-            maxCells);
+        final Bits topAcceptDocs = getTopAcceptDocs(fcontext.base, fcontext.searcher); // turn DocSet into Bits
+        final List<Query> domain = fcontext.cache ? getCacheableDomain(topAcceptDocs) : null;
+        if (domain != null) {
+          heatmap = HeatmapBlockCache.calcFacets(
+              fcontext.searcher, strategy, domain, topAcceptDocs, boundsShape, gridLevel, maxCells);
+        }
+        if (heatmap == null) {
+          heatmap = HeatmapFacetCounter.calcFacets(
+              strategy,
+              fcontext.searcher.getTopReaderContext(),
+              topAcceptDocs,
+              boundsShape,
+              gridLevel,
+              maxCells);
+        }
       } catch (IllegalArgumentException e) {//e.g. too many cells
         throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e.toString(), e);
       }
@@ -256,6 +270,30 @@ public class FacetHeatmap extends FacetRequest {
       // note: we do not call processStats or processSubs as it's not supported yet
     }
 
+    /**
+     * Returns the queries whose matches are the domain, for caching blocks of counts: none for all live docs, or the
+     * main query and filters for the results of the request.  Returns null if the domain can't be cached.
+     */
+    private List<Query> getCacheableDomain(Bits topAcceptDocs) throws IOException {
+      if (topAcceptDocs == null) {
+        return Collections.emptyList();
+      }
+      final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+      final ResponseBuilder rb = requestInfo == null ? null : requestInfo.getResponseBuilder();
+      if (rb == null || rb.getQuery() == null || rb.getResults() == null || fcontext.base != rb.getResults().docSet) {
+        return null; // e.g. a domain change or a sub-facet
+      }
+      if (rb.req.getParams().get(CommonParams.TIME_ALLOWED) != null) {
+        return null; // the results may be partial
+      }
+      final List<Query> domain = new ArrayList<>();
+      domain.add(rb.getQuery());
+      if (rb.getFilters() != null) {
+        domain.addAll(rb.getFilters());
+      }
+      return HeatmapBlockCache.isCacheable(fcontext.searcher, domain) ? domain : null;
+    }
+
     //TODO this is a general utility that should go elsewhere?  DocSetUtil?  Then should DocSetBase.getBits go away?
     private Bits getTopAcceptDocs(DocSet docSet, SolrIndexSearcher searcher) throws IOException {
       if (docSet.size() == searcher.numDocs()) {
@@ -38,6 +38,8 @@ import org.apache.solr.handler.component.ShardRequest;
 import org.apache.solr.handler.component.ShardResponse;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.search.QueryContext;
+import org.apache.solr.update.processor.RollupUpdateProcessorFactory;
+import org.apache.solr.util.ParallelTaskRunner;
 import org.noggit.CharArr;
 import org.noggit.JSONWriter;
 
@@ -47,6 +49,10 @@ public class FacetModule extends SearchComponent {
 
   public static final String COMPONENT_NAME = "facet_module";
 
+  /** The maximum number of additional threads a request may use for its facets, 0 (the default) for serial
+   * execution and a negative value for {@link ParallelTaskRunner#MAX_THREADS} */
+  public static final String THREADS_PARAM = "json.facet.threads";
+
   // Ensure these don't overlap with other PURPOSE flags in ShardRequest
   // The largest current flag in ShardRequest is 0x00002000
   // We'll put our bits in the middle to avoid future ones in ShardRequest and
@@ -101,12 +107,21 @@ public class FacetModule extends SearchComponent {
       facetInfo = (Map<String, Object>) fromJSONString(jfacet);
     }
 
-    // At this point, we know we need to do something.  Create and save the state.
-    rb.setNeedDocSet(true);
-
     // Parse the facet in the prepare phase?
     FacetRequest facetRequest = FacetRequest.parse(rb.req, jsonFacet);
 
+    if (!isShard) {
+      // a rollup of the index may be able to answer it without looking at the documents
+      NamedList<Object> rolledUp = RollupUpdateProcessorFactory.getRolledUpFacets(rb, facetRequest);
+      if (rolledUp != null) {
+        rb.rsp.add("facets", rolledUp);
+        return;
+      }
+    }
+
+    // At this point, we know we need to do something.  Create and save the state.
+    rb.setNeedDocSet(true);
+
     FacetComponentState fcState = new FacetComponentState();
     fcState.rb = rb;
     fcState.isShard = isShard;
@@ -134,6 +149,7 @@ public class FacetModule extends SearchComponent {
     fcontext.searcher = rb.req.getSearcher();
     fcontext.qcontext = QueryContext.newContext(fcontext.searcher);
     fcontext.cache = cache;
+    fcontext.parallel = ParallelTaskRunner.forCore(rb.req.getCore(), rb.req.getParams().getInt(THREADS_PARAM, 0));
     if (isShard) {
       fcontext.flags |= FacetContext.IS_SHARD;
       fcontext.facetInfo = facetState.facetInfo.isEmpty() ? null : (Map<String, Object>) facetState.facetInfo.get(FACET_REFINE);
@@ -24,25 +24,28 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.function.IntFunction;
 
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.join.BitSetProducer;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.schema.SchemaField;
-import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryContext;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.facet.SlotAcc.SlotContext;
+import org.apache.solr.search.join.BlockJoinParentQParser;
 
 /** Base abstraction for a class that computes facets. This is fairly internal to the module. */
 public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
@@ -54,6 +57,7 @@ public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
   LinkedHashMap<String,SlotAcc> accMap;
   SlotAcc[] accs;
   SlotAcc.CountSlotAcc countAcc;
+  private List<Callable<Object>> deferredBucketSubs;
 
   FacetProcessor(FacetContext fcontext, FacetRequestT freq) {
     this.fcontext = fcontext;
@@ -270,7 +274,8 @@ public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
       throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Error parsing block join parent specification: " + parentStr);
     }
 
-    BitDocSet parents = fcontext.searcher.getDocSetBits(parentQuery);
+    // per segment parent bit sets, which survive commits and are shared with block join queries
+    BitSetProducer parents = BlockJoinParentQParser.getCachedBitSetProducer(fcontext.req, parentQuery);
     DocSet input = fcontext.base;
     DocSet result;
 
@@ -443,6 +448,8 @@ public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
   void processSubs(SimpleOrderedMap<Object> response, Query filter, DocSet domain, boolean skip, Map<String,Object> facetInfo) throws IOException {
 
     boolean emptyDomain = domain == null || domain.size() == 0;
+    List<String> keys = null;
+    List<Callable<Object>> tasks = null;
 
     for (Map.Entry<String,FacetRequest> sub : freq.getSubFacets().entrySet()) {
       FacetRequest subRequest = sub.getValue();
@@ -474,12 +481,67 @@ public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
         fcontext.getDebugInfo().addChild(fdebug);
       }
 
-      Object result = subRequest.process(subContext);
+      if (fcontext.parallel == null) {
+        Object result = subRequest.process(subContext);
 
-      response.add( sub.getKey(), result);
+        response.add( sub.getKey(), result);
+      } else {
+        // value sources keep per-request state in the QueryContext, which is not thread safe
+        subContext.qcontext = QueryContext.newContext(fcontext.searcher);
+        if (tasks == null) {
+          keys = new ArrayList<>();
+          tasks = new ArrayList<>();
+        }
+        keys.add(sub.getKey());
+        tasks.add(() -> subRequest.process(subContext));
+      }
+    }
+
+    if (tasks != null) {
+      List<Object> results = fcontext.parallel.invokeAll(tasks);
+      for (int i = 0; i < results.size(); i++) {
+        response.add(keys.get(i), results.get(i));
+      }
     }
   }
 
+  /**
+   * Processes the sub-facets of a bucket like {@link #processSubs}, but when facets may be computed in parallel
+   * this is deferred until {@link #processDeferredBucketSubs()} so that the sub-facets of all buckets run together.
+   * A deferred bucket doesn't keep its domain, which is computed again from the filter and the base domain when its
+   * sub-facets run, so that only the domains of the running tasks are held at a time rather than one per bucket.
+   * Any state of this processor needed for the bucket must be final by the time this is called.
+   *
+   * @param domain the domain of the bucket, or null to compute it from the filter; not used if deferred
+   */
+  void processBucketSubs(SimpleOrderedMap<Object> bucket, Query filter, DocSet domain) throws IOException {
+    if (!defersBucketSubs()) {
+      processSubs(bucket, filter, domain != null ? domain : fcontext.searcher.getDocSet(filter, fcontext.base), false, null);
+      return;
+    }
+    if (deferredBucketSubs == null) {
+      deferredBucketSubs = new ArrayList<>();
+    }
+    deferredBucketSubs.add(() -> {
+      processSubs(bucket, filter, fcontext.searcher.getDocSet(filter, fcontext.base), false, null);
+      return null;
+    });
+  }
+
+  /** @return true if {@link #processBucketSubs} defers the sub-facets of buckets, and doesn't need their domain */
+  boolean defersBucketSubs() {
+    // debug info records sub-facets in the order they are processed
+    return fcontext.parallel != null && fcontext.getDebugInfo() == null;
+  }
+
+  /** Runs the sub-facets deferred by {@link #processBucketSubs} */
+  void processDeferredBucketSubs() throws IOException {
+    if (deferredBucketSubs == null) return;
+    List<Callable<Object>> tasks = deferredBucketSubs;
+    deferredBucketSubs = null;
+    fcontext.parallel.invokeAll(tasks);
+  }
+
   @SuppressWarnings("unused")
   static DocSet getFieldMissing(SolrIndexSearcher searcher, DocSet docs, String fieldName) throws IOException {
     SchemaField sf = searcher.getSchema().getField(fieldName);
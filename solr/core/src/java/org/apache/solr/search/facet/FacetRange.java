@@ -20,6 +20,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.FacetParams.FacetRangeInclude;
 import org.apache.solr.common.params.FacetParams.FacetRangeOther;
 
@@ -33,6 +34,28 @@ public class FacetRange extends FacetRequestSorted {
   boolean hardend = false;
   EnumSet<FacetRangeInclude> include;
   EnumSet<FacetRangeOther> others;
+  FacetRangeMethod method = FacetRangeMethod.DEFAULT_METHOD;
+
+  /** How {@link FacetRangeProcessor} counts the buckets */
+  public enum FacetRangeMethod {
+    FILTER, // a range query per bucket, intersected with the domain
+    DV, // one pass over the docValues of the domain; only gap ranges without sub-facets over single valued numeric fields
+    SMART, // DV when possible, FILTER otherwise
+    ;
+
+    public static FacetRangeMethod fromString(String method) {
+      if (method == null || method.length()==0) return DEFAULT_METHOD;
+      switch (method) {
+        case "filter": return FILTER;
+        case "dv": return DV;
+        case "smart": return SMART;
+        default:
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown FacetRange method " + method);
+      }
+    }
+
+    static FacetRangeMethod DEFAULT_METHOD = SMART; // non-final for tests to vary
+  }
 
   {
     // defaults
@@ -48,6 +48,7 @@ class FacetRangeParser extends FacetParser<FacetRange> {
     facet.gap = getVal(m, "gap", required);
     facet.hardend = getBoolean(m, "hardend", facet.hardend);
     facet.mincount = getLong(m, "mincount", 0);
+    facet.method = FacetRange.FacetRangeMethod.fromString(getString(m, "method", null));
 
     // TODO: refactor list-of-options code
 
@@ -18,6 +18,10 @@
 package org.apache.solr.search.facet;
 
 
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.EnumFieldValue;
@@ -34,6 +38,8 @@ import org.apache.solr.util.DateMathParser;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.IntFunction;
 
 import static org.apache.solr.search.facet.FacetContext.SKIP_FACET;
 
@@ -464,7 +470,8 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
 
     int slotCount = rangeList.size() + otherList.size();
     if (hasSubFacets) {
-      intersections = new DocSet[slotCount];
+      // deferred sub-facets compute the domain of their bucket themselves
+      intersections = defersBucketSubs() ? null : new DocSet[slotCount];
       filters = new Query[slotCount];
     } else {
       intersections = null;
@@ -474,12 +481,16 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
 
     createAccs(fcontext.base.size(), slotCount);
 
-    for (int idx = 0; idx<rangeList.size(); idx++) {
-      rangeStats(rangeList.get(idx), idx, hasSubFacets);
-    }
+    if (canCountByDocValues(hasSubFacets)) {
+      countByDocValues();
+    } else {
+      for (int idx = 0; idx<rangeList.size(); idx++) {
+        rangeStats(rangeList.get(idx), idx, hasSubFacets);
+      }
 
-    for (int idx = 0; idx<otherList.size(); idx++) {
-      rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      for (int idx = 0; idx<otherList.size(); idx++) {
+        rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      }
     }
 
 
@@ -505,6 +516,7 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
       addStats(bucket, rangeList.size() + idx);
       if (hasSubFacets) doSubs(bucket, rangeList.size() + idx);
     }
+    processDeferredBucketSubs();
 
     if (null != actual_end) {
       res.add(FacetRange.ACTUAL_END_JSON_KEY, calc.formatValue(actual_end));
@@ -516,36 +528,272 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
   private Query[] filters;
   private DocSet[] intersections;
   private void rangeStats(Range range, int slot, boolean hasSubFacets) throws IOException {
-    final Query rangeQ;
-    {
-      final Query rangeQuery = sf.getType().getRangeQuery(null, sf, range.low == null ? null : calc.formatValue(range.low), range.high==null ? null : calc.formatValue(range.high), range.includeLower, range.includeUpper);
-      if (fcontext.cache) {
-        rangeQ = rangeQuery;
-      } else if (rangeQuery instanceof ExtendedQuery) {
-        ((ExtendedQuery) rangeQuery).setCache(false);
-        rangeQ = rangeQuery;
-      } else {
-        final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
-        wrappedQuery.setCache(false);
-        rangeQ = wrappedQuery;
-      }
-    }
+    final Query rangeQ = getRangeQuery(range);
     // TODO: specialize count only
     DocSet intersection = fcontext.searcher.getDocSet(rangeQ, fcontext.base);
     if (hasSubFacets) {
       filters[slot] = rangeQ;
-      intersections[slot] = intersection;  // save for later  // TODO: only save if number of slots is small enough?
+      if (intersections != null) intersections[slot] = intersection;  // save for later  // TODO: only save if number of slots is small enough?
     }
     long num = collect(intersection, slot, slotNum -> { return new SlotAcc.SlotContext(rangeQ); });
     countAcc.incrementCount(slot, num); // TODO: roll this into collect()
   }
 
+  private Query getRangeQuery(Range range) {
+    final Query rangeQuery = sf.getType().getRangeQuery(null, sf, range.low == null ? null : calc.formatValue(range.low), range.high==null ? null : calc.formatValue(range.high), range.includeLower, range.includeUpper);
+    if (fcontext.cache) {
+      return rangeQuery;
+    } else if (rangeQuery instanceof ExtendedQuery) {
+      ((ExtendedQuery) rangeQuery).setCache(false);
+      return rangeQuery;
+    } else {
+      final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
+      wrappedQuery.setCache(false);
+      return wrappedQuery;
+    }
+  }
+
+  private Range getRangeForSlot(int slot) {
+    return slot < rangeList.size() ? rangeList.get(slot) : otherList.get(slot - rangeList.size());
+  }
+
+  /**
+   * Whether {@link #countByDocValues} can be used rather than a filter per range: for ranges built from a gap,
+   * without sub-facets (which need the docs of each bucket), over a single valued numeric field with docValues.
+   */
+  private boolean canCountByDocValues(boolean hasSubFacets) {
+    if (freq.method == FacetRange.FacetRangeMethod.FILTER || hasSubFacets || ranges != null || rangeList.isEmpty()) {
+      return false;
+    }
+    final FieldType ft = sf.getType();
+    if (!(ft instanceof TrieField || ft.isPointField()) || ft instanceof AbstractEnumField) {
+      return false;
+    }
+    return ft.getNumberType() != null && sf.hasDocValues() && !sf.multiValued() && !ft.multiValuedFieldCache();
+  }
+
+  /**
+   * Counts every range, including the <code>other</code> ranges, in a single pass over the docValues of the domain,
+   * looking up the ranges of each value in {@link SortableRanges}.  Segments are counted into their own arrays, in
+   * parallel if only counts are needed and the request has a {@link org.apache.solr.util.ParallelTaskRunner}.
+   */
+  private void countByDocValues() throws IOException {
+    final SortableRanges sortableRanges = new SortableRanges(sf.getType().getNumberType(), rangeList, otherList);
+    final DocSet domain = fcontext.base;
+    final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+
+    final FacetDebugInfo debugInfo = fcontext.getDebugInfo();
+    if (debugInfo != null) debugInfo.putInfoItem("rangeMethod", "dv");
+
+    final boolean countOnly = accs.length == 0;
+    final IntFunction<SlotAcc.SlotContext> slotContext = slot -> new SlotAcc.SlotContext(getRangeQuery(getRangeForSlot(slot)));
+    final List<int[]> segCounts;
+    if (countOnly && fcontext.parallel != null && leaves.size() > 1) {
+      final List<Callable<int[]>> tasks = new ArrayList<>(leaves.size());
+      for (LeafReaderContext leaf : leaves) {
+        tasks.add(() -> countSegment(leaf, domain, sortableRanges, null));
+      }
+      segCounts = fcontext.parallel.invokeAll(tasks);
+    } else {
+      segCounts = new ArrayList<>(leaves.size());
+      for (LeafReaderContext leaf : leaves) {
+        segCounts.add(countSegment(leaf, domain, sortableRanges, countOnly ? null : slotContext));
+      }
+    }
+
+    final int slotCount = rangeList.size() + otherList.size();
+    for (int[] counts : segCounts) {
+      if (counts == null) continue;
+      for (int slot = 0; slot < slotCount; slot++) {
+        if (counts[slot] > 0) {
+          countAcc.incrementCount(slot, counts[slot]);
+        }
+      }
+    }
+
+    if (!countOnly) {
+      // like rangeStats, let the accs know about empty ranges too
+      for (int slot = 0; slot < slotCount; slot++) {
+        if (countAcc.getCount(slot) == 0) {
+          collect(DocSet.empty(), slot, slotContext);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param slotContext if not null, every doc is also collected into the accs for each of its ranges
+   * @return the number of docs per range in this segment, or null if the segment has no docs in the domain
+   */
+  private int[] countSegment(LeafReaderContext leaf, DocSet domain, SortableRanges sortableRanges,
+                             IntFunction<SlotAcc.SlotContext> slotContext) throws IOException {
+    final DocIdSetIterator disi = domain.iterator(leaf);
+    if (disi == null) {
+      return null;
+    }
+    if (slotContext != null) {
+      setNextReader(leaf);
+    }
+    final NumericDocValues values = DocValues.getNumeric(leaf.reader(), sf.getName());
+    final int[] counts = new int[sortableRanges.numSlots()];
+    final int[] slots = new int[sortableRanges.maxSlotsPerValue()];
+    for (int doc = disi.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = disi.nextDoc()) {
+      if (!values.advanceExact(doc)) {
+        continue;
+      }
+      final int numSlots = sortableRanges.findSlots(values.longValue(), slots);
+      for (int i = 0; i < numSlots; i++) {
+        counts[slots[i]]++;
+        if (slotContext != null) {
+          collect(doc, slots[i], slotContext);
+        }
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * The ranges of a {@link FacetRangeProcessor} as inclusive bounds on the sortable long form of single valued
+   * numeric docValues, in slot order: the gap ranges first, then the <code>other</code> ranges.
+   * <p>
+   * Gap ranges are consecutive, so their bounds never decrease and a value is in at most two of them (two only if
+   * both ends of the ranges are included).  The last one starting at or before a value is found arithmetically when
+   * the gap is a fixed number of sortable units, i.e. for integer types and dates; the estimate is corrected with a
+   * few steps for gaps of varying size (e.g. <code>+1MONTH</code>), and by a binary search for floating point types.
+   */
+  private static final class SortableRanges {
+    private static final int MAX_STEPS = 4;
+
+    private final NumberType numberType;
+    private final long[] min; // inclusive; min > max if a range can't match anything
+    private final long[] max; // inclusive
+    private final int numGapRanges;
+    private final double avgGap; // NaN if the start of a gap range can't be estimated arithmetically
+
+    @SuppressWarnings({"rawtypes"})
+    SortableRanges(NumberType numberType, List<Range> gapRanges, List<Range> otherRanges) {
+      this.numberType = numberType;
+      this.numGapRanges = gapRanges.size();
+      final int numSlots = numGapRanges + otherRanges.size();
+      this.min = new long[numSlots];
+      this.max = new long[numSlots];
+      for (int slot = 0; slot < numSlots; slot++) {
+        final Range range = slot < numGapRanges ? gapRanges.get(slot) : otherRanges.get(slot - numGapRanges);
+        long lo = Long.MIN_VALUE;
+        long hi = Long.MAX_VALUE;
+        boolean empty = false;
+        if (range.low != null) {
+          lo = toSortableLong(range.low);
+          if (!range.includeLower) {
+            empty = lo == Long.MAX_VALUE;
+            lo++;
+          }
+        }
+        if (range.high != null) {
+          hi = toSortableLong(range.high);
+          if (!range.includeUpper) {
+            empty |= hi == Long.MIN_VALUE;
+            hi--;
+          }
+        }
+        min[slot] = empty ? Long.MAX_VALUE : lo;
+        max[slot] = empty ? Long.MIN_VALUE : hi;
+      }
+      final double gap = numGapRanges < 2 ? 0 : ((double) min[numGapRanges - 1] - min[0]) / (numGapRanges - 1);
+      avgGap = numberType == NumberType.FLOAT || numberType == NumberType.DOUBLE || !(gap > 0) ? Double.NaN : gap;
+    }
+
+    /** The sortable long form of a range bound, as used by {@link #toSortableLong(long)} for docValues */
+    @SuppressWarnings({"rawtypes"})
+    private long toSortableLong(Comparable value) {
+      switch (numberType) {
+        case FLOAT:
+          return NumericUtils.floatToSortableInt(((Number) value).floatValue());
+        case DOUBLE:
+          return NumericUtils.doubleToSortableLong(((Number) value).doubleValue());
+        case DATE:
+          return ((Date) value).getTime();
+        default:
+          return ((Number) value).longValue();
+      }
+    }
+
+    /** The sortable long form of a single valued docValue, which holds the raw bits of floating point values */
+    long toSortableLong(long bits) {
+      switch (numberType) {
+        case FLOAT:
+          return NumericUtils.sortableFloatBits((int) bits);
+        case DOUBLE:
+          return NumericUtils.sortableDoubleBits(bits);
+        default:
+          return bits;
+      }
+    }
+
+    int numSlots() {
+      return min.length;
+    }
+
+    int maxSlotsPerValue() {
+      return 2 + (min.length - numGapRanges);
+    }
+
+    /**
+     * Puts the slots of all ranges that include the docValue {@code bits} in {@code slots}
+     * @return the number of slots
+     */
+    int findSlots(long bits, int[] slots) {
+      final long value = toSortableLong(bits);
+      int numSlots = 0;
+      for (int slot = lastGapRangeStartingAtOrBefore(value); slot >= 0 && max[slot] >= value; slot--) {
+        slots[numSlots++] = slot;
+      }
+      for (int slot = numGapRanges; slot < min.length; slot++) {
+        if (min[slot] <= value && value <= max[slot]) {
+          slots[numSlots++] = slot;
+        }
+      }
+      return numSlots;
+    }
+
+    /** @return the last gap range with a min of at most {@code value}, or -1 if there is none */
+    int lastGapRangeStartingAtOrBefore(long value) {
+      if (numGapRanges == 0 || value < min[0]) {
+        return -1;
+      }
+      int low = 0;
+      int high = numGapRanges - 1;
+      if (!Double.isNaN(avgGap)) {
+        int guess = (int) Math.min(high, ((double) value - min[0]) / avgGap);
+        for (int step = 0; step < MAX_STEPS; step++) {
+          if (min[guess] > value) {
+            guess--;
+          } else if (guess < high && min[guess + 1] <= value) {
+            guess++;
+          } else {
+            return guess;
+          }
+        }
+      }
+      // binary search for the last min <= value; min[low] <= value holds throughout
+      while (low < high) {
+        final int mid = (low + high + 1) >>> 1;
+        if (min[mid] <= value) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   private void doSubs(SimpleOrderedMap bucket, int slot) throws IOException {
     // handle sub-facets for this bucket
-    DocSet subBase = intersections[slot];
+    DocSet subBase = intersections == null ? null : intersections[slot];
     try {
-      processSubs(bucket, filters[slot], subBase, false, null);
+      processBucketSubs(bucket, filters[slot], subBase);
     } finally {
       // subContext.base.decref();  // OFF-HEAP
       // subContext.base = null;  // do not modify context after creation... there may be deferred execution (i.e. streaming)
@@ -17,13 +17,19 @@
 package org.apache.solr.search.facet;
 
 import java.io.IOException;
+import java.util.Date;
 
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.util.Hash;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.NumberType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.util.hll.HLL;
 import org.apache.solr.util.hll.HLLType;
@@ -75,7 +81,46 @@ public class HLLAgg extends StrAggValueSource {
     return new Merger();
   }
 
-  private static class Merger extends FacetModule.FacetSortableMerger {
+  /**
+   * Hashes a value of the field the same way as the accumulator {@link #createSlotAcc} picks for the field, so that
+   * sketches built outside of a search, e.g. by {@link org.apache.solr.update.processor.RollupUpdateProcessorFactory},
+   * can be merged with the sketches of this aggregation.
+   */
+  public static long hash(SchemaField sf, Object value) {
+    final FieldType type = sf.getType();
+    final boolean multiValued = sf.multiValued() || type.multiValuedFieldCache();
+    final NumberType numberType = type.getNumberType();
+    if (numberType != null && (!multiValued || type.isPointField())) {
+      // the long of the (sorted) numeric docValues, see NumericAcc and SortedNumericAcc
+      final Object nativeValue = type.toNativeType(value);
+      final long bits;
+      switch (numberType) {
+        case FLOAT:
+          final float f = ((Number) nativeValue).floatValue();
+          bits = multiValued ? NumericUtils.floatToSortableInt(f) : Float.floatToIntBits(f);
+          break;
+        case DOUBLE:
+          final double d = ((Number) nativeValue).doubleValue();
+          bits = multiValued ? NumericUtils.doubleToSortableLong(d) : Double.doubleToLongBits(d);
+          break;
+        case DATE:
+          bits = ((Date) nativeValue).getTime();
+          break;
+        default:
+          bits = ((Number) nativeValue).longValue();
+      }
+      return Hash.fmix64(bits);
+    }
+    // the indexed term, see UniqueSlotAcc
+    final BytesRefBuilder indexed = new BytesRefBuilder();
+    type.readableToIndexed(value instanceof Date ? ((Date) value).toInstant().toString() : value.toString(), indexed);
+    final BytesRef term = indexed.get();
+    final Hash.LongPair hash = new Hash.LongPair();
+    Hash.murmurhash3_x64_128(term.bytes, term.offset, term.length, 0, hash);
+    return hash.val1;
+  }
+
+  static class Merger extends FacetModule.FacetSortableMerger {
     HLL aggregate = null;
     long answer = -1; // -1 means unset
 
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.Base64;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.util.hll.HLL;
+
+/**
+ * Estimates the number of distinct values from serialized {@link HLL} sketches stored in a field, by taking the
+ * union of the sketches of all documents in a bucket.  This is the query side of
+ * {@link org.apache.solr.update.processor.RollupUpdateProcessorFactory}, which stores a base64 encoded sketch per
+ * rollup document; {@code hllunion(user_hll)} over rollup documents estimates what {@code hll(user)} would over
+ * the raw documents.
+ * <p>
+ * The field must be a string field with docValues.  Shard results use the same representation as {@link HLLAgg},
+ * so they are merged the same way.
+ */
+public class HLLUnionAgg extends StrAggValueSource {
+
+  public HLLUnionAgg(String field) {
+    super("hllunion", field);
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots) throws IOException {
+    SchemaField sf = fcontext.qcontext.searcher().getSchema().getField(getArg());
+    if (!sf.hasDocValues() || sf.getType().getNumberType() != null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          name() + " requires a string field with docValues: " + getArg());
+    }
+    return new UnionAcc(fcontext, sf, numSlots);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger(Object prototype) {
+    return new HLLAgg.Merger();
+  }
+
+  static class UnionAcc extends DocValuesAcc.SortedSetDVAcc {
+    HLL[] sets;
+
+    UnionAcc(FacetContext fcontext, SchemaField sf, int numSlots) throws IOException {
+      super(fcontext, sf, numSlots);
+      sets = new HLL[numSlots];
+    }
+
+    @Override
+    protected void collectValues(int doc, int slot) throws IOException {
+      for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+        BytesRef term = values.lookupOrd(ord);
+        HLL hll;
+        try {
+          hll = HLL.fromBytes(Base64.base64ToByteArray(term.utf8ToString()));
+        } catch (RuntimeException e) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+              "Field " + sf.getName() + " does not hold a serialized HLL in document " + doc, e);
+        }
+        if (sets[slot] == null) {
+          sets[slot] = hll;
+        } else {
+          sets[slot].union(hll);
+        }
+      }
+    }
+
+    private long getCardinality(int slot) {
+      HLL set = sets[slot];
+      return set == null ? 0 : set.cardinality();
+    }
+
+    @Override
+    public Object getValue(int slot) throws IOException {
+      if (fcontext.isShard()) {
+        HLL hll = sets[slot];
+        if (hll == null) return HLLAgg.NO_VALUES;
+        SimpleOrderedMap<Object> map = new SimpleOrderedMap<>();
+        map.add("hll", hll.toBytes());
+        return map;
+      }
+      return getCardinality(slot);
+    }
+
+    @Override
+    public int compare(int slotA, int slotB) {
+      return Long.compare(getCardinality(slotA), getCardinality(slotB));
+    }
+
+    @Override
+    public void reset() {
+      sets = new HLL[sets.length];
+    }
+
+    @Override
+    public void resize(Resizer resizer) {
+      sets = resizer.resize(sets, null);
+    }
+  }
+}
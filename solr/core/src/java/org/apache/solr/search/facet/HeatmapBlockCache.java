@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.spatial.prefix.HeatmapFacetCounter;
+import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.search.PostFilter;
+import org.apache.solr.search.SegmentCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.locationtech.spatial4j.shape.Shape;
+
+/**
+ * Computes heatmaps from per-segment counts of fixed blocks of grid cells, which are kept in the searcher's
+ * {@link SegmentCache}, so that panning a map at the same grid level, or requesting the same tiles again, only counts
+ * the blocks that weren't requested before and the segments that are new since.
+ * <p>
+ * Blocks are {@link #BLOCK_SIZE} cells square and aligned to the world bounds, so any heatmap is covered by a set of
+ * whole blocks.  A block is counted for one segment with {@link HeatmapFacetCounter} on a rectangle slightly inside
+ * the block, which makes it snap to exactly the cells of the block.  Counts are cached per segment including its
+ * deletions, and per domain: all live documents, or the documents matching a list of queries that only depend on the
+ * segment being searched, see {@link #isCacheable}.  Only non-empty cells are kept for sparse blocks.
+ */
+final class HeatmapBlockCache {
+  static final int BLOCK_SIZE = 64;
+
+  private static final IndexReaderContext EMPTY_CONTEXT = new MultiReader().getContext();
+
+  private HeatmapBlockCache() {}
+
+  /** Identifies a block of a field's grid at one level, for one domain */
+  private static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final String strategy;
+    final List<Query> domain;
+    final int gridLevel;
+    final int blockColumn;
+    final int blockRow;
+
+    Key(String strategy, List<Query> domain, int gridLevel, int blockColumn, int blockRow) {
+      this.strategy = strategy;
+      this.domain = domain;
+      this.gridLevel = gridLevel;
+      this.blockColumn = blockColumn;
+      this.blockRow = blockRow;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return gridLevel == other.gridLevel && blockColumn == other.blockColumn && blockRow == other.blockRow
+          && strategy.equals(other.strategy) && domain.equals(other.domain);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(strategy, domain, gridLevel, blockColumn, blockRow);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      // the domain queries are shared by all blocks of a request
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(strategy);
+    }
+
+    @Override
+    public String toString() {
+      return "heatmapBlock(" + strategy + "," + domain + "," + gridLevel + "," + blockColumn + "," + blockRow + ")";
+    }
+  }
+
+  /** The counts of one block in one segment, in the column major order of {@link HeatmapFacetCounter.Heatmap} */
+  private static final class BlockCounts implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BlockCounts.class);
+
+    final int rows;
+    final int[] cells; // the index of every non-empty cell, or null if counts has a count for every cell
+    final int[] counts;
+
+    BlockCounts(int rows, int[] counts) {
+      this.rows = rows;
+      int nonEmpty = 0;
+      for (int count : counts) {
+        if (count != 0) nonEmpty++;
+      }
+      if (nonEmpty * 2 < counts.length) {
+        this.cells = new int[nonEmpty];
+        this.counts = new int[nonEmpty];
+        for (int i = 0, j = 0; i < counts.length; i++) {
+          if (counts[i] != 0) {
+            this.cells[j] = i;
+            this.counts[j++] = counts[i];
+          }
+        }
+      } else {
+        this.cells = null;
+        this.counts = counts;
+      }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(counts) + (cells == null ? 0 : RamUsageEstimator.sizeOf(cells));
+    }
+
+    /** Adds the counts of the block to a heatmap, where the first cell of the block is at the given offsets */
+    void addTo(HeatmapFacetCounter.Heatmap heatmap, int columnOffset, int rowOffset) {
+      for (int i = 0; i < counts.length; i++) {
+        final int cell = cells == null ? i : cells[i];
+        final int column = cell / rows + columnOffset;
+        final int row = cell % rows + rowOffset;
+        if (column >= 0 && column < heatmap.columns && row >= 0 && row < heatmap.rows) {
+          heatmap.counts[column * heatmap.rows + row] += counts[i];
+        }
+      }
+    }
+  }
+
+  /** Thrown when a block doesn't line up with the cells of the heatmap, which shouldn't happen */
+  @SuppressWarnings("serial")
+  private static final class MisalignedBlockException extends Exception {
+    MisalignedBlockException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Whether the documents matching all of the queries can be counted per segment and cached, which is the case if
+   * their matches in a segment only depend on that segment, see {@link Weight#isCacheable}.
+   */
+  static boolean isCacheable(SolrIndexSearcher searcher, List<Query> queries) throws IOException {
+    for (Query query : queries) {
+      if (query instanceof PostFilter) {
+        return false;
+      }
+      final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+      for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+        if (!weight.isCacheable(leaf)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Computes a heatmap from cached blocks.
+   * @param domain the queries the documents to count match, or an empty list for all live documents; they must be
+   *               {@link #isCacheable}
+   * @param topAcceptDocs the documents matching the domain, or null for all live documents
+   * @return the heatmap, or null if it can't be computed from blocks, in which case the caller should compute it
+   * directly
+   * @throws IllegalArgumentException like {@link HeatmapFacetCounter#calcFacets}, e.g. for too many cells
+   */
+  static HeatmapFacetCounter.Heatmap calcFacets(SolrIndexSearcher searcher, PrefixTreeStrategy strategy,
+                                                List<Query> domain, Bits topAcceptDocs, Shape boundsShape,
+                                                int gridLevel, int maxCells) throws IOException {
+    final SpatialContext ctx = strategy.getSpatialContext();
+    if (boundsShape == null) {
+      boundsShape = ctx.getWorldBounds();
+    }
+    if (!(boundsShape instanceof Rectangle) || ((Rectangle) boundsShape).getCrossesDateLine()) {
+      return null; // other shapes leave out some cells of their bounding box, which blocks would count
+    }
+
+    // the size and position of the heatmap only depend on the grid, so computing it without any docs is cheap
+    final HeatmapFacetCounter.Heatmap heatmap =
+        HeatmapFacetCounter.calcFacets(strategy, EMPTY_CONTEXT, null, boundsShape, gridLevel, maxCells);
+    if (heatmap.region.getCrossesDateLine()) {
+      return null;
+    }
+
+    final Rectangle world = ctx.getWorldBounds();
+    final double cellWidth = heatmap.region.getWidth() / heatmap.columns;
+    final double cellHeight = heatmap.region.getHeight() / heatmap.rows;
+    final int worldColumns = (int) Math.round(world.getWidth() / cellWidth);
+    final int worldRows = (int) Math.round(world.getHeight() / cellHeight);
+    final int firstColumn = (int) Math.round((heatmap.region.getMinX() - world.getMinX()) / cellWidth);
+    final int firstRow = (int) Math.round((heatmap.region.getMinY() - world.getMinY()) / cellHeight);
+
+    final String strategyKey = strategy.getFieldName() + ':' + strategy.getGrid();
+    try {
+      for (int blockColumn = firstColumn / BLOCK_SIZE; blockColumn * BLOCK_SIZE < firstColumn + heatmap.columns; blockColumn++) {
+        for (int blockRow = firstRow / BLOCK_SIZE; blockRow * BLOCK_SIZE < firstRow + heatmap.rows; blockRow++) {
+          final Key key = new Key(strategyKey, domain, gridLevel, blockColumn, blockRow);
+          for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+            final BlockCounts block = getBlock(searcher, strategy, leaf, topAcceptDocs, key,
+                world, cellWidth, cellHeight, worldColumns, worldRows);
+            block.addTo(heatmap, blockColumn * BLOCK_SIZE - firstColumn, blockRow * BLOCK_SIZE - firstRow);
+          }
+        }
+      }
+    } catch (MisalignedBlockException e) {
+      return null;
+    }
+    return heatmap;
+  }
+
+  private static BlockCounts getBlock(SolrIndexSearcher searcher, PrefixTreeStrategy strategy, LeafReaderContext leaf,
+                                      Bits topAcceptDocs, Key key, Rectangle world, double cellWidth, double cellHeight,
+                                      int worldColumns, int worldRows) throws IOException, MisalignedBlockException {
+    final BlockCounts block = SegmentCache.computeIfAbsent(searcher, leaf.reader().getReaderCacheHelper(), key, () -> {
+      try {
+        return countBlock(strategy, leaf, topAcceptDocs, key, world, cellWidth, cellHeight, worldColumns, worldRows);
+      } catch (MisalignedBlockException e) {
+        return null; // not cached
+      }
+    });
+    if (block == null) {
+      throw new MisalignedBlockException();
+    }
+    return block;
+  }
+
+  private static BlockCounts countBlock(PrefixTreeStrategy strategy, LeafReaderContext leaf, Bits topAcceptDocs,
+                                        Key key, Rectangle world, double cellWidth, double cellHeight,
+                                        int worldColumns, int worldRows) throws IOException, MisalignedBlockException {
+    final int firstColumn = key.blockColumn * BLOCK_SIZE;
+    final int firstRow = key.blockRow * BLOCK_SIZE;
+    final int columns = Math.min(BLOCK_SIZE, worldColumns - firstColumn);
+    final int rows = Math.min(BLOCK_SIZE, worldRows - firstRow);
+    if (columns <= 0 || rows <= 0) {
+      throw new MisalignedBlockException();
+    }
+    // a quarter cell inside the block, so that the heatmap snaps to the cells of the block without rounding issues
+    final Rectangle blockRect = strategy.getSpatialContext().makeRectangle(
+        world.getMinX() + (firstColumn + 0.25) * cellWidth, world.getMinX() + (firstColumn + columns - 0.25) * cellWidth,
+        world.getMinY() + (firstRow + 0.25) * cellHeight, world.getMinY() + (firstRow + rows - 0.25) * cellHeight);
+    // topAcceptDocs is indexed by top-level doc id, which HeatmapFacetCounter accounts for with the leaf's docBase
+    final HeatmapFacetCounter.Heatmap heatmap =
+        HeatmapFacetCounter.calcFacets(strategy, leaf, topAcceptDocs, blockRect, key.gridLevel, columns * rows);
+    if (heatmap.columns != columns || heatmap.rows != rows
+        || Math.abs(heatmap.region.getMinX() - (world.getMinX() + firstColumn * cellWidth)) > cellWidth / 2
+        || Math.abs(heatmap.region.getMinY() - (world.getMinY() + firstRow * cellHeight)) > cellHeight / 2) {
+      throw new MisalignedBlockException();
+    }
+    return new BlockCounts(rows, heatmap.counts);
+  }
+}
@@ -18,14 +18,12 @@ package org.apache.solr.search.facet;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.function.IntFunction;
 
-import com.tdunning.math.stats.AVLTreeDigest;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
@@ -34,20 +32,38 @@ import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.FunctionQParser;
+import org.apache.solr.search.QParser;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.search.function.FieldNameValueSource;
 
 public class PercentileAgg extends SimpleAggValueSource {
   List<Double> percentiles;
+  PercentileSketch.Spec sketchSpec = PercentileSketch.Spec.DEFAULT;
 
   public PercentileAgg(ValueSource vs, List<Double> percentiles) {
     super("percentile", vs);
     this.percentiles = percentiles;
   }
 
+  /**
+   * Reads the sketch options from the local params: {@code sketch} (tdigest, merging or ddsketch), and
+   * {@code compression} for the t-digest sketches or {@code relativeAccuracy} for ddsketch.
+   */
+  public void setOpts(QParser parser) {
+    SolrParams opts = parser.getLocalParams();
+    if (null != opts) {
+      this.sketchSpec = PercentileSketch.Spec.fromParams(opts);
+    }
+  }
+
+  PercentileSketch newSketch() {
+    return sketchSpec.newSketch();
+  }
+
   @Override
   public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots) throws IOException {
     ValueSource vs = getArg();
@@ -86,12 +102,13 @@ public class PercentileAgg extends SimpleAggValueSource {
   public boolean equals(Object o) {
     if (!(o instanceof PercentileAgg)) return false;
     PercentileAgg other = (PercentileAgg)o;
-    return this.arg.equals(other.arg) && this.percentiles.equals(other.percentiles);
+    return this.arg.equals(other.arg) && this.percentiles.equals(other.percentiles)
+        && this.sketchSpec.equals(other.sketchSpec);
   }
 
   @Override
   public int hashCode() {
-    return super.hashCode() * 31 + percentiles.hashCode();
+    return (super.hashCode() * 31 + percentiles.hashCode()) * 31 + sketchSpec.hashCode();
   }
 
   public static class Parser extends ValueSourceParser {
@@ -111,11 +128,13 @@ public class PercentileAgg extends SimpleAggValueSource {
         throw new SyntaxError("expected percentile(valsource,percent1[,percent2]*)  EXAMPLE:percentile(myfield,50)");
       }
 
-      return new PercentileAgg(vs, percentiles);
+      PercentileAgg agg = new PercentileAgg(vs, percentiles);
+      agg.setOpts(fp);
+      return agg;
     }
   }
 
-  protected Object getValueFromDigest(AVLTreeDigest digest) {
+  protected Object getValueFromDigest(PercentileSketch digest) {
     if (digest == null) {
       return null;
     }
@@ -133,22 +152,21 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class Acc extends SlotAcc.FuncSlotAcc {
-    protected AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    protected PercentileSketch[] digests;
     protected double[] sortvals;
 
     public Acc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new PercentileSketch[numSlots];
     }
 
     public void collect(int doc, int slotNum, IntFunction<SlotContext> slotContext) throws IOException {
       if (!values.exists(doc)) return;
       double val = values.doubleVal(doc);
 
-      AVLTreeDigest digest = digests[slotNum];
+      PercentileSketch digest = digests[slotNum];
       if (digest == null) {
-        digests[slotNum] = digest = new AVLTreeDigest(100);   // TODO: make compression configurable
+        digests[slotNum] = digest = newSketch();
       }
 
       digest.add(val);
@@ -166,7 +184,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       sortvals = new double[ digests.length ];
       double sortp = percentiles.get(0) * 0.01;
       for (int i=0; i<digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+        PercentileSketch digest = digests[i];
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -188,24 +206,15 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      PercentileSketch digest = digests[slot];
       if (digest == null) return null;  // no values for this slot
 
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz+(sz>>1));  // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digest.toBytes();
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      Arrays.fill(digests, null);
       sortvals = null;
     }
 
@@ -216,13 +225,12 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   abstract class BasePercentileDVAcc extends DocValuesAcc {
-    AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    PercentileSketch[] digests;
     double[] sortvals;
 
     public BasePercentileDVAcc(FacetContext fcontext, SchemaField sf, int numSlots) throws IOException {
       super(fcontext, sf);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new PercentileSketch[numSlots];
     }
 
     @Override
@@ -237,7 +245,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       sortvals = new double[ digests.length ];
       double sortp = percentiles.get(0) * 0.01;
       for (int i=0; i<digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+        PercentileSketch digest = digests[i];
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -259,24 +267,15 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      PercentileSketch digest = digests[slot];
       if (digest == null) return null;  // no values for this slot
 
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz+(sz>>1));  // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digest.toBytes();
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      Arrays.fill(digests, null);
       sortvals = null;
     }
 
@@ -295,9 +294,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     protected void collectValues(int doc, int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      PercentileSketch digest = digests[slot];
       if (digest == null) {
-        digests[slot] = digest = new AVLTreeDigest(100);
+        digests[slot] = digest = newSketch();
       }
       for (int i = 0, count = values.docValueCount(); i < count; i++) {
         double val = getDouble(values.nextValue());
@@ -345,9 +344,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     protected void collectValues(int doc, int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      PercentileSketch digest = digests[slot];
       if (digest == null) {
-        digests[slot] = digest = new AVLTreeDigest(100);
+        digests[slot] = digest = newSketch();
       }
       long ord;
       while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
@@ -371,14 +370,13 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class PercentileUnInvertedFieldAcc extends UnInvertedFieldAcc {
-    protected AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    protected PercentileSketch[] digests;
     protected double[] sortvals;
     private int currentSlot;
 
     public PercentileUnInvertedFieldAcc(FacetContext fcontext, SchemaField sf, int numSlots) throws IOException {
       super(fcontext, sf, numSlots);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new PercentileSketch[numSlots];
     }
 
     @Override
@@ -400,7 +398,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       sortvals = new double[ digests.length ];
       double sortp = percentiles.get(0) * 0.01;
       for (int i=0; i<digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+        PercentileSketch digest = digests[i];
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -422,24 +420,15 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
+      PercentileSketch digest = digests[slot];
       if (digest == null) return null;
 
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz+(sz>>1));  // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digest.toBytes();
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      Arrays.fill(digests, null);
       sortvals = null;
     }
 
@@ -450,9 +439,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     public void call(int ord) {
-      AVLTreeDigest digest = digests[currentSlot];
+      PercentileSketch digest = digests[currentSlot];
       if (digest == null) {
-        digests[currentSlot] = digest = new AVLTreeDigest(100);
+        digests[currentSlot] = digest = newSketch();
       }
       try {
         BytesRef term = docToTerm.lookupOrd(ord);
@@ -466,18 +455,18 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class Merger extends FacetModule.FacetSortableMerger {
-    protected AVLTreeDigest digest;
+    protected PercentileSketch digest;
     protected Double sortVal;
 
     @Override
     public void merge(Object facetResult, Context mcontext) {
       byte[] arr = (byte[])facetResult;
       if (arr == null) return; // an explicit null can mean no values in the field
-      AVLTreeDigest subDigest = AVLTreeDigest.fromBytes(ByteBuffer.wrap(arr));
+      PercentileSketch subDigest = sketchSpec.fromBytes(arr);
       if (digest == null) {
         digest = subDigest;
       } else {
-        digest.add(subDigest);
+        digest.merge(subDigest);
       }
     }
 
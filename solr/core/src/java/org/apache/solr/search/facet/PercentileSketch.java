@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+import com.tdunning.math.stats.AVLTreeDigest;
+import com.tdunning.math.stats.Centroid;
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+
+/**
+ * A mergeable quantile sketch used by {@link PercentileAgg}, one per slot.
+ * <p>
+ * Values are kept exactly in a small buffer until there are more than {@link #BUFFER_SIZE} of them, and only then
+ * is the configured sketch allocated.  Under a terms facet most buckets hold few values, so this avoids paying
+ * for a full sketch in every slot.  Quantiles and serialization always go through the configured sketch, so
+ * results don't depend on the buffering.
+ */
+final class PercentileSketch {
+  static final int BUFFER_SIZE = 32;
+
+  /** The kind of sketch to use, chosen with the {@value #SKETCH} option */
+  enum Type {
+    /** t-digest backed by an AVL tree of centroids, the historical default */
+    TDIGEST,
+    /** t-digest that merges buffered values into a fixed array of centroids; faster and smaller */
+    MERGING,
+    /** logarithmic buckets with a bounded relative error, see {@link RelativeErrorSketch} */
+    DDSKETCH;
+
+    static Type fromString(String type) {
+      try {
+        return valueOf(type.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            "Unknown percentile " + SKETCH + ": " + type + ", expected one of " + Arrays.toString(values()));
+      }
+    }
+  }
+
+  static final String SKETCH = "sketch";
+  static final String COMPRESSION = "compression";
+  static final String RELATIVE_ACCURACY = "relativeAccuracy";
+  static final double DEFAULT_COMPRESSION = 100;
+  static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+  /** The sketch type and accuracy of a percentile aggregation; creates and deserializes sketches */
+  static final class Spec {
+    static final Spec DEFAULT = new Spec(Type.TDIGEST, DEFAULT_COMPRESSION);
+
+    final Type type;
+    /** compression for the t-digest types, relative accuracy for {@link Type#DDSKETCH} */
+    final double accuracy;
+
+    Spec(Type type, double accuracy) {
+      this.type = type;
+      this.accuracy = accuracy;
+    }
+
+    static Spec fromParams(SolrParams params) {
+      String typeStr = params.get(SKETCH);
+      Type type = typeStr == null ? DEFAULT.type : Type.fromString(typeStr);
+      if (type == Type.DDSKETCH) {
+        double relativeAccuracy = params.getDouble(RELATIVE_ACCURACY, DEFAULT_RELATIVE_ACCURACY);
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+              RELATIVE_ACCURACY + " must be between 0 and 1 (exclusive), got " + relativeAccuracy);
+        }
+        return new Spec(type, relativeAccuracy);
+      }
+      double compression = params.getDouble(COMPRESSION, DEFAULT_COMPRESSION);
+      if (!(compression >= 10 && compression <= 10000)) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            COMPRESSION + " must be between 10 and 10000, got " + compression);
+      }
+      return new Spec(type, compression);
+    }
+
+    PercentileSketch newSketch() {
+      return new PercentileSketch(this);
+    }
+
+    /** Reads a sketch written by {@link PercentileSketch#toBytes()} with the same spec */
+    PercentileSketch fromBytes(byte[] bytes) {
+      PercentileSketch sketch = new PercentileSketch(this);
+      switch (type) {
+        case TDIGEST:
+          sketch.digest = AVLTreeDigest.fromBytes(ByteBuffer.wrap(bytes));
+          break;
+        case MERGING:
+          sketch.digest = readMergingDigest(bytes);
+          break;
+        case DDSKETCH:
+          sketch.relative = RelativeErrorSketch.fromBytes(bytes);
+          break;
+      }
+      return sketch;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Spec)) return false;
+      Spec other = (Spec) o;
+      return type == other.type && accuracy == other.accuracy;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, accuracy);
+    }
+
+    @Override
+    public String toString() {
+      return type.name().toLowerCase(Locale.ROOT) + "(" + accuracy + ")";
+    }
+  }
+
+  private final Spec spec;
+  private double[] buffer; // values not yet added to a sketch
+  private int numBuffered;
+  private TDigest digest; // t-digest types
+  private RelativeErrorSketch relative; // ddsketch
+
+  private PercentileSketch(Spec spec) {
+    this.spec = spec;
+  }
+
+  void add(double val) {
+    if (digest == null && relative == null) {
+      if (buffer == null) {
+        buffer = new double[4];
+      } else if (numBuffered == buffer.length) {
+        if (numBuffered >= BUFFER_SIZE) {
+          materialize();
+          addToSketch(val);
+          return;
+        }
+        buffer = Arrays.copyOf(buffer, buffer.length << 1);
+      }
+      buffer[numBuffered++] = val;
+      return;
+    }
+    addToSketch(val);
+  }
+
+  private void addToSketch(double val) {
+    if (digest != null) {
+      digest.add(val);
+    } else {
+      relative.add(val);
+    }
+  }
+
+  /** Moves any buffered values into the real sketch, allocating it if needed */
+  private void materialize() {
+    if (digest != null || relative != null) {
+      return;
+    }
+    switch (spec.type) {
+      case TDIGEST:
+        digest = new AVLTreeDigest(spec.accuracy);
+        break;
+      case MERGING:
+        digest = new MergingDigest(spec.accuracy);
+        break;
+      case DDSKETCH:
+        relative = new RelativeErrorSketch(spec.accuracy);
+        break;
+    }
+    for (int i = 0; i < numBuffered; i++) {
+      addToSketch(buffer[i]);
+    }
+    buffer = null;
+    numBuffered = 0;
+  }
+
+  /** @param q the quantile, between 0 and 1 */
+  double quantile(double q) {
+    if (digest == null && relative == null) {
+      // sorting computes a quantile for every slot; don't keep a sketch around for each of them
+      PercentileSketch tmp = new PercentileSketch(spec);
+      tmp.buffer = buffer;
+      tmp.numBuffered = numBuffered;
+      tmp.materialize();
+      return tmp.quantile(q);
+    }
+    return digest != null ? digest.quantile(q) : relative.quantile(q);
+  }
+
+  /** Adds all values of {@code other}, which must have the same spec, to this sketch */
+  void merge(PercentileSketch other) {
+    if (other.digest == null && other.relative == null) {
+      for (int i = 0; i < other.numBuffered; i++) {
+        add(other.buffer[i]);
+      }
+      return;
+    }
+    materialize();
+    if (digest != null) {
+      digest.add(other.digest);
+    } else {
+      relative.merge(other.relative);
+    }
+  }
+
+  /** A compact serialization of this sketch, for merging shard results */
+  byte[] toBytes() {
+    materialize();
+    switch (spec.type) {
+      case TDIGEST:
+        // the same encoding as older versions used for every percentile
+        digest.compress();
+        ByteBuffer buf = ByteBuffer.allocate(digest.byteSize());
+        digest.asSmallBytes(buf);
+        return Arrays.copyOf(buf.array(), buf.position());
+      case MERGING:
+        return writeMergingDigest(digest);
+      default:
+        return relative.toBytes();
+    }
+  }
+
+  private static byte[] writeMergingDigest(TDigest digest) {
+    digest.compress();
+    // compression, centroid count, then the mean and weight of every centroid
+    ByteBuffer buf = ByteBuffer.allocate(8 + 5 + digest.centroids().size() * (8 + 5));
+    buf.putDouble(digest.compression());
+    writeVLong(buf, digest.centroids().size());
+    for (Centroid centroid : digest.centroids()) {
+      buf.putDouble(centroid.mean());
+      writeVLong(buf, centroid.count());
+    }
+    return Arrays.copyOf(buf.array(), buf.position());
+  }
+
+  private static TDigest readMergingDigest(byte[] bytes) {
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    MergingDigest digest = new MergingDigest(buf.getDouble());
+    for (long i = readVLong(buf); i > 0; i--) {
+      double mean = buf.getDouble();
+      digest.add(mean, (int) readVLong(buf));
+    }
+    return digest;
+  }
+
+  /** Writes a non-negative long in 7 bit groups, low order first; at most 10 bytes */
+  static void writeVLong(ByteBuffer buf, long val) {
+    assert val >= 0;
+    while ((val & ~0x7FL) != 0) {
+      buf.put((byte) ((val & 0x7F) | 0x80));
+      val >>>= 7;
+    }
+    buf.put((byte) val);
+  }
+
+  static long readVLong(ByteBuffer buf) {
+    long val = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buf.get();
+      val |= (b & 0x7FL) << shift;
+      if (b >= 0) {
+        return val;
+      }
+    }
+  }
+}
@@ -297,6 +297,7 @@ public class RelatednessAgg extends AggValueSource {
     private final DocSet bgSet;
     private final long fgSize;
     private final long bgSize;
+    private final boolean bgIsAllDocs;
     public SKGSlotAcc(final RelatednessAgg agg, final FacetContext fcontext, final int numSlots,
                       final DocSet fgSet, final DocSet bgSet) throws IOException {
       super(fcontext);
@@ -306,6 +307,7 @@ public class RelatednessAgg extends AggValueSource {
       // cache the set sizes for frequent re-use on every slot
       this.fgSize = fgSet.size();
       this.bgSize = bgSet.size();
+      this.bgIsAllDocs = bgSize == fcontext.searcher.numDocs();
       this.slotvalues = new BucketData[numSlots]; //TODO: avoid initializing array until we know we're not doing sweep collection?
       reset();
     }
@@ -322,7 +324,18 @@ public class RelatednessAgg extends AggValueSource {
         return this;
       } else {
         final ReadOnlyCountSlotAcc fgCount = baseSweepingAcc.add(key + "!fg", fgSet, slotvalues.length);
-        final ReadOnlyCountSlotAcc bgCount = baseSweepingAcc.add(key + "!bg", bgSet, slotvalues.length);
+        // the background rarely changes between requests, so its counts may be cached
+        ReadOnlyCountSlotAcc bgCount = null;
+        if (fcontext.processor instanceof FacetFieldProcessor) {
+          try {
+            bgCount = ((FacetFieldProcessor) fcontext.processor).getCachedSweepCounts(agg.bgQ, bgSet);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        if (null == bgCount) {
+          bgCount = baseSweepingAcc.add(key + "!bg", bgSet, slotvalues.length);
+        }
         SweepSKGSlotAcc readOnlyReplacement = new SweepSKGSlotAcc(agg.min_pop, fcontext, slotvalues.length, fgSize, bgSize, fgCount, bgCount);
         readOnlyReplacement.key = key;
         baseSweepingAcc.registerMapping(this, readOnlyReplacement);
@@ -368,7 +381,8 @@ public class RelatednessAgg extends AggValueSource {
 
       slotVal.incSizes(fgSize, bgSize);
       slotVal.incCounts(fgSet.intersectionSize(slotSet),
-                        bgSet.intersectionSize(slotSet));
+                        // a background of all documents (typically *:*) contains every bucket
+                        bgIsAllDocs ? slotSet.size() : bgSet.intersectionSize(slotSet));
     }
 
     @Override
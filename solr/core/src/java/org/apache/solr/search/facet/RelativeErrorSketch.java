@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A quantile sketch with a bounded relative error, in the style of DDSketch (Masson, Rim and Lee).
+ * Values are counted in logarithmically sized buckets: bucket {@code i} holds the values in
+ * {@code (gamma^(i-1), gamma^i]} where {@code gamma = (1 + a) / (1 - a)}, so any quantile is returned within a
+ * relative error of {@code a} of a value of the requested rank.  Negative values are counted by magnitude in a
+ * second set of buckets.  Sketches with the same accuracy merge exactly by adding bucket counts.
+ * <p>
+ * The number of buckets per sign is limited to {@link #MAX_BUCKETS}; beyond that the buckets of the smallest
+ * magnitudes are collapsed, which only affects the accuracy of quantiles among those values.
+ */
+final class RelativeErrorSketch {
+  static final int MAX_BUCKETS = 2048;
+  /** magnitudes at or below this are counted as zero */
+  static final double MIN_INDEXABLE = 1e-12;
+
+  private final double relativeAccuracy;
+  private final double gamma;
+  private final double logGamma;
+  private final Buckets positive = new Buckets();
+  private final Buckets negative = new Buckets();
+  private long zeroCount;
+  private long count;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  RelativeErrorSketch(double relativeAccuracy) {
+    this.relativeAccuracy = relativeAccuracy;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+  }
+
+  /** Dense counts for a contiguous range of bucket indexes, grown as needed */
+  private static final class Buckets {
+    long[] counts; // null when empty
+    int offset; // the bucket index of counts[0]
+
+    void add(int index, long n) {
+      if (counts == null) {
+        counts = new long[8];
+        offset = index - 4;
+      } else if (index < offset && counts.length == MAX_BUCKETS) {
+        // already collapsing the smallest magnitudes
+        index = offset;
+      } else if (index < offset || index >= offset + counts.length) {
+        grow(index);
+      }
+      counts[Math.max(index, offset) - offset] += n;
+    }
+
+    private void grow(int index) {
+      final int lo = Math.min(offset, index);
+      final int hi = Math.max(offset + counts.length - 1, index);
+      final int span = hi - lo + 1;
+      final int newLength;
+      final int newOffset;
+      if (span > MAX_BUCKETS) {
+        // keep the largest magnitudes, collapse everything below into the lowest kept bucket
+        newLength = MAX_BUCKETS;
+        newOffset = hi - MAX_BUCKETS + 1;
+      } else {
+        // over-allocate in the direction of growth to amortize copying
+        newLength = Math.min(MAX_BUCKETS, Math.max(span, counts.length + (counts.length >> 1)));
+        newOffset = index < offset ? hi - newLength + 1 : lo;
+      }
+      long[] newCounts = new long[newLength];
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          newCounts[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+        }
+      }
+      counts = newCounts;
+      offset = newOffset;
+    }
+  }
+
+  private int index(double magnitude) {
+    return (int) Math.ceil(Math.log(magnitude) / logGamma);
+  }
+
+  /** A value of bucket {@code index} within the relative accuracy of every value in the bucket */
+  private double value(int index) {
+    return 2 * Math.pow(gamma, index) / (gamma + 1);
+  }
+
+  void add(double val) {
+    add(val, 1);
+  }
+
+  private void add(double val, long n) {
+    if (val > MIN_INDEXABLE) {
+      positive.add(index(val), n);
+    } else if (val < -MIN_INDEXABLE) {
+      negative.add(index(-val), n);
+    } else {
+      zeroCount += n;
+    }
+    count += n;
+    min = Math.min(min, val);
+    max = Math.max(max, val);
+  }
+
+  /** @param q the quantile, between 0 and 1 */
+  double quantile(double q) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (q <= 0) {
+      return min;
+    }
+    if (q >= 1) {
+      return max;
+    }
+    long rank = (long) (q * (count - 1));
+    double val;
+    long seen = 0;
+    search: {
+      if (negative.counts != null) {
+        // the most negative values first
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+          seen += negative.counts[i];
+          if (seen > rank) {
+            val = -value(negative.offset + i);
+            break search;
+          }
+        }
+      }
+      seen += zeroCount;
+      if (seen > rank) {
+        val = 0;
+        break search;
+      }
+      val = max;
+      if (positive.counts != null) {
+        for (int i = 0; i < positive.counts.length; i++) {
+          seen += positive.counts[i];
+          if (seen > rank) {
+            val = value(positive.offset + i);
+            break search;
+          }
+        }
+      }
+    }
+    // the bucket value may lie slightly outside of the values seen
+    return Math.max(min, Math.min(max, val));
+  }
+
+  /** Adds the counts of {@code other}, which must have the same relative accuracy */
+  void merge(RelativeErrorSketch other) {
+    assert relativeAccuracy == other.relativeAccuracy;
+    if (other.count == 0) {
+      return;
+    }
+    mergeBuckets(positive, other.positive);
+    mergeBuckets(negative, other.negative);
+    zeroCount += other.zeroCount;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  private static void mergeBuckets(Buckets target, Buckets source) {
+    if (source.counts == null) {
+      return;
+    }
+    // highest index first, so that if the range has to be collapsed the largest magnitudes are kept
+    for (int i = source.counts.length - 1; i >= 0; i--) {
+      if (source.counts[i] != 0) {
+        target.add(source.offset + i, source.counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Serializes the sketch: relative accuracy, count, min, max and zero count, then for positive and negative
+   * buckets the offset, the number of buckets and the count of each bucket.  Counts are variable length encoded.
+   */
+  byte[] toBytes() {
+    int numBuckets = (positive.counts == null ? 0 : positive.counts.length)
+        + (negative.counts == null ? 0 : negative.counts.length);
+    int maxSize = 8 + 10 + 8 + 8 + 10 + 2 * (4 + 5) + 10 * numBuckets;
+    ByteBuffer buf = ByteBuffer.allocate(maxSize);
+    buf.putDouble(relativeAccuracy);
+    PercentileSketch.writeVLong(buf, count);
+    buf.putDouble(min);
+    buf.putDouble(max);
+    PercentileSketch.writeVLong(buf, zeroCount);
+    writeBuckets(buf, positive);
+    writeBuckets(buf, negative);
+    return Arrays.copyOf(buf.array(), buf.position());
+  }
+
+  private static void writeBuckets(ByteBuffer buf, Buckets buckets) {
+    if (buckets.counts == null) {
+      buf.putInt(0);
+      PercentileSketch.writeVLong(buf, 0);
+      return;
+    }
+    // trim empty buckets at both ends
+    int from = 0, to = buckets.counts.length;
+    while (from < to && buckets.counts[from] == 0) from++;
+    while (to > from && buckets.counts[to - 1] == 0) to--;
+    buf.putInt(buckets.offset + from);
+    PercentileSketch.writeVLong(buf, to - from);
+    for (int i = from; i < to; i++) {
+      PercentileSketch.writeVLong(buf, buckets.counts[i]);
+    }
+  }
+
+  static RelativeErrorSketch fromBytes(byte[] bytes) {
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    RelativeErrorSketch sketch = new RelativeErrorSketch(buf.getDouble());
+    sketch.count = PercentileSketch.readVLong(buf);
+    sketch.min = buf.getDouble();
+    sketch.max = buf.getDouble();
+    sketch.zeroCount = PercentileSketch.readVLong(buf);
+    readBuckets(buf, sketch.positive);
+    readBuckets(buf, sketch.negative);
+    return sketch;
+  }
+
+  private static void readBuckets(ByteBuffer buf, Buckets buckets) {
+    int offset = buf.getInt();
+    int length = (int) PercentileSketch.readVLong(buf);
+    if (length == 0) {
+      return;
+    }
+    buckets.offset = offset;
+    buckets.counts = new long[length];
+    for (int i = 0; i < length; i++) {
+      buckets.counts[i] = PercentileSketch.readVLong(buf);
+    }
+  }
+}
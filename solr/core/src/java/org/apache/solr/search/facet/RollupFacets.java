@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.params.FacetParams.FacetRangeInclude;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.legacy.LegacyNumericRangeQuery;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.WrappedQuery;
+import org.apache.solr.search.function.FieldNameValueSource;
+import org.apache.solr.util.DateMathParser;
+
+/**
+ * Rewrites JSON facet requests over raw documents into requests over the rollup documents of
+ * {@link org.apache.solr.update.processor.RollupUpdateProcessorFactory}, when the rollup has everything they need,
+ * so that the rollup answers them transparently.  A request is rewritten only if the answer is the same:
+ * <ul>
+ *  <li>all dimension fields are single valued, since documents with several values are rolled up once for each;</li>
+ *  <li>the domain is the main query and filters, which only match on dimension fields, and on time
+ *      ranges that start and end at interval boundaries; one of those time ranges must be required, since
+ *      documents without a time aren't rolled up;</li>
+ *  <li>every facet is a <code>terms</code> facet on a dimension field, or a <code>range</code> facet
+ *      on the time field whose buckets start and end at interval boundaries, without domain changes, and with a
+ *      <code>mincount</code> of at most 1;</li>
+ *  <li>every statistic is <code>sum</code> of a rolled up sum field or <code>hll</code> of a rolled up hll
+ *      field.</li>
+ * </ul>
+ * Bucket counts are the sums of the rollup document counts, which {@link #restoreCounts} puts back in place of
+ * the number of rollup documents in the response.
+ *
+ * @lucene.internal
+ */
+public final class RollupFacets {
+
+  /** Request parameter to turn rewriting off for a request */
+  public static final String ROLLUP_PARAM = "json.facet.rollup";
+
+  /** The statistic holding the rolled up document count of a bucket */
+  static final String COUNT_STAT = "rollup_count_";
+
+  /** More boundaries than dashboards use; checking them all wouldn't be worth it */
+  private static final int MAX_CHECKED_BUCKETS = 100000;
+
+  private final String timeField;
+  private final String interval;
+  private final Collection<String> dimensionFields;
+  private final Collection<String> sumFields;
+  private final String sumSuffix;
+  private final Collection<String> hllFields;
+  private final String hllSuffix;
+  private final String countField;
+
+  public RollupFacets(String timeField, String interval, Collection<String> dimensionFields,
+                      Collection<String> sumFields, String sumSuffix, Collection<String> hllFields, String hllSuffix,
+                      String countField) {
+    this.timeField = timeField;
+    this.interval = interval;
+    this.dimensionFields = dimensionFields;
+    this.sumFields = sumFields;
+    this.sumSuffix = sumSuffix;
+    this.hllFields = hllFields;
+    this.hllSuffix = hllSuffix;
+    this.countField = countField;
+  }
+
+  /**
+   * @param query the main query of the request
+   * @param filters the filters of the request, may be null
+   * @param facetRequest the parsed top level facet request
+   * @param now the time date math of the request is relative to
+   * @return the JSON facet request to send to the rollup collection with the same query and filters, or null if
+   *         the rollup can't answer it
+   */
+  public Map<String, Object> rewrite(IndexSchema schema, Query query, List<Query> filters, FacetRequest facetRequest,
+                                     Date now) {
+    for (String dimensionField : dimensionFields) {
+      if (!isDimension(schema, dimensionField)) {
+        return null;
+      }
+    }
+    final boolean[] timeBounded = new boolean[1];
+    if (query == null || !isAnswerable(schema, query, true, timeBounded)) {
+      return null;
+    }
+    if (filters != null) {
+      for (Query filter : filters) {
+        if (!isAnswerable(schema, filter, true, timeBounded)) {
+          return null;
+        }
+      }
+    }
+    if (!timeBounded[0] || facetRequest.domain != null) {
+      return null;
+    }
+    return rewriteFacets(schema, facetRequest, now);
+  }
+
+  /**
+   * Whether the query matches the same on the rollup documents as on the raw documents they roll up
+   *
+   * @param required whether every document matching the request has to match the query
+   * @param timeBounded set if a required query bounds the time
+   */
+  private boolean isAnswerable(IndexSchema schema, Query query, boolean required, boolean[] timeBounded) {
+    if (query instanceof BooleanQuery) {
+      for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+        boolean requiredClause = required && (clause.getOccur() == BooleanClause.Occur.MUST
+            || clause.getOccur() == BooleanClause.Occur.FILTER);
+        if (!isAnswerable(schema, clause.getQuery(), requiredClause, timeBounded)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (query instanceof BoostQuery) {
+      return isAnswerable(schema, ((BoostQuery) query).getQuery(), required, timeBounded);
+    } else if (query instanceof ConstantScoreQuery) {
+      return isAnswerable(schema, ((ConstantScoreQuery) query).getQuery(), required, timeBounded);
+    } else if (query instanceof WrappedQuery) {
+      return isAnswerable(schema, ((WrappedQuery) query).getWrappedQuery(), required, timeBounded);
+    } else if (query instanceof IndexOrDocValuesQuery) {
+      return isAnswerable(schema, ((IndexOrDocValuesQuery) query).getIndexQuery(), required, timeBounded);
+    } else if (query instanceof MatchAllDocsQuery || query instanceof MatchNoDocsQuery) {
+      return true;
+    }
+
+    final String field;
+    if (query instanceof TermQuery) {
+      field = ((TermQuery) query).getTerm().field();
+    } else if (query instanceof PointRangeQuery) {
+      field = ((PointRangeQuery) query).getField();
+    } else if (query instanceof PointInSetQuery) {
+      field = ((PointInSetQuery) query).getField();
+    } else if (query instanceof MultiTermQuery) {
+      // prefix, wildcard, regexp and term ranges, and ranges of trie fields
+      field = ((MultiTermQuery) query).getField();
+    } else {
+      return false;
+    }
+
+    if (timeField.equals(field)) {
+      if (!isAlignedTimeRange(query)) {
+        return false;
+      }
+      timeBounded[0] |= required;
+      return true;
+    }
+    return isDimension(schema, field);
+  }
+
+  /** Whether the query is a time range from and to interval boundaries, so that it matches whole intervals */
+  private boolean isAlignedTimeRange(Query query) {
+    long lower = Long.MIN_VALUE;
+    long upper = Long.MAX_VALUE; // inclusive
+    if (query instanceof PointRangeQuery) {
+      PointRangeQuery range = (PointRangeQuery) query;
+      if (range.getNumDims() != 1 || range.getLowerPoint().length != Long.BYTES) {
+        return false;
+      }
+      lower = LongPoint.decodeDimension(range.getLowerPoint(), 0);
+      upper = LongPoint.decodeDimension(range.getUpperPoint(), 0);
+    } else if (query instanceof LegacyNumericRangeQuery) {
+      LegacyNumericRangeQuery<?> range = (LegacyNumericRangeQuery<?>) query;
+      if (range.getMin() != null) {
+        if (!(range.getMin() instanceof Long)) return false;
+        lower = (Long) range.getMin() + (range.includesMin() ? 0 : 1);
+      }
+      if (range.getMax() != null) {
+        if (!(range.getMax() instanceof Long)) return false;
+        upper = (Long) range.getMax() - (range.includesMax() ? 0 : 1);
+      }
+    } else {
+      return false;
+    }
+    return (lower == Long.MIN_VALUE || isAligned(lower)) && (upper == Long.MAX_VALUE || isAligned(upper + 1));
+  }
+
+  private boolean isAligned(long time) {
+    try {
+      return new DateMathParser(new Date(time), DateMathParser.UTC).parseMath(interval).getTime() == time;
+    } catch (ParseException e) {
+      return false;
+    }
+  }
+
+  private boolean isAligned(Date time) {
+    return isAligned(time.getTime());
+  }
+
+  /** Dimensions have exactly the values of the raw documents in the rollup, if they are single valued */
+  private boolean isDimension(IndexSchema schema, String field) {
+    if (!dimensionFields.contains(field)) {
+      return false;
+    }
+    SchemaField sf = schema.getFieldOrNull(field);
+    return sf != null && !sf.multiValued();
+  }
+
+  /** @return the facet request with the statistics and sub-facets of the request, or null */
+  private Map<String, Object> rewriteFacets(IndexSchema schema, FacetRequest request, Date now) {
+    final Map<String, Object> facets = new LinkedHashMap<>();
+    for (Map.Entry<String, AggValueSource> stat : request.getFacetStats().entrySet()) {
+      String rewritten = rewriteStat(stat.getValue());
+      if (rewritten == null || COUNT_STAT.equals(stat.getKey())) {
+        return null;
+      }
+      facets.put(stat.getKey(), rewritten);
+    }
+    if (request.getSubFacets().containsKey(COUNT_STAT)) {
+      return null;
+    }
+    facets.put(COUNT_STAT, "sum(" + countField + ")");
+
+    for (Map.Entry<String, FacetRequest> sub : request.getSubFacets().entrySet()) {
+      final FacetRequest subRequest = sub.getValue();
+      if (subRequest.domain != null) {
+        return null;
+      }
+      final Map<String, Object> rewritten;
+      if (subRequest instanceof FacetField) {
+        rewritten = rewriteTerms(schema, (FacetField) subRequest, now);
+      } else if (subRequest instanceof FacetRange) {
+        rewritten = rewriteRange(schema, (FacetRange) subRequest, now);
+      } else {
+        rewritten = null;
+      }
+      if (rewritten == null) {
+        return null;
+      }
+      facets.put(sub.getKey(), rewritten);
+    }
+    return facets;
+  }
+
+  private String rewriteStat(AggValueSource stat) {
+    if (stat instanceof SumAgg && ((SumAgg) stat).getArg() instanceof FieldNameValueSource) {
+      String field = ((FieldNameValueSource) ((SumAgg) stat).getArg()).getFieldName();
+      return sumFields.contains(field) ? "sum(" + field + sumSuffix + ")" : null;
+    } else if (stat instanceof HLLAgg) {
+      String field = ((HLLAgg) stat).getArg();
+      return hllFields.contains(field) ? "hllunion(" + field + hllSuffix + ")" : null;
+    }
+    return null;
+  }
+
+  private Map<String, Object> rewriteTerms(IndexSchema schema, FacetField facet, Date now) {
+    if (!isDimension(schema, facet.field) || facet.mincount > 1) {
+      return null;
+    }
+    final Map<String, Object> sub = rewriteFacets(schema, facet, now);
+    final String sort = rewriteSort(facet, facet.sort);
+    final String prelimSort = rewriteSort(facet, facet.prelim_sort);
+    if (sub == null || (facet.sort != null && sort == null) || (facet.prelim_sort != null && prelimSort == null)) {
+      return null;
+    }
+
+    final Map<String, Object> terms = new LinkedHashMap<>();
+    terms.put("type", "terms");
+    terms.put("field", facet.field);
+    terms.put("offset", facet.offset);
+    terms.put("limit", facet.limit);
+    terms.put("mincount", facet.mincount);
+    if (sort != null) terms.put("sort", sort);
+    if (prelimSort != null) terms.put("prelim_sort", prelimSort);
+    if (facet.overrequest >= 0) terms.put("overrequest", facet.overrequest);
+    if (facet.overrefine >= 0) terms.put("overrefine", facet.overrefine);
+    if (facet.refine != null) terms.put("refine", facet.refine == FacetRequest.RefineMethod.SIMPLE);
+    if (facet.missing) terms.put("missing", true);
+    if (facet.allBuckets) terms.put("allBuckets", true);
+    if (facet.numBuckets) terms.put("numBuckets", true);
+    if (facet.prefix != null) terms.put("prefix", facet.prefix);
+    terms.put("facet", sub);
+    return terms;
+  }
+
+  /** Sorts by count become sorts by the rolled up count, statistics keep their names */
+  private String rewriteSort(FacetRequest facet, FacetRequest.FacetSort sort) {
+    if (sort == null) {
+      return null;
+    }
+    final String variable;
+    if ("count".equals(sort.sortVariable)) {
+      variable = COUNT_STAT;
+    } else if ("index".equals(sort.sortVariable) || facet.getFacetStats().containsKey(sort.sortVariable)) {
+      variable = sort.sortVariable;
+    } else {
+      return null;
+    }
+    return variable + " " + sort.sortDirection;
+  }
+
+  private Map<String, Object> rewriteRange(IndexSchema schema, FacetRange facet, Date now) {
+    if (!timeField.equals(facet.field) || facet.ranges != null || facet.mincount > 1
+        || !EnumSet.of(FacetRangeInclude.LOWER).equals(facet.include)
+        || !hasAlignedBuckets(facet, now)) {
+      return null;
+    }
+    final Map<String, Object> sub = rewriteFacets(schema, facet, now);
+    if (sub == null) {
+      return null;
+    }
+
+    final Map<String, Object> range = new LinkedHashMap<>();
+    range.put("type", "range");
+    range.put("field", facet.field);
+    range.put("start", facet.start.toString());
+    range.put("end", facet.end.toString());
+    range.put("gap", facet.gap.toString());
+    range.put("hardend", facet.hardend);
+    range.put("mincount", facet.mincount);
+    if (!facet.others.isEmpty()) {
+      List<String> others = new ArrayList<>();
+      facet.others.forEach(other -> others.add(other.toString()));
+      range.put("other", others);
+    }
+    range.put("facet", sub);
+    return range;
+  }
+
+  /** Whether every bucket of the range facet, including before and after buckets, starts at an interval boundary */
+  private boolean hasAlignedBuckets(FacetRange facet, Date now) {
+    try {
+      final Date start = DateMathParser.parseMath(now, facet.start.toString());
+      final Date end = DateMathParser.parseMath(now, facet.end.toString());
+      if (!isAligned(start) || (facet.hardend && !isAligned(end))) {
+        return false;
+      }
+      Date low = start;
+      for (int i = 0; low.before(end); i++) {
+        // as FacetRangeProcessor adds the gap
+        final DateMathParser dmp = new DateMathParser();
+        dmp.setNow(low);
+        final Date high = dmp.parseMath(facet.gap.toString());
+        if (i >= MAX_CHECKED_BUCKETS || !high.after(low) || !isAligned(high)) {
+          return false;
+        }
+        low = high;
+      }
+      return true;
+    } catch (ParseException | RuntimeException e) {
+      // not a date range; if it's invalid, faceting on the index reports it
+      return false;
+    }
+  }
+
+  /**
+   * Replaces the number of rollup documents in the count of every bucket of a rolled up facet response with the
+   * number of documents they roll up, and removes the statistic holding it
+   */
+  public static void restoreCounts(NamedList<Object> facets) {
+    final int stat = facets.indexOf(COUNT_STAT, 0);
+    if (stat >= 0) {
+      final Object rolledUp = facets.remove(stat);
+      final int count = facets.indexOf("count", 0);
+      if (count >= 0 && rolledUp instanceof Number) {
+        facets.setVal(count, ((Number) rolledUp).longValue());
+      }
+    }
+    for (int i = 0; i < facets.size(); i++) {
+      restoreCountsIn(facets.getVal(i));
+    }
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static void restoreCountsIn(Object val) {
+    if (val instanceof NamedList) {
+      restoreCounts((NamedList<Object>) val);
+    } else if (val instanceof List) {
+      for (Object element : (List<?>) val) {
+        restoreCountsIn(element);
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+
+/**
+ * A fixed size heavy hitters sketch over long keys, using the Space-Saving algorithm of
+ * Metwally, Agrawal and El Abbadi.  At most {@link #capacity()} keys are tracked.  When a key that is not tracked
+ * arrives and the sketch is full, the key with the smallest count is evicted and the new key inherits its count
+ * (plus one) as an over-estimate, recording the inherited count as the error of the new entry.
+ * <p>
+ * The following guarantees hold for every tracked key: {@code count - error <= trueCount <= count}.
+ * Every key that is not tracked has a true count of at most {@link #minCount()}.
+ * <p>
+ * Slots are stable: a slot keeps its number for the lifetime of the sketch, although the key stored in it may change.
+ */
+class SpaceSavingSketch {
+  private final long[] keys;
+  private final long[] counts;
+  private final long[] errors;
+  // min-heap of slots ordered by count, and the position of each slot in the heap
+  private final int[] heap;
+  private final int[] heapPos;
+  private final LongIntHashMap slotByKey;
+  private int size;
+
+  SpaceSavingSketch(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    keys = new long[capacity];
+    counts = new long[capacity];
+    errors = new long[capacity];
+    heap = new int[capacity];
+    heapPos = new int[capacity];
+    slotByKey = new LongIntHashMap(capacity);
+  }
+
+  /** The maximum number of keys tracked */
+  int capacity() {
+    return keys.length;
+  }
+
+  /** The number of keys currently tracked.  Slots {@code [0, size())} are in use. */
+  int size() {
+    return size;
+  }
+
+  /** Records one occurrence of {@code key} and returns the slot now holding it */
+  int add(long key) {
+    int slot = slotByKey.getOrDefault(key, -1);
+    if (slot >= 0) {
+      counts[slot]++;
+      siftDown(heapPos[slot]);
+      return slot;
+    }
+
+    if (size < keys.length) {
+      slot = size++;
+      keys[slot] = key;
+      counts[slot] = 1;
+      errors[slot] = 0;
+      heap[slot] = slot;
+      heapPos[slot] = slot;
+      siftUp(slot);
+    } else {
+      // evict the minimum; the new key inherits its count as the error
+      slot = heap[0];
+      slotByKey.remove(keys[slot]);
+      final long min = counts[slot];
+      keys[slot] = key;
+      errors[slot] = min;
+      counts[slot] = min + 1;
+      siftDown(0);
+    }
+    slotByKey.put(key, slot);
+    return slot;
+  }
+
+  long key(int slot) {
+    return keys[slot];
+  }
+
+  /** The (over-estimated) count of the key in {@code slot} */
+  long count(int slot) {
+    return counts[slot];
+  }
+
+  /** The maximum over-estimation of {@link #count(int)} */
+  long error(int slot) {
+    return errors[slot];
+  }
+
+  /** An upper bound on the count of any key that is not tracked; 0 while the table isn't full */
+  long minCount() {
+    return size < keys.length ? 0 : counts[heap[0]];
+  }
+
+  private void siftUp(int pos) {
+    final int slot = heap[pos];
+    final long count = counts[slot];
+    while (pos > 0) {
+      int parentPos = (pos - 1) >>> 1;
+      int parent = heap[parentPos];
+      if (counts[parent] <= count) {
+        break;
+      }
+      heap[pos] = parent;
+      heapPos[parent] = pos;
+      pos = parentPos;
+    }
+    heap[pos] = slot;
+    heapPos[slot] = pos;
+  }
+
+  private void siftDown(int pos) {
+    final int slot = heap[pos];
+    final long count = counts[slot];
+    while (true) {
+      int childPos = (pos << 1) + 1;
+      if (childPos >= size) {
+        break;
+      }
+      if (childPos + 1 < size && counts[heap[childPos + 1]] < counts[heap[childPos]]) {
+        childPos++;
+      }
+      int child = heap[childPos];
+      if (counts[child] >= count) {
+        break;
+      }
+      heap[pos] = child;
+      heapPos[child] = pos;
+      pos = childPos;
+    }
+    heap[pos] = slot;
+    heapPos[slot] = pos;
+  }
+}
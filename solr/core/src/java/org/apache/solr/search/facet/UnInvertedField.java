@@ -17,15 +17,19 @@
 package org.apache.solr.search.facet;
 
 import java.io.Closeable;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
@@ -37,8 +41,11 @@ import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.index.SlowCompositeReaderWrapper;
 import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
 import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
@@ -51,6 +58,7 @@ import org.apache.solr.search.facet.SlotAcc.SweepCountAccStruct;
 import org.apache.solr.search.facet.SlotAcc.SweepingCountSlotAcc;
 import org.apache.solr.search.facet.SweepDocIterator.SweepIteratorAndCounts;
 import org.apache.solr.uninverting.DocTermOrds;
+import org.apache.solr.util.RefCounted;
 import org.apache.solr.util.TestInjection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -114,6 +122,12 @@ public class UnInvertedField extends DocTermOrds {
   private SolrIndexSearcher.DocsEnumState deState;
   private final SolrIndexSearcher searcher;
 
+  /** true if this was read from a file saved for the same index, rather than un-inverted */
+  boolean loaded;
+
+  /** The file this was un-inverted for and still has to be saved to by {@link #save}, if any */
+  private volatile UnInvertedFieldFile unsavedFile;
+
   private static final UnInvertedField uifPlaceholder = new UnInvertedField();
 
   private UnInvertedField() { // Dummy for synchronization.
@@ -184,15 +198,19 @@ public class UnInvertedField extends DocTermOrds {
     return sz;
   }
 
+  /**
+   * The threshold, over which we use set intersections instead of counting
+   * to (1) save memory, and (2) speed up faceting.
+   */
+  private static int getMaxTermDocFreq(SolrIndexSearcher searcher) {
+    // Add 2 for testing purposes so that there will always be some terms under
+    // the threshold even when the index is very
+    // small.
+    return searcher.maxDoc()/20 + 2;
+  }
+
   public UnInvertedField(String field, SolrIndexSearcher searcher) throws IOException {
-    super(field,
-        // threshold, over which we use set intersections instead of counting
-        // to (1) save memory, and (2) speed up faceting.
-        // Add 2 for testing purposes so that there will always be some terms under
-        // the threshold even when the index is very
-        // small.
-        searcher.maxDoc()/20 + 2,
-        DEFAULT_INDEX_INTERVAL_BITS);
+    super(field, getMaxTermDocFreq(searcher), DEFAULT_INDEX_INTERVAL_BITS);
 
     assert TestInjection.injectUIFOutOfMemoryError();
 
@@ -225,6 +243,164 @@ public class UnInvertedField extends DocTermOrds {
     //System.out.println("CREATED: " + toString() + " ti.index=" + ti.index);
   }
 
+  /** For {@link #readFrom}, everything else is read from the file */
+  private UnInvertedField(String field, SolrIndexSearcher searcher, int maxTermDocFreq) {
+    super(field, maxTermDocFreq, DEFAULT_INDEX_INTERVAL_BITS);
+    this.searcher = searcher;
+    this.loaded = true;
+  }
+
+  /**
+   * Un-inverts the field, unless {@code <persistUnInvertedFields>} is enabled and it was saved for the same index
+   * before, e.g. before a restart.  Newly un-inverted fields are only saved by {@link #save}, which the hook of
+   * {@link #newSaveHook} calls when the core closes, so that requests don't wait on disk I/O.
+   */
+  static UnInvertedField create(String field, SolrIndexSearcher searcher) throws IOException {
+    final int maxTermDocFreq = getMaxTermDocFreq(searcher);
+    final String prefix = TrieField.getMainValuePrefix(searcher.getSchema().getFieldType(field));
+    UnInvertedFieldFile file = UnInvertedFieldFile.forField(field, maxTermDocFreq, prefix, searcher);
+    if (file == null) {
+      return new UnInvertedField(field, searcher);
+    }
+
+    try (UnInvertedFieldFile.MappedInput in = file.openInput()) {
+      if (in != null) {
+        UnInvertedField uif = readFrom(in, field, searcher, maxTermDocFreq);
+        log.info("Loaded un-inverted multi-valued field {} from {}", uif, file.getPath());
+        return uif;
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to load un-inverted field {} from {}, un-inverting it again", field, file.getPath(), e);
+    }
+
+    UnInvertedField uif = new UnInvertedField(field, searcher);
+    uif.unsavedFile = file;
+    return uif;
+  }
+
+  /**
+   * Returns a hook that saves the fields the core's current searcher un-inverted when the core closes, so that each
+   * field is written once for the index the next core opens, rather than after every commit.  Files of fields that
+   * aren't multi-valued fields of the index anymore, and temporary files left behind, are removed.
+   */
+  public static CloseHook newSaveHook() {
+    return new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+        RefCounted<SolrIndexSearcher> searcher = core.getRegisteredSearcher();
+        if (searcher == null) {
+          return;
+        }
+        try {
+          saveAll(searcher.get());
+        } finally {
+          searcher.decref();
+        }
+      }
+
+      @Override
+      public void postClose(SolrCore core) {
+      }
+    };
+  }
+
+  private static void saveAll(SolrIndexSearcher searcher) {
+    SolrCache<String, UnInvertedField> cache = searcher.getFieldValueCache();
+    Set<String> fileNames = new HashSet<>();
+    for (FieldInfo fieldInfo : searcher.getFieldInfos()) {
+      SchemaField schemaField = searcher.getSchema().getFieldOrNull(fieldInfo.name);
+      if (schemaField == null || !schemaField.multiValued()) {
+        continue;
+      }
+      fileNames.add(UnInvertedFieldFile.getFileName(fieldInfo.name));
+      UnInvertedField uif = cache == null ? null : cache.get(fieldInfo.name);
+      if (uif != null) {
+        uif.save();
+      }
+    }
+    UnInvertedFieldFile.deleteOthers(searcher.getCore(), fileNames);
+  }
+
+  /** Saves this field if {@link #create} un-inverted it for {@code <persistUnInvertedFields>}; a no-op otherwise */
+  void save() {
+    final UnInvertedFieldFile file = unsavedFile;
+    if (file == null) {
+      return;
+    }
+    unsavedFile = null;
+    try {
+      file.write(this);
+    } catch (IOException e) {
+      log.warn("Unable to save un-inverted field {} to {}", field, file.getPath(), e);
+    }
+  }
+
+  /** Writes everything {@link #readFrom} needs to recreate this field for the same index */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(numTermsInField);
+    out.writeLong(termInstances);
+    out.writeInt(total_time);
+    out.writeInt(phase1_time);
+    out.writeInt(ordBase);
+    out.writeLong(sizeOfIndexedStrings);
+    UnInvertedFieldFile.writeBytes(out, prefix);
+    out.writeInt(indexedTermsArray.length);
+    for (BytesRef term : indexedTermsArray) {
+      UnInvertedFieldFile.writeBytes(out, term);
+    }
+    UnInvertedFieldFile.writeInts(out, maxTermCounts);
+    out.writeInt(bigTerms.size());
+    for (TopTerm tt : bigTerms.values()) {
+      out.writeInt(tt.termNum);
+      UnInvertedFieldFile.writeBytes(out, tt.term);
+    }
+    UnInvertedFieldFile.writeInts(out, index);
+    if (tnums == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(tnums.length);
+      for (byte[] target : tnums) {
+        UnInvertedFieldFile.writeBytes(out, target == null ? null : new BytesRef(target));
+      }
+    }
+  }
+
+  private static UnInvertedField readFrom(UnInvertedFieldFile.MappedInput in, String field, SolrIndexSearcher searcher,
+                                          int maxTermDocFreq) throws IOException {
+    UnInvertedField uif = new UnInvertedField(field, searcher, maxTermDocFreq);
+    uif.numTermsInField = in.readInt();
+    uif.termInstances = in.readLong();
+    uif.total_time = in.readInt();
+    uif.phase1_time = in.readInt();
+    uif.ordBase = in.readInt();
+    uif.sizeOfIndexedStrings = in.readLong();
+    uif.prefix = in.readBytes();
+    uif.indexedTermsArray = new BytesRef[in.readInt()];
+    for (int i = 0; i < uif.indexedTermsArray.length; i++) {
+      uif.indexedTermsArray[i] = in.readBytes();
+    }
+    uif.maxTermCounts = in.readInts();
+    for (int i = in.readInt(); i > 0; i--) {
+      TopTerm topTerm = new TopTerm();
+      topTerm.termNum = in.readInt();
+      topTerm.term = in.readBytes();
+      topTerm.termQuery = new TermQuery(new Term(field, topTerm.term));
+      uif.bigTerms.put(topTerm.termNum, topTerm);
+    }
+    uif.index = in.readInts();
+    int numTnums = in.readInt();
+    if (numTnums < 0) {
+      uif.tnums = null;
+    } else {
+      uif.tnums = new byte[numTnums][];
+      for (int i = 0; i < numTnums; i++) {
+        uif.tnums[i] = in.readByteArray();
+      }
+    }
+    in.checkFooter();
+    return uif;
+  }
+
   public int getNumTerms() {
     return numTermsInField;
   }
@@ -603,13 +779,13 @@ public class UnInvertedField extends DocTermOrds {
   public static UnInvertedField getUnInvertedField(String field, SolrIndexSearcher searcher) throws IOException {
     SolrCache<String, UnInvertedField> cache = searcher.getFieldValueCache();
     if (cache == null) {
-      return new UnInvertedField(field, searcher);
+      return create(field, searcher); // never saved, since it isn't kept
     }
     AtomicReference<Throwable> throwableRef = new AtomicReference<>();
     UnInvertedField uif = cache.computeIfAbsent(field, f -> {
       UnInvertedField newUif;
       try {
-        newUif = new UnInvertedField(field, searcher);
+        newUif = create(field, searcher);
       } catch (Throwable t) {
         throwableRef.set(t);
         newUif = null;
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.core.DirectoryFactory;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The file an {@link UnInvertedField} is saved to when {@code <persistUnInvertedFields>} is enabled, so that
+ * the first facet request after a restart or core reload doesn't have to un-invert the field again.
+ * <p>
+ * Term numbers are global to the top level reader, so a file is only valid for exactly the set of segments (and
+ * deletions) it was written for.  That set is recorded as a key in the header of the file, and a file with any
+ * other key is ignored and overwritten when the core closes.  Files are written to a temporary file first and then
+ * moved into place.  Loading a file reads all of it back onto the heap, so a loaded field uses as much memory as an
+ * un-inverted one; only the time to un-invert it is saved.
+ */
+final class UnInvertedFieldFile {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final String DIR_NAME = "uninverted";
+  static final String SUFFIX = ".uif";
+
+  private static final int MAGIC = 0x55494631; // "UIF1"
+  private static final int VERSION = 1;
+
+  private final Path path;
+  private final String key;
+
+  private UnInvertedFieldFile(Path path, String key) {
+    this.path = path;
+    this.key = key;
+  }
+
+  /**
+   * Returns the file for this field and index, or null if un-inverted fields aren't persisted for this core,
+   * or can't be for the current index.
+   */
+  static UnInvertedFieldFile forField(String field, int maxTermDocFreq, String prefix, SolrIndexSearcher searcher) {
+    SolrCore core = searcher.getCore();
+    if (core == null || !core.getSolrConfig().persistUnInvertedFields) {
+      return null;
+    }
+    DirectoryFactory directoryFactory = core.getDirectoryFactory();
+    if (!directoryFactory.isPersistent() || directoryFactory.isSharedStorage()) {
+      return null;
+    }
+    String key = getIndexKey(field, maxTermDocFreq, prefix, searcher);
+    if (key == null) {
+      return null;
+    }
+    return new UnInvertedFieldFile(Paths.get(core.getDataDir(), DIR_NAME, getFileName(field)), key);
+  }
+
+  static String getFileName(String field) {
+    // field names may contain anything; the hash keeps sanitized names of different fields apart
+    return field.replaceAll("[^A-Za-z0-9_\\-]", "_") + '-' + Integer.toHexString(field.hashCode()) + SUFFIX;
+  }
+
+  /**
+   * Identifies everything an un-inverted field depends on: the field and how it is un-inverted, and the exact
+   * segments of the index along with their deletions.  Returns null if the reader has leaves that aren't
+   * segments, or deletions that haven't been written to the segment yet, since those can't be identified.
+   */
+  private static String getIndexKey(String field, int maxTermDocFreq, String prefix, SolrIndexSearcher searcher) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(field).append('|').append(maxTermDocFreq).append('|').append(prefix)
+        .append('|').append(searcher.getSchema().getFieldType(field).getClass().getName());
+    for (LeafReaderContext leaf : searcher.getRawReader().leaves()) {
+      LeafReader reader = FilterLeafReader.unwrap(leaf.reader());
+      if (!(reader instanceof SegmentReader)) {
+        return null;
+      }
+      SegmentCommitInfo info = ((SegmentReader) reader).getSegmentInfo();
+      if (reader.numDocs() != info.info.maxDoc() - info.getDelCount() - info.getSoftDelCount()) {
+        return null; // near real time deletions that aren't recorded in the segment info
+      }
+      sb.append('|').append(info.info.name)
+          .append(':').append(StringHelper.idToString(info.info.getId()))
+          .append(':').append(info.getDelGen())
+          .append(':').append(info.getDelCount())
+          .append(':').append(info.getSoftDelCount())
+          .append(':').append(info.getFieldInfosGen());
+    }
+    return sb.toString();
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  /**
+   * Opens the file for reading, positioned just after the header, or returns null if there is no file or it was
+   * written for a different index.
+   */
+  MappedInput openInput() throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    MappedInput in = new MappedInput(channel);
+    boolean success = false;
+    try {
+      if (in.readInt() == MAGIC && in.readInt() == VERSION && key.equals(in.readString())) {
+        success = true;
+        return in;
+      }
+      log.info("Ignoring {}, it was written for a different index", path);
+      return null;
+    } finally {
+      if (!success) {
+        in.close();
+      }
+    }
+  }
+
+  /** Writes the field to a temporary file and moves that over any existing file */
+  void write(UnInvertedField uif) throws IOException {
+    Path dir = path.getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, key);
+        uif.writeTo(out);
+        out.writeInt(MAGIC);
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Deletes the files in the core's directory of un-inverted fields other than those with the given names, e.g. of
+   * fields that were removed, along with any temporary files
+   */
+  static void deleteOthers(SolrCore core, Set<String> fileNames) {
+    Path dir = Paths.get(core.getDataDir(), DIR_NAME);
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".tmp") || (name.endsWith(SUFFIX) && !fileNames.contains(name))) {
+          log.info("Removing unused file {}", file);
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Unable to remove unused files from {}", dir, e);
+    }
+  }
+
+  static void writeString(DataOutput out, String str) throws IOException {
+    writeBytes(out, str == null ? null : new BytesRef(str));
+  }
+
+  /** Writes the length, or -1 for null, followed by the bytes */
+  static void writeBytes(DataOutput out, BytesRef bytes) throws IOException {
+    if (bytes == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(bytes.length);
+    out.write(bytes.bytes, bytes.offset, bytes.length);
+  }
+
+  /** Writes the length, or -1 for null, followed by the ints */
+  static void writeInts(DataOutput out, int[] ints) throws IOException {
+    if (ints == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(ints.length);
+    for (int i : ints) {
+      out.writeInt(i);
+    }
+  }
+
+  /**
+   * Reads what was written with a {@link DataOutput}, mapping one window of the file at a time.  Everything read
+   * is copied onto the heap, so nothing refers to the file once the field is loaded.
+   */
+  static final class MappedInput implements Closeable {
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowStart;
+    private ByteBuffer window;
+
+    MappedInput(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+    }
+
+    /** Makes sure the current window has at least {@code n} bytes left, mapping the next window if needed */
+    private ByteBuffer window(int n) throws IOException {
+      if (window == null || window.remaining() < n) {
+        long pos = window == null ? 0 : windowStart + window.position();
+        long len = Math.min(WINDOW_SIZE, size - pos);
+        if (len < n) {
+          throw new EOFException("Unexpected end of " + size + " byte file");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        windowStart = pos;
+      }
+      return window;
+    }
+
+    int readInt() throws IOException {
+      return window(Integer.BYTES).getInt();
+    }
+
+    long readLong() throws IOException {
+      return window(Long.BYTES).getLong();
+    }
+
+    /** Reads what {@link UnInvertedFieldFile#writeString} wrote */
+    String readString() throws IOException {
+      BytesRef bytes = readBytes();
+      return bytes == null ? null : new String(bytes.bytes, 0, bytes.length, StandardCharsets.UTF_8);
+    }
+
+    /** Reads what {@link UnInvertedFieldFile#writeBytes} wrote */
+    BytesRef readBytes() throws IOException {
+      byte[] bytes = readByteArray();
+      return bytes == null ? null : new BytesRef(bytes);
+    }
+
+    /** Reads what {@link UnInvertedFieldFile#writeBytes} wrote, as an array */
+    byte[] readByteArray() throws IOException {
+      int len = readInt();
+      if (len < 0) {
+        return null;
+      }
+      byte[] bytes = new byte[len];
+      for (int off = 0; off < len; ) {
+        ByteBuffer buf = window(1);
+        int n = Math.min(len - off, buf.remaining());
+        buf.get(bytes, off, n);
+        off += n;
+      }
+      return bytes;
+    }
+
+    /** Reads what {@link UnInvertedFieldFile#writeInts} wrote */
+    int[] readInts() throws IOException {
+      int len = readInt();
+      if (len < 0) {
+        return null;
+      }
+      int[] ints = new int[len];
+      for (int off = 0; off < len; ) {
+        ByteBuffer buf = window(Integer.BYTES);
+        int n = Math.min(len - off, buf.remaining() / Integer.BYTES);
+        buf.asIntBuffer().get(ints, off, n);
+        buf.position(buf.position() + n * Integer.BYTES);
+        off += n;
+      }
+      return ints;
+    }
+
+    /** Checks that everything was read, as a last guard against a truncated or otherwise broken file */
+    void checkFooter() throws IOException {
+      if (readInt() != MAGIC || windowStart + window.position() != size) {
+        throw new IOException("Bad footer, file is corrupt");
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      window = null;
+      channel.close();
+    }
+  }
+}
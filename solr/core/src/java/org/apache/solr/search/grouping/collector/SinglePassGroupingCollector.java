@@ -0,0 +1,574 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.grouping.collector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.LeafFieldComparator;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.grouping.GroupDocs;
+import org.apache.lucene.search.grouping.SearchGroup;
+import org.apache.lucene.search.grouping.TopGroups;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.util.hll.HLL;
+import org.apache.solr.util.hll.HLLType;
+
+/**
+ * Groups by a single valued field with docValues in one pass, when groups are sorted by their best document, i.e.
+ * the sort between groups is the sort within groups.
+ * <p>
+ * Only the top groups, each with its top documents, are kept in a heap of comparator slots, so the memory for
+ * documents is bounded by the number of groups and documents requested.  The hit counts (and max scores) of the
+ * groups of a segment are counted in arrays indexed by ordinal, which are merged into counts by group value when the
+ * segment is done and then dropped, so that the totals of groups that become top groups late are known.  Those counts
+ * take memory by the number of distinct values that matched, once rather than per segment; they are kept when the
+ * exact number of groups is requested, or top groups without the number of groups.  When the number of groups is
+ * approximated with a {@link HLL} instead, the memory for groups is bounded by the sketch and the top groups, and the
+ * hit counts of the top groups are left to a second pass over them.
+ * <p>
+ * When more than one document per group is requested, a group that becomes competitive late may have had documents
+ * dropped before, which can't be recovered.  {@link #isComplete()} tells whether that happened to any of the top
+ * groups, or whether their hit counts weren't kept, in which case the caller should collect their documents in a
+ * second pass, seeded by {@link #getSearchGroups(int)}.  Groups of a single document are otherwise complete.
+ *
+ * @lucene.experimental
+ */
+public class SinglePassGroupingCollector extends SimpleCollector {
+
+  /** How the number of groups is counted */
+  public enum GroupCount {
+    NONE, EXACT, APPROXIMATE
+  }
+
+  /** the most comparator slots (groups times documents per group) that are worth keeping in one pass */
+  public static final int MAX_SLOTS = 1 << 16;
+
+  private static final int DROPPED_BITS = 1 << 20;
+
+  private final String field;
+  private final Sort sort;
+  private final int topNGroups;
+  private final int docsPerGroup;
+  private final boolean needMaxScores;
+  private final GroupCount groupCount;
+
+  private final FieldComparator<?>[] comparators;
+  private final LeafFieldComparator[] leafComparators;
+  private final int[] reverseMul;
+  private final int[] slotDocs;
+  private final int[] freeSlots;
+  private int numFreeSlots;
+  private int spareSlot;
+
+  private final Group[] heap; // the worst of the top groups first
+  private int heapSize;
+
+  // hashes of the values of groups that had documents dropped, in segments before the current one
+  private final FixedBitSet droppedGroups;
+
+  // the hit counts (and max scores) of the groups of all finished segments, by id in groupIds, or null if not kept
+  private final BytesRefHash groupIds;
+  private int[] hitsById = new int[16];
+  private float[] maxScoresById;
+  private int nullGroupHits;
+  private float nullGroupMaxScore = Float.NaN;
+  private final HLL hll;
+  private boolean sawNullGroup;
+
+  private int totalHitCount;
+
+  // the current segment
+  private LeafReaderContext context;
+  private SortedDocValues values;
+  private int docBase;
+  private Scorable scorer;
+  private int[] counts; // indexed by ord + 1, 0 is for documents without a value
+  private float[] maxScores;
+  private Group[] segmentGroups;
+  private FixedBitSet segmentDropped;
+
+  /** A group of the heap, with the slots of its documents, best first */
+  private static final class Group {
+    BytesRef value; // null for documents without a value
+    final int[] slots;
+    int size;
+    int heapIndex;
+    int segmentKey = -1; // the key of the group in the current segment, -1 if not looked up
+    boolean complete;
+
+    Group(int docsPerGroup) {
+      slots = new int[docsPerGroup];
+    }
+  }
+
+  /**
+   * @param field the field to group by, which needs to be single valued with docValues
+   * @param sort the sort between groups, and within groups
+   * @param topNGroups the number of top groups to find, 0 to only count
+   * @param docsPerGroup the number of top documents to find per group
+   * @param needMaxScores whether the max score of each group is needed
+   * @param groupCount how to count the number of groups
+   */
+  public SinglePassGroupingCollector(String field, Sort sort, int topNGroups, int docsPerGroup,
+                                     boolean needMaxScores, GroupCount groupCount) {
+    if (topNGroups < 0 || docsPerGroup < 1) {
+      throw new IllegalArgumentException("topNGroups must be >= 0 and docsPerGroup >= 1");
+    }
+    if ((long) topNGroups * docsPerGroup > MAX_SLOTS) {
+      throw new IllegalArgumentException("topNGroups * docsPerGroup must be <= " + MAX_SLOTS);
+    }
+    this.field = field;
+    this.sort = sort;
+    this.topNGroups = topNGroups;
+    this.docsPerGroup = docsPerGroup;
+    this.needMaxScores = needMaxScores;
+    this.groupCount = groupCount;
+
+    final SortField[] sortFields = sort.getSort();
+    final int numSlots = topNGroups * docsPerGroup + 1;
+    comparators = new FieldComparator<?>[sortFields.length];
+    leafComparators = new LeafFieldComparator[sortFields.length];
+    reverseMul = new int[sortFields.length];
+    for (int i = 0; i < sortFields.length; i++) {
+      comparators[i] = sortFields[i].getComparator(numSlots, i);
+      reverseMul[i] = sortFields[i].getReverse() ? -1 : 1;
+    }
+    slotDocs = new int[numSlots];
+    freeSlots = new int[numSlots];
+    for (int slot = numSlots - 1; slot > 0; slot--) {
+      freeSlots[numFreeSlots++] = slot;
+    }
+    spareSlot = 0;
+
+    heap = new Group[topNGroups];
+    droppedGroups = docsPerGroup > 1 && topNGroups > 0 ? new FixedBitSet(DROPPED_BITS) : null;
+    groupIds = groupCount == GroupCount.EXACT || (topNGroups > 0 && groupCount == GroupCount.NONE)
+        ? new BytesRefHash() : null;
+    if (needMaxScores && groupIds != null) {
+      maxScoresById = new float[hitsById.length];
+      Arrays.fill(maxScoresById, Float.NaN);
+    }
+    hll = groupCount == GroupCount.APPROXIMATE ? new HLL(13, 6, -1, false, HLLType.EMPTY) : null;
+  }
+
+  /**
+   * Returns whether a field and sorts can be grouped in one pass.
+   * @param withinGroupSort the sort within groups, null for relevance
+   * @param groupSort the sort between groups, null for relevance
+   */
+  public static boolean supports(boolean singleValuedDocValues, Sort groupSort, Sort withinGroupSort) {
+    final Sort between = groupSort == null ? Sort.RELEVANCE : groupSort;
+    final Sort within = withinGroupSort == null ? Sort.RELEVANCE : withinGroupSort;
+    return singleValuedDocValues && between.equals(within);
+  }
+
+  @Override
+  public ScoreMode scoreMode() {
+    return sort.needsScores() || needMaxScores ? ScoreMode.COMPLETE : ScoreMode.COMPLETE_NO_SCORES;
+  }
+
+  @Override
+  public void setScorer(Scorable scorer) throws IOException {
+    this.scorer = scorer;
+    for (LeafFieldComparator leafComparator : leafComparators) {
+      leafComparator.setScorer(scorer);
+    }
+  }
+
+  @Override
+  protected void doSetNextReader(LeafReaderContext context) throws IOException {
+    finishSegment();
+    this.context = context;
+    docBase = context.docBase;
+    values = DocValues.getSorted(context.reader(), field);
+    final int numKeys = values.getValueCount() + 1;
+    counts = new int[numKeys];
+    if (needMaxScores && groupIds != null) {
+      maxScores = new float[numKeys];
+      Arrays.fill(maxScores, Float.NaN);
+    }
+    for (int i = 0; i < comparators.length; i++) {
+      leafComparators[i] = comparators[i].getLeafComparator(context);
+    }
+    if (topNGroups == 0) {
+      return;
+    }
+
+    segmentGroups = new Group[numKeys];
+    segmentDropped = droppedGroups == null ? null : new FixedBitSet(numKeys);
+    for (int i = 0; i < heapSize; i++) {
+      final Group group = heap[i];
+      group.segmentKey = keyOf(values, group.value);
+      if (group.segmentKey >= 0) {
+        segmentGroups[group.segmentKey] = group;
+      }
+    }
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    totalHitCount++;
+    final int key = values.advanceExact(doc) ? values.ordValue() + 1 : 0;
+    counts[key]++;
+    if (needMaxScores && groupIds != null) {
+      final float score = scorer.score();
+      if (!(score <= maxScores[key])) {
+        maxScores[key] = score;
+      }
+    }
+    if (topNGroups == 0) {
+      return;
+    }
+
+    Group group = segmentGroups[key];
+    if (group == null && heapSize == topNGroups) {
+      // only compare against the worst top group unless the document could enter the heap
+      copy(spareSlot, doc);
+      if (compareSlots(spareSlot, heap[0].slots[0]) >= 0) {
+        if (segmentDropped != null) {
+          segmentDropped.set(key);
+        }
+        return;
+      }
+      group = heap[0];
+      evict(group);
+      enter(group, key);
+      addDoc(group, spareSlot);
+      spareSlot = freeSlots[--numFreeSlots];
+      siftDown(0);
+      return;
+    }
+
+    copy(spareSlot, doc);
+    if (group == null) {
+      group = new Group(docsPerGroup);
+      enter(group, key);
+      addDoc(group, spareSlot);
+      spareSlot = freeSlots[--numFreeSlots];
+      group.heapIndex = heapSize;
+      heap[heapSize++] = group;
+      siftUp(group.heapIndex);
+      return;
+    }
+
+    final int oldHead = group.slots[0];
+    if (group.size < docsPerGroup) {
+      addDoc(group, spareSlot);
+      spareSlot = freeSlots[--numFreeSlots];
+    } else if (compareSlots(spareSlot, group.slots[group.size - 1]) < 0) {
+      final int dropped = group.slots[--group.size];
+      addDoc(group, spareSlot);
+      spareSlot = dropped;
+    } else {
+      return;
+    }
+    if (group.slots[0] != oldHead) {
+      siftDown(group.heapIndex); // the group got better, so it moves away from the worst
+    }
+  }
+
+  private void copy(int slot, int doc) throws IOException {
+    for (LeafFieldComparator leafComparator : leafComparators) {
+      leafComparator.copy(slot, doc);
+    }
+    slotDocs[slot] = docBase + doc;
+  }
+
+  /** Compares the documents in two slots, ties are broken by doc id like Lucene's grouping collectors do */
+  private int compareSlots(int slot1, int slot2) {
+    for (int i = 0; i < comparators.length; i++) {
+      final int c = reverseMul[i] * comparators[i].compare(slot1, slot2);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(slotDocs[slot1], slotDocs[slot2]);
+  }
+
+  private int compareGroups(Group group1, Group group2) {
+    return compareSlots(group1.slots[0], group2.slots[0]);
+  }
+
+  private void addDoc(Group group, int slot) {
+    int i = group.size++;
+    while (i > 0 && compareSlots(slot, group.slots[i - 1]) < 0) {
+      group.slots[i] = group.slots[i - 1];
+      i--;
+    }
+    group.slots[i] = slot;
+  }
+
+  private void evict(Group group) throws IOException {
+    for (int i = 0; i < group.size; i++) {
+      freeSlots[numFreeSlots++] = group.slots[i];
+    }
+    group.size = 0;
+    if (group.segmentKey >= 0) {
+      segmentGroups[group.segmentKey] = null;
+    }
+    if (droppedGroups != null) {
+      droppedGroups.set(hashIndex(group.value));
+    }
+  }
+
+  private void enter(Group group, int key) throws IOException {
+    group.value = key == 0 ? null : BytesRef.deepCopyOf(values.lookupOrd(key - 1));
+    group.segmentKey = key;
+    group.complete = droppedGroups == null
+        || !(segmentDropped.get(key) || droppedGroups.get(hashIndex(group.value)));
+    segmentGroups[key] = group;
+  }
+
+  private void siftUp(int i) {
+    final Group group = heap[i];
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (compareGroups(group, heap[parent]) <= 0) {
+        break;
+      }
+      heap[i] = heap[parent];
+      heap[i].heapIndex = i;
+      i = parent;
+    }
+    heap[i] = group;
+    group.heapIndex = i;
+  }
+
+  private void siftDown(int i) {
+    final Group group = heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && compareGroups(heap[child + 1], heap[child]) > 0) {
+        child++;
+      }
+      if (compareGroups(group, heap[child]) >= 0) {
+        break;
+      }
+      heap[i] = heap[child];
+      heap[i].heapIndex = i;
+      i = child;
+    }
+    heap[i] = group;
+    group.heapIndex = i;
+  }
+
+  private static int hashIndex(BytesRef value) {
+    return value == null ? 0 : Hash.murmurhash3_x86_32(value.bytes, value.offset, value.length, 0) & (DROPPED_BITS - 1);
+  }
+
+  /** Returns the key of a group value in a segment: its ord + 1, 0 for no value, or -1 if it doesn't occur */
+  private static int keyOf(SortedDocValues values, BytesRef value) throws IOException {
+    if (value == null) {
+      return 0;
+    }
+    final int ord = values.lookupTerm(value);
+    return ord < 0 ? -1 : ord + 1;
+  }
+
+  private void finishSegment() throws IOException {
+    if (context == null) {
+      return;
+    }
+    if (groupIds != null) {
+      mergeCounts();
+    }
+
+    if (segmentDropped != null) {
+      for (int key = segmentDropped.nextSetBit(0); key < segmentDropped.length();
+           key = key + 1 < segmentDropped.length() ? segmentDropped.nextSetBit(key + 1) : Integer.MAX_VALUE) {
+        droppedGroups.set(hashIndex(key == 0 ? null : values.lookupOrd(key - 1)));
+      }
+    }
+
+    if (groupCount != GroupCount.NONE) {
+      sawNullGroup |= counts[0] > 0;
+    }
+    if (hll != null) {
+      final Hash.LongPair hash = new Hash.LongPair();
+      for (int key = 1; key < counts.length; key++) {
+        if (counts[key] > 0) {
+          final BytesRef value = values.lookupOrd(key - 1);
+          Hash.murmurhash3_x64_128(value.bytes, value.offset, value.length, 0, hash);
+          hll.addRaw(hash.val1);
+        }
+      }
+    }
+
+    for (int i = 0; i < heapSize; i++) {
+      heap[i].segmentKey = -1;
+    }
+    context = null;
+    values = null;
+    counts = null;
+    maxScores = null;
+    segmentGroups = null;
+    segmentDropped = null;
+  }
+
+  /** Adds the counts of the current segment to those by group value, so the segment's arrays can be dropped */
+  private void mergeCounts() throws IOException {
+    nullGroupHits += counts[0];
+    if (needMaxScores && !(maxScores[0] <= nullGroupMaxScore)) {
+      nullGroupMaxScore = maxScores[0];
+    }
+    for (int key = 1; key < counts.length; key++) {
+      if (counts[key] == 0) {
+        continue;
+      }
+      int id = groupIds.add(values.lookupOrd(key - 1));
+      if (id < 0) {
+        id = -id - 1;
+      } else if (id >= hitsById.length) {
+        hitsById = ArrayUtil.grow(hitsById, id + 1);
+        if (needMaxScores) {
+          final int oldLength = maxScoresById.length;
+          maxScoresById = ArrayUtil.grow(maxScoresById, hitsById.length);
+          Arrays.fill(maxScoresById, oldLength, maxScoresById.length, Float.NaN);
+        }
+      }
+      hitsById[id] += counts[key];
+      if (needMaxScores && !(maxScores[key] <= maxScoresById[id])) {
+        maxScoresById[id] = maxScores[key];
+      }
+    }
+  }
+
+  /** @return the number of documents collected */
+  public int getTotalHitCount() {
+    return totalHitCount;
+  }
+
+  /** @return the number of groups, or null if they weren't counted */
+  public Integer getGroupCount() throws IOException {
+    finishSegment();
+    if (groupCount == GroupCount.NONE) {
+      return null;
+    }
+    final long count = hll == null ? groupIds.size() : hll.cardinality();
+    return (int) Math.min(Integer.MAX_VALUE, count + (sawNullGroup ? 1 : 0));
+  }
+
+  /** @return the top groups, best first */
+  private Group[] sortedGroups() {
+    final Group[] groups = Arrays.copyOf(heap, heapSize);
+    Arrays.sort(groups, (group1, group2) -> compareGroups(group2, group1));
+    return groups;
+  }
+
+  /**
+   * @return whether the top documents and hit counts of all top groups were collected, so there is no need for a
+   * second pass
+   */
+  public boolean isComplete() {
+    if (groupIds == null && heapSize > 0) {
+      return false;
+    }
+    for (int i = 0; i < heapSize; i++) {
+      if (!heap[i].complete) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return the top groups from an offset, like the first pass of Lucene's grouping returns them, or null if none */
+  public Collection<SearchGroup<BytesRef>> getSearchGroups(int groupOffset) {
+    final Group[] groups = sortedGroups();
+    if (groupOffset >= groups.length) {
+      return null;
+    }
+    final List<SearchGroup<BytesRef>> searchGroups = new ArrayList<>(groups.length - groupOffset);
+    for (int i = groupOffset; i < groups.length; i++) {
+      final SearchGroup<BytesRef> searchGroup = new SearchGroup<>();
+      searchGroup.groupValue = groups[i].value;
+      searchGroup.sortValues = sortValues(groups[i].slots[0]);
+      searchGroups.add(searchGroup);
+    }
+    return searchGroups;
+  }
+
+  /**
+   * @return the top groups from an offset with their top documents, or null if there are none.  Scores of documents
+   * are not set.
+   * @throws IllegalStateException if the collector isn't {@link #isComplete() complete}
+   */
+  public TopGroups<BytesRef> getTopGroups(int groupOffset) throws IOException {
+    finishSegment();
+    final Group[] groups = sortedGroups();
+    if (groupOffset >= groups.length) {
+      return null;
+    }
+    if (groupIds == null) {
+      throw new IllegalStateException("The hit counts of groups weren't kept, so the top groups need a second pass");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    final GroupDocs<BytesRef>[] groupDocs = new GroupDocs[groups.length - groupOffset];
+    int totalGroupedHitCount = 0;
+    float maxScore = Float.NaN;
+    for (int i = groupOffset; i < groups.length; i++) {
+      final Group group = groups[i];
+      // every top group has hits, so its value has an id
+      final int id = group.value == null ? -1 : groupIds.find(group.value);
+      final int groupHits = id < 0 ? nullGroupHits : hitsById[id];
+      final float groupMaxScore = !needMaxScores ? Float.NaN : id < 0 ? nullGroupMaxScore : maxScoresById[id];
+      final ScoreDoc[] scoreDocs = new ScoreDoc[group.size];
+      for (int j = 0; j < group.size; j++) {
+        scoreDocs[j] = new FieldDoc(slotDocs[group.slots[j]], Float.NaN, sortValues(group.slots[j]));
+      }
+      groupDocs[i - groupOffset] = new GroupDocs<>(Float.NaN, groupMaxScore,
+          new TotalHits(groupHits, TotalHits.Relation.EQUAL_TO), scoreDocs, group.value, sortValues(group.slots[0]));
+      totalGroupedHitCount += groupHits;
+      if (!(groupMaxScore <= maxScore)) {
+        maxScore = groupMaxScore;
+      }
+    }
+    return new TopGroups<>(sort.getSort(), sort.getSort(), totalHitCount, totalGroupedHitCount, groupDocs, maxScore);
+  }
+
+  private Object[] sortValues(int slot) {
+    final Object[] sortValues = new Object[comparators.length];
+    for (int i = 0; i < comparators.length; i++) {
+      final Object value = comparators[i].value(slot);
+      // LUCENE-6808 workaround
+      sortValues[i] = value instanceof BytesRef ? BytesRef.deepCopyOf((BytesRef) value) : value;
+    }
+    return sortValues;
+  }
+}
@@ -29,7 +29,6 @@ import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.join.BitSetProducer;
-import org.apache.lucene.search.join.QueryBitSetProducer;
 import org.apache.lucene.search.join.ScoreMode;
 import org.apache.lucene.search.join.ToParentBlockJoinQuery;
 import org.apache.lucene.util.BitSet;
@@ -88,11 +87,11 @@ public class BlockJoinParentQParser extends FiltersQParser {
   public static BitSetProducer getCachedBitSetProducer(final SolrQueryRequest request, Query query) {
     @SuppressWarnings("unchecked")
     SolrCache<Query, BitSetProducer> parentCache = request.getSearcher().getCache(CACHE_NAME);
-    // lazily retrieve from solr cache
+    // lazily retrieve from solr cache; the producer caches its bit sets per segment regardless
     if (parentCache != null) {
-      return parentCache.computeIfAbsent(query, QueryBitSetProducer::new);
+      return parentCache.computeIfAbsent(query, ParentBitSetCache::newProducer);
     } else {
-      return new QueryBitSetProducer(query);
+      return ParentBitSetCache.newProducer(query);
     }
   }
 
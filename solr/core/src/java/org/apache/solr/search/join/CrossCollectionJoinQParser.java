@@ -40,11 +40,12 @@ public class CrossCollectionJoinQParser extends QParser {
   public static final String TO = "to";
   public static final String ROUTED_BY_JOIN_KEY = "routed";
   public static final String TTL = "ttl";
+  public static final String KEY_FILTER = "keyFilter";
 
   public static final int TTL_DEFAULT = 60 * 60; // in seconds
 
   private static final Set<String> OWN_PARAMS = new HashSet<>(Arrays.asList(
-          QueryParsing.TYPE, QueryParsing.V, ZK_HOST, SOLR_URL, FROM_INDEX, FROM, TO, ROUTED_BY_JOIN_KEY, TTL));
+          QueryParsing.TYPE, QueryParsing.V, ZK_HOST, SOLR_URL, FROM_INDEX, FROM, TO, ROUTED_BY_JOIN_KEY, TTL, KEY_FILTER));
 
   private final String routerField;
   private final Set<String> allowSolrUrls;
@@ -78,6 +79,7 @@ public class CrossCollectionJoinQParser extends QParser {
 
     boolean routedByJoinKey = localParams.getBool(ROUTED_BY_JOIN_KEY, toField.equals(routerField));
     int ttl = localParams.getInt(TTL, TTL_DEFAULT);
+    boolean keyFilter = localParams.getBool(KEY_FILTER, false);
 
     ModifiableSolrParams otherParams = new ModifiableSolrParams();
     for (Iterator<String> it = localParams.getParameterNamesIterator(); it.hasNext(); ) {
@@ -87,6 +89,6 @@ public class CrossCollectionJoinQParser extends QParser {
       }
     }
 
-    return new CrossCollectionJoinQuery(query, zkHost, solrUrl, collection, fromField, toField, routedByJoinKey, ttl, otherParams);
+    return new CrossCollectionJoinQuery(query, zkHost, solrUrl, collection, fromField, toField, routedByJoinKey, keyFilter, ttl, otherParams);
   }
 }
@@ -36,6 +36,7 @@ import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.client.solrj.io.SolrClientCache;
@@ -57,6 +58,7 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.DocSetUtil;
@@ -71,6 +73,10 @@ public class CrossCollectionJoinQuery extends Query {
   protected final String fromField;
   protected final String toField;
   protected final boolean routedByJoinKey;
+  protected final boolean keyFilter;
+
+  /** the most join keys a shard sends to filter on, which are about 1.25 bytes each */
+  public static final int MAX_KEY_FILTER_KEYS = 1 << 17;
 
   protected final long timestamp;
   protected final int ttl;
@@ -81,6 +87,16 @@ public class CrossCollectionJoinQuery extends Query {
   public CrossCollectionJoinQuery(String query, String zkHost, String solrUrl,
                                   String collection, String fromField, String toField,
                                   boolean routedByJoinKey, int ttl, SolrParams otherParams) {
+    this(query, zkHost, solrUrl, collection, fromField, toField, routedByJoinKey, false, ttl, otherParams);
+  }
+
+  /**
+   * @param keyFilter whether to only stream back the join keys this shard might have, by sending a
+   *                  {@link HashSetQuery} of its keys along with the "from" query
+   */
+  public CrossCollectionJoinQuery(String query, String zkHost, String solrUrl,
+                                  String collection, String fromField, String toField,
+                                  boolean routedByJoinKey, boolean keyFilter, int ttl, SolrParams otherParams) {
 
     this.query = query;
     this.zkHost = zkHost;
@@ -89,6 +105,7 @@ public class CrossCollectionJoinQuery extends Query {
     this.fromField = fromField;
     this.toField = toField;
     this.routedByJoinKey = routedByJoinKey;
+    this.keyFilter = keyFilter;
 
     this.timestamp = System.nanoTime();
     this.ttl = ttl;
@@ -201,6 +218,48 @@ public class CrossCollectionJoinQuery extends Query {
       }
     }
 
+    /**
+     * Creates a filter on the join keys this shard has, or returns null if it isn't enabled, the fields can't be filtered,
+     * or the shard has too many keys to send them.  Keys of deleted documents are included, which only costs a few false positives.
+     */
+    private String createKeyFilterFq() throws IOException {
+      if (!keyFilter || searcher.getSchema().getFieldType(toField).isPointField()) {
+        return null;
+      }
+      // the "from" side ignores the filter unless its field has single valued, SORTED docValues, so skip sending it
+      // when this schema has the same field and already shows that
+      SchemaField from = searcher.getSchema().getFieldOrNull(fromField);
+      if (from != null && !HashSetQuery.supports(from)) {
+        return null;
+      }
+      long numKeys = 0;
+      for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+        Terms terms = leaf.reader().terms(toField);
+        if (terms != null) {
+          long size = terms.size();
+          if (size < 0) {
+            return null;
+          }
+          numKeys += size;
+        }
+      }
+      if (numKeys > MAX_KEY_FILTER_KEYS) {
+        return null;
+      }
+
+      long[] bits = HashSetQuery.createBits((int) numKeys);
+      for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+        Terms terms = leaf.reader().terms(toField);
+        if (terms != null) {
+          TermsEnum termsEnum = terms.iterator();
+          for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            HashSetQuery.add(bits, term);
+          }
+        }
+      }
+      return String.format(Locale.ROOT, "{!hash_set cache=false f=%s bits='%s'}", fromField, HashSetQuery.encode(bits));
+    }
+
     private TupleStream createCloudSolrStream(SolrClientCache solrClientCache) throws IOException {
       String streamZkHost;
       if (zkHost != null) {
@@ -215,6 +274,10 @@ public class CrossCollectionJoinQuery extends Query {
       if (fq != null) {
         params.add(CommonParams.FQ, fq);
       }
+      String keyFq = createKeyFilterFq();
+      if (keyFq != null) {
+        params.add(CommonParams.FQ, keyFq);
+      }
       params.set(CommonParams.FL, fromField);
       params.set(CommonParams.SORT, fromField + " asc");
       params.set(CommonParams.QT, "/export");
@@ -229,7 +292,7 @@ public class CrossCollectionJoinQuery extends Query {
       return uniqueStream;
     }
 
-    private TupleStream createSolrStream() {
+    private TupleStream createSolrStream() throws IOException {
       StreamExpression searchExpr = new StreamExpression("search")
               .withParameter(collection)
               .withParameter(new StreamExpressionNamedParameter(CommonParams.Q, query));
@@ -237,6 +300,10 @@ public class CrossCollectionJoinQuery extends Query {
       if (fq != null) {
         searchExpr.withParameter(new StreamExpressionNamedParameter(CommonParams.FQ, fq));
       }
+      String keyFq = createKeyFilterFq();
+      if (keyFq != null) {
+        searchExpr.withParameter(new StreamExpressionNamedParameter(CommonParams.FQ, keyFq));
+      }
       searchExpr.withParameter(new StreamExpressionNamedParameter(CommonParams.FL, fromField))
               .withParameter(new StreamExpressionNamedParameter(CommonParams.SORT, fromField + " asc"))
               .withParameter(new StreamExpressionNamedParameter(CommonParams.QT, "/export"));
@@ -343,6 +410,7 @@ public class CrossCollectionJoinQuery extends Query {
     result = prime * result + Objects.hashCode(fromField);
     result = prime * result + Objects.hashCode(toField);
     result = prime * result + Objects.hashCode(routedByJoinKey);
+    result = prime * result + Objects.hashCode(keyFilter);
     result = prime * result + Objects.hashCode(otherParamsString);
     // timestamp and ttl should not be included in hash code
     return result;
@@ -362,13 +430,14 @@ public class CrossCollectionJoinQuery extends Query {
             Objects.equals(fromField, other.fromField) &&
             Objects.equals(toField, other.toField) &&
             Objects.equals(routedByJoinKey, other.routedByJoinKey) &&
+            Objects.equals(keyFilter, other.keyFilter) &&
             Objects.equals(otherParamsString, other.otherParamsString) &&
             TimeUnit.SECONDS.convert(Math.abs(timestamp - other.timestamp), TimeUnit.NANOSECONDS) < Math.min(ttl, other.ttl);
   }
 
   @Override
   public String toString(String field) {
-    return String.format(Locale.ROOT, "{!xcjf collection=%s from=%s to=%s routed=%b ttl=%d}%s",
-            collection, fromField, toField, routedByJoinKey, ttl, query.toString());
+    return String.format(Locale.ROOT, "{!xcjf collection=%s from=%s to=%s routed=%b keyFilter=%b ttl=%d}%s",
+            collection, fromField, toField, routedByJoinKey, keyFilter, ttl, query.toString());
   }
 }
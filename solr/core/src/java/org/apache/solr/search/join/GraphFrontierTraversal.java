@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.ParallelTaskRunner;
+
+/**
+ * Traverses a graph breadth first without running a query per hop: the edge ids of the documents of a frontier are
+ * read from the docValues of the edge field, and the documents of the next frontier are found by looking those ids
+ * up in the terms of the node field.  Both happen per segment, in parallel if there is a runner.
+ * <p>
+ * Documents that were visited are kept in one bit set, and edge ids that were looked up are kept so that they are
+ * never looked up again, e.g. when many nodes link to the same node.  The traversal stops when a frontier is empty,
+ * the max depth is reached, or the max number of nodes was visited.
+ *
+ * @lucene.internal
+ */
+class GraphFrontierTraversal {
+
+  private final SolrIndexSearcher searcher;
+  private final String nodeField;
+  private final String edgeField;
+  private final ParallelTaskRunner runner; // null to expand serially
+  private final List<LeafReaderContext> leaves;
+
+  private FixedBitSet rootBits;
+  private boolean truncated;
+
+  GraphFrontierTraversal(SolrIndexSearcher searcher, String nodeField, String edgeField, ParallelTaskRunner runner) {
+    this.searcher = searcher;
+    this.nodeField = nodeField;
+    this.edgeField = edgeField;
+    this.runner = runner;
+    this.leaves = searcher.getTopReaderContext().leaves();
+  }
+
+  /**
+   * Returns whether a graph can be traversed this way, which needs the node ids to be indexed strings and the edge
+   * ids to be strings with docValues.
+   */
+  static boolean supports(SchemaField nodeField, SchemaField edgeField) {
+    return nodeField.getType() instanceof StrField && nodeField.indexed()
+        && edgeField.getType() instanceof StrField && edgeField.hasDocValues();
+  }
+
+  /**
+   * Traverses the graph from the root documents.
+   *
+   * @param roots the live documents to start from
+   * @param traversalFilter the live documents that may be visited after the roots, or null for all live documents
+   * @param maxDepth the max number of hops, -1 for no limit
+   * @param maxNodes the max number of documents to visit, -1 for no limit.  Documents of the last frontier are
+   *                 visited in the order of their ids until the limit is reached.
+   * @return every document that was visited, including the roots
+   */
+  FixedBitSet traverse(FixedBitSet roots, FixedBitSet traversalFilter, int maxDepth, int maxNodes) throws IOException {
+    final FixedBitSet visited = new FixedBitSet(searcher.maxDoc());
+    FixedBitSet frontier = roots.clone();
+    long numVisited = limit(frontier, 0, maxNodes);
+    visited.or(frontier);
+    rootBits = frontier;
+
+    final BytesRefHash lookedUp = new BytesRefHash();
+    for (int depth = 0; (maxDepth == -1 || depth < maxDepth) && !truncated; depth++) {
+      final BytesRef[] edgeIds = collectEdgeIds(frontier, lookedUp);
+      if (edgeIds.length == 0) {
+        break;
+      }
+      frontier = expand(edgeIds, visited, traversalFilter);
+      numVisited = limit(frontier, numVisited, maxNodes);
+      if (frontier.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS) {
+        break;
+      }
+      visited.or(frontier);
+    }
+    return visited;
+  }
+
+  /** the root documents that were visited, only valid after {@link #traverse} */
+  FixedBitSet getRootBits() {
+    return rootBits;
+  }
+
+  /** whether the traversal was stopped because the max number of nodes was visited */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  /** Clears the documents of the frontier beyond the max number of nodes, and returns the new number visited */
+  private long limit(FixedBitSet frontier, long numVisited, int maxNodes) {
+    final long size = frontier.cardinality();
+    if (maxNodes < 0 || numVisited + size < maxNodes) {
+      return numVisited + size;
+    }
+    int doc = -1;
+    for (long i = numVisited; i < maxNodes; i++) {
+      doc = frontier.nextSetBit(doc + 1);
+    }
+    if (doc + 1 < frontier.length()) {
+      frontier.clear(doc + 1, frontier.length());
+    }
+    truncated = true;
+    return maxNodes;
+  }
+
+  /** Returns the edge ids of the frontier that weren't looked up yet, in sorted order, and marks them looked up */
+  private BytesRef[] collectEdgeIds(FixedBitSet frontier, BytesRefHash lookedUp) throws IOException {
+    final List<Callable<List<BytesRef>>> tasks = new ArrayList<>(leaves.size());
+    for (LeafReaderContext leaf : leaves) {
+      tasks.add(() -> collectEdgeIds(leaf, frontier));
+    }
+
+    final List<BytesRef> edgeIds = new ArrayList<>();
+    for (List<BytesRef> leafEdgeIds : invokeAll(tasks)) {
+      for (BytesRef edgeId : leafEdgeIds) {
+        if (lookedUp.add(edgeId) >= 0) {
+          edgeIds.add(edgeId);
+        }
+      }
+    }
+    final BytesRef[] sorted = edgeIds.toArray(new BytesRef[0]);
+    Arrays.sort(sorted); // so that the terms enum seeks forward
+    return sorted;
+  }
+
+  private List<BytesRef> collectEdgeIds(LeafReaderContext leaf, FixedBitSet frontier) throws IOException {
+    final int base = leaf.docBase;
+    final int end = base + leaf.reader().maxDoc();
+    final SortedSetDocValues values = DocValues.getSortedSet(leaf.reader(), edgeField);
+    if (values.getValueCount() == 0 || base >= frontier.length()) {
+      return Collections.emptyList();
+    }
+    // gather the ords first, so that every edge id is looked up once per segment
+    final LongBitSet ords = new LongBitSet(values.getValueCount());
+    for (int doc = frontier.nextSetBit(base); doc < end; doc = doc + 1 < end ? frontier.nextSetBit(doc + 1) : end) {
+      if (values.advanceExact(doc - base)) {
+        for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+          ords.set(ord);
+        }
+      }
+    }
+    final List<BytesRef> edgeIds = new ArrayList<>();
+    for (long ord = ords.nextSetBit(0); ord >= 0; ord = ord + 1 < ords.length() ? ords.nextSetBit(ord + 1) : -1) {
+      edgeIds.add(BytesRef.deepCopyOf(values.lookupOrd(ord)));
+    }
+    return edgeIds;
+  }
+
+  /** Returns the documents that have one of the edge ids as node id, and weren't visited yet */
+  private FixedBitSet expand(BytesRef[] edgeIds, FixedBitSet visited, FixedBitSet traversalFilter) throws IOException {
+    final List<Callable<FixedBitSet>> tasks = new ArrayList<>(leaves.size());
+    for (LeafReaderContext leaf : leaves) {
+      tasks.add(() -> expand(leaf, edgeIds, visited, traversalFilter));
+    }
+    final List<FixedBitSet> leafFrontiers = invokeAll(tasks);
+
+    final FixedBitSet next = new FixedBitSet(searcher.maxDoc());
+    for (int i = 0; i < leaves.size(); i++) {
+      final FixedBitSet leafFrontier = leafFrontiers.get(i);
+      if (leafFrontier != null) {
+        final int base = leaves.get(i).docBase;
+        final BitSetIterator it = new BitSetIterator(leafFrontier, 0);
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          next.set(base + doc);
+        }
+      }
+    }
+    return next;
+  }
+
+  // reads the shared visited and filter bits, but only writes a bit set of its own
+  private FixedBitSet expand(LeafReaderContext leaf, BytesRef[] edgeIds, FixedBitSet visited,
+                             FixedBitSet traversalFilter) throws IOException {
+    final LeafReader reader = leaf.reader();
+    final Terms terms = reader.terms(nodeField);
+    if (terms == null) {
+      return null;
+    }
+    final int base = leaf.docBase;
+    final Bits liveDocs = traversalFilter == null ? reader.getLiveDocs() : null;
+    final TermsEnum termsEnum = terms.iterator();
+    FixedBitSet leafFrontier = null;
+    PostingsEnum postings = null;
+    for (BytesRef edgeId : edgeIds) {
+      if (!termsEnum.seekExact(edgeId)) {
+        continue;
+      }
+      postings = termsEnum.postings(postings, PostingsEnum.NONE);
+      for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+        if (visited.get(base + doc)
+            || (traversalFilter != null ? !traversalFilter.get(base + doc) : liveDocs != null && !liveDocs.get(doc))) {
+          continue;
+        }
+        if (leafFrontier == null) {
+          leafFrontier = new FixedBitSet(reader.maxDoc());
+        }
+        leafFrontier.set(doc);
+      }
+    }
+    return leafFrontier;
+  }
+
+  private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+    if (runner != null) {
+      return runner.invokeAll(tasks);
+    }
+    final List<T> results = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      try {
+        results.add(task.call());
+      } catch (IOException | RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+    return results;
+  }
+}
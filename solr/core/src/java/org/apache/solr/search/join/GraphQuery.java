@@ -47,6 +47,7 @@ import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.ParallelTaskRunner;
 
 /**
  * GraphQuery - search for nodes and traverse edges in an index.
@@ -58,6 +59,9 @@ import org.apache.solr.search.SolrIndexSearcher;
  * maxDepth = the max depth to traverse.  (start nodes is depth=1)
  * onlyLeafNodes = only return documents that have no edge id values.
  * returnRoot = if false, the documents matching the initial query will not be returned.
+ * maxNodes = the max number of documents to visit, -1 means no limit.
+ * directTraversal = expand frontiers from docValues and the terms index, see {@link GraphFrontierTraversal}.
+ * threads = the number of threads the direct traversal may use in addition to the requesting thread.
  *
  * @lucene.experimental
  */
@@ -83,6 +87,16 @@ public class GraphQuery extends Query {
   
   /** False if documents matching the start query for the graph will be excluded from the final result set.  */
   private boolean returnRoot = true;
+
+  /** The max number of documents to visit, -1 means no limit. */
+  private int maxNodes = -1;
+
+  /** Expand frontiers directly instead of running a query for each of them, if the fields allow it */
+  private boolean directTraversal = false;
+
+  /** The number of additional threads a direct traversal may use, 0 for none and -1 for as many as allowed, see
+   * {@link ParallelTaskRunner#MAX_THREADS} */
+  private int threads = 0;
   
   /**
    * Create a graph query 
@@ -125,6 +139,12 @@ public class GraphQuery extends Query {
     sb.append("[returnRoot=").append(returnRoot).append(']');
     sb.append("[onlyLeafNodes=").append(onlyLeafNodes).append(']');
     sb.append("[useAutn=").append(useAutn).append(']');
+    if (maxNodes != -1) {
+      sb.append("[maxNodes=").append(maxNodes).append(']');
+    }
+    if (directTraversal) {
+      sb.append("[directTraversal=true]");
+    }
     return sb.toString();
   }
   
@@ -169,6 +189,9 @@ public class GraphQuery extends Query {
      * @throws IOException - if a sub search fails... maybe other cases too! :)
      */
     private DocSet getDocSet() throws IOException {
+      if (directTraversal && GraphFrontierTraversal.supports(matchSchemaField, collectSchemaField)) {
+        return getDocSetDirect();
+      }
       // Size that the bit set needs to be.
       int capacity = fromSearcher.getRawReader().maxDoc();
       // The bit set to contain the results that match the query.
@@ -220,6 +243,14 @@ public class GraphQuery extends Query {
           // grab a copy of the root bits but only if we need it.
           rootBits = fromSet.getBits();
         }
+        if (maxNodes != -1) {
+          FixedBitSet limitedBits = limitNodes(fromSet.getBits(), resultBits);
+          if (limitedBits != null) {
+            // the budget of nodes is used up, so stop with what was visited so far
+            resultBits.or(limitedBits);
+            break;
+          }
+        }
         // Add the bits from this level to the result set.
         resultBits.or(fromSet.getBits());
         // test if we discovered any new edges, if not , we're done.
@@ -241,6 +272,44 @@ public class GraphQuery extends Query {
       }
     }
     
+    /**
+     * Limits the documents of a level that weren't visited before to the max number of nodes, in the order of their
+     * ids.
+     * @return a copy of the level without the documents beyond the max number of nodes, or null if it isn't reached
+     */
+    private FixedBitSet limitNodes(FixedBitSet levelBits, FixedBitSet resultBits) {
+      long numVisited = resultBits.cardinality();
+      long numNew = levelBits.cardinality() - FixedBitSet.intersectionCount(levelBits, resultBits);
+      if (numVisited + numNew < maxNodes) {
+        return null;
+      }
+      // the level's bits may be cached, so don't modify them
+      levelBits = levelBits.clone();
+      for (int doc = levelBits.nextSetBit(0); doc != DocIdSetIterator.NO_MORE_DOCS;
+           doc = doc + 1 < levelBits.length() ? levelBits.nextSetBit(doc + 1) : DocIdSetIterator.NO_MORE_DOCS) {
+        if (!resultBits.get(doc) && numVisited++ >= maxNodes) {
+          levelBits.clear(doc);
+        }
+      }
+      return levelBits;
+    }
+
+    /** Computes the matching doc set with a {@link GraphFrontierTraversal} */
+    private DocSet getDocSetDirect() throws IOException {
+      FixedBitSet roots = fromSearcher.getDocSetBits(q).getBits();
+      FixedBitSet filter = getTraversalFilter() == null ? null : fromSearcher.getDocSetBits(getTraversalFilter()).getBits();
+      ParallelTaskRunner runner = ParallelTaskRunner.forCore(fromSearcher.getCore(), threads);
+
+      GraphFrontierTraversal traversal = new GraphFrontierTraversal(fromSearcher, matchSchemaField.getName(),
+          collectSchemaField.getName(), runner);
+      FixedBitSet resultBits = traversal.traverse(roots, filter, maxDepth, maxNodes);
+      if (!returnRoot) {
+        resultBits.andNot(traversal.getRootBits());
+      }
+      BitDocSet resultSet = new BitDocSet(resultBits);
+      return onlyLeafNodes ? resultSet.intersection(resolveLeafNodes()) : resultSet;
+    }
+
     private DocSet resolveLeafNodes() throws IOException {
       String field = collectSchemaField.getName();
       BooleanQuery.Builder leafNodeQuery = new BooleanQuery.Builder();
@@ -401,6 +470,40 @@ public class GraphQuery extends Query {
   public void setReturnRoot(boolean returnRoot) {
     this.returnRoot = returnRoot;
   }
+
+  /**
+   * @return Max number of documents to visit, -1 for no limit.
+   */
+  public int getMaxNodes() {
+    return maxNodes;
+  }
+
+  public void setMaxNodes(int maxNodes) {
+    this.maxNodes = maxNodes;
+  }
+
+  /**
+   * @return if true, frontiers are expanded from docValues and the terms index when the fields allow it, rather than
+   * by a query per frontier.
+   */
+  public boolean isDirectTraversal() {
+    return directTraversal;
+  }
+
+  public void setDirectTraversal(boolean directTraversal) {
+    this.directTraversal = directTraversal;
+  }
+
+  /**
+   * @return the number of additional threads a direct traversal may use, 0 for none and -1 for as many as allowed.
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
   
   @Override
   public int hashCode() {
@@ -414,6 +517,9 @@ public class GraphQuery extends Query {
     result = prime * result + Objects.hashCode(toField);
     result = prime * result + Objects.hashCode(traversalFilter);
     result = prime * result + (useAutn ? 1231 : 1237);
+    result = prime * result + maxNodes;
+    result = prime * result + (directTraversal ? 1231 : 1237);
+    // threads doesn't change the result, so it is not included
     return result;
   }
 
@@ -429,6 +535,8 @@ public class GraphQuery extends Query {
            onlyLeafNodes == other.onlyLeafNodes &&
            returnRoot == other.returnRoot &&
            useAutn == other.useAutn &&
+           maxNodes == other.maxNodes &&
+           directTraversal == other.directTraversal &&
            Objects.equals(q, other.q) &&
            Objects.equals(toField, other.toField) &&
            Objects.equals(traversalFilter, other.traversalFilter);
@@ -58,6 +58,12 @@ public class GraphQueryParser extends QParser {
     // if true, an automaton will be compiled to issue the next graph hop
     // this avoid having a large number of boolean clauses. (and it's faster too!)
     boolean useAutn = localParams.getBool("useAutn", false);
+    // the max number of documents to visit, -1 for no limit
+    int maxNodes = localParams.getInt("maxNodes", -1);
+    // if true, frontiers are expanded from docValues and the terms index rather than by a query per hop
+    boolean directTraversal = localParams.getBool("directTraversal", false);
+    // the number of additional threads a direct traversal may use
+    int threads = localParams.getInt("threads", 0);
 
     // Construct a graph query object based on parameters passed in.
     GraphQuery gq = new GraphQuery(rootNodeQuery, fromField, toField, traversalFilter);
@@ -66,6 +72,9 @@ public class GraphQueryParser extends QParser {
     gq.setOnlyLeafNodes(onlyLeafNodes);
     gq.setReturnRoot(returnRootNodes);
     gq.setUseAutn(useAutn);
+    gq.setMaxNodes(maxNodes);
+    gq.setDirectTraversal(directTraversal);
+    gq.setThreads(threads);
     // return the parsed graph query.
     return gq;
   }
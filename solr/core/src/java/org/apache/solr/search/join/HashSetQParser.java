@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.SyntaxError;
+
+@SuppressWarnings("WeakerAccess")
+public class HashSetQParser extends QParser {
+
+  public static final String FIELD = "f";
+  public static final String BITS = "bits";
+
+  public HashSetQParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
+    super(qstr, localParams, params, req);
+  }
+
+  @Override
+  public Query parse() throws SyntaxError {
+    String field = localParams.get(FIELD);
+    String bits = localParams.get(BITS);
+    if (field == null || bits == null) {
+      throw new SyntaxError("Missing " + FIELD + " or " + BITS + " parameter");
+    }
+
+    SchemaField schemaField = req.getSchema().getField(field);
+    if (!HashSetQuery.supports(schemaField)) {
+      // every document might have one of the values, which is the same as not filtering
+      return new MatchAllDocsQuery();
+    }
+
+    try {
+      return new HashSetQuery(field, HashSetQuery.decode(bits));
+    } catch (IllegalArgumentException e) {
+      throw new SyntaxError("Invalid " + BITS + " parameter: " + e.getMessage(), e);
+    }
+  }
+}
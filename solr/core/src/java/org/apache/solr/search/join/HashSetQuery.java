@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.schema.EnumFieldType;
+import org.apache.solr.schema.SchemaField;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Matches documents where the value of the specified field might be in a compact, hashed set of keys, i.e. a
+ * Bloom filter.  A cross collection join sends the keys of the "to" shard this way, so that the "from" side only
+ * streams back keys the shard might join on.  False positives are possible, false negatives are not.
+ * <p>
+ * The first hash of a key is the same murmur3 hash that {@link HashRangeQuery} and the compositeId router use.
+ */
+public class HashSetQuery extends Query {
+
+  /** the number of bits set for every key */
+  public static final int NUM_HASHES = 3;
+  /** the number of bits per key, which makes about 2% false positives */
+  public static final int BITS_PER_KEY = 10;
+
+  protected final String field;
+  protected final long[] bits;
+
+  public HashSetQuery(String field, long[] bits) {
+    if (bits.length == 0 || Integer.bitCount(bits.length) != 1) {
+      throw new IllegalArgumentException("The number of words of a hash set must be a power of two: " + bits.length);
+    }
+    this.field = field;
+    this.bits = bits;
+  }
+
+  /**
+   * Returns whether documents can be filtered on the field, which must have single valued, SORTED docValues, unlike
+   * numeric or multi valued fields
+   */
+  public static boolean supports(SchemaField field) {
+    return field.hasDocValues() && !field.multiValued()
+        && field.getType().getNumberType() == null && !(field.getType() instanceof EnumFieldType);
+  }
+
+  /** Creates the bits of an empty set that has room for the given number of keys */
+  public static long[] createBits(int numKeys) {
+    final long numBits = Math.max(64L, (long) numKeys * BITS_PER_KEY);
+    return new long[(int) (Long.highestOneBit(numBits - 1) << 1 >>> 6)];
+  }
+
+  /** Adds a key, the indexed form of a value, to the set */
+  public static void add(long[] bits, BytesRef key) {
+    final long mask = ((long) bits.length << 6) - 1;
+    final int h1 = Hash.murmurhash3_x86_32(key.bytes, key.offset, key.length, 0);
+    final int h2 = Hash.fmix32(h1) | 1;
+    for (int i = 0; i < NUM_HASHES; i++) {
+      final long bit = (h1 + (long) i * h2) & mask;
+      bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /** Returns whether the key might have been added to the set */
+  public static boolean mightContain(long[] bits, BytesRef key) {
+    final long mask = ((long) bits.length << 6) - 1;
+    final int h1 = Hash.murmurhash3_x86_32(key.bytes, key.offset, key.length, 0);
+    final int h2 = Hash.fmix32(h1) | 1;
+    for (int i = 0; i < NUM_HASHES; i++) {
+      final long bit = (h1 + (long) i * h2) & mask;
+      if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Encodes the bits of a set to send them as a parameter */
+  public static String encode(long[] bits) {
+    final ByteBuffer buffer = ByteBuffer.allocate(bits.length * Long.BYTES);
+    buffer.asLongBuffer().put(bits);
+    return Base64.getEncoder().encodeToString(buffer.array());
+  }
+
+  /** Decodes the bits of a set from {@link #encode} */
+  public static long[] decode(String encoded) {
+    final ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+    final long[] bits = new long[buffer.remaining() / Long.BYTES];
+    buffer.asLongBuffer().get(bits);
+    return bits;
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+    return new ConstantScoreWeight(this, boost) {
+
+      @Override
+      public boolean isCacheable(LeafReaderContext context) {
+        return DocValues.isCacheable(context, field);
+      }
+
+      @Override
+      public Scorer scorer(LeafReaderContext context) throws IOException {
+        final SortedDocValues docValues = DocValues.getSorted(context.reader(), field);
+        final int valueCount = docValues.getValueCount();
+        if (valueCount == 0) {
+          return null;
+        }
+        // values are hashed once per segment, no matter how many documents have them
+        final FixedBitSet checked = new FixedBitSet(valueCount);
+        final FixedBitSet matched = new FixedBitSet(valueCount);
+
+        TwoPhaseIterator iterator = new TwoPhaseIterator(docValues) {
+          @Override
+          public boolean matches() throws IOException {
+            final int ord = docValues.ordValue();
+            if (!checked.getAndSet(ord)) {
+              if (mightContain(bits, docValues.lookupOrd(ord))) {
+                matched.set(ord);
+              }
+            }
+            return matched.get(ord);
+          }
+
+          @Override
+          public float matchCost() {
+            return 10;
+          }
+        };
+
+        return new ConstantScoreScorer(this, boost, scoreMode, iterator);
+      }
+    };
+  }
+
+  @Override
+  public void visit(QueryVisitor visitor) {
+    visitor.visitLeaf(this);
+  }
+
+  @Override
+  public String toString(String field) {
+    return String.format(Locale.ROOT, "{!hash_set f=%s bits=%d}", this.field, bits.length << 6);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return sameClassAs(other) &&
+            equalsTo(getClass().cast(other));
+  }
+
+  private boolean equalsTo(HashSetQuery other) {
+    return Objects.equals(field, other.field) &&
+            Arrays.equals(bits, other.bits);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = classHash();
+    result = prime * result + Objects.hashCode(field);
+    result = prime * result + Arrays.hashCode(bits);
+    return result;
+  }
+}
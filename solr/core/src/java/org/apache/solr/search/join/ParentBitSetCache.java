@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.search.join.QueryBitSetProducer;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.search.SegmentCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Caches the parent bit sets of block joins per segment in the {@link SegmentCache} of the request's searcher, so
+ * that a new searcher only computes them for new segments, whether or not the {@link BlockJoinParentQParser#CACHE_NAME}
+ * cache is autowarmed.  Block join queries, the <code>[child]</code> transformer, and block join facet domains and
+ * <code>uniqueBlock</code> all share them.
+ * <p>
+ * Bit sets are computed like {@link QueryBitSetProducer} does, for the segment's core including deleted documents,
+ * and are only cached for queries whose results only depend on the segment (see {@link Weight#isCacheable}), which
+ * each producer checks once.  Producers also keep the bit sets they computed like {@link QueryBitSetProducer}, and
+ * only use those without a request (e.g. in threads computing facets in parallel), without a segment cache, or once
+ * the segment cache evicted them.
+ */
+public final class ParentBitSetCache {
+
+  private ParentBitSetCache() {}
+
+  /** @return a producer of the bit sets of the parents matching the query, which are cached per segment */
+  public static BitSetProducer newProducer(Query query) {
+    return new CachingBitSetProducer(query);
+  }
+
+  /** The segment cache key of the bit sets of a query */
+  private static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final Query query;
+
+    Key(Query query) {
+      this.query = query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && query.equals(((Key) o).query);
+    }
+
+    @Override
+    public int hashCode() {
+      return query.hashCode();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOfObject(query, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED);
+    }
+
+    @Override
+    public String toString() {
+      return "parentBitSet(" + query + ")";
+    }
+  }
+
+  /** Cached for segments without parents, since the cache doesn't hold nulls */
+  private static final Object NO_PARENTS = new Object();
+
+  /**
+   * A {@link QueryBitSetProducer} that looks bit sets up in the segment cache first.  Equal to producers of equal
+   * queries, like its super class.
+   */
+  static final class CachingBitSetProducer extends QueryBitSetProducer {
+    private final Key key;
+    private volatile Boolean cacheable; // checked once, on the first segment that isn't cached
+
+    CachingBitSetProducer(Query query) {
+      super(query);
+      this.key = new Key(query);
+    }
+
+    @Override
+    public BitSet getBitSet(LeafReaderContext context) throws IOException {
+      final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+      final SolrIndexSearcher searcher = requestInfo == null ? null : requestInfo.getReq().getSearcher();
+      if (Boolean.FALSE.equals(cacheable) || searcher == null || searcher.getSegmentCache() == null) {
+        return super.getBitSet(context);
+      }
+      final Object bits = SegmentCache.computeIfAbsent(searcher, context.reader().getCoreCacheHelper(), key, () -> {
+        if (cacheable == null) {
+          cacheable = isCacheable(context);
+        }
+        if (!cacheable) {
+          return null;
+        }
+        // the producer keeps the same bit set, so that it isn't rebuilt on each call once the cache evicts it
+        final BitSet computed = super.getBitSet(context);
+        return computed == null ? NO_PARENTS : computed;
+      });
+      if (bits == null) {
+        return super.getBitSet(context); // not cacheable
+      }
+      return bits == NO_PARENTS ? null : (BitSet) bits;
+    }
+
+    private boolean isCacheable(LeafReaderContext context) throws IOException {
+      final IndexSearcher searcher = newSearcher(context);
+      final Weight weight = searcher.createWeight(searcher.rewrite(getQuery()), ScoreMode.COMPLETE_NO_SCORES, 1);
+      for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+        if (!weight.isCacheable(leaf)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static IndexSearcher newSearcher(LeafReaderContext context) {
+      final IndexSearcher searcher = new IndexSearcher(ReaderUtil.getTopLevelContext(context));
+      searcher.setQueryCache(null);
+      return searcher;
+    }
+  }
+}
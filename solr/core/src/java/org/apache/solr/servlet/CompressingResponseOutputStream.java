@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.solr.common.util.LZ4Block;
+import org.apache.solr.common.util.LZ4BlockOutputStream;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.SolrMetricManager;
+
+/**
+ * Compresses a response body with {@link LZ4Block LZ4} when the client advertised support for it in
+ * {@code Accept-Encoding} and the body turns out to be larger than {@link #MIN_SIZE_PROP}. The first bytes are
+ * buffered until that threshold is crossed, so small responses are sent unchanged and the {@code Content-Encoding}
+ * header can still be set before the response is committed.
+ * <p>
+ * The number of compressed responses and the bytes before and after compression are tracked in the node
+ * registry under {@code CONTAINER.compression.lz4}.
+ */
+class CompressingResponseOutputStream extends OutputStream {
+
+  /** Minimum size in bytes of a response body to be compressed, a negative value disables compression */
+  public static final String MIN_SIZE_PROP = "solr.responseCompression.minSize";
+  public static final int DEFAULT_MIN_SIZE = 16 * 1024;
+
+  private final HttpServletResponse response;
+  private final CoreContainer cores;
+  private final byte[] buf;
+  private int count;
+  private LZ4BlockOutputStream compressed;
+  private OutputStream out;
+
+  private CompressingResponseOutputStream(HttpServletResponse response, CoreContainer cores, int minSize) {
+    this.response = response;
+    this.cores = cores;
+    this.buf = new byte[minSize];
+  }
+
+  /**
+   * @return a stream to write the response body to, or null if the client did not ask for compression or it is
+   * disabled on this node
+   */
+  static CompressingResponseOutputStream forRequest(HttpServletRequest req, HttpServletResponse response,
+                                                    CoreContainer cores) {
+    if (!acceptsLZ4(req)) {
+      return null;
+    }
+    int minSize = Integer.getInteger(MIN_SIZE_PROP, DEFAULT_MIN_SIZE);
+    if (minSize < 0) {
+      return null;
+    }
+    return new CompressingResponseOutputStream(response, cores, minSize);
+  }
+
+  static boolean acceptsLZ4(HttpServletRequest req) {
+    Enumeration<String> values = req.getHeaders("Accept-Encoding");
+    if (values == null) {
+      return false;
+    }
+    while (values.hasMoreElements()) {
+      for (String coding : values.nextElement().split(",")) {
+        int params = coding.indexOf(';');
+        if (params >= 0) {
+          coding = coding.substring(0, params);
+        }
+        if (LZ4Block.CONTENT_ENCODING.equalsIgnoreCase(coding.trim())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (out != null) {
+      out.write(b);
+    } else if (count < buf.length) {
+      buf[count++] = (byte) b;
+    } else {
+      startCompression();
+      out.write(b);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (out != null) {
+      out.write(b, off, len);
+    } else if (len <= buf.length - count) {
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
+    } else {
+      startCompression();
+      out.write(b, off, len);
+    }
+  }
+
+  private void startCompression() throws IOException {
+    response.setHeader("Content-Encoding", LZ4Block.CONTENT_ENCODING);
+    response.addHeader("Vary", "Accept-Encoding");
+    compressed = new LZ4BlockOutputStream(response.getOutputStream());
+    out = compressed;
+    out.write(buf, 0, count);
+  }
+
+  /** Nothing is flushed until {@link #finish()}, so that the decision to compress is not forced early */
+  @Override
+  public void flush() throws IOException {
+  }
+
+  /** Completes the response body, which is sent uncompressed if it never exceeded the threshold. */
+  void finish() throws IOException {
+    if (compressed == null) {
+      response.getOutputStream().write(buf, 0, count);
+      return;
+    }
+    compressed.finish();
+    SolrMetricManager metricManager = cores == null ? null : cores.getMetricManager();
+    if (metricManager != null) {
+      String registry = SolrMetricManager.getRegistryName(SolrInfoBean.Group.node);
+      metricManager.counter(null, registry, "responses", SolrInfoBean.Category.CONTAINER.toString(), "compression", "lz4").inc();
+      metricManager.counter(null, registry, "bytesIn", SolrInfoBean.Category.CONTAINER.toString(), "compression", "lz4").inc(compressed.getBytesIn());
+      metricManager.counter(null, registry, "bytesOut", SolrInfoBean.Category.CONTAINER.toString(), "compression", "lz4").inc(compressed.getBytesOut());
+    }
+  }
+}
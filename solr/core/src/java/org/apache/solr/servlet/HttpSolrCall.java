@@ -920,8 +920,10 @@ public class HttpSolrCall {
       }
 
       if (Method.HEAD != reqMethod) {
-        OutputStream out = response.getOutputStream();
+        CompressingResponseOutputStream compressing = CompressingResponseOutputStream.forRequest(req, response, cores);
+        OutputStream out = compressing != null ? compressing : response.getOutputStream();
         QueryResponseWriterUtil.writeQueryResponse(out, responseWriter, solrReq, solrRsp, ct);
+        if (compressing != null) compressing.finish();
       }
       //else http HEAD request, nothing to write out, waited this long just to get ContentType
     } catch (EOFException e) {
@@ -61,13 +61,15 @@ public class UpdateShardHandler implements SolrInfoBean {
    * and then undetected shard inconsistency as a result.
    * Therefore this thread pool is left unbounded. See SOLR-8205
    */
-  private ExecutorService updateExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(0, Integer.MAX_VALUE,
-      60L, TimeUnit.SECONDS,
-      new SynchronousQueue<>(),
-      new SolrNamedThreadFactory("updateExecutor"),
-      // the Runnable added to this executor handles all exceptions so we disable stack trace collection as an optimization
-      // see SOLR-11880 for more details
-      false);
+  private ExecutorService updateExecutor = ExecutorUtil.isVirtualThreadsEnabled() ?
+      ExecutorUtil.newMDCAwareVirtualThreadPerTaskExecutor("updateExecutor", false) :
+      new ExecutorUtil.MDCAwareThreadPoolExecutor(0, Integer.MAX_VALUE,
+          60L, TimeUnit.SECONDS,
+          new SynchronousQueue<>(),
+          new SolrNamedThreadFactory("updateExecutor"),
+          // the Runnable added to this executor handles all exceptions so we disable stack trace collection as an optimization
+          // see SOLR-11880 for more details
+          false);
   
   private ExecutorService recoveryExecutor;
   
@@ -136,7 +138,10 @@ public class UpdateShardHandler implements SolrInfoBean {
     queryParams.add(DistributingUpdateProcessorFactory.DISTRIB_UPDATE_PARAM);
     updateOnlyClient.setQueryParams(queryParams);
 
-    ThreadFactory recoveryThreadFactory = new SolrNamedThreadFactory("recoveryExecutor");
+    // a bounded recovery pool stays bounded with virtual threads, we only swap the kind of thread it runs on
+    ThreadFactory recoveryThreadFactory = ExecutorUtil.isVirtualThreadsEnabled() ?
+        ExecutorUtil.newVirtualThreadFactory("recoveryExecutor") :
+        new SolrNamedThreadFactory("recoveryExecutor");
     if (cfg != null && cfg.getMaxRecoveryThreads() > 0) {
       if (log.isDebugEnabled()) {
         log.debug("Creating recoveryExecutor with pool size {}", cfg.getMaxRecoveryThreads());
@@ -0,0 +1,806 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ExpandParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.StatsParams;
+import org.apache.solr.common.util.Base64;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrEventListener;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.facet.FacetRequest;
+import org.apache.solr.search.facet.HLLAgg;
+import org.apache.solr.search.facet.RollupFacets;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.UpdateCommand;
+import org.apache.solr.update.processor.DistributedUpdateProcessor.DistribPhase;
+import org.apache.solr.util.DateMathParser;
+import org.apache.solr.util.hll.HLL;
+import org.apache.solr.util.plugin.SolrCoreAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.solr.common.SolrException.ErrorCode.BAD_REQUEST;
+import static org.apache.solr.common.SolrException.ErrorCode.SERVER_ERROR;
+import static org.apache.solr.update.processor.DistributingUpdateProcessorFactory.DISTRIB_UPDATE_PARAM;
+
+/**
+ * <p>
+ * Update Processor Factory that maintains a pre-aggregated "rollup" of the documents it sees in a companion
+ * collection, so that time-series facets over long periods can be computed from a few summary documents instead
+ * of every raw document.  Clients can send facet requests to the companion collection themselves, as in the
+ * example below, and with <code>rewriteFacets</code> enabled, compatible JSON facet requests to this collection
+ * are answered from the companion collection transparently (see {@link RollupFacets}).
+ * </p>
+ *
+ * <p>
+ * Every added document is assigned to an interval by rounding its <code>timeField</code> value, and to a
+ * combination of its <code>dimensionFields</code> values.  For each (interval, dimensions) combination the
+ * factory accumulates a document count, the sums of the <code>sumFields</code>, and a {@link HLL} sketch of the
+ * values of the <code>hllFields</code>.  The accumulated rollups are sent to the companion collection in the
+ * background whenever this core commits (hard or soft), when more than <code>maxPendingRollups</code>
+ * combinations are pending, and when the core is closed.
+ * </p>
+ *
+ * <p>
+ * Each core keeps one rollup document per combination, with an id derived from the combination and the core, and
+ * each flush adds its rollups to the values of those documents.  Cores only write their own documents, with
+ * optimistic concurrency, so the companion collection holds at most one document per combination and per core
+ * that receives updates, however often the cores commit.  All of the rolled up values are additive, so facets
+ * over the companion collection add the documents of different cores up.  A rollup document holds:
+ * </p>
+ * <ul>
+ *  <li>the start of the interval, in <code>timeField</code></li>
+ *  <li>the value of each dimension, in the field of the same name (omitted for documents without a value)</li>
+ *  <li>the number of documents, in <code>countField</code></li>
+ *  <li>the sum of each field <code>f</code> of <code>sumFields</code>, in <code>f_sum_d</code></li>
+ *  <li>a base64 encoded {@link HLL} of each field <code>f</code> of <code>hllFields</code>, in
+ *      <code>f_hll_s</code>, to be read with the <code>hllunion(f_hll_s)</code> aggregation.  Values are hashed
+ *      like <code>hll(f)</code> hashes them (see {@link HLLAgg#hash}).</li>
+ * </ul>
+ *
+ * <p>
+ * So a dashboard facet over the companion collection such as
+ * <code>{type:range, field:ts, gap:"+1DAY", facet:{n:"sum(count_l)", bytes:"sum(bytes_sum_d)",
+ * users:"hllunion(user_hll_s)"}}</code> answers what
+ * <code>{..., facet:{n:"sum(1)", bytes:"sum(bytes)", users:"hll(user)"}}</code> would over the raw collection,
+ * provided the gap is a multiple of the rollup interval and the query only filters on dimensions.
+ * </p>
+ *
+ * <p>
+ * Documents with more than one value in a dimension field contribute to the rollup of every combination of their
+ * values.  The rollup only ever adds to the rolled up values (an HLL can't forget a value), so the collection must
+ * be append-only:
+ * </p>
+ * <ul>
+ *  <li>adding a document with the id of an existing document, including an atomic update of it, fails, as does
+ *      any delete; old data is meant to be dropped with its whole collection, as time routed aliases do;</li>
+ *  <li>documents without a <code>timeField</code> value are not rolled up;</li>
+ *  <li>pending rollups are only kept in memory, not in the update log, so the rollups of the documents added
+ *      since the last successful flush are lost when a node fails.</li>
+ * </ul>
+ * <p>
+ * This processor must be placed after the <code>DistributedUpdateProcessorFactory</code>: each document is
+ * rolled up by the leader of its shard, which checks that it is new while it holds the lock of its id.  The
+ * collection needs an update log for that check.
+ * </p>
+ *
+ * <p>
+ * The following configuration options are supported:
+ * </p>
+ * <ul>
+ *  <li><code>rollupCollection</code> - The collection (or core, in standalone mode) to add rollup documents to
+ *      (mandatory).  Its uniqueKey field must be <code>id</code>, and it needs an update log for real time
+ *      gets and optimistic concurrency.</li>
+ *  <li><code>timeField</code> - The date field to roll up on (mandatory).</li>
+ *  <li><code>interval</code> - A {@linkplain DateMathParser date math} rounding expression selecting the interval,
+ *      defaulting to <code>/HOUR</code>.</li>
+ *  <li><code>dimensionFields</code>, <code>sumFields</code>, <code>hllFields</code> - Field names, each
+ *      optional.</li>
+ *  <li><code>countField</code> - The rollup field holding the document count, defaulting to
+ *      <code>count_l</code>.</li>
+ *  <li><code>maxPendingRollups</code> - The number of pending combinations that triggers a flush between commits,
+ *      defaulting to 10000.</li>
+ *  <li><code>rewriteFacets</code> - Whether to answer compatible JSON facet requests to this collection from
+ *      the companion collection, defaulting to <code>false</code>.  Such answers don't include the documents
+ *      that were added since the last flush and commit of the companion collection.</li>
+ * </ul>
+ *
+ * <pre class="prettyprint">
+ * &lt;processor class="solr.processor.RollupUpdateProcessorFactory"&gt;
+ *   &lt;str name="rollupCollection"&gt;events_rollup&lt;/str&gt;
+ *   &lt;str name="timeField"&gt;ts&lt;/str&gt;
+ *   &lt;str name="interval"&gt;/HOUR&lt;/str&gt;
+ *   &lt;arr name="dimensionFields"&gt;&lt;str&gt;host&lt;/str&gt;&lt;str&gt;status&lt;/str&gt;&lt;/arr&gt;
+ *   &lt;arr name="sumFields"&gt;&lt;str&gt;bytes&lt;/str&gt;&lt;/arr&gt;
+ *   &lt;arr name="hllFields"&gt;&lt;str&gt;user&lt;/str&gt;&lt;/arr&gt;
+ *   &lt;bool name="rewriteFacets"&gt;true&lt;/bool&gt;
+ * &lt;/processor&gt;</pre>
+ */
+public final class RollupUpdateProcessorFactory
+  extends UpdateRequestProcessorFactory
+  implements SolrCoreAware {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String ROLLUP_COLLECTION_CONF = "rollupCollection";
+  private static final String TIME_FIELD_CONF = "timeField";
+  private static final String INTERVAL_CONF = "interval";
+  private static final String DIMENSION_FIELDS_CONF = "dimensionFields";
+  private static final String SUM_FIELDS_CONF = "sumFields";
+  private static final String HLL_FIELDS_CONF = "hllFields";
+  private static final String COUNT_FIELD_CONF = "countField";
+  private static final String MAX_PENDING_CONF = "maxPendingRollups";
+  private static final String REWRITE_FACETS_CONF = "rewriteFacets";
+
+  static final String ID_FIELD = "id";
+  static final String SUM_SUFFIX = "_sum_d";
+  static final String HLL_SUFFIX = "_hll_s";
+
+  private static final HLLAgg.HLLFactory HLL_FACTORY = new HLLAgg.HLLFactory();
+
+  private String rollupCollection;
+  private String timeField;
+  private String interval = "/HOUR";
+  private String[] dimensionFields;
+  private String[] sumFields;
+  private String[] hllFields;
+  private String countField = "count_l";
+  private int maxPendingRollups = 10000;
+  private RollupFacets rollupFacets;
+
+  private SolrCore core;
+  private String writerId;
+  private ExecutorService flushExecutor;
+  private SolrClient client;
+
+  private final ConcurrentHashMap<RollupKey, Rollup> pending = new ConcurrentHashMap<>();
+  /** the rollups of a failed flush, which may or may not have been added; only changed by {@link #flush()} */
+  private volatile Map<RollupKey, Unconfirmed> unconfirmed = Collections.emptyMap();
+  private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+  private SolrException confErr(final String msg) {
+    return confErr(msg, null);
+  }
+  private SolrException confErr(final String msg, Exception root) {
+    return new SolrException(SERVER_ERROR, this.getClass().getSimpleName()+": "+msg, root);
+  }
+  private String removeArgStr(final NamedList<?> args, final String arg, final String def) {
+    Object tmp = args.remove(arg);
+    if (null == tmp) return def;
+    if (tmp instanceof String) return tmp.toString();
+    throw confErr(arg + " must be a <str>");
+  }
+
+  @Override
+  public void init(NamedList<?> args) {
+    rollupCollection = removeArgStr(args, ROLLUP_COLLECTION_CONF, null);
+    if (null == rollupCollection) {
+      throw confErr(ROLLUP_COLLECTION_CONF + " must be configured");
+    }
+    timeField = removeArgStr(args, TIME_FIELD_CONF, null);
+    if (null == timeField) {
+      throw confErr(TIME_FIELD_CONF + " must be configured");
+    }
+    interval = removeArgStr(args, INTERVAL_CONF, interval);
+    try {
+      new DateMathParser(DateMathParser.UTC).parseMath(interval);
+    } catch (ParseException e) {
+      throw confErr(INTERVAL_CONF + " is not a date math expression: " + interval, e);
+    }
+    countField = removeArgStr(args, COUNT_FIELD_CONF, countField);
+
+    dimensionFields = args.removeConfigArgs(DIMENSION_FIELDS_CONF).toArray(new String[0]);
+    sumFields = args.removeConfigArgs(SUM_FIELDS_CONF).toArray(new String[0]);
+    hllFields = args.removeConfigArgs(HLL_FIELDS_CONF).toArray(new String[0]);
+
+    Object tmp = args.remove(MAX_PENDING_CONF);
+    if (null != tmp) {
+      if (! (tmp instanceof Number) || ((Number) tmp).intValue() <= 0) {
+        throw confErr(MAX_PENDING_CONF + " must be a positive <int>");
+      }
+      maxPendingRollups = ((Number) tmp).intValue();
+    }
+
+    tmp = args.remove(REWRITE_FACETS_CONF);
+    if (null != tmp) {
+      if (! (tmp instanceof Boolean)) {
+        throw confErr(REWRITE_FACETS_CONF + " must be a <bool>");
+      }
+      if ((Boolean) tmp) {
+        rollupFacets = new RollupFacets(timeField, interval, Arrays.asList(dimensionFields), Arrays.asList(sumFields),
+            SUM_SUFFIX, Arrays.asList(hllFields), HLL_SUFFIX, countField);
+      }
+    }
+
+    super.init(args);
+  }
+
+  @Override
+  public void inform(SolrCore core) {
+    this.core = core;
+
+    IndexSchema schema = core.getLatestSchema();
+    for (String field : concat(new String[] {timeField}, dimensionFields, sumFields, hllFields)) {
+      if (null == schema.getFieldOrNull(field)) {
+        throw confErr("field does not exist in schema: " + field);
+      }
+    }
+
+    String collection = core.getCoreContainer().isZooKeeperAware()
+        ? core.getCoreDescriptor().getCollectionName() : core.getName();
+    if (rollupCollection.equals(collection)) {
+      throw confErr(ROLLUP_COLLECTION_CONF + " must not be the collection being rolled up: " + rollupCollection);
+    }
+    if (null == core.getUpdateHandler().getUpdateLog()) {
+      throw confErr("an update log is needed to tell new documents from overwritten ones");
+    }
+    writerId = core.getCoreContainer().isZooKeeperAware()
+        ? core.getCoreDescriptor().getCloudDescriptor().getCoreNodeName() : core.getName();
+
+    flushExecutor = ExecutorUtil.newMDCAwareSingleThreadExecutor(new SolrNamedThreadFactory("rollupFlush"));
+
+    // roll up as segments are committed, including auto commits that never go through an update chain
+    SolrEventListener onCommit = new SolrEventListener() {
+      @Override
+      public void init(NamedList<?> args) {}
+      @Override
+      public void postCommit() {
+        scheduleFlush();
+      }
+      @Override
+      public void postSoftCommit() {
+        scheduleFlush();
+      }
+      @Override
+      public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {}
+    };
+    core.getUpdateHandler().registerCommitCallback(onCommit);
+    core.getUpdateHandler().registerSoftCommitCallback(onCommit);
+
+    core.addCloseHook(new CloseHook() {
+      public void preClose(SolrCore core) {
+        ExecutorUtil.shutdownAndAwaitTermination(flushExecutor);
+        // send what is left while the rest of the node is still up
+        flush();
+      }
+      public void postClose(SolrCore core) {
+        client = null;
+      }
+    });
+  }
+
+  @Override
+  public UpdateRequestProcessor getInstance(SolrQueryRequest req,
+                                            SolrQueryResponse rsp,
+                                            UpdateRequestProcessor next) {
+    return new RollupUpdateProcessor(req, next);
+  }
+
+  /**
+   * Answers the JSON facets of a request from the companion collection, if the default update chain of the core
+   * rolls up with <code>rewriteFacets</code> enabled and the facets and the domain only use what is rolled up.
+   *
+   * @return the facets, or null if they have to be computed from the index
+   */
+  public static NamedList<Object> getRolledUpFacets(ResponseBuilder rb, FacetRequest facetRequest) {
+    if (! rb.req.getParams().getBool(RollupFacets.ROLLUP_PARAM, true)) {
+      return null;
+    }
+    for (UpdateRequestProcessorFactory factory : rb.req.getCore().getUpdateProcessingChain(null).getProcessors()) {
+      if (factory instanceof RollupUpdateProcessorFactory && null != ((RollupUpdateProcessorFactory) factory).rollupFacets) {
+        return ((RollupUpdateProcessorFactory) factory).facetFromRollup(rb, facetRequest);
+      }
+    }
+    return null;
+  }
+
+  private NamedList<Object> facetFromRollup(ResponseBuilder rb, FacetRequest facetRequest) {
+    // date math in the request has to be resolved the same way by the companion collection
+    final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    final Date now = requestInfo == null ? new Date() : requestInfo.getNOW();
+    final Map<String, Object> rolledUpFacet =
+        rollupFacets.rewrite(rb.req.getSchema(), rb.getQuery(), rb.getFilters(), facetRequest, now);
+    if (null == rolledUpFacet) {
+      return null;
+    }
+
+    final ModifiableSolrParams params = new ModifiableSolrParams(rb.req.getParams());
+    for (String param : new String[] {CommonParams.START, CommonParams.SORT, CommonParams.FL, CommonParams.JSON,
+        CursorMarkParams.CURSOR_MARK_PARAM, CommonParams.RQ, CommonParams.DEBUG, CommonParams.DEBUG_QUERY,
+        CommonParams.QT, ShardParams.SHARDS, ShardParams._ROUTE_, "collection"}) {
+      params.remove(param);
+    }
+    for (String component : new String[] {FacetParams.FACET, GroupParams.GROUP, HighlightParams.HIGHLIGHT,
+        StatsParams.STATS, ExpandParams.EXPAND, "spellcheck", "mlt"}) {
+      params.set(component, false);
+    }
+    params.set(CommonParams.ROWS, 0);
+    params.set(CommonParams.NOW, Long.toString(now.getTime()));
+    params.set(RollupFacets.ROLLUP_PARAM, false);
+    params.set("json.facet", Utils.toJSONString(rolledUpFacet));
+
+    try {
+      @SuppressWarnings({"unchecked"})
+      NamedList<Object> facets = (NamedList<Object>) getClient().query(rollupCollection, params, SolrRequest.METHOD.POST)
+          .getResponse().get("facets");
+      if (null == facets) {
+        return null;
+      }
+      RollupFacets.restoreCounts(facets);
+      return facets;
+    } catch (IOException | SolrServerException | RuntimeException e) {
+      log.warn("Failed to facet on the rollup in {}, faceting on the index instead", rollupCollection, e);
+      return null;
+    }
+  }
+
+  private final class RollupUpdateProcessor extends UpdateRequestProcessor {
+    private final DistribPhase phase;
+
+    RollupUpdateProcessor(SolrQueryRequest req, UpdateRequestProcessor next) {
+      super(next);
+      for (UpdateRequestProcessor proc = next; proc != null; proc = proc.next) {
+        if (proc instanceof DistributedUpdateProcessor) {
+          throw new SolrException(SERVER_ERROR, "RollupUpdateProcessor must follow DistributedUpdateProcessor");
+        }
+      }
+      phase = DistribPhase.parseParam(req.getParams().get(DISTRIB_UPDATE_PARAM));
+    }
+
+    /** Only the leader rolls updates up, and not when replaying them */
+    private boolean isLeader(UpdateCommand cmd) {
+      if ((cmd.getFlags() & (UpdateCommand.REPLAY | UpdateCommand.PEER_SYNC)) != 0) {
+        return false;
+      }
+      return phase != DistribPhase.FROMLEADER;
+    }
+
+    @Override
+    public void processAdd(AddUpdateCommand cmd) throws IOException {
+      if (! isLeader(cmd)) {
+        super.processAdd(cmd);
+        return;
+      }
+      // the leader holds the lock of the id here, so the document can't be added concurrently; this includes
+      // atomic updates, which have been merged into the whole document by now
+      if (cmd.overwrite && null != cmd.getIndexedId()) {
+        Long version = cmd.getReq().getCore().getUpdateHandler().getUpdateLog().lookupVersion(cmd.getIndexedId());
+        if (null != version && version > 0) {
+          throw new SolrException(BAD_REQUEST, "Document " + cmd.getPrintableId() + " already exists, and can't be"
+              + " replaced since it is rolled up to " + rollupCollection);
+        }
+      }
+      super.processAdd(cmd);
+      // only once the document made it into the index
+      accumulate(cmd.getSolrInputDocument(), cmd.getReq().getSchema());
+    }
+
+    @Override
+    public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+      if (isLeader(cmd)) {
+        throw new SolrException(BAD_REQUEST, "Documents can't be deleted since they are rolled up to "
+            + rollupCollection);
+      }
+      super.processDelete(cmd);
+    }
+  }
+
+  /** The interval and dimension values a rollup is kept for */
+  static final class RollupKey {
+    final long intervalStart;
+    final List<String> dimensions;
+
+    RollupKey(long intervalStart, List<String> dimensions) {
+      this.intervalStart = intervalStart;
+      this.dimensions = dimensions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof RollupKey)) return false;
+      RollupKey other = (RollupKey) o;
+      return intervalStart == other.intervalStart && dimensions.equals(other.dimensions);
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(intervalStart) * 31 + dimensions.hashCode();
+    }
+  }
+
+  /** The additive values rolled up for one {@link RollupKey} */
+  static final class Rollup {
+    long count;
+    final double[] sums;
+    final HLL[] hlls;
+
+    Rollup(int numSums, int numHlls) {
+      sums = new double[numSums];
+      hlls = new HLL[numHlls];
+      for (int i = 0; i < numHlls; i++) {
+        hlls[i] = HLL_FACTORY.getHLL();
+      }
+    }
+
+    Rollup add(Rollup other) {
+      count += other.count;
+      for (int i = 0; i < sums.length; i++) {
+        sums[i] += other.sums[i];
+      }
+      for (int i = 0; i < hlls.length; i++) {
+        hlls[i].union(other.hlls[i]);
+      }
+      return this;
+    }
+  }
+
+  /** Rollups sent to the rollup document of a key, which had the given version before */
+  private static final class Unconfirmed {
+    final Rollup rollup;
+    final long version;
+
+    Unconfirmed(Rollup rollup, long version) {
+      this.rollup = rollup;
+      this.version = version;
+    }
+  }
+
+  private void accumulate(SolrInputDocument doc, IndexSchema schema) {
+    Object timeVal = doc.getFieldValue(timeField);
+    if (null == timeVal) {
+      return;
+    }
+    final long intervalStart = roundTime(toNativeValue(schema, timeField, timeVal));
+
+    final double[] sums = new double[sumFields.length];
+    for (int i = 0; i < sumFields.length; i++) {
+      Collection<Object> vals = doc.getFieldValues(sumFields[i]);
+      if (vals != null) {
+        for (Object val : vals) {
+          sums[i] += toDouble(sumFields[i], toNativeValue(schema, sumFields[i], val));
+        }
+      }
+    }
+
+    final long[][] hashes = new long[hllFields.length][];
+    for (int i = 0; i < hllFields.length; i++) {
+      Collection<Object> vals = doc.getFieldValues(hllFields[i]);
+      hashes[i] = new long[vals == null ? 0 : vals.size()];
+      int j = 0;
+      if (vals != null) {
+        for (Object val : vals) {
+          hashes[i][j++] = HLLAgg.hash(schema.getField(hllFields[i]), toNativeValue(schema, hllFields[i], val));
+        }
+      }
+    }
+
+    for (List<String> dimensions : dimensionCombinations(doc)) {
+      pending.compute(new RollupKey(intervalStart, dimensions), (key, rollup) -> {
+        if (rollup == null) {
+          rollup = new Rollup(sums.length, hashes.length);
+        }
+        rollup.count++;
+        for (int i = 0; i < sums.length; i++) {
+          rollup.sums[i] += sums[i];
+        }
+        for (int i = 0; i < hashes.length; i++) {
+          for (long hash : hashes[i]) {
+            rollup.hlls[i].addRaw(hash);
+          }
+        }
+        return rollup;
+      });
+    }
+
+    if (pending.size() >= maxPendingRollups) {
+      scheduleFlush();
+    }
+  }
+
+  /** Every combination of the dimension values of the document, with null for a missing dimension */
+  List<List<String>> dimensionCombinations(SolrInputDocument doc) {
+    List<List<String>> combinations = Collections.singletonList(Collections.emptyList());
+    for (String dimensionField : dimensionFields) {
+      Collection<Object> vals = doc.getFieldValues(dimensionField);
+      Collection<Object> dimensionVals = vals == null || vals.isEmpty() ? Collections.singletonList(null) : vals;
+      List<List<String>> expanded = new ArrayList<>(combinations.size() * dimensionVals.size());
+      for (List<String> combination : combinations) {
+        for (Object val : dimensionVals) {
+          List<String> next = new ArrayList<>(combination.size() + 1);
+          next.addAll(combination);
+          next.add(val == null ? null : val.toString());
+          expanded.add(next);
+        }
+      }
+      combinations = expanded;
+    }
+    return combinations;
+  }
+
+  private static Object toNativeValue(IndexSchema schema, String field, Object val) {
+    SchemaField sf = schema.getFieldOrNull(field);
+    return sf == null ? val : sf.getType().toNativeType(val);
+  }
+
+  private long roundTime(Object val) {
+    final Date time;
+    if (val instanceof Date) {
+      time = (Date) val;
+    } else if (val instanceof Instant) {
+      time = Date.from((Instant) val);
+    } else {
+      time = DateMathParser.parseMath(null, val.toString());
+    }
+    try {
+      return new DateMathParser(time, DateMathParser.UTC).parseMath(interval).getTime();
+    } catch (ParseException e) {
+      // validated in init
+      throw new SolrException(SERVER_ERROR, e);
+    }
+  }
+
+  private static double toDouble(String field, Object val) {
+    if (val instanceof Number) {
+      return ((Number) val).doubleValue();
+    }
+    try {
+      return Double.parseDouble(val.toString());
+    } catch (NumberFormatException e) {
+      throw new SolrException(BAD_REQUEST, "Can't roll up the sum of non-numeric field " + field + ": " + val, e);
+    }
+  }
+
+  private void scheduleFlush() {
+    if (pending.isEmpty() && unconfirmed.isEmpty()) {
+      return;
+    }
+    if (flushQueued.compareAndSet(false, true)) {
+      try {
+        flushExecutor.submit(() -> {
+          flushQueued.set(false);
+          flush();
+        });
+      } catch (RejectedExecutionException e) {
+        // the core is closing, the close hook does the last flush
+      }
+    }
+  }
+
+  /**
+   * Adds all pending rollups to the rollup documents of this core; rollups that could not be added are kept for
+   * next time.  Since only this core writes its rollup documents, the version of a document tells whether a
+   * failed flush was added to it after all.
+   */
+  synchronized void flush() {
+    final Map<RollupKey, Rollup> flushing = new HashMap<>();
+    for (RollupKey key : pending.keySet()) {
+      // concurrent adds to a removed key start a new rollup, which is flushed next time
+      Rollup rollup = pending.remove(key);
+      if (rollup != null) {
+        flushing.put(key, rollup);
+      }
+    }
+    final Map<String, RollupKey> keysById = new LinkedHashMap<>();
+    for (RollupKey key : flushing.keySet()) {
+      keysById.put(toId(key), key);
+    }
+    for (RollupKey key : unconfirmed.keySet()) {
+      keysById.putIfAbsent(toId(key), key);
+    }
+    if (keysById.isEmpty()) {
+      return;
+    }
+
+    final Map<RollupKey, Unconfirmed> sending = new HashMap<>();
+    final List<SolrInputDocument> docs = new ArrayList<>();
+    try {
+      addStoredValues(keysById, flushing, sending, docs);
+    } catch (IOException | SolrServerException | RuntimeException e) {
+      log.error("Failed to get {} rollup documents from {}, will retry on the next commit",
+          keysById.size(), rollupCollection, e);
+      flushing.forEach((key, rollup) -> pending.merge(key, rollup, Rollup::add));
+      return;
+    }
+
+    // until the add succeeds, it isn't known which of the documents were added
+    unconfirmed = sending;
+    try {
+      getClient().add(rollupCollection, docs);
+      unconfirmed = Collections.emptyMap();
+      log.debug("Added {} rollup documents to {}", docs.size(), rollupCollection);
+    } catch (IOException | SolrServerException | RuntimeException e) {
+      log.error("Failed to add {} rollup documents to {}, will retry on the next commit",
+          docs.size(), rollupCollection, e);
+    }
+  }
+
+  /**
+   * Reads the rollup documents of the keys, and creates the documents to replace them with, which add the rollups
+   * that are flushing and the unconfirmed rollups that weren't added yet
+   */
+  private void addStoredValues(Map<String, RollupKey> keysById, Map<RollupKey, Rollup> flushing,
+                               Map<RollupKey, Unconfirmed> sending, List<SolrInputDocument> docs)
+      throws IOException, SolrServerException {
+    final Map<String, SolrDocument> stored = new HashMap<>();
+    for (SolrDocument doc : getClient().getById(rollupCollection, keysById.keySet())) {
+      stored.put(doc.getFieldValue(ID_FIELD).toString(), doc);
+    }
+
+    for (Map.Entry<String, RollupKey> entry : keysById.entrySet()) {
+      final RollupKey key = entry.getValue();
+      final SolrDocument storedDoc = stored.get(entry.getKey());
+      final long version = storedDoc == null
+          ? -1 : ((Number) storedDoc.getFieldValue(CommonParams.VERSION_FIELD)).longValue();
+
+      final Rollup added = newRollup();
+      final Unconfirmed previous = unconfirmed.get(key);
+      if (previous != null && previous.version == version) {
+        // the failed flush didn't change the document
+        added.add(previous.rollup);
+      }
+      final Rollup rollup = flushing.get(key);
+      if (rollup != null) {
+        added.add(rollup);
+      }
+      sending.put(key, new Unconfirmed(added, version));
+
+      final Rollup total = newRollup().add(added);
+      if (storedDoc != null) {
+        total.add(fromDocument(storedDoc));
+      }
+      final SolrInputDocument doc = toDocument(entry.getKey(), key, total);
+      // fails if another flush changed the document in the meantime, -1 if it must not exist yet
+      doc.setField(CommonParams.VERSION_FIELD, version);
+      docs.add(doc);
+    }
+  }
+
+  Rollup newRollup() {
+    return new Rollup(sumFields.length, hllFields.length);
+  }
+
+  /**
+   * The id of the rollup document of the key written by this core: the core, and a hash of the interval and the
+   * dimension values
+   */
+  String toId(RollupKey key) {
+    final StringBuilder sb = new StringBuilder().append(key.intervalStart);
+    for (String dimension : key.dimensions) {
+      // length prefixed, so that values can't run into each other
+      if (dimension == null) {
+        sb.append("|-");
+      } else {
+        sb.append('|').append(dimension.length()).append(':').append(dimension);
+      }
+    }
+    final byte[] bytes = sb.toString().getBytes(UTF_8);
+    final Hash.LongPair hash = new Hash.LongPair();
+    Hash.murmurhash3_x64_128(bytes, 0, bytes.length, 0, hash);
+    return String.format(Locale.ROOT, "%s-%016x%016x", writerId, hash.val1, hash.val2);
+  }
+
+  private SolrInputDocument toDocument(String id, RollupKey key, Rollup rollup) {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.setField(ID_FIELD, id);
+    doc.setField(timeField, new Date(key.intervalStart));
+    for (int i = 0; i < dimensionFields.length; i++) {
+      String val = key.dimensions.get(i);
+      if (val != null) {
+        doc.setField(dimensionFields[i], val);
+      }
+    }
+    doc.setField(countField, rollup.count);
+    for (int i = 0; i < sumFields.length; i++) {
+      doc.setField(sumFields[i] + SUM_SUFFIX, rollup.sums[i]);
+    }
+    for (int i = 0; i < hllFields.length; i++) {
+      doc.setField(hllFields[i] + HLL_SUFFIX, Base64.byteArrayToBase64(rollup.hlls[i].toBytes()));
+    }
+    return doc;
+  }
+
+  /**
+   * The rolled up values of a stored rollup document; missing values, such as those of fields added to the
+   * configuration later, are taken to be empty
+   */
+  Rollup fromDocument(SolrDocument doc) {
+    final Rollup rollup = newRollup();
+    Object count = doc.getFirstValue(countField);
+    if (count != null) {
+      rollup.count = ((Number) count).longValue();
+    }
+    for (int i = 0; i < sumFields.length; i++) {
+      Object sum = doc.getFirstValue(sumFields[i] + SUM_SUFFIX);
+      if (sum != null) {
+        rollup.sums[i] = ((Number) sum).doubleValue();
+      }
+    }
+    for (int i = 0; i < hllFields.length; i++) {
+      Object hll = doc.getFirstValue(hllFields[i] + HLL_SUFFIX);
+      if (hll != null) {
+        rollup.hlls[i] = HLL.fromBytes(Base64.base64ToByteArray(hll.toString()));
+      }
+    }
+    return rollup;
+  }
+
+  private SolrClient getClient() {
+    if (client == null) {
+      CoreContainer cc = core.getCoreContainer();
+      if (cc.isZooKeeperAware()) {
+        // shared, closed with the container
+        client = cc.getSolrClientCache().getCloudSolrClient(cc.getZkController().getZkServerAddress());
+      } else {
+        client = new EmbeddedSolrServer(cc, rollupCollection);
+      }
+    }
+    return client;
+  }
+
+  private static String[] concat(String[]... arrays) {
+    return Arrays.stream(arrays).flatMap(Arrays::stream).toArray(String[]::new);
+  }
+}
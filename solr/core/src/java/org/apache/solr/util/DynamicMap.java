@@ -25,6 +25,16 @@ package org.apache.solr.util;
  */
 public interface DynamicMap {
 
+  /**
+   * The expected max value of key the map was created with
+   */
+  int getExpectedKeyMax();
+
+  /**
+   * Removes all keys, but keeps the storage the map has grown to, so that the map can be reused
+   */
+  void clear();
+
   default boolean useArrayBased(int expectedKeyMax) {
     boolean assertsEnabled = false;
     assert assertsEnabled = true; // Intentional side-effect!
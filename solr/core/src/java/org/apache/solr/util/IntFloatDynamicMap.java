@@ -30,6 +30,7 @@ public class IntFloatDynamicMap implements DynamicMap {
   private float[] keyValues;
   private float emptyValue;
   private int threshold;
+  private final int expectedKeyMax;
 
   /**
    * Create map with expected max value of key.
@@ -38,6 +39,7 @@ public class IntFloatDynamicMap implements DynamicMap {
    */
   public IntFloatDynamicMap(int expectedKeyMax, float emptyValue) {
     this.threshold = threshold(expectedKeyMax);
+    this.expectedKeyMax = expectedKeyMax;
     this.maxSize = expectedKeyMax;
     this.emptyValue = emptyValue;
     if (useArrayBased(expectedKeyMax)) {
@@ -115,4 +117,22 @@ public class IntFloatDynamicMap implements DynamicMap {
       hashMap.remove(key);
     }
   }
+
+  @Override
+  public int getExpectedKeyMax() {
+    return expectedKeyMax;
+  }
+
+  public float getEmptyValue() {
+    return emptyValue;
+  }
+
+  @Override
+  public void clear() {
+    if (keyValues != null) {
+      Arrays.fill(keyValues, emptyValue);
+    } else {
+      hashMap.clear();
+    }
+  }
 }
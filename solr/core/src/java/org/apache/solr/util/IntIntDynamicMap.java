@@ -31,6 +31,7 @@ public class IntIntDynamicMap implements DynamicMap {
   private int[] keyValues;
   private int emptyValue;
   private int threshold;
+  private final int expectedKeyMax;
 
   /**
    * Create map with expected max value of key.
@@ -39,6 +40,7 @@ public class IntIntDynamicMap implements DynamicMap {
    */
   public IntIntDynamicMap(int expectedKeyMax, int emptyValue) {
     this.threshold = threshold(expectedKeyMax);
+    this.expectedKeyMax = expectedKeyMax;
     this.maxSize = expectedKeyMax;
     this.emptyValue = emptyValue;
     if (useArrayBased(expectedKeyMax)) {
@@ -117,4 +119,21 @@ public class IntIntDynamicMap implements DynamicMap {
     }
   }
 
+  @Override
+  public int getExpectedKeyMax() {
+    return expectedKeyMax;
+  }
+
+  public int getEmptyValue() {
+    return emptyValue;
+  }
+
+  @Override
+  public void clear() {
+    if (keyValues != null) {
+      Arrays.fill(keyValues, emptyValue);
+    } else {
+      hashMap.clear();
+    }
+  }
 }
@@ -31,6 +31,7 @@ public class IntLongDynamicMap implements DynamicMap {
   private long[] keyValues;
   private long emptyValue;
   private int threshold;
+  private final int expectedKeyMax;
 
   /**
    * Create map with expected max value of key.
@@ -39,6 +40,7 @@ public class IntLongDynamicMap implements DynamicMap {
    */
   public IntLongDynamicMap(int expectedKeyMax, long emptyValue) {
     this.threshold = threshold(expectedKeyMax);
+    this.expectedKeyMax = expectedKeyMax;
     this.maxSize = expectedKeyMax;
     this.emptyValue = emptyValue;
     if (useArrayBased(expectedKeyMax)) {
@@ -117,4 +119,21 @@ public class IntLongDynamicMap implements DynamicMap {
     }
   }
 
+  @Override
+  public int getExpectedKeyMax() {
+    return expectedKeyMax;
+  }
+
+  public long getEmptyValue() {
+    return emptyValue;
+  }
+
+  @Override
+  public void clear() {
+    if (keyValues != null) {
+      Arrays.fill(keyValues, emptyValue);
+    } else {
+      hashMap.clear();
+    }
+  }
 }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.SolrCore;
+
+/**
+ * Runs independent tasks of one request, such as JSON facets or the per-segment expansion of a graph traversal, on
+ * the executor also used for <code>facet.threads</code>. The number of tasks a runner may have running on that
+ * executor at the same time is bounded by its number of threads; once that budget is used up, further tasks simply
+ * run in the calling thread. Because a thread never waits for a task that has not been started, nested tasks can
+ * use the same budget without risking a deadlock.
+ * <p>
+ * Results are returned in task order, so the outcome is the same as when running serially.
+ *
+ * @lucene.internal
+ */
+public class ParallelTaskRunner {
+
+  /** The most additional threads a runner uses, however many are requested, since the executor is shared */
+  public static final int MAX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+  private final Executor executor;
+  private final Semaphore permits;
+
+  /**
+   * @param maxThreads the number of additional threads to use at most, a negative value for {@link #MAX_THREADS};
+   *                   larger values are capped at {@link #MAX_THREADS}
+   */
+  public ParallelTaskRunner(Executor executor, int maxThreads) {
+    this.executor = executor;
+    this.permits = new Semaphore(maxThreads < 0 ? MAX_THREADS : Math.min(maxThreads, MAX_THREADS));
+  }
+
+  /** @return a runner on the shared executor of the core's container, or null if maxThreads is 0 */
+  public static ParallelTaskRunner forCore(SolrCore core, int maxThreads) {
+    if (maxThreads == 0 || core == null) {
+      return null;
+    }
+    return new ParallelTaskRunner(core.getCoreContainer().getUpdateShardHandler().getUpdateExecutor(), maxThreads);
+  }
+
+  /** Runs all tasks, possibly in parallel, and returns their results in the order of the tasks. */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+    List<T> results = new ArrayList<>(tasks.size());
+    if (tasks.size() == 1) {
+      results.add(call(tasks.get(0)));
+      return results;
+    }
+
+    List<Future<T>> futures = new ArrayList<>(tasks.size());
+    Throwable failure = null;
+    for (Callable<T> task : tasks) {
+      RunnableFuture<T> future = new FutureTask<>(task);
+      if (failure == null && permits.tryAcquire()) {
+        try {
+          executor.execute(() -> {
+            try {
+              future.run();
+            } finally {
+              permits.release();
+            }
+          });
+        } catch (RuntimeException e) {
+          permits.release();
+          future.run();
+        }
+      } else if (failure == null) {
+        future.run();
+      } else {
+        future.cancel(false);
+      }
+      futures.add(future);
+      if (failure == null && future.isDone()) {
+        failure = failureOf(future);
+      }
+    }
+
+    // wait for every started task, so that none is still running once the request is done
+    for (Future<T> future : futures) {
+      if (future.isCancelled()) continue;
+      try {
+        T result = future.get();
+        if (failure == null) results.add(result);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (failure == null) failure = e;
+      } catch (ExecutionException e) {
+        if (failure == null) failure = e.getCause();
+      }
+    }
+
+    if (failure != null) {
+      rethrow(failure);
+    }
+    return results;
+  }
+
+  private static Throwable failureOf(Future<?> future) {
+    try {
+      future.get();
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return e;
+    }
+  }
+
+  private static <T> T call(Callable<T> task) throws IOException {
+    try {
+      return task.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  private static void rethrow(Throwable t) throws IOException {
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+    throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error while running tasks in parallel: " + t, t);
+  }
+}
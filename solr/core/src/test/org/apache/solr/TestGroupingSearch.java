@@ -738,6 +738,51 @@ public class TestGroupingSearch extends SolrTestCaseJ4 {
     );
   }
 
+  @Test
+  public void testGroupingInSinglePass() throws Exception {
+    assertU(add(doc("id", "1", FOO_STRING_DOCVAL_FIELD, "a")));
+    assertU(add(doc("id", "2", FOO_STRING_DOCVAL_FIELD, "b")));
+    assertU(add(doc("id", "3", FOO_STRING_DOCVAL_FIELD, "a")));
+    assertU(commit());
+    assertU(add(doc("id", "4", FOO_STRING_DOCVAL_FIELD, "c")));
+    assertU(add(doc("id", "5", FOO_STRING_DOCVAL_FIELD, "b")));
+    assertU(add(doc("id", "6")));
+    assertU(commit());
+
+    ModifiableSolrParams params = params("q", "*:*", "group", "true", "group.field", FOO_STRING_DOCVAL_FIELD,
+        "sort", "id desc", "rows", "2", "fl", "id", "group.ngroups", "true");
+    for (String singlePass : new String[] {"false", "true"}) {
+      // group "b" is evicted and comes back, so it is collected again for its second document
+      assertJQ(req(params, "group.limit", "2", GroupParams.GROUP_SINGLE_PASS, singlePass),
+          "/grouped=={'" + FOO_STRING_DOCVAL_FIELD + "':{'matches':6,'ngroups':4,'groups':[" +
+              "{'groupValue':null,'doclist':{'numFound':1,'start':0,numFoundExact:true,'docs':[{'id':'6'}]}}," +
+              "{'groupValue':'b','doclist':{'numFound':2,'start':0,numFoundExact:true,'docs':[{'id':'5'},{'id':'2'}]}}" +
+              "]}}"
+      );
+      assertJQ(req(params, GroupParams.GROUP_SINGLE_PASS, singlePass, GroupParams.GROUP_TOTAL_COUNT_APPROXIMATE, "true"),
+          "/grouped=={'" + FOO_STRING_DOCVAL_FIELD + "':{'matches':6,'ngroups':4,'groups':[" +
+              "{'groupValue':null,'doclist':{'numFound':1,'start':0,numFoundExact:true,'docs':[{'id':'6'}]}}," +
+              "{'groupValue':'b','doclist':{'numFound':2,'start':0,numFoundExact:true,'docs':[{'id':'5'}]}}" +
+              "]}}"
+      );
+      assertJQ(req(params, "start", "1", "rows", "5", GroupParams.GROUP_SINGLE_PASS, singlePass),
+          "/grouped=={'" + FOO_STRING_DOCVAL_FIELD + "':{'matches':6,'ngroups':4,'groups':[" +
+              "{'groupValue':'b','doclist':{'numFound':2,'start':0,numFoundExact:true,'docs':[{'id':'5'}]}}," +
+              "{'groupValue':'c','doclist':{'numFound':1,'start':0,numFoundExact:true,'docs':[{'id':'4'}]}}," +
+              "{'groupValue':'a','doclist':{'numFound':2,'start':0,numFoundExact:true,'docs':[{'id':'3'}]}}" +
+              "]}}"
+      );
+    }
+
+    // a group.sort different from sort, or a field without docValues, is grouped in two passes as before
+    assertJQ(req(params, "group.sort", "id asc", GroupParams.GROUP_SINGLE_PASS, "true"),
+        "/grouped=={'" + FOO_STRING_DOCVAL_FIELD + "':{'matches':6,'ngroups':4,'groups':[" +
+            "{'groupValue':null,'doclist':{'numFound':1,'start':0,numFoundExact:true,'docs':[{'id':'6'}]}}," +
+            "{'groupValue':'b','doclist':{'numFound':2,'start':0,numFoundExact:true,'docs':[{'id':'2'}]}}" +
+            "]}}"
+    );
+  }
+
   @Test
   public void testRandomGrouping() throws Exception {
     /**
@@ -913,7 +958,8 @@ public class TestGroupingSearch extends SolrTestCaseJ4 {
             ,"rows",""+rows, "start",""+start, "group.offset",""+group_offset, "group.limit",""+group_limit,
             GroupParams.GROUP_CACHE_PERCENTAGE, Integer.toString(randomPercentage), GroupParams.GROUP_TOTAL_COUNT, includeNGroups ? "true" : "false",
             "facet", "true", "facet.sort", "index", "facet.limit", "-1", "facet.field", FOO_STRING_FIELD,
-            GroupParams.GROUP_TRUNCATE, truncateGroups ? "true" : "false", "facet.mincount", "1", "facet.method", "fcs" // to avoid FC insanity
+            GroupParams.GROUP_TRUNCATE, truncateGroups ? "true" : "false", "facet.mincount", "1", "facet.method", "fcs", // to avoid FC insanity
+            GroupParams.GROUP_SINGLE_PASS, random().nextBoolean() ? "true" : "false"
         );
 
         String strResponse = h.query(req);
@@ -158,6 +158,59 @@ public class TestJoin extends SolrTestCaseJ4 {
   }
 
 
+  /*
+   * Exercises behavior specific to method=cachedTerms join queries
+   */
+  @Test
+  public void testCachedTermsJoin() throws Exception {
+    indexEmployeeDocs();
+    ModifiableSolrParams p = params("sort","id asc");
+    int cachedBefore = h.getCore().withSearcher(searcher -> searcher.getSegmentCache().size());
+
+    assertJQ(req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=cachedTerms}title:MTS", "fl","id", "debugQuery","true")
+        ,"/response=={'numFound':3,'start':0,'numFoundExact':true,'docs':[{'id':'10'},{'id':'12'},{'id':'13'}]}"
+        ,"/debug/join/{!join from=dept_ss_dv to=dept_id_indexed_sdv}title:MTS=={'_MATCH_':'fromSetSize,fromTermCount', 'fromSetSize':2, 'fromTermCount':3}"
+    );
+
+    // terms of a few documents are read from the postings rather than cached
+    assertEquals(cachedBefore, (int) h.getCore().withSearcher(searcher -> searcher.getSegmentCache().size()));
+
+    // a different "from" side that shares some of the terms
+    assertJQ(req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=cachedTerms}name:dave", "fl","id")
+        ,"/response=={'numFound':2,'start':0,'numFoundExact':true,'docs':[{'id':'10'},{'id':'13'}]}"
+    );
+
+    // deletions and new segments are taken into account
+    assertU(delI("13"));
+    assertU(add(doc("id","14", DEPT_ID_FIELD, "Engineering", "text","More guys who develop stuff")));
+    assertU(commit());
+    assertJQ(req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=cachedTerms}name:dave", "fl","id")
+        ,"/response=={'numFound':2,'start':0,'numFoundExact':true,'docs':[{'id':'10'},{'id':'14'}]}"
+    );
+
+    // "from" field without docValues falls back to the index method
+    assertJQ(req(p, "q", "{!join from=title to=title method=cachedTerms}name:dave", "fl","id")
+        ,"/response=={'numFound':2,'start':0,'numFoundExact':true,'docs':[{'id':'3'},{'id':'4'}]}"
+    );
+
+    // frequent terms are cached
+    for (int i = 0; i < 200; i++) {
+      assertU(add(doc("id", "big" + i, DEPT_ID_FIELD, "Big")));
+    }
+    assertU(add(doc("id", "6", "name", "ann", DEPT_FIELD, "Big")));
+    assertU(optimize()); // one segment with all of the term's documents
+    assertJQ(req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=cachedTerms}name:ann", "fl","id")
+        ,"/response/numFound==200"
+    );
+    assertTrue(h.getCore().withSearcher(searcher -> searcher.getSegmentCache().size()) > 0);
+
+    // restore the employee docs for the other tests
+    assertU(delI("14"));
+    assertU(delI("6"));
+    assertU(delQ(DEPT_ID_FIELD + ":Big"));
+    indexEmployeeDocs();
+  }
+
   @Test
   public void testIndexJoin() throws Exception {
     indexEmployeeDocs();
@@ -330,7 +383,7 @@ public class TestJoin extends SolrTestCaseJ4 {
     final String optionalParamsJoined = (otherLocalParams != null && otherLocalParams.length > 0) ? String.join(" ", otherLocalParams) : " ";
     final String allProvidedParams = baseJoinParams + " " + optionalParamsJoined;
 
-    final int joinMethod = random().nextInt(4);
+    final int joinMethod = random().nextInt(5);
     switch (joinMethod) {
       case 0: // No explicit method specified
         return "{!join " + allProvidedParams + " }";
@@ -338,6 +391,8 @@ public class TestJoin extends SolrTestCaseJ4 {
         return "{!join " + allProvidedParams + " method=index}";
       case 2: // method=score
         return "{!join " + allProvidedParams + " method=dvWithScore score=none}";
+      case 3: // method=cachedTerms
+        return "{!join " + allProvidedParams + " method=cachedTerms}";
      default: // method=toplevel
         return "{!join " + allProvidedParams + " method=topLevelDV}";
     }
@@ -51,6 +51,7 @@ import static org.apache.solr.common.params.FacetParams.FACET_OFFSET;
 import static org.apache.solr.common.params.FacetParams.FACET_OVERREQUEST_COUNT;
 import static org.apache.solr.common.params.FacetParams.FACET_OVERREQUEST_RATIO;
 import static org.apache.solr.common.params.FacetParams.FACET_PIVOT;
+import static org.apache.solr.common.params.FacetParams.FACET_PIVOT_INCREMENTAL;
 import static org.apache.solr.common.params.FacetParams.FACET_PIVOT_MINCOUNT;
 import static org.apache.solr.common.params.FacetParams.FACET_SORT;
 
@@ -237,6 +238,11 @@ public class TestCloudPivotFacet extends AbstractFullDistribZkTestBase {
           pivotP.add(FACET_OVERREQUEST_RATIO, ""+ratio);
         }
       }
+
+      // one level at a time, should give the same counts
+      if (random().nextBoolean()) {
+        pivotP.add(FACET_PIVOT_INCREMENTAL, "true");
+      }
       
       assertPivotCountsAreCorrect(baseP, pivotP);
     }
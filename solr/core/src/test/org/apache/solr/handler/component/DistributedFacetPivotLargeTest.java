@@ -131,7 +131,9 @@ public class DistributedFacetPivotLargeTest extends BaseDistributedSearchTestCas
              params(),
              // force refinement
              params(FacetParams.FACET_OVERREQUEST_RATIO, "1", 
-                    FacetParams.FACET_OVERREQUEST_COUNT, "0")           }) {
+                    FacetParams.FACET_OVERREQUEST_COUNT, "0"),
+             // one level at a time
+             params(FacetParams.FACET_PIVOT_INCREMENTAL, "true")       }) {
 
       SolrParams p = SolrParams.wrapDefaults( params( "q", "*:*",
                                                       "rows", "0",
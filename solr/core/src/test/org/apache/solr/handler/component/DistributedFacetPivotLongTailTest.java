@@ -167,11 +167,13 @@ public class DistributedFacetPivotLongTailTest extends BaseDistributedSearchTest
 
     // with default overrequesting, we should find the correct top 6 including 
     // long tail and top sub-pivots
-    // (even if we disable overrequesting on the sub-pivot)
+    // (even if we disable overrequesting on the sub-pivot, or only ask the shards
+    // for the sub-pivots once the top level is refined)
     for (ModifiableSolrParams q : new ModifiableSolrParams[] { 
         params(),
         params("f.bar_s.facet.overrequest.ratio","0",
-               "f.bar_s.facet.overrequest.count","0")      }) {
+               "f.bar_s.facet.overrequest.count","0"),
+        params(FacetParams.FACET_PIVOT_INCREMENTAL, "true") }) {
       
       q.add( params( "q", "*:*",
                      "shards", getShardsString(),
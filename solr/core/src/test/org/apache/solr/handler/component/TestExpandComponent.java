@@ -22,6 +22,7 @@ import java.util.Collections;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.CollapsingQParserPlugin;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -90,6 +91,8 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
         {"id","8", "term_s","YYYY", group, "0"+floatAppend, "test_i", "2", "test_l",  "100000", "test_f", "200", "type_s", "child"}
     };
     createIndex(docs);
+    // expanding in batches has to give the same results
+    final String batch = Boolean.toString(random().nextBoolean());
 
     ModifiableSolrParams params = new ModifiableSolrParams();
     params.add("q", "*:*");
@@ -97,6 +100,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
 
     //First basic test case.
     assertQ(req(params), "*[count(/response/result/doc)=2]",
@@ -138,6 +142,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.sort", "test_l desc");
     assertQ(req(params,
                 "fq", "{!collapse field="+group+hint+" nullPolicy=collapse}")
@@ -222,6 +227,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.q", "type_s:(child OR other)");
     params.add("expand.field", group);
     params.add("expand.sort", "test_l desc");
@@ -259,6 +265,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.fq", "type_s:(child OR other)");
     params.add("expand.field", group);
     params.add("expand.sort", "test_l desc");
@@ -295,6 +302,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.q", "type_s:child");
     params.add("expand.fq", "*:*");
     params.add("expand.field", group);
@@ -316,6 +324,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.sort", "test_l desc");
     params.add("expand.rows", "1");
     assertQ(req(params), "*[count(/response/result/doc)=2]",
@@ -334,6 +343,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.rows", "0");
     assertQ(req(params,
                 "fq", "{!collapse field="+group+hint+"}")
@@ -371,6 +381,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.fq", "type_s:(child OR other)");
     params.add("expand.field", group);
     params.add("expand.rows", "0");
@@ -409,6 +420,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.fq", "*:*");
     params.add("expand.field", group);
     params.add("expand.rows", "0");
@@ -430,6 +442,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.sort", "test_l desc");
     params.add("expand.rows", "1");
     assertQ(req(params), "*[count(/response/result/doc)=1]",
@@ -443,6 +456,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.sort", "test_l desc");
     params.add("expand.rows", "1");
     assertQ(req(params)
@@ -461,6 +475,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
     params.add("expand.q", "test_i:5532535");
     assertQ(req(params)
             ,"*[count(/response/result/doc)=3]"
@@ -480,6 +495,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     params.add("defType", "edismax");
     params.add("bf", "field(test_i)");
     params.add("expand", "true");
+    params.add("expand.batch", batch);
 
     assertQ(req(params, "fl", "id"),
         "*[count(/response/result/doc)=2]",
@@ -551,7 +567,8 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
 
     // Test for expand with collapse
     // when matched docs have fewer unique values
-    params = params("q", "*:*", "sort", "id asc", "fl", "id", "rows", "6", "expand", "true", "expand.sort", "id asc");
+    params = params("q", "*:*", "sort", "id asc", "fl", "id", "rows", "6", "expand", "true", "expand.sort", "id asc",
+        "expand.batch", batch);
     assertQ(req(params, "expand.field", "term_s"),
         "*[count(/response/result/doc)=6]",
         "/response/lst[@name='expanded']/result[@name='YYYY']/doc[1]/str[@name='id'][.='7']",
@@ -567,7 +584,7 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
 
     // Support expand enabled without previous collapse
     assertQ(req("q", "type_s:child", "sort", group+" desc, test_l desc", "defType", "edismax",
-        "expand", "true", "expand.q", "type_s:parent", "expand.field", group),
+        "expand", "true", "expand.q", "type_s:parent", "expand.field", group, "expand.batch", batch),
         "*[count(/response/result/doc)=4]",
         "*[count(/response/lst[@name='expanded']/result)=2]",
         "/response/result/doc[1]/str[@name='id'][.='7']",
@@ -581,7 +598,8 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     // With multiple collapse
 
     // with different cost
-    params = params("q", "*:*", "defType", "edismax", "expand", "true",  "bf", "field(test_i)", "expand.sort", "id asc");
+    params = params("q", "*:*", "defType", "edismax", "expand", "true",  "bf", "field(test_i)", "expand.sort", "id asc",
+        "expand.batch", batch);
     params.set("fq", "{!collapse cost=1000 field="+group+"}", "{!collapse cost=2000 field=test_f}");
     assertQ(req(params),
         "*[count(/response/result/doc)=1]",
@@ -621,6 +639,35 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     );
   }
 
+  @Test
+  public void testBatchReusesGroupHeadOrds() throws Exception {
+    String[][] docs = {
+        {"id","1", "group_s_dv", "a", "test_i", "5"},
+        {"id","2", "group_s_dv", "a", "test_i", "50"},
+        {"id","3", "group_s_dv", "b", "test_i", "10"},
+        {"id","4", "group_s_dv", "b", "test_i", "1"},
+        {"id","5", "test_i", "4"}
+    };
+    createIndex(docs);
+
+    SolrQueryRequest req = req("q", "*:*", "fq", "{!collapse field=group_s_dv nullPolicy=expand}", "defType", "edismax",
+        "bf", "field(test_i)", "expand", "true", "expand.batch", "true");
+    assertQ(req, "*[count(/response/result/doc)=3]",
+        "*[count(/response/lst[@name='expanded']/result)=2]",
+        "/response/lst[@name='expanded']/result[@name='a']/doc[1]/str[@name='id'][.='1']",
+        "/response/lst[@name='expanded']/result[@name='b']/doc[1]/str[@name='id'][.='4']"
+    );
+    CollapsingQParserPlugin.GroupHeadOrds groupHeadOrds = (CollapsingQParserPlugin.GroupHeadOrds)
+        req.getContext().get(CollapsingQParserPlugin.GROUP_HEAD_ORDS + "group_s_dv");
+    assertNotNull(groupHeadOrds);
+    // the groups of all three heads on the page came from the collapse
+    assertEquals(3, groupHeadOrds.getFound());
+
+    req = req("q", "*:*", "fq", "{!collapse field=group_s_dv}", "expand", "true");
+    assertQ(req, "*[count(/response/lst[@name='expanded']/result)=2]");
+    assertNull(req.getContext().get(CollapsingQParserPlugin.GROUP_HEAD_ORDS + "group_s_dv"));
+  }
+
   @Test
   public void testExpandWithEmptyIndexReturnsZeroResults() {
 
@@ -20,6 +20,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Date;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -120,6 +122,44 @@ public class TestBinaryResponseWriter extends SolrTestCaseJ4 {
     req.close();
   }
 
+  public void testDocValuesOnlyFields() throws Exception {
+    assertU(adoc("id", "201", "a_i_dv", "3", "b_l_dv", "30", "c_d_dv", "3.5", "d_dt_dv", "2021-01-03T00:00:00Z"));
+    assertU(commit());
+    assertU(adoc("id", "202", "a_i_dv", "1", "b_l_dv", "10", "c_d_dv", "1.5", "d_dt_dv", "2021-01-01T00:00:00Z"));
+    assertU(adoc("id", "203", "a_i_dv", "2", "b_l_dv", "20"));
+    assertU(commit());
+
+    // sorting on a field forces going back and forth between segments and docs
+    SolrQueryRequest req = req("q", "id:[201 TO 203]", "sort", "b_l_dv desc",
+        "fl", "a_i_dv,b_l_dv,c_d_dv,d_dt_dv");
+    SolrQueryResponse rsp = h.queryAndResponse(null, req);
+    BinaryQueryResponseWriter writer = (BinaryQueryResponseWriter) h.getCore().getQueryResponseWriter("javabin");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    writer.write(baos, req, rsp);
+    assertEquals(SolrReturnFields.FIELD_SOURCES.ALL_FROM_DV, ((SolrReturnFields) rsp.getReturnFields()).getFieldSources());
+    req.close();
+
+    SolrDocumentList docs;
+    try (JavaBinCodec jbc = new JavaBinCodec()) {
+      @SuppressWarnings({"rawtypes"})
+      NamedList res = (NamedList) jbc.unmarshal(new ByteArrayInputStream(baos.toByteArray()));
+      docs = (SolrDocumentList) res.get("response");
+    }
+    assertEquals(3, docs.size());
+    assertEquals(30L, docs.get(0).getFieldValue("b_l_dv"));
+    assertEquals(3, docs.get(0).getFieldValue("a_i_dv"));
+    assertEquals(3.5d, docs.get(0).getFieldValue("c_d_dv"));
+    assertEquals(new Date(Instant.parse("2021-01-03T00:00:00Z").toEpochMilli()), docs.get(0).getFieldValue("d_dt_dv"));
+    assertEquals(20L, docs.get(1).getFieldValue("b_l_dv"));
+    assertEquals(2, docs.get(1).getFieldNames().size());
+    assertEquals(10L, docs.get(2).getFieldValue("b_l_dv"));
+    assertEquals(1.5d, docs.get(2).getFieldValue("c_d_dv"));
+    assertEquals(4, docs.get(2).getFieldNames().size());
+
+    assertU(delQ("id:[201 TO 203]"));
+    assertU(commit());
+  }
+
   public void testOmitHeader() throws Exception {
     SolrQueryRequest req = req("q", "*:*", "omitHeader", "true");
     SolrQueryResponse rsp = h.queryAndResponse(null, req);
@@ -1248,6 +1248,7 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
     assertFuncEquals("agg_unique(foo_i)", "agg_unique(foo_i)");
     assertFuncEquals("agg_uniqueBlock(foo_i)", "agg_uniqueBlock(foo_i)");
     assertFuncEquals("agg_hll(foo_i)", "agg_hll(foo_i)");
+    assertFuncEquals("agg_hllunion(foo_s)", "agg_hllunion(foo_s)");
     assertFuncEquals("agg_sumsq(foo_i)", "agg_sumsq(foo_i)");
     assertFuncEquals("agg_percentile(foo_i,50)", "agg_percentile(foo_i,50)");
     assertFuncEquals("agg_variance(foo_i)", "agg_variance(foo_i)");
@@ -1342,6 +1343,12 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
         "{!hash_range l='107347968' u='214695935' f='x_id'}");
   }
 
+  public void testHashSetQuery() throws Exception {
+    assertQueryEquals("hash_set",
+        "{!hash_set f=x_id bits='AAAAAAAAAAU='}",
+        "{!hash_set bits=AAAAAAAAAAU= f='x_id'}");
+  }
+
   // Override req to add df param
   public static SolrQueryRequest req(String... q) {
     return SolrTestCaseJ4.req(q, "df", "text");
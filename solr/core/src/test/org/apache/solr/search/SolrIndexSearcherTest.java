@@ -196,6 +196,38 @@ public class SolrIndexSearcherTest extends SolrTestCaseJ4 {
     });
   }
   
+  public void testMaxScoreFromTopDocs() throws IOException {
+    h.getCore().withSearcher(searcher -> {
+      QueryCommand cmd = createBasicQueryCommand(1, 5, "field4_t", "0");
+      cmd.setFlags(SolrIndexSearcher.GET_SCORES);
+      QueryResult qr = new QueryResult();
+      searcher.search(qr, cmd);
+      DocIterator iter = qr.getDocList().iterator();
+      iter.nextDoc();
+      assertEquals(iter.score(), qr.getDocList().maxScore(), 0f);
+
+      // the same max score as when every match is visited
+      cmd = createBasicQueryCommand(NUM_DOCS, 5, "field4_t", "0");
+      cmd.setFlags(SolrIndexSearcher.GET_SCORES);
+      cmd.setSort(new Sort(new SortField("field3_i_dvo", SortField.Type.INT)));
+      QueryResult exact = new QueryResult();
+      searcher.search(exact, cmd);
+      assertEquals(exact.getDocList().maxScore(), qr.getDocList().maxScore(), 0f);
+      return null;
+    });
+  }
+
+  public void testMinExactCountWithoutRows() throws IOException {
+    h.getCore().withSearcher(searcher -> {
+      QueryCommand cmd = createBasicQueryCommand(2, 0, "field1_s", "foo");
+      assertMatchesGreaterThan(NUM_DOCS, searcher, cmd);
+
+      cmd = createBasicQueryCommand(NUM_DOCS, 0, "field1_s", "foo");
+      assertMatchesEqual(NUM_DOCS, searcher, cmd);
+      return null;
+    });
+  }
+
   public void testReranking() throws Exception {
     float fixedScore = 1.23f;
     for (boolean doFilter : new boolean[]{ false, true }) {
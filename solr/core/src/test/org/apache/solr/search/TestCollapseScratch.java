@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.SparseFixedBitSet;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.util.IntFloatDynamicMap;
+import org.apache.solr.util.IntIntDynamicMap;
+
+public class TestCollapseScratch extends SolrTestCase {
+
+  public void testBitSetsAreReused() {
+    CollapseScratch scratch = new CollapseScratch(10000);
+    BitSet bits = scratch.getCollapsedSet(-1);
+    assertTrue(bits instanceof FixedBitSet);
+    bits.set(17);
+    bits.set(9999);
+    scratch.release(bits);
+
+    BitSet reused = scratch.getCollapsedSet(5000);
+    assertSame(bits, reused);
+    assertEquals(0, reused.cardinality());
+    assertNotSame(reused, scratch.getCollapsedSet(-1));
+  }
+
+  public void testSparseBitSetForFewHeads() {
+    CollapseScratch scratch = new CollapseScratch(10000);
+    BitSet bits = scratch.getCollapsedSet(3);
+    assertTrue(bits instanceof SparseFixedBitSet);
+    assertEquals(10000, bits.length());
+    scratch.release(bits);
+    assertTrue(scratch.getCollapsedSet(-1) instanceof FixedBitSet);
+  }
+
+  public void testMapsAreReused() {
+    CollapseScratch scratch = new CollapseScratch(10000);
+    IntIntDynamicMap ords = scratch.getIntIntMap(500, -1);
+    ords.put(3, 42);
+    scratch.release(ords);
+
+    // a different empty value or size can't reuse it
+    assertNotSame(ords, scratch.getIntIntMap(500, 0));
+    assertNotSame(ords, scratch.getIntIntMap(501, -1));
+
+    IntIntDynamicMap reused = scratch.getIntIntMap(500, -1);
+    assertSame(ords, reused);
+    assertEquals(-1, reused.get(3));
+
+    IntFloatDynamicMap scores = scratch.getIntFloatMap(500, -Float.MAX_VALUE);
+    scores.put(1, 2.5f);
+    scratch.release(scores);
+    assertNotSame(scores, scratch.getIntFloatMap(500, Float.MAX_VALUE));
+    assertSame(scores, scratch.getIntFloatMap(500, -Float.MAX_VALUE));
+    assertEquals(-Float.MAX_VALUE, scores.get(1), 0f);
+  }
+
+  public void testPoolIsBounded() {
+    CollapseScratch scratch = new CollapseScratch(100);
+    BitSet[] bits = new BitSet[CollapseScratch.MAX_POOLED + 2];
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] = scratch.getCollapsedSet(-1);
+    }
+    for (BitSet b : bits) {
+      scratch.release(b);
+    }
+    int reused = 0;
+    for (int i = 0; i < bits.length; i++) {
+      BitSet b = scratch.getCollapsedSet(-1);
+      for (BitSet old : bits) {
+        if (b == old) reused++;
+      }
+    }
+    assertEquals(CollapseScratch.MAX_POOLED, reused);
+  }
+}
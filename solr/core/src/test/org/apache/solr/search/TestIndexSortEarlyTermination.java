@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHits;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+
+/** Tests that sorting by a prefix of the index sort stops collecting segments early if counts may be approximate */
+public class TestIndexSortEarlyTermination extends SolrTestCaseJ4 {
+
+  private final static int NUM_DOCS = 500;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // the index is sorted by timestamp_i_dvo desc
+    initCore("solrconfig-sortingmergepolicyfactory.xml", "schema.xml");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertU(adoc("id", String.valueOf(i),
+          "field1_s", "foo",
+          "timestamp_i_dvo", String.valueOf(i)));
+      if (i % 100 == 99) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+  }
+
+  public void testNewestFirst() {
+    assertQ(req("q", "field1_s:foo",
+            "sort", "timestamp_i_dvo desc",
+            "fl", "id,score",
+            "minExactCount", "10",
+            "rows", "3"),
+        "//*[@numFoundExact='false']",
+        "//result[@numFound<'" + NUM_DOCS + "']",
+        "//result[@maxScore>0]",
+        "//result/doc[1]/str[@name='id'][.='499']",
+        "//result/doc[2]/str[@name='id'][.='498']",
+        "//result/doc[3]/str[@name='id'][.='497']");
+
+    assertQ("without minExactCount every match is counted",
+        req("q", "field1_s:foo",
+            "sort", "timestamp_i_dvo desc",
+            "fl", "id,score",
+            "rows", "3"),
+        "//*[@numFoundExact='true']",
+        "//result[@numFound='" + NUM_DOCS + "']",
+        "//result/doc[1]/str[@name='id'][.='499']");
+  }
+
+  public void testScoresWithApproximateCount() throws Exception {
+    h.getCore().withSearcher(searcher -> {
+      QueryCommand cmd = new QueryCommand();
+      cmd.setQuery(new TermQuery(new Term("field1_s", "foo")));
+      cmd.setSort(new Sort(searcher.getSchema().getField("timestamp_i_dvo").getSortField(true)));
+      cmd.setMinExactCount(10);
+      cmd.setLen(5);
+      cmd.setFlags(SolrIndexSearcher.NO_CHECK_QCACHE | SolrIndexSearcher.NO_SET_QCACHE | SolrIndexSearcher.GET_SCORES);
+      QueryResult qr = new QueryResult();
+      searcher.search(qr, cmd);
+      assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, qr.getDocList().hitCountRelation());
+      assertTrue(qr.getDocList().matches() < NUM_DOCS);
+      assertFalse(Float.isNaN(qr.getDocList().maxScore()));
+      assertEquals(5, qr.getDocList().size());
+      return null;
+    });
+  }
+
+  public void testSortNotOnIndexSort() {
+    assertQ(req("q", "field1_s:foo",
+            "sort", "id asc",
+            "minExactCount", String.valueOf(NUM_DOCS),
+            "rows", "3"),
+        "//*[@numFoundExact='true']",
+        "//result[@numFound='" + NUM_DOCS + "']");
+  }
+}
@@ -20,12 +20,18 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.request.SolrQueryRequest;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -58,6 +64,8 @@ public class TestReRankQParserPlugin extends SolrTestCaseJ4 {
 
     assertEquals(ReRankQParserPlugin.RERANK_WEIGHT, "reRankWeight");
     assertEquals(ReRankQParserPlugin.RERANK_WEIGHT_DEFAULT, 2.0d, 0.0d);
+
+    assertEquals(ReRankQParserPlugin.RERANK_NEXT, "reRankNext");
   }
 
   @Test
@@ -582,6 +590,65 @@ public class TestReRankQParserPlugin extends SolrTestCaseJ4 {
         "//result/doc[3]/str[@name='id'][.='8']"); //Boosted during rerank.
   }
 
+  @Test
+  public void testReRankStages() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+
+    for (int i = 1; i <= 6; i++) {
+      assertU(adoc("id", Integer.toString(i)));
+      if (i % 2 == 0) {
+        assertU(commit());
+      }
+    }
+
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("rq", "{!"+ReRankQParserPlugin.NAME+" "+ReRankQParserPlugin.RERANK_QUERY+"=$rqq "+ReRankQParserPlugin.RERANK_DOCS+"=4 "
+        +ReRankQParserPlugin.RERANK_NEXT+"=$rq2}");
+    params.add("q", "{!edismax bq=$bqq1}*:*");
+    params.add("bqq1", "id:1^10 id:2^20 id:3^30 id:4^40 id:5^50 id:6^60");
+    params.add("rqq", "id:3^1000");
+    // the second stage only reranks the top 2 of the first one, so doc 5 keeps its place
+    params.add("rq2", "{!"+ReRankQParserPlugin.NAME+" "+ReRankQParserPlugin.RERANK_QUERY+"=$rqq2 "+ReRankQParserPlugin.RERANK_DOCS+"=2}");
+    params.add("rqq2", "id:6^10000 id:5^100000");
+    params.add("fl", "id,score");
+    params.add("start", "0");
+    params.add("rows", "10");
+    params.add("df", "text");
+    assertQ(req(params), "*[count(//doc)=6]",
+        "//result/doc[1]/str[@name='id'][.='6']",
+        "//result/doc[2]/str[@name='id'][.='3']",
+        "//result/doc[3]/str[@name='id'][.='5']",
+        "//result/doc[4]/str[@name='id'][.='4']",
+        "//result/doc[5]/str[@name='id'][.='2']",
+        "//result/doc[6]/str[@name='id'][.='1']"
+    );
+
+    params.add("debugQuery", "true");
+    assertQ(req(params), "*[count(//doc)=6]",
+        "count(//lst[@name='debug']/arr[@name='rerank']/lst)=2",
+        "//lst[@name='debug']/arr[@name='rerank']/lst[1]/int[@name='reRankDocs'][.='4']",
+        "//lst[@name='debug']/arr[@name='rerank']/lst[2]/int[@name='reRankDocs'][.='2']",
+        "//lst[@name='explain']/str[contains(.,'reranked in 2 stages')]"
+    );
+
+    // rewriting must not change the stages of the original query, e.g. a queryResultCache key
+    try (SolrQueryRequest req = req(params)) {
+      final RankQuery rankQuery = (RankQuery) QParser.getParser(params.get("rq"), req).getQuery();
+      final Query query = rankQuery.wrap(new BooleanQuery.Builder()
+          .add(new TermQuery(new Term("id", "1")), BooleanClause.Occur.SHOULD).build());
+      final String before = query.toString();
+      assertNotEquals(query, req.getSearcher().rewrite(query));
+      assertEquals(before, query.toString());
+    }
+
+    params.set("rq2", "id:1");
+    ignoreException("must be a rerank query");
+    SolrException se = expectThrows(SolrException.class, () -> h.query(req(params)));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, se.code());
+    unIgnoreException("must be a rerank query");
+  }
+
   @Test
   public void testRerankQueryParsingShouldFailWithoutMandatoryReRankQueryParameter() throws Exception {
     assertU(delQ("*:*"));
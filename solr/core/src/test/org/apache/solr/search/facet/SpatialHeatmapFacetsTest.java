@@ -27,6 +27,7 @@ import org.apache.solr.common.params.FacetParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrCore;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -303,6 +304,51 @@ public class SpatialHeatmapFacetsTest extends BaseDistributedSearchTestCase {
     //good enough for this test method
   }
 
+  /** Heatmaps of all docs or of the results are computed from cached blocks of cells, which must give the same counts */
+  @Test
+  public void testCachedBlocks() throws Exception {
+    handle.clear();
+    handle.put("QTime", SKIPVAL);
+    handle.put("timestamp", SKIPVAL);
+    handle.put("maxScore", SKIPVAL);
+
+    del("*:*");
+    int id = 0;
+    for (; id < 300; id++) {
+      index("id", "" + id, FIELD, "POINT(" + (random().nextInt(360) - 180) + " " + (random().nextInt(180) - 90) + ")");
+      if (random().nextInt(100) == 0) {
+        commit();
+      }
+    }
+    index("id", "" + id++, FIELD, "ENVELOPE(100, 120, 80, 40)");
+    commit();
+
+    final String[] filters = {"*:*", "id:1*", "-id:2*"};
+    for (int iter = 0; iter < 10; iter++) {
+      final SolrParams baseParams = params("q", "*:*", "fq", filters[iter % filters.length], "rows", "0");
+      if (iter == 5) {
+        // new and changed segments
+        index("id", "" + id++, FIELD, "POINT(10 10)");
+        del("id:7");
+        commit();
+      }
+      final int minX = random().nextInt(300) - 180;
+      final int minY = random().nextInt(150) - 90;
+      final String geom = "[\"" + minX + " " + minY + "\" TO \"" + (minX + 1 + random().nextInt(179 - minX)) + " "
+          + (minY + 1 + random().nextInt(89 - minY)) + "\"]";
+      final String json = "{f1:{type:heatmap, f:" + FIELD + ", geom:'" + geom + "', gridLevel:" + (1 + random().nextInt(7)) + "}}";
+
+      final NamedList<?> cached = getHmObj(query(params(baseParams, "json.facet", json)));
+      final NamedList<?> uncached = getHmObj(query(params(baseParams, "cache", "false", "json.facet", json)));
+      assertEquals(geom, uncached, cached);
+    }
+    int entries = 0;
+    for (SolrCore core : controlJetty.getCoreContainer().getCores()) {
+      entries += core.withSearcher(searcher -> searcher.getSegmentCache().size());
+    }
+    assertTrue(entries > 0);
+  }
+
   private NamedList<?> getHmObj(QueryResponse response) {
     // classic faceting
     final NamedList<?> classicResp = (NamedList<?>) response.getResponse().findRecursive("facet_counts", "facet_heatmaps", FIELD);
@@ -727,7 +727,8 @@ public class TestCloudJSONFacetSKGEquiv extends SolrCloudTestCase {
       final NamedList<?> expected = getFacetResponse(basicParams);
 
       // now loop over all permutations of processors and sweep values and and compare them to the "default"...
-      for (FacetMethod method : EnumSet.allOf(FacetMethod.class)) {
+      // (APPROX only supports sorting on approximate counts, so it can't be compared)
+      for (FacetMethod method : EnumSet.complementOf(EnumSet.of(FacetMethod.APPROX))) {
         for (Boolean sweep : Arrays.asList(true, false, null)) {
           final ModifiableSolrParams options = params("method_val", method.toString().toLowerCase(Locale.ROOT));
           if (null != sweep) {
@@ -37,6 +37,7 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.Utils;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.macro.MacroExpander;
 import org.apache.solr.util.hll.HLL;
@@ -110,7 +111,9 @@ public class TestJsonFacets extends SolrTestCaseHS {
     }
     
     // wrap each enum val in an Object[] and return as Iterable
+    // (APPROX has approximate counts and restricted options, so it is only tested when requested explicitly)
     return () -> Arrays.stream(FacetField.FacetMethod.values())
+      .filter(it -> it != FacetField.FacetMethod.APPROX)
       .map(it -> new Object[]{it}).iterator();
   }
 
@@ -806,6 +809,46 @@ public class TestJsonFacets extends SolrTestCaseHS {
     }
   }
 
+
+  public void testSKGCachedBackgroundCounts() throws Exception {
+    Client client = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    Random r = random();
+    int id = 0;
+    for (int round = 0; round < 2; round++) {
+      // several segments, and in the second round deletions in old ones
+      for (int i = 0; i < 150; i++) {
+        client.add(sdoc("id", Integer.toString(id++), "cat_s", "c" + r.nextInt(12),
+                        "where_s", r.nextBoolean() ? "NY" : "NJ", "num_i", Integer.toString(r.nextInt(10))), null);
+        if (i % 50 == 49) {
+          client.commit();
+        }
+      }
+      if (round == 1) {
+        client.deleteByQuery("num_i:3", null);
+        client.commit();
+      }
+
+      for (String back : new String[] {"*:*", "where_s:NY", "num_i:[2 TO 7]"}) {
+        String facet = "{x: { type: terms, field: cat_s, method: dv, limit: -1, "
+            + "facet: { skg: { type: func, func: 'relatedness($fore,$back)', "
+            + RelatednessAgg.SWEEP_COLLECTION + ": ${sweep} } } } }";
+        // twice, to read back what the first request cached
+        for (int i = 0; i < 2; i++) {
+          String swept = h.query(req("q", "*:*", "rows", "0", "omitHeader", "true", "fore", "num_i:[0 TO 4]",
+                                     "back", back, "sweep", "true", "json.facet", facet));
+          String unswept = h.query(req("q", "*:*", "rows", "0", "omitHeader", "true", "fore", "num_i:[0 TO 4]",
+                                       "back", back, "sweep", "false", "json.facet", facet));
+          assertEquals(back, unswept, swept);
+        }
+        String debug = h.query(req("q", "*:*", "rows", "0", "debug", "true", "fore", "num_i:[0 TO 4]",
+                                   "back", back, "sweep", "true", "json.facet", facet));
+        assertTrue(debug, debug.contains("cachedSweepCounts"));
+      }
+    }
+    assertTrue(h.getCore().withSearcher(searcher -> searcher.getSegmentCache().size()) > 0);
+  }
+
   
   @Test
   public void testRepeatedNumerics() throws Exception {
@@ -829,6 +872,152 @@ public class TestJsonFacets extends SolrTestCaseHS {
     );
   }
 
+  public void testParallelFacets() throws Exception {
+    Client client = Client.localClient();
+    indexSimple(client);
+
+    // the same response, with the same ordering, regardless of the thread budget
+    for (String threads : new String[] {"0", "1", "4", "-1"}) {
+      assertJQ(req("q", "*:*", "rows", "0", FacetModule.THREADS_PARAM, threads,
+                   "json.facet", ""
+                   + "{cats: { type: terms, field: 'cat_s', sort: 'index asc', "
+                   + "         facet: { x: 'sum(num_d)', wheres: { type: terms, field: 'where_s', sort: 'index asc' } } }, "
+                   + " wheres: { type: terms, field: 'where_s', sort: 'index asc', facet: { n: 'sum(num_d)' } }, "
+                   + " q1: { type: query, q: 'cat_s:A', facet: { m: 'max(num_d)' } }, "
+                   + " r: { type: range, field: num_i, start: -5, end: 10, gap: 5, facet: { c: { type: terms, field: cat_s } } } }")
+               , "facets=={count:6, "
+               + " cats:{ buckets:["
+               + "   { val:'A', count:2, x:6.0, wheres:{ buckets:[{ val:'NJ', count:1 }, { val:'NY', count:1 } ] } }, "
+               + "   { val:'B', count:3, x:-3.0, wheres:{ buckets:[{ val:'NJ', count:2 }, { val:'NY', count:1 } ] } } ] }, "
+               + " wheres:{ buckets:[ { val:'NJ', count:3, n:4.0 }, { val:'NY', count:2, n:-1.0 } ] }, "
+               + " q1:{ count:2, m:4.0 }, "
+               + " r:{ buckets:["
+               + "   { val:-5, count:2, c:{ buckets:[{ val:'B', count:2 }] } }, "
+               + "   { val:0, count:2, c:{ buckets:[{ val:'A', count:2 }] } }, "
+               + "   { val:5, count:1, c:{ buckets:[{ val:'B', count:1 }] } } ] } }"
+               );
+    }
+  }
+
+  public void testParallelPerSegmentCounts() throws Exception {
+    Client client = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    // a few clearly ahead values and a long tail, spread over several segments
+    for (int i = 0; i < 200; i++) {
+      String val = i % 10 == 0 ? "v0" : i % 7 == 0 ? "v1" : i % 3 == 0 ? "v2" : "t" + (i % 60);
+      client.add(sdoc("id", Integer.toString(i), "cat_s", val), null);
+      if (i % 50 == 49) {
+        client.commit();
+      }
+    }
+
+    for (String facet : new String[] {
+        "{x: { type: terms, field: cat_s, method: dv, perSeg: true, limit: 3 } }",
+        "{x: { type: terms, field: cat_s, method: dv, perSeg: true, limit: 5, offset: 2, mincount: 2 } }",
+        "{x: { type: terms, field: cat_s, method: dv, perSeg: true, limit: -1 } }",
+        "{x: { type: terms, field: cat_s, method: dv, perSeg: true, limit: 3, sort: 'index asc' } }"}) {
+      String serial = h.query(req("q", "*:*", "rows", "0", "omitHeader", "true", "json.facet", facet));
+      String parallel = h.query(req("q", "*:*", "rows", "0", "omitHeader", "true", "json.facet", facet,
+                                    FacetModule.THREADS_PARAM, "4"));
+      assertEquals(facet, serial, parallel);
+    }
+
+    // top buckets by count only need the candidates of every segment
+    int segments = h.getCore().withSearcher(searcher -> searcher.getIndexReader().leaves().size());
+    assumeTrue("merge policy left a single segment", segments > 1);
+    String debug = h.query(req("q", "*:*", "rows", "0", "debug", "true", FacetModule.THREADS_PARAM, "4",
+                               "json.facet", "{x: { type: terms, field: cat_s, method: dv, perSeg: true, limit: 3 } }"));
+    assertTrue(debug, debug.contains("perSegParallel"));
+    assertTrue(debug, debug.contains("topCandidates"));
+  }
+
+  @Test
+  public void testApproxFacets() throws Exception {
+    Client client = Client.localClient();
+    doApproxFacets(client);
+
+    // when no value fits in the sketch, counts are upper bounds and countError bounds the over-estimation
+    String response = h.query(req("q", "*:*", "rows", "0", "wt", "json", "json.facet",
+                                  "{x: { type: terms, field: where_s, method: approx, sketchSize: 1, limit: 1 } }"));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> x = (Map<String, Object>) Utils.getObjectByPath(Utils.fromJSONString(response), false, "facets/x");
+    @SuppressWarnings("unchecked")
+    Map<String, Object> bucket = ((List<Map<String, Object>>) x.get("buckets")).get(0);
+    long count = ((Number) bucket.get("count")).longValue();
+    long countError = ((Number) bucket.get("countError")).longValue();
+    long trueCount = "NJ".equals(bucket.get("val")) ? 3 : 2;
+    long otherTrueCount = 5 - trueCount;
+    assertTrue(response, count - countError <= trueCount && trueCount <= count);
+    assertTrue(response, ((Number) x.get("countErrorBound")).longValue() >= otherTrueCount);
+
+    // only count desc with a limit is supported
+    for (String facet : new String[] {
+        "{x: { type: terms, field: cat_s, method: approx, sort: 'index asc' } }",
+        "{x: { type: terms, field: cat_s, method: approx, limit: -1 } }",
+        "{x: { type: terms, field: cat_s, method: approx, numBuckets: true } }",
+        "{x: { type: terms, field: cat_s, method: approx, refine: true } }"}) {
+      expectThrows(SolrException.class, () -> {
+          assertJQ(req("q", "*:*", "rows", "0", "json.facet", facet));
+        });
+    }
+  }
+
+  @Test
+  public void testApproxFacetsDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set( "shards", servers.getShards() );
+    doApproxFacets(client);
+  }
+
+  private void doApproxFacets(Client client) throws Exception {
+    indexSimple(client);
+
+    // the default sketch holds every value, so counts are exact
+    client.testJQ(params("q", "*:*", "rows", "0", "json.facet", "{"
+                         + " x: { type: terms, field: cat_s, method: approx },"
+                         + " y: { type: terms, field: cat_s, method: approx, limit: 1 },"
+                         + " z: { type: terms, field: num_is, method: approx, limit: 2, facet: { s: 'sum(num_d)' } } }")
+                  , "facets=={ count:6,"
+                  + " x:{ countErrorBound:0, buckets:[ {val:'B', count:3, countError:0}, {val:'A', count:2, countError:0} ] },"
+                  + " y:{ countErrorBound:3, buckets:[ {val:'B', count:3, countError:0} ] },"
+                  + " z:{ countErrorBound:2, buckets:[ {val:-5, count:2, countError:0, s:-14.0},"
+                  + "                                  {val:2, count:2, countError:0, s:6.0} ] } }"
+                  );
+  }
+
+  @Test
+  public void testPercentileSketches() throws Exception {
+    doPercentileSketches(Client.localClient());
+
+    expectThrows(SolrException.class, () -> {
+        assertJQ(req("q", "*:*", "rows", "0", "json.facet",
+                     "{ p:{ type:func, func:'percentile(num_d,50)', sketch:unknown } }"));
+      });
+  }
+
+  @Test
+  public void testPercentileSketchesDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set( "shards", servers.getShards() );
+    doPercentileSketches(client);
+  }
+
+  private void doPercentileSketches(Client client) throws Exception {
+    indexSimple(client);
+
+    // the relative error sketch returns the exact min and max; sorting uses the first percentile
+    client.testJQ(params("q", "*:*", "rows", "0", "json.facet", "{ x:{ type:terms, field:cat_s, sort:'p desc', facet:{"
+                         + "   p:{ type:func, func:'percentile(num_d,0,100)', sketch:ddsketch, relativeAccuracy:0.001 } } } }")
+                  , "facets=={ count:6, x:{ buckets:[ {val:'A', count:2, p:[2.0,4.0]}, {val:'B', count:3, p:[-9.0,11.0]} ] } }"
+                  );
+    client.testJQ(params("q", "*:*", "rows", "0", "json.facet", "{ x:{ type:terms, field:cat_s, sort:'p asc', facet:{"
+                         + "   p:{ type:func, func:'percentile(num_d,0,100)', sketch:ddsketch } } } }")
+                  , "facets=={ count:6, x:{ buckets:[ {val:'B', count:3, p:[-9.0,11.0]}, {val:'A', count:2, p:[2.0,4.0]} ] } }"
+                  );
+  }
+
   public void testDomainJoinSelf() throws Exception {
     Client client = Client.localClient();
     indexSimple(client);
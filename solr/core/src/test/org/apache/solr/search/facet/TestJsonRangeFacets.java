@@ -166,6 +166,55 @@ public class TestJsonRangeFacets extends SolrTestCaseHS {
     }
   }
 
+  @Test
+  public void testRangeMethodsDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set( "shards", servers.getShards()).set("debugQuery", Boolean.toString(random().nextBoolean()) );
+    doRangeMethods(client);
+  }
+
+  @Test
+  public void testRangeMethods() throws Exception {
+    doRangeMethods(Client.localClient());
+  }
+
+  /** every method must give the same buckets, whether or not it can count by docValues */
+  private void doRangeMethods(Client client) throws Exception {
+    client.queryDefaults().set("cache", cache);
+    indexSimple(client);
+
+    for (String method : new String[]{"filter", "dv", "smart"}) {
+      final SolrParams p = params("q", "*:*", "rows", "0", "json.facet.threads", random().nextBoolean() ? "0" : "2");
+      final String opts = "type:range, method:" + method + ", field:num_i, start:-5, end:8, gap:3, other:all, ";
+
+      client.testJQ(params(p, "json.facet", "{f:{" + opts + "}}")
+          , "facets=={count:6, f:{buckets:[" +
+              "{val:-5,count:2}, {val:-2,count:0}, {val:1,count:2}, {val:4,count:0}, {val:7,count:1}]," +
+              " before:{count:0}, after:{count:0}, between:{count:5}}}");
+
+      client.testJQ(params(p, "json.facet", "{f:{" + opts + "hardend:true, facet:{x:'sum(num_d)'}}}")
+          , "facets=={count:6, f:{buckets:[" +
+              "{val:-5,count:2,x:-14.0}, {val:-2,count:0,x:0.0}, {val:1,count:2,x:6.0}, {val:4,count:0,x:0.0}," +
+              " {val:7,count:1,x:11.0}]," +
+              " before:{count:0,x:0.0}, after:{count:0,x:0.0}, between:{count:5,x:3.0}}}");
+
+      client.testJQ(params(p, "json.facet", "{f:{" + opts + "include:upper}}")
+          , "facets=={count:6, f:{buckets:[" +
+              "{val:-5,count:0}, {val:-2,count:0}, {val:1,count:2}, {val:4,count:1}, {val:7,count:0}]," +
+              " before:{count:2}, after:{count:0}, between:{count:3}}}");
+
+      client.testJQ(params(p, "json.facet", "{f:{" + opts + "include:[lower,upper]}}")
+          , "facets=={count:6, f:{buckets:[" +
+              "{val:-5,count:2}, {val:-2,count:0}, {val:1,count:2}, {val:4,count:1}, {val:7,count:1}]," +
+              " before:{count:0}, after:{count:0}, between:{count:5}}}");
+
+      client.testJQ(params(p, "json.facet", "{f:{type:range, method:" + method + ", field:num_d, start:-10, end:12, gap:5.5}}")
+          , "facets=={count:6, f:{buckets:[" +
+              "{val:-10.0,count:2}, {val:-4.5,count:0}, {val:1.0,count:2}, {val:6.5,count:1}]}}");
+    }
+  }
+
   @Test
   public void testDateFacetsDistrib() throws Exception {
     initServers();
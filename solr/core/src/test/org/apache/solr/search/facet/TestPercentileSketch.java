@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+public class TestPercentileSketch extends SolrTestCase {
+
+  private static PercentileSketch.Spec spec(String... params) {
+    ModifiableSolrParams solrParams = new ModifiableSolrParams();
+    for (int i = 0; i < params.length; i += 2) {
+      solrParams.add(params[i], params[i + 1]);
+    }
+    return PercentileSketch.Spec.fromParams(solrParams);
+  }
+
+  public void testSpecParsing() {
+    assertEquals(PercentileSketch.Spec.DEFAULT, spec());
+    assertEquals(PercentileSketch.Type.MERGING, spec("sketch", "merging").type);
+    assertEquals(200.0, spec("sketch", "merging", "compression", "200").accuracy, 0.0);
+    assertEquals(0.05, spec("sketch", "ddsketch", "relativeAccuracy", "0.05").accuracy, 0.0);
+
+    for (String[] bad : new String[][] {
+        {"sketch", "kll"},
+        {"compression", "1"},
+        {"sketch", "ddsketch", "relativeAccuracy", "1.5"}}) {
+      SolrException e = expectThrows(SolrException.class, () -> spec(bad));
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    }
+  }
+
+  public void testMergedQuantiles() {
+    Random r = random();
+    for (PercentileSketch.Spec spec : new PercentileSketch.Spec[] {
+        PercentileSketch.Spec.DEFAULT, spec("sketch", "merging"), spec("sketch", "ddsketch")}) {
+      // a few shards, some small enough to stay in the buffer
+      int numShards = 1 + r.nextInt(4);
+      double[] all = new double[0];
+      PercentileSketch merged = null;
+      for (int shard = 0; shard < numShards; shard++) {
+        int n = r.nextBoolean() ? 1 + r.nextInt(PercentileSketch.BUFFER_SIZE) : 1 + r.nextInt(5000);
+        double[] vals = new double[n];
+        PercentileSketch sketch = spec.newSketch();
+        for (int i = 0; i < n; i++) {
+          vals[i] = Math.exp(r.nextGaussian() * 2) * (r.nextInt(10) == 0 ? -1 : 1);
+          sketch.add(vals[i]);
+        }
+        all = concat(all, vals);
+        PercentileSketch received = spec.fromBytes(sketch.toBytes());
+        if (merged == null) {
+          merged = received;
+        } else {
+          merged.merge(received);
+        }
+      }
+      Arrays.sort(all);
+
+      if (spec.type == PercentileSketch.Type.DDSKETCH) {
+        assertEquals(spec.toString(), all[0], merged.quantile(0), 0.0);
+        assertEquals(spec.toString(), all[all.length - 1], merged.quantile(1), 0.0);
+      }
+      for (double q : new double[] {0.1, 0.5, 0.9, 0.99}) {
+        if (spec.type == PercentileSketch.Type.DDSKETCH) {
+          // within the relative accuracy of the value at the rank
+          double expected = all[(int) (q * (all.length - 1))];
+          assertEquals(spec + " q=" + q, expected, merged.quantile(q), Math.abs(expected) * spec.accuracy * 1.000001);
+        } else {
+          // t-digest guarantees are on the rank, so check the value lies between the neighbours of the rank
+          int lo = Math.max(0, (int) Math.floor((q - 0.02) * all.length) - 1);
+          int hi = Math.min(all.length - 1, (int) Math.ceil((q + 0.02) * all.length) + 1);
+          double est = merged.quantile(q);
+          assertTrue(spec + " q=" + q + " est=" + est, all[lo] <= est && est <= all[hi]);
+        }
+      }
+    }
+  }
+
+  private static double[] concat(double[] a, double[] b) {
+    double[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestUnInvertedFieldFile extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    useFactory(null); // persisting needs a persistent directory
+    System.setProperty("solr.tests.persistUnInvertedFields", "true");
+    initCore("solrconfig.xml", "schema11.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.tests.persistUnInvertedFields");
+  }
+
+  private static UnInvertedField getUnInvertedField(String field) throws Exception {
+    return h.getCore().withSearcher(searcher -> UnInvertedField.getUnInvertedField(field, searcher));
+  }
+
+  private static Path getFile(String field) {
+    return Paths.get(h.getCore().getDataDir(), UnInvertedFieldFile.DIR_NAME, UnInvertedFieldFile.getFileName(field));
+  }
+
+  private static void assertFacets(String... tests) throws Exception {
+    assertJQ(req("q", "*:*", "rows", "0",
+        "json.facet", "{cats:{type:terms, field:cat, method:uif, limit:-1, facet:{x:'sum(num_i)'}}}"),
+        tests);
+  }
+
+  @Test
+  public void testPersistAcrossReload() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 100; i++) {
+      // the cat_* terms are frequent enough to be big terms, the u_* terms are un-inverted
+      assertU(adoc("id", Integer.toString(i), "num_i", Integer.toString(i), "cat", "cat_0",
+          "cat", "cat_" + (1 + i % 7), "cat", "cat_" + (10 + i % 3), "cat", "u_" + (i % 20)));
+    }
+    assertU(delI("99"));
+    assertU(commit());
+
+    String[] expected = {
+        "facets/count==99",
+        "facets/cats/buckets/[0]=={val:cat_0, count:99, x:4851.0}",
+        "facets/cats/buckets/[1]=={val:cat_10, count:33, x:1584.0}",
+        "facets/cats/buckets/[4]=={val:cat_1, count:15, x:735.0}",
+        "facets/cats/buckets/[11]=={val:u_0, count:5, x:200.0}"
+    };
+
+    UnInvertedField uif = getUnInvertedField("cat");
+    assertFalse(uif.loaded);
+    assertFacets(expected);
+    assertFalse("fields are only saved when the core closes", Files.exists(getFile("cat")));
+
+    h.reload();
+    assertTrue(Files.exists(getFile("cat")));
+
+    uif = getUnInvertedField("cat");
+    assertTrue(uif.loaded);
+    assertEquals(11, uif.bigTerms.size());
+    assertFacets(expected);
+
+    // a changed index invalidates the file
+    assertU(adoc("id", "100", "num_i", "100", "cat", "cat_0"));
+    assertU(commit());
+
+    uif = getUnInvertedField("cat");
+    assertFalse(uif.loaded);
+    assertFacets("facets/cats/buckets/[0]=={val:cat_0, count:100, x:4951.0}");
+
+    h.reload();
+    assertTrue(getUnInvertedField("cat").loaded);
+  }
+
+  @Test
+  public void testBrokenFile() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "cat", "c" + (i % 2)));
+    }
+    assertU(commit());
+    assertFalse(getUnInvertedField("cat").loaded);
+    h.reload();
+
+    Path file = getFile("cat");
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+    h.reload();
+    assertFalse(getUnInvertedField("cat").loaded);
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", "{cats:{type:terms, field:cat, method:uif}}"),
+        "facets/cats/buckets==[{val:c0, count:5}, {val:c1, count:5}]");
+  }
+
+  @Test
+  public void testRemovesUnusedFiles() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1", "cat", "c"));
+    assertU(commit());
+    assertFalse(getUnInvertedField("cat").loaded);
+
+    Path removedField = getFile("no_such_field");
+    Path tmp = getFile("cat").resolveSibling("leftover.tmp");
+    Files.createDirectories(removedField.getParent());
+    Files.write(removedField, new byte[] {1});
+    Files.write(tmp, new byte[] {1});
+
+    h.reload();
+    assertTrue(Files.exists(getFile("cat")));
+    assertFalse(Files.exists(removedField));
+    assertFalse(Files.exists(tmp));
+  }
+}
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
@@ -27,15 +28,21 @@ import java.util.Map;
 
 import javax.xml.xpath.XPathConstants;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.join.BitSetProducer;
 import org.apache.lucene.search.join.ScoreMode;
+import org.apache.lucene.util.BitSet;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricManager;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.util.BaseTestHarness;
@@ -330,6 +337,48 @@ public class BJQParserTest extends SolrTestCaseJ4 {
         delta("lookups", filterCache.getValue(), filtersBefore));
   }
   
+  @Test
+  public void testParentBitSetsSurviveCommit() throws Exception {
+    final Map<IndexReader.CacheKey,BitSet> bitSetsBefore = new HashMap<>();
+    final Query parentQuery;
+    try (final SolrQueryRequest req = req()) {
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, new SolrQueryResponse()));
+      parentQuery = QParser.getParser("parent_s:[* TO *]", req).getQuery();
+      // a new producer, as after a searcher without autowarmed perSegFilter cache
+      final BitSetProducer producer = ParentBitSetCache.newProducer(parentQuery);
+      for (LeafReaderContext leaf : req.getSearcher().getTopReaderContext().leaves()) {
+        final BitSet bits = producer.getBitSet(leaf);
+        assertSame(bits, producer.getBitSet(leaf));
+        bitSetsBefore.put(leaf.reader().getCoreCacheHelper().getKey(), bits);
+      }
+      assertTrue(req.getSearcher().getSegmentCache().size() > 0);
+      // once evicted, the producer's own bit sets are used rather than rebuilt
+      req.getSearcher().getSegmentCache().clear();
+      for (LeafReaderContext leaf : req.getSearcher().getTopReaderContext().leaves()) {
+        assertSame(bitSetsBefore.get(leaf.reader().getCoreCacheHelper().getKey()), producer.getBitSet(leaf));
+      }
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+
+    assertU(adoc("id", "12275", "child_s", "l", "childparent_s", "e"));
+    assertU(commit());
+
+    try (final SolrQueryRequest req = req()) {
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, new SolrQueryResponse()));
+      final BitSetProducer producer = ParentBitSetCache.newProducer(parentQuery);
+      for (LeafReaderContext leaf : req.getSearcher().getTopReaderContext().leaves()) {
+        final IndexReader.CacheKey key = leaf.reader().getCoreCacheHelper().getKey();
+        if (bitSetsBefore.containsKey(key)) {
+          assertSame("unchanged segment should reuse its bit set", bitSetsBefore.get(key), producer.getBitSet(leaf));
+        }
+      }
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+    assertQ(req("q", "{!parent which=\"parent_s:[* TO *]\"}child_s:l"), sixParents);
+  }
+
   private long delta(String key, Map<String,Object> a, Map<String,Object> b) {
     return (Long) a.get(key) - (Long) b.get(key);
   }
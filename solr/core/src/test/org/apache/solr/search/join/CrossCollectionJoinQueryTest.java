@@ -131,6 +131,11 @@ public class CrossCollectionJoinQueryTest extends SolrCloudTestCase {
   public void testCcJoinRoutedCollection() throws Exception {
     setupIndexes(true);
     testCcJoinQuery("{!join method=crossCollection fromIndex=products from=product_id_i to=product_id_i}size_s:M", true);
+    testCcJoinQuery("{!join method=crossCollection fromIndex=products from=product_id_s to=product_id_s routed=true keyFilter=true}size_s:M",
+        true);
+    // numeric fields can't be filtered by key, which doesn't fail the join
+    testCcJoinQuery("{!join method=crossCollection fromIndex=products from=product_id_i to=product_id_i keyFilter=true}size_s:M",
+        true);
     int i = 0;
     for (JettySolrRunner runner : cluster.getJettySolrRunners()) {
       i++;
@@ -201,6 +206,9 @@ public class CrossCollectionJoinQueryTest extends SolrCloudTestCase {
     // so we should get the full set of results.
     testCcJoinQuery("{!join_nonrouted method=crossCollection fromIndex=products from=product_id_s to=product_id_s}size_s:M",
         true);
+    // Filtering the keys that are streamed back by the keys each shard has doesn't change the results
+    testCcJoinQuery("{!join method=crossCollection fromIndex=products from=product_id_s to=product_id_s routed=false keyFilter=true}size_s:M",
+        true);
     // But if we set routed=true, we are now assuming again that the collection was routed on product_id,
     // so we should get incomplete results.
     testCcJoinQuery("{!join_nonrouted method=crossCollection fromIndex=products from=product_id_s to=product_id_s routed=true}size_s:M",
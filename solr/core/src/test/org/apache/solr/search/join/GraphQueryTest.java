@@ -82,45 +82,85 @@ public class GraphQueryTest extends SolrTestCaseJ4 {
     // start traversal from node id to edge id
 
     // TODO: assert which documents actually come back
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id}}id:doc_1")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id}}id:doc_1")
         , "/response/numFound==7"
     );
 
     // reverse the order to test single/multi-valued on the opposite fields
     // start with doc1, look up node_id (1) and match to edge_id (docs 7 and 8)
-    assertJQ(req(p, "q","{!graph from=${edge_id} to=${node_id} maxDepth=1}id:doc_1")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${edge_id} to=${node_id} maxDepth=1}id:doc_1")
         , "/response/numFound==3"
     );
 
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false}id:doc_8")
         , "/response/numFound==8"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=false returnOnlyLeaf=false}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=false returnOnlyLeaf=false}id:doc_8")
         , "/response/numFound==7"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false traversalFilter='text:foo11'}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false traversalFilter='text:foo11'}id:doc_8")
         , "/response/numFound==2"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false maxDepth=0}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false maxDepth=0}id:doc_8")
         , "/response/numFound==1"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false maxDepth=1}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=true returnOnlyLeaf=false maxDepth=1}id:doc_8")
         , "/response/numFound==3"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=false returnOnlyLeaf=false maxDepth=1}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=false returnOnlyLeaf=false maxDepth=1}id:doc_8")
         , "/response/numFound==2"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=false returnOnlyLeaf=true maxDepth=2}id:doc_8")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=false returnOnlyLeaf=true maxDepth=2}id:doc_8")
         , "/response/numFound==1"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} maxDepth=1}id:doc_1")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} maxDepth=1}id:doc_1")
         , "/response/numFound==2"
     );
-    assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} returnRoot=false maxDepth=1}id:doc_1")
+    assertJQ(req(p, "q","{!graph ${graph_opts:}from=${node_id} to=${edge_id} returnRoot=false maxDepth=1}id:doc_1")
         , "/response/numFound==1"
     );
   }
   
+  @Test
+  public void testGraphDirectTraversal() throws Exception {
+    // indexed strings with docValues
+    doGraph( params("node_id","node_sd",  "edge_id","edge_sds", "graph_opts","directTraversal=true ") );
+    doGraph( params("node_id","node_sds", "edge_id","edge_sds", "graph_opts","directTraversal=true threads=2 ") );
+
+    // not supported by these fields, so traversed with queries
+    doGraph( params("node_id","node_sdN", "edge_id","edge_sdsN", "graph_opts","directTraversal=true ") );
+    doGraph( params("node_id","node_ip",  "edge_id","edge_ips", "graph_opts","directTraversal=true ") );
+  }
+
+  @Test
+  public void testGraphMaxNodes() throws Exception {
+    for (String opts : new String[] {"", "directTraversal=true ", "directTraversal=true threads=-1 "}) {
+      SolrParams p = params("node_id","node_sd", "edge_id","edge_sds", "graph_opts",opts);
+      doGraph(p);
+
+      // doc_1 -> doc_2 -> (doc_3, doc_9) -> (doc_4, doc_5) -> doc_7
+      assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} ${graph_opts}maxNodes=100}id:doc_1")
+          , "/response/numFound==7"
+      );
+      assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} ${graph_opts}maxNodes=1}id:doc_1")
+          , "/response/numFound==1"
+      );
+      // the last level is visited in the order of the doc ids, up to the max
+      assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} ${graph_opts}maxNodes=3}id:doc_1")
+          , "/response/numFound==3"
+      );
+      assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} ${graph_opts}maxNodes=4}id:doc_1")
+          , "/response/numFound==4"
+      );
+      assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} ${graph_opts}maxNodes=4 maxDepth=1}id:doc_1")
+          , "/response/numFound==2"
+      );
+      assertJQ(req(p, "q","{!graph from=${node_id} to=${edge_id} ${graph_opts}maxNodes=4 returnRoot=false}id:doc_1")
+          , "/response/numFound==3"
+      );
+    }
+  }
+
   @Test
   public void testGraphQueryParserValidation() throws Exception {
     // from schema field existence
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCase;
+
+public class TestHashSetQuery extends SolrTestCase {
+
+  public void testNoFalseNegatives() {
+    final int numKeys = atLeast(1000);
+    final long[] bits = HashSetQuery.createBits(numKeys);
+    assertEquals(0, bits.length & (bits.length - 1));
+    assertTrue(bits.length * 64L >= numKeys * (long) HashSetQuery.BITS_PER_KEY);
+    for (int i = 0; i < numKeys; i++) {
+      HashSetQuery.add(bits, new BytesRef("key" + i));
+    }
+
+    final long[] decoded = HashSetQuery.decode(HashSetQuery.encode(bits));
+    assertArrayEquals(bits, decoded);
+    for (int i = 0; i < numKeys; i++) {
+      assertTrue(HashSetQuery.mightContain(decoded, new BytesRef("key" + i)));
+    }
+
+    int falsePositives = 0;
+    for (int i = numKeys; i < numKeys * 2; i++) {
+      if (HashSetQuery.mightContain(decoded, new BytesRef("key" + i))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("too many false positives: " + falsePositives, falsePositives < numKeys / 10);
+  }
+
+  public void testEmptySet() {
+    final long[] bits = HashSetQuery.createBits(0);
+    assertEquals(1, bits.length);
+    assertFalse(HashSetQuery.mightContain(bits, new BytesRef("key")));
+  }
+
+  public void testInvalidBits() {
+    expectThrows(IllegalArgumentException.class, () -> new HashSetQuery("f", new long[3]));
+  }
+}
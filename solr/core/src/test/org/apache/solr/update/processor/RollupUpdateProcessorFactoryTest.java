@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.TimeSource;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.facet.HLLAgg;
+import org.apache.solr.util.TimeOut;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Tests that {@link RollupUpdateProcessorFactory} rolls up to a companion core, that facets over the rollup
+ * match facets over the raw documents, and that compatible facet requests are answered from the rollup
+ */
+public class RollupUpdateProcessorFactoryTest extends SolrTestCaseJ4 {
+
+  private static final String DAY_2020 = "ts_dt:[2020-01-01T00:00:00Z TO 2020-01-02T00:00:00Z}";
+  private static final String DAY_2021 = "ts_dt:[2021-01-01T00:00:00Z TO 2021-01-02T00:00:00Z}";
+
+  private static EmbeddedSolrServer rollup;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-rollup-update-processor.xml", "schema15.xml");
+    h.getCoreContainer().create("rollup",
+        ImmutableMap.of("dataDir", createTempDir().toFile().getAbsolutePath(), "configSet", "rollup"));
+    rollup = new EmbeddedSolrServer(h.getCoreContainer(), "rollup");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    rollup = null;
+    if (null != h) {
+      h.getCoreContainer().unload("rollup");
+    }
+  }
+
+  public void testRollup() throws Exception {
+    assertU(adoc("id", "1", "ts_dt", "2020-01-01T10:15:00Z", "host_s1", "a", "status_s1", "200", "bytes_l", "10", "user_s", "u1",
+        "latency_f", "1.5"));
+    assertU(adoc("id", "2", "ts_dt", "2020-01-01T10:45:00Z", "host_s1", "a", "status_s1", "200", "bytes_l", "20", "user_s", "u2",
+        "latency_f", "-2.25"));
+    assertU(adoc("id", "3", "ts_dt", "2020-01-01T10:50:00Z", "host_s1", "b", "status_s1", "500", "bytes_l", "5", "user_s", "u1"));
+    assertU(adoc("id", "4", "ts_dt", "2020-01-01T11:05:00Z", "host_s1", "a", "status_s1", "200", "bytes_l", "7", "user_s", "u3"));
+    assertU(adoc("id", "5", "ts_dt", "2020-01-01T11:30:00Z", "host_s1", "a", "status_s1", "200", "bytes_l", "1", "user_s", "u1"));
+    // no time, not rolled up
+    assertU(adoc("id", "6", "host_s1", "a", "bytes_l", "1000"));
+    assertU(commit());
+
+    waitForRolledUpCount(DAY_2020, 5);
+    assertEquals(3L, rollupFacets(DAY_2020, "{}").get("count"));
+
+    final String hourly = "{hours:{type:range, field:ts_dt, start:'2020-01-01T10:00:00Z', end:'2020-01-01T12:00:00Z', gap:'+1HOUR', "
+        + "facet:{n:'sum(count_l)', bytes:'sum(bytes_l_sum_d)', users:'hllunion(user_s_hll_s)'}}}";
+    NamedList<?> hours = rollupFacets("host_s1:a", hourly);
+    assertHour(hours, 0, 2, 30, 2);
+    assertHour(hours, 1, 2, 8, 2);
+    assertEquals(3L, rollupFacets(DAY_2020, "{users:'hllunion(user_s_hll_s)'}").get("users"));
+    assertEquals(2L, rollupFacets(DAY_2020, "{latencies:'hllunion(latency_f_hll_s)'}").get("latencies"));
+
+    // the same answers as over the raw documents
+    assertJQ(req("q", "host_s1:a", "rows", "0", "json.facet",
+        hourly.replace("sum(count_l)", "sum(1)").replace("bytes_l_sum_d", "bytes_l").replace("hllunion(user_s_hll_s)", "hll(user_s)")),
+        "/facets/hours/buckets/[0]=={val:'2020-01-01T10:00:00Z', count:2, n:2.0, bytes:30.0, users:2}",
+        "/facets/hours/buckets/[1]=={val:'2020-01-01T11:00:00Z', count:2, n:2.0, bytes:8.0, users:2}");
+
+    // later flushes add to the earlier ones
+    assertU(adoc("id", "7", "ts_dt", "2020-01-01T10:20:00Z", "host_s1", "a", "status_s1", "200", "bytes_l", "100", "user_s", "u2"));
+    assertU(commit());
+    waitForRolledUpCount(DAY_2020, 6);
+    hours = rollupFacets("host_s1:a", hourly);
+    assertHour(hours, 0, 3, 130, 2);
+    assertHour(hours, 1, 2, 8, 2);
+    // into the same rollup documents, one per combination
+    assertEquals(3L, rollup.query(params("q", DAY_2020, "rows", "0")).getResults().getNumFound());
+
+    // a rollup document only the rollup knows about, to tell which answers come from the rollup
+    rollup.add(sdoc("id", "extra", "ts_dt", "2020-01-01T11:00:00Z", "host_s1", "a", "status_s1", "200", "count_l", "10",
+        "bytes_l_sum_d", "1000"));
+    rollup.commit();
+    try {
+      final String rawHourly = "{hours:{type:range, field:ts_dt, start:'2020-01-01T10:00:00Z', end:'2020-01-01T12:00:00Z', gap:'+1HOUR', "
+          + "facet:{bytes:'sum(bytes_l)', users:'hll(user_s)'}}}";
+      assertJQ(req("q", "host_s1:a", "fq", DAY_2020, "rows", "0", "json.facet", rawHourly),
+          "/facets=={count:15, hours:{buckets:["
+              + "{val:'2020-01-01T10:00:00Z', count:3, bytes:130.0, users:2},"
+              + "{val:'2020-01-01T11:00:00Z', count:12, bytes:1008.0, users:2}]}}");
+      // turned off, and not aligned to the rollup interval: from the index
+      final String fromIndex = "/facets=={count:5, hours:{buckets:["
+          + "{val:'2020-01-01T10:00:00Z', count:3, bytes:130.0, users:2},"
+          + "{val:'2020-01-01T11:00:00Z', count:2, bytes:8.0, users:2}]}}";
+      assertJQ(req("q", "host_s1:a", "fq", DAY_2020, "rows", "0", "json.facet", rawHourly, "json.facet.rollup", "false"),
+          fromIndex);
+      assertJQ(req("q", "host_s1:a", "fq", "ts_dt:[2020-01-01T10:00:00Z TO 2020-01-01T23:30:00Z]", "rows", "0",
+          "json.facet", rawHourly), fromIndex);
+      // not rolled up: a filter on another field, and a statistic of another field
+      assertJQ(req("q", "host_s1:a", "fq", DAY_2020, "fq", "bytes_l:[0 TO *]", "rows", "0", "json.facet", rawHourly),
+          fromIndex);
+      assertJQ(req("q", "host_s1:a", "fq", DAY_2020, "rows", "0", "json.facet", "{latency:'sum(latency_f)'}"),
+          "/facets/count==5");
+      // terms facets on dimensions, sorted by the rolled up count
+      assertJQ(req("q", "*:*", "fq", DAY_2020, "rows", "0", "json.facet",
+          "{hosts:{type:terms, field:host_s1, facet:{bytes:'sum(bytes_l)'}}}"),
+          "/facets=={count:16, hosts:{buckets:[{val:'a', count:15, bytes:1138.0}, {val:'b', count:1, bytes:5.0}]}}");
+    } finally {
+      rollup.deleteById("extra");
+      rollup.commit();
+    }
+  }
+
+  public void testAppendOnly() throws Exception {
+    // without a time, so nothing is rolled up
+    assertU(adoc("id", "append", "host_s1", "a"));
+    assertFailedU(adoc("id", "append", "host_s1", "b"));
+    assertFailedU(delI("append"));
+    assertFailedU(delQ("id:append"));
+    assertU(commit());
+    assertQ(req("q", "id:append"), "//result[@numFound='1']", "//str[@name='host_s1'][.='a']");
+  }
+
+  public void testMergesStoredRollupWithMissingValues() throws Exception {
+    final RollupUpdateProcessorFactory factory = getFactory();
+    final RollupUpdateProcessorFactory.RollupKey key = new RollupUpdateProcessorFactory.RollupKey(
+        Instant.parse("2021-01-01T10:00:00Z").toEpochMilli(), Arrays.asList("a", "200"));
+    // as written before bytes_l and user_s were rolled up
+    rollup.add(sdoc("id", factory.toId(key), "ts_dt", "2021-01-01T10:00:00Z", "host_s1", "a", "status_s1", "200",
+        "count_l", "5"));
+    rollup.commit();
+
+    assertU(adoc("id", "merged", "ts_dt", "2021-01-01T10:30:00Z", "host_s1", "a", "status_s1", "200", "bytes_l", "3",
+        "user_s", "u1"));
+    assertU(commit());
+    waitForRolledUpCount(DAY_2021, 6);
+    NamedList<?> facets = rollupFacets(DAY_2021, "{bytes:'sum(bytes_l_sum_d)', users:'hllunion(user_s_hll_s)'}");
+    assertEquals(1L, facets.get("count"));
+    assertEquals(3.0, ((Number) facets.get("bytes")).doubleValue(), 0.0);
+    assertEquals(1L, facets.get("users"));
+  }
+
+  public void testDimensionCombinations() {
+    SolrInputDocument doc = sdoc("id", "combinations", "host_s1", "a");
+    doc.addField("host_s1", "b");
+    // every value of a multi-valued dimension, and null for a missing one
+    assertEquals(Arrays.asList(Arrays.asList("a", null), Arrays.asList("b", null)),
+        getFactory().dimensionCombinations(doc));
+  }
+
+  private static RollupUpdateProcessorFactory getFactory() {
+    for (UpdateRequestProcessorFactory factory : h.getCore().getUpdateProcessingChain("rollup").getProcessors()) {
+      if (factory instanceof RollupUpdateProcessorFactory) {
+        return (RollupUpdateProcessorFactory) factory;
+      }
+    }
+    throw new AssertionError("no RollupUpdateProcessorFactory");
+  }
+
+  public void testHashesLikeHll() throws Exception {
+    h.getCore().withSearcher(searcher -> {
+      // the values hll(latency_f) hashes, whether the field is a trie or point field with or without docValues
+      SchemaField sf = searcher.getSchema().getField("latency_f");
+      NumericDocValues values = DocValues.getNumeric(searcher.getSlowAtomicReader(), "latency_f");
+      int doc = searcher.getFirstMatch(new Term("id", "2"));
+      assertTrue(values.advanceExact(doc));
+      assertEquals(Hash.fmix64(values.longValue()), HLLAgg.hash(sf, -2.25f));
+      return null;
+    });
+  }
+
+  private static void assertHour(NamedList<?> facets, int hour, long n, double bytes, long users) {
+    NamedList<?> bucket = (NamedList<?>) ((List<?>) ((NamedList<?>) facets.get("hours")).get("buckets")).get(hour);
+    assertEquals(bucket.toString(), (double) n, ((Number) bucket.get("n")).doubleValue(), 0.0);
+    assertEquals(bucket.toString(), bytes, ((Number) bucket.get("bytes")).doubleValue(), 0.0);
+    assertEquals(bucket.toString(), users, ((Number) bucket.get("users")).longValue());
+  }
+
+  private static NamedList<?> rollupFacets(String q, String jsonFacet) throws Exception {
+    ModifiableSolrParams params = params("q", q, "rows", "0", "json.facet", jsonFacet);
+    return (NamedList<?>) rollup.query(params).getResponse().get("facets");
+  }
+
+  /** rollups are flushed in the background after a commit */
+  private static void waitForRolledUpCount(String q, long expected) throws Exception {
+    TimeOut timeout = new TimeOut(30, TimeUnit.SECONDS, TimeSource.NANO_TIME);
+    long rolledUp = -1;
+    while (!timeout.hasTimedOut()) {
+      rollup.commit();
+      Number sum = (Number) rollupFacets(q, "{n:'sum(count_l)'}").get("n");
+      rolledUp = sum == null ? 0 : sum.longValue();
+      if (rolledUp == expected) {
+        return;
+      }
+      timeout.sleep(50);
+    }
+    fail("expected " + expected + " rolled up documents, found " + rolledUp);
+  }
+}
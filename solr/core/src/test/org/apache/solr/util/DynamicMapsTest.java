@@ -87,4 +87,21 @@ public class DynamicMapsTest extends SolrTestCase {
     assertEquals(-1, map.get(101));
     assertEquals(-1, map.get(0));
   }
+
+  public void testClear() {
+    IntIntDynamicMap map = new IntIntDynamicMap(100, -1);
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    map.clear();
+    AtomicInteger size = new AtomicInteger(0);
+    map.forEachValue(i -> size.incrementAndGet());
+    assertEquals(0, size.get());
+    assertEquals(-1, map.get(5));
+    assertEquals(100, map.getExpectedKeyMax());
+
+    map.put(5, 7);
+    assertEquals(7, map.get(5));
+    assertEquals(-1, map.get(6));
+  }
 }
@@ -39,6 +39,10 @@ public class BinaryResponseParser extends ResponseParser {
     return this;
   }
 
+  public JavaBinCodec.StringCache getStringCache() {
+    return stringCache;
+  }
+
   @Override
   public String getWriterType() {
     return "javabin";
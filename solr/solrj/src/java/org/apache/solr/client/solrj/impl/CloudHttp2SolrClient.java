@@ -36,6 +36,8 @@ import org.apache.solr.common.SolrException;
  * 'id' - if this is not the case, you must set the right name
  * with {@link #setIdField(String)}.
  *
+ * To stream documents to shard leaders in asynchronous batches, see {@link LeaderBatchingUpdateWriter}.
+ *
  * @lucene.experimental
  * @since solr 8.0
  */
@@ -68,6 +68,9 @@ import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.common.util.Base64;
 import org.apache.solr.common.util.ContentStream;
 import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.JavaBinStringDictionary;
+import org.apache.solr.common.util.LZ4Block;
+import org.apache.solr.common.util.LZ4BlockInputStream;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.ObjectReleaseTracker;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
@@ -139,6 +142,10 @@ public class Http2SolrClient extends SolrClient {
   private boolean shutdownExecutor;
 
   private final String basicAuthAuthorizationStr;
+  private final JavaBinStringDictionary stringDictionary;
+  // decodes javabin with the dictionary, so that the parsers of requests and of this client aren't changed
+  private final BinaryResponseParser dictionaryParser;
+  private final boolean responseCompression;
 
   protected Http2SolrClient(String serverBaseUrl, Builder builder) {
     if (serverBaseUrl != null)  {
@@ -166,6 +173,9 @@ public class Http2SolrClient extends SolrClient {
     } else {
       basicAuthAuthorizationStr = null;
     }
+    this.stringDictionary = builder.stringDictionary;
+    this.dictionaryParser = stringDictionary == null ? null : new BinaryResponseParser().setStringCache(stringDictionary);
+    this.responseCompression = builder.responseCompression;
     assert ObjectReleaseTracker.track(this);
   }
 
@@ -462,6 +472,14 @@ public class Http2SolrClient extends SolrClient {
 
   private NamedList<Object> processErrorsAndResponse(SolrRequest<?> solrRequest,
                                                      ResponseParser parser, Response response, InputStream is) throws SolrServerException {
+    // subclasses may decode differently, so only plain javabin parsers are swapped for the dictionary's
+    if (dictionaryParser != null && parser.getClass() == BinaryResponseParser.class
+        && ((BinaryResponseParser) parser).getStringCache() == null) {
+      parser = dictionaryParser;
+    }
+    if (LZ4Block.CONTENT_ENCODING.equals(response.getHeaders().get(HttpHeader.CONTENT_ENCODING))) {
+      is = new LZ4BlockInputStream(is);
+    }
     ContentType contentType = getContentType(response);
     String mimeType = null;
     String encoding = null;
@@ -500,6 +518,9 @@ public class Http2SolrClient extends SolrClient {
 
   private void decorateRequest(Request req, SolrRequest<?> solrRequest) {
     req.header(HttpHeader.ACCEPT_ENCODING, null);
+    if (responseCompression) {
+      req.header(HttpHeader.ACCEPT_ENCODING, LZ4Block.CONTENT_ENCODING);
+    }
     req.timeout(idleTimeout, TimeUnit.MILLISECONDS);
     if (solrRequest.getUserPrincipal() != null) {
       req.attribute(REQ_PRINCIPAL_KEY, solrRequest.getUserPrincipal());
@@ -859,6 +880,8 @@ public class Http2SolrClient extends SolrClient {
     private boolean useHttp1_1 = Boolean.getBoolean("solr.http1");
     protected String baseSolrUrl;
     private ExecutorService executor;
+    private JavaBinStringDictionary stringDictionary;
+    private boolean responseCompression;
 
     public Builder() {
 
@@ -948,6 +971,34 @@ public class Http2SolrClient extends SolrClient {
       this.connectionTimeout = connectionTimeOut;
       return this;
     }
+
+    /**
+     * Decode strings of javabin responses through a dictionary shared by all responses of the created client,
+     * so that repeated field names and short values are not allocated again for every response.
+     *
+     * @param maxEntries the number of strings the dictionary holds
+     * @see JavaBinStringDictionary
+     */
+    public Builder withJavaBinStringDictionary(int maxEntries) {
+      return withJavaBinStringDictionary(new JavaBinStringDictionary(maxEntries));
+    }
+
+    /**
+     * Decode strings of javabin responses through the given dictionary, which may be shared with other clients.
+     */
+    public Builder withJavaBinStringDictionary(JavaBinStringDictionary stringDictionary) {
+      this.stringDictionary = stringDictionary;
+      return this;
+    }
+
+    /**
+     * Ask servers to compress large response bodies with {@link LZ4Block LZ4}. Servers that do not support it,
+     * or responses below the server's size threshold, are answered uncompressed as before.
+     */
+    public Builder withResponseCompression(boolean responseCompression) {
+      this.responseCompression = responseCompression;
+      return this;
+    }
   }
 
   public Set<String> getQueryParams() {
@@ -987,6 +1038,22 @@ public class Http2SolrClient extends SolrClient {
     return parser;
   }
 
+  /**
+   * @return the dictionary used to decode javabin strings, or null if none was configured
+   * @see Builder#withJavaBinStringDictionary(int)
+   */
+  public JavaBinStringDictionary getJavaBinStringDictionary() {
+    return stringDictionary;
+  }
+
+  /**
+   * @return true if this client asks servers to compress responses
+   * @see Builder#withResponseCompression(boolean)
+   */
+  public boolean isResponseCompression() {
+    return responseCompression;
+  }
+
   public void setParser(ResponseParser processor) {
     parser = processor;
   }
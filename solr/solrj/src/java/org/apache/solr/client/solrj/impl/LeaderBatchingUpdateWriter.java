@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.util.AsyncListener;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.ToleratedUpdateError;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.solr.common.params.CommonParams.ID;
+
+/**
+ * Streams documents into a SolrCloud collection through a {@link CloudHttp2SolrClient}, sending
+ * each document straight to the leader of the shard it hashes to.
+ * <p>
+ * Documents are buffered per shard and sent as one asynchronous {@link UpdateRequest} when the buffer
+ * reaches {@link Builder#withBatchSize(int) batchSize} documents, or when its oldest document has
+ * waited longer than {@link Builder#withFlushInterval(long, TimeUnit) flushInterval}. At most
+ * {@link Builder#withMaxInFlightBatchesPerLeader(int) maxInFlightBatchesPerLeader} batches are
+ * outstanding per shard; {@link #add(SolrInputDocument)} blocks once that limit is reached, which
+ * gives producers natural back pressure.
+ * <p>
+ * Failures are reported per document to the {@link FailureListener}. A failed batch reports every
+ * document in it; if the collection uses the <code>TolerantUpdateProcessor</code>, only the documents
+ * it rejected are reported.
+ * <p>
+ * Example:
+ * <pre>
+ *   try (LeaderBatchingUpdateWriter writer = new LeaderBatchingUpdateWriter.Builder(cloudClient, "products")
+ *       .withBatchSize(500)
+ *       .withFailureListener((doc, t) -&gt; log.warn("Could not index {}", doc.getFieldValue("id"), t))
+ *       .build()) {
+ *     for (SolrInputDocument doc : docs) {
+ *       writer.add(doc);
+ *     }
+ *   }
+ * </pre>
+ *
+ * @lucene.experimental
+ */
+public class LeaderBatchingUpdateWriter implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Receives documents that could not be indexed.
+   */
+  public interface FailureListener {
+    void onFailure(SolrInputDocument doc, Throwable failure);
+  }
+
+  private static final FailureListener LOGGING_FAILURE_LISTENER = (doc, failure) ->
+      log.error("Failed to index document {}", doc.getFieldValue(ID), failure);
+
+  private final CloudHttp2SolrClient client;
+  private final String collection;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final int maxInFlightBatchesPerLeader;
+  private final SolrParams params;
+  private final FailureListener failureListener;
+  private final Map<String, ShardBuffer> buffers = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService flushScheduler;
+  private volatile boolean closed;
+
+  protected LeaderBatchingUpdateWriter(Builder builder) {
+    this.client = builder.client;
+    this.collection = builder.collection;
+    this.batchSize = builder.batchSize;
+    this.flushIntervalNanos = builder.flushIntervalNanos;
+    this.maxInFlightBatchesPerLeader = builder.maxInFlightBatchesPerLeader;
+    this.params = builder.params;
+    this.failureListener = builder.failureListener;
+    this.flushScheduler = Executors.newSingleThreadScheduledExecutor(new SolrNamedThreadFactory("leaderBatchingUpdateWriter"));
+    long checkIntervalNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), flushIntervalNanos / 2);
+    flushScheduler.scheduleWithFixedDelay(this::flushExpired, checkIntervalNanos, checkIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Buffers the document for its shard leader, sending the shard's batch if it is full.
+   * Blocks while the shard already has the maximum number of batches in flight.
+   */
+  public void add(SolrInputDocument doc) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("This writer has been closed");
+    }
+    DocCollection col = getDocCollection();
+    DocRouter router = col.getRouter();
+    String routeField = router.getRouteField(col) == null ? ID : router.getRouteField(col);
+    Object routeValue = doc.getFieldValue(routeField);
+    Slice slice = router.getTargetSlice(routeValue == null ? null : routeValue.toString(), doc, null, params, col);
+    if (slice == null) {
+      failureListener.onFailure(doc, new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "No active shard for document " + doc.getFieldValue(ID) + " in collection " + collection));
+      return;
+    }
+    ShardBuffer buffer = buffers.computeIfAbsent(slice.getName(), ShardBuffer::new);
+    List<SolrInputDocument> batch = buffer.add(doc);
+    if (batch != null) {
+      send(buffer, batch);
+    }
+  }
+
+  /**
+   * Sends all buffered documents and waits until every in-flight batch has completed.
+   */
+  public void flush() throws InterruptedException {
+    for (ShardBuffer buffer : buffers.values()) {
+      List<SolrInputDocument> batch = buffer.drain();
+      if (batch != null) {
+        send(buffer, batch);
+      }
+    }
+    for (ShardBuffer buffer : buffers.values()) {
+      buffer.inFlight.acquire(maxInFlightBatchesPerLeader);
+      buffer.inFlight.release(maxInFlightBatchesPerLeader);
+    }
+  }
+
+  /**
+   * Flushes all buffered documents and stops the background flush thread. The underlying client is not closed.
+   */
+  @Override
+  public void close() {
+    if (closed) return;
+    closed = true;
+    ExecutorUtil.shutdownAndAwaitTermination(flushScheduler);
+    try {
+      flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private DocCollection getDocCollection() {
+    DocCollection col = client.getDocCollection(collection, null);
+    if (col == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Collection not found: " + collection);
+    }
+    return col;
+  }
+
+  private void flushExpired() {
+    long now = System.nanoTime();
+    try {
+      for (ShardBuffer buffer : buffers.values()) {
+        List<SolrInputDocument> batch = buffer.drainIfOlderThan(now - flushIntervalNanos);
+        if (batch != null) {
+          send(buffer, batch);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.error("Error flushing buffered documents for collection {}", collection, e);
+    }
+  }
+
+  private void send(ShardBuffer buffer, List<SolrInputDocument> batch) throws InterruptedException {
+    buffer.inFlight.acquire();
+    List<String> urls;
+    try {
+      urls = getReplicaUrls(buffer.shard);
+    } catch (RuntimeException e) {
+      buffer.inFlight.release();
+      failAll(batch, e);
+      return;
+    }
+    if (urls.isEmpty()) {
+      buffer.inFlight.release();
+      failAll(batch, new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE,
+          "No replicas available for shard " + buffer.shard + " of collection " + collection));
+      return;
+    }
+
+    UpdateRequest request = new UpdateRequest();
+    request.setParams(new ModifiableSolrParams(params));
+    request.add(batch);
+    client.getLbClient().asyncReq(new LBSolrClient.Req(request, urls), new AsyncListener<>() {
+      @Override
+      public void onSuccess(LBSolrClient.Rsp rsp) {
+        try {
+          reportToleratedErrors(batch, rsp.getResponse());
+        } finally {
+          buffer.inFlight.release();
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable throwable) {
+        try {
+          // the leader may have moved, make the next lookup check the cluster state again
+          BaseCloudSolrClient.ExpiringCachedDocCollection cached = client.collectionStateCache.get(collection);
+          if (cached != null) {
+            cached.maybeStale = true;
+          }
+          failAll(batch, throwable);
+        } finally {
+          buffer.inFlight.release();
+        }
+      }
+    });
+  }
+
+  /** The shard leader first, followed by the other active replicas that may accept updates */
+  private List<String> getReplicaUrls(String shard) {
+    Slice slice = getDocCollection().getSlice(shard);
+    List<String> urls = new ArrayList<>();
+    if (slice == null) {
+      return urls;
+    }
+    Replica leader = slice.getLeader();
+    if (leader != null) {
+      urls.add(leader.getCoreUrl());
+    }
+    if (!client.isDirectUpdatesToLeadersOnly() || leader == null) {
+      for (Replica replica : slice.getReplicas()) {
+        if (replica != leader && replica.getType() != Replica.Type.PULL
+            && replica.isActive(client.getClusterStateProvider().getLiveNodes())) {
+          urls.add(replica.getCoreUrl());
+        }
+      }
+    }
+    return urls;
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private void reportToleratedErrors(List<SolrInputDocument> batch, NamedList<Object> response) {
+    NamedList<Object> header = response == null ? null : (NamedList<Object>) response.get("responseHeader");
+    List<SimpleOrderedMap<String>> errors = header == null ? null : (List<SimpleOrderedMap<String>>) header.get("errors");
+    if (errors == null || errors.isEmpty()) {
+      return;
+    }
+    Map<String, SolrInputDocument> docsById = new HashMap<>(batch.size());
+    for (SolrInputDocument doc : batch) {
+      Object id = doc.getFieldValue(ID);
+      if (id != null) {
+        docsById.put(id.toString(), doc);
+      }
+    }
+    for (SimpleOrderedMap<String> error : errors) {
+      ToleratedUpdateError err = ToleratedUpdateError.parseMap(error);
+      SolrInputDocument doc = docsById.get(err.getId());
+      if (doc != null) {
+        failureListener.onFailure(doc, new SolrException(SolrException.ErrorCode.BAD_REQUEST, err.getMessage()));
+      }
+    }
+  }
+
+  private void failAll(List<SolrInputDocument> batch, Throwable failure) {
+    for (SolrInputDocument doc : batch) {
+      try {
+        failureListener.onFailure(doc, failure);
+      } catch (Exception e) {
+        log.error("FailureListener threw an exception", e);
+      }
+    }
+  }
+
+  private class ShardBuffer {
+    final String shard;
+    final Semaphore inFlight = new Semaphore(maxInFlightBatchesPerLeader);
+    private List<SolrInputDocument> docs = new ArrayList<>();
+    private long firstAddNanos;
+
+    ShardBuffer(String shard) {
+      this.shard = shard;
+    }
+
+    /** @return the full batch to send, or null if the buffer is not full yet */
+    synchronized List<SolrInputDocument> add(SolrInputDocument doc) {
+      if (docs.isEmpty()) {
+        firstAddNanos = System.nanoTime();
+      }
+      docs.add(doc);
+      return docs.size() >= batchSize ? drain() : null;
+    }
+
+    synchronized List<SolrInputDocument> drainIfOlderThan(long nanos) {
+      return !docs.isEmpty() && firstAddNanos - nanos <= 0 ? drain() : null;
+    }
+
+    synchronized List<SolrInputDocument> drain() {
+      if (docs.isEmpty()) {
+        return null;
+      }
+      List<SolrInputDocument> batch = docs;
+      docs = new ArrayList<>(batchSize);
+      return batch;
+    }
+  }
+
+  /**
+   * Constructs {@link LeaderBatchingUpdateWriter} instances.
+   */
+  public static class Builder {
+    protected final CloudHttp2SolrClient client;
+    protected final String collection;
+    protected int batchSize = 1000;
+    protected long flushIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+    protected int maxInFlightBatchesPerLeader = 2;
+    protected SolrParams params = new ModifiableSolrParams();
+    protected FailureListener failureListener = LOGGING_FAILURE_LISTENER;
+
+    public Builder(CloudHttp2SolrClient client, String collection) {
+      this.client = client;
+      this.collection = collection;
+    }
+
+    /**
+     * The number of documents buffered per shard before a batch is sent.
+     * <p>
+     * If not set, this defaults to 1000.
+     */
+    public Builder withBatchSize(int batchSize) {
+      if (batchSize <= 0) {
+        throw new IllegalArgumentException("batchSize must be a positive integer.");
+      }
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * The longest time a document waits in a shard buffer before the buffer is sent, even if it is not full.
+     * <p>
+     * If not set, this defaults to one second.
+     */
+    public Builder withFlushInterval(long flushInterval, TimeUnit unit) {
+      if (flushInterval <= 0) {
+        throw new IllegalArgumentException("flushInterval must be positive.");
+      }
+      this.flushIntervalNanos = unit.toNanos(flushInterval);
+      return this;
+    }
+
+    /**
+     * The maximum number of batches that may be outstanding for a single shard leader.
+     * <p>
+     * If not set, this defaults to 2.
+     */
+    public Builder withMaxInFlightBatchesPerLeader(int maxInFlightBatchesPerLeader) {
+      if (maxInFlightBatchesPerLeader <= 0) {
+        throw new IllegalArgumentException("maxInFlightBatchesPerLeader must be a positive integer.");
+      }
+      this.maxInFlightBatchesPerLeader = maxInFlightBatchesPerLeader;
+      return this;
+    }
+
+    /**
+     * Parameters added to every update request, e.g. <code>commitWithin</code> or <code>update.chain</code>.
+     */
+    public Builder withParams(SolrParams params) {
+      this.params = params;
+      return this;
+    }
+
+    /**
+     * Listener notified of each document that could not be indexed. If not set, failures are logged.
+     */
+    public Builder withFailureListener(FailureListener failureListener) {
+      this.failureListener = failureListener;
+      return this;
+    }
+
+    public LeaderBatchingUpdateWriter build() {
+      return new LeaderBatchingUpdateWriter(this);
+    }
+  }
+}
@@ -122,7 +122,7 @@ public class StreamingBinaryResponseParser extends BinaryResponseParser {
 
   @SuppressWarnings({"unchecked"})
   private NamedList<Object> streamDocs(InputStream body) {
-    try (JavaBinCodec codec = new JavaBinCodec() {
+    try (JavaBinCodec codec = new JavaBinCodec(null, stringCache) {
 
       private int nestedLevel;
 
@@ -28,5 +28,11 @@ public interface ExpandParams {
   public static final String EXPAND_Q = EXPAND + ".q";
   public static final String EXPAND_FQ = EXPAND + ".fq";
   public static final String EXPAND_NULL = EXPAND + ".nullGroup";
+
+  /**
+   * Whether to expand string fields in one pass over only the segments that contain the groups of the page, reusing
+   * the groups the collapse found for the documents of the page.
+   */
+  public static final String EXPAND_BATCH = EXPAND + ".batch";
 }
 
@@ -135,7 +135,16 @@ public interface FacetParams {
    */
   public static final String FACET_PIVOT_MINCOUNT = FACET_PIVOT + ".mincount";
 
-  
+  /**
+   * When true, a distributed pivot is computed one level at a time: shards only return the
+   * sub-pivots of the values that made it through the refinement of the previous level.
+   * This bounds the memory used by shards and the aggregator, at the cost of more requests.
+   *
+   * default value is false
+   */
+  public static final String FACET_PIVOT_INCREMENTAL = FACET_PIVOT + ".incremental";
+
+
   /**
    * String option: "count" causes facets to be sorted
    * by the count, "index" results in index order.
@@ -54,6 +54,16 @@ public interface GroupParams {
   /** Whether the group count should be included in the response. */
   public static final String GROUP_TOTAL_COUNT = GROUP + ".ngroups";
 
+  /** Whether the group count may be estimated rather than counted exactly, when grouping by a field in one pass. */
+  public static final String GROUP_TOTAL_COUNT_APPROXIMATE = GROUP_TOTAL_COUNT + ".approximate";
+
+  /**
+   * Whether to group by a single valued docValues field in one pass, when groups are sorted by their top document.
+   * The documents kept are bounded by the number of groups and documents requested; hit counts are kept per distinct
+   * value that matched, but not per segment.
+   */
+  public static final String GROUP_SINGLE_PASS = GROUP + ".singlePass";
+
   /** Whether to compute grouped facets based on the first specified group. */
   public static final String GROUP_FACET = GROUP + ".facet";
 
@@ -16,7 +16,9 @@
  */
 package org.apache.solr.common.util;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -41,6 +43,71 @@ public class ExecutorUtil {
 
   private static volatile List<InheritableThreadLocalProvider> providers = new ArrayList<>();
 
+  /**
+   * System property that opts in to running blocking request fan-out (shard requests, update distribution,
+   * recovery) on virtual threads. Only honored when the running JVM supports virtual threads.
+   */
+  public static final String VIRTUAL_THREADS_PROP = "solr.virtualThreads.enabled";
+
+  // Thread.ofVirtual().name(prefix, start).factory(), resolved reflectively since we compile against Java 11
+  private static final MethodHandle VIRTUAL_THREAD_FACTORY = lookupVirtualThreadFactory();
+
+  private static MethodHandle lookupVirtualThreadFactory() {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+      MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+      MethodHandle name = lookup.findVirtual(ofVirtualClass, "name",
+          MethodType.methodType(ofVirtualClass, String.class, long.class));
+      MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class))
+          .asType(MethodType.methodType(ThreadFactory.class, ofVirtualClass));
+      // (String, long) -> ThreadFactory
+      MethodHandle handle = MethodHandles.filterReturnValue(MethodHandles.foldArguments(name, ofVirtual), factory);
+      // fail early if virtual threads are a disabled preview feature on this JVM
+      handle.invoke("probe", 0L);
+      return handle;
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the running JVM can create virtual threads
+   */
+  public static boolean isVirtualThreadsSupported() {
+    return VIRTUAL_THREAD_FACTORY != null;
+  }
+
+  /**
+   * @return true if virtual threads were requested via {@link #VIRTUAL_THREADS_PROP} and the JVM supports them
+   */
+  public static boolean isVirtualThreadsEnabled() {
+    if (!Boolean.getBoolean(VIRTUAL_THREADS_PROP)) return false;
+    if (!isVirtualThreadsSupported()) {
+      log.warn("{} is set but this JVM does not support virtual threads, falling back to platform threads", VIRTUAL_THREADS_PROP);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Create a {@link ThreadFactory} of virtual threads named with the given prefix.
+   * @throws UnsupportedOperationException if the JVM does not support virtual threads
+   */
+  public static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+    if (VIRTUAL_THREAD_FACTORY == null) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+    }
+    try {
+      return (ThreadFactory) VIRTUAL_THREAD_FACTORY.invoke(namePrefix + "-virtual-", 1L);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
   /**
    * Resets everything added via {@link #addThreadLocalProvider(InheritableThreadLocalProvider)}.
    * Useful to call at the beginning of tests.
@@ -148,6 +215,21 @@ public class ExecutorUtil {
         threadFactory);
   }
 
+  /**
+   * Create an unbounded executor that runs every task on a new virtual thread. Tasks are submitted
+   * through {@link MDCAwareThreadPoolExecutor}, so MDC and {@link InheritableThreadLocalProvider}
+   * values are carried over exactly as for the platform thread pools.
+   * @throws UnsupportedOperationException if the JVM does not support virtual threads
+   */
+  public static ExecutorService newMDCAwareVirtualThreadPerTaskExecutor(String name, boolean enableSubmitterStackTrace) {
+    // no core threads and no keep-alive: virtual threads are cheap to create and must not be pooled
+    return new MDCAwareThreadPoolExecutor(0, Integer.MAX_VALUE,
+        0L, TimeUnit.SECONDS,
+        new SynchronousQueue<>(),
+        newVirtualThreadFactory(name),
+        enableSubmitterStackTrace);
+  }
+
   @SuppressForbidden(reason = "class customizes ThreadPoolExecutor so it can be used instead")
   public static class MDCAwareThreadPoolExecutor extends ThreadPoolExecutor {
 
@@ -1100,11 +1100,19 @@ public class JavaBinCodec implements PushWriter {
     else daos.writeByte(BOOL_FALSE);
   }
 
-  protected void writeDouble(double val) throws IOException {
+  public void writeDouble(double val) throws IOException {
     daos.writeByte(DOUBLE);
     daos.writeDouble(val);
   }
 
+  /**
+   * write a date given as milliseconds since the epoch, equivalent to writing a {@link Date}
+   */
+  public void writeDate(long epochMillis) throws IOException {
+    daos.writeByte(DATE);
+    daos.writeLong(epochMillis);
+  }
+
 
   public void writeMap(Map<?,?> val) throws IOException {
     writeTag(MAP, val.size());
@@ -1220,6 +1228,14 @@ public class JavaBinCodec implements PushWriter {
     daos.writeUtf8CharSeq(utf8);
   }
 
+  /**
+   * write a string from bytes that are already UTF-8 encoded
+   */
+  public void writeUTF8Str(byte[] utf8, int offset, int len) throws IOException {
+    writeTag(STR, len);
+    daos.write(utf8, offset, len);
+  }
+
   public long getTotalBytesWritten() {
     if (daos != null) {
       return daos.written;
@@ -1257,6 +1273,13 @@ public class JavaBinCodec implements PushWriter {
       this.cache = cache;
     }
 
+    /**
+     * For subclasses that override {@link #get(StringBytes)} with their own storage
+     */
+    protected StringCache() {
+      this.cache = null;
+    }
+
     public String get(StringBytes b) {
       String result = cache.get(b);
       if (result == null) {
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.noggit.CharArr;
+
+/**
+ * A bounded, thread-safe {@link JavaBinCodec.StringCache} meant to be shared by every response
+ * a client decodes, so that repeated field names and enum-like values resolve to the same
+ * {@link String} instance instead of a new one per response.
+ * <p>
+ * The dictionary is a fixed size, direct-mapped table keyed by the hash of the UTF-8 bytes:
+ * a colliding string simply replaces the previous entry, so lookups never lock and memory
+ * use never grows past {@code maxEntries}. Strings longer than {@code maxStringLength} bytes
+ * are decoded without being cached since they are unlikely to repeat.
+ */
+public class JavaBinStringDictionary extends JavaBinCodec.StringCache {
+
+  public static final int DEFAULT_MAX_STRING_LENGTH = 64;
+
+  private final AtomicReferenceArray<Entry> table;
+  private final int mask;
+  private final int maxStringLength;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+
+  public JavaBinStringDictionary(int maxEntries) {
+    this(maxEntries, DEFAULT_MAX_STRING_LENGTH);
+  }
+
+  /**
+   * @param maxEntries maximum number of cached strings, rounded up to a power of two
+   * @param maxStringLength strings with more UTF-8 bytes than this are never cached
+   */
+  public JavaBinStringDictionary(int maxEntries, int maxStringLength) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be a positive integer.");
+    }
+    int size = maxEntries == 1 ? 1 : Integer.highestOneBit(maxEntries - 1) << 1;
+    if (size <= 0) size = 1 << 30;
+    this.table = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.maxStringLength = maxStringLength;
+  }
+
+  @Override
+  public String get(StringBytes b) {
+    if (b.length > maxStringLength) {
+      skipped.increment();
+      return decode(b.bytes, b.offset, b.length);
+    }
+    int slot = b.hashCode() & mask;
+    Entry e = table.get(slot);
+    if (e != null && e.matches(b)) {
+      hits.increment();
+      return e.value;
+    }
+    misses.increment();
+    // copy the bytes because the buffer received may be changed later by the caller
+    byte[] copy = new byte[b.length];
+    System.arraycopy(b.bytes, b.offset, copy, 0, b.length);
+    String value = decode(copy, 0, copy.length);
+    table.set(slot, new Entry(copy, b.hashCode(), value));
+    return value;
+  }
+
+  private static String decode(byte[] bytes, int offset, int length) {
+    CharArr arr = new CharArr(length);
+    ByteUtils.UTF8toUTF16(bytes, offset, length, arr);
+    return arr.toString();
+  }
+
+  /** Number of strings served from the dictionary */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /** Number of cacheable strings that were not in the dictionary */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** Number of strings too long to be cached */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  /** Ratio of hits to cacheable lookups, or 0 if there were none */
+  public double getHitRatio() {
+    long h = getHits();
+    long total = h + getMisses();
+    return total == 0 ? 0.0 : (double) h / total;
+  }
+
+  /** Number of slots, i.e. the maximum number of cached strings */
+  public int getCapacity() {
+    return table.length();
+  }
+
+  private static final class Entry {
+    final byte[] bytes;
+    final int hash;
+    final String value;
+
+    Entry(byte[] bytes, int hash, String value) {
+      this.bytes = bytes;
+      this.hash = hash;
+      this.value = value;
+    }
+
+    boolean matches(StringBytes b) {
+      if (hash != b.hashCode() || bytes.length != b.length) {
+        return false;
+      }
+      for (int i = 0; i < bytes.length; i++) {
+        if (bytes[i] != b.bytes[b.offset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JavaBinStringDictionary{capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses()
+        + ", skipped=" + getSkipped() + "}";
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A small, dependency free implementation of the LZ4 block format. It uses a single-probe hash table,
+ * which trades some compression ratio for speed; this is the right trade off for transferring javabin
+ * responses between nodes, where the CPU cost of compressing must stay well below the network time saved.
+ * <p>
+ * Framing of blocks into a stream is done by {@link LZ4BlockOutputStream} and {@link LZ4BlockInputStream}.
+ * Internal Solr use only, subject to change.
+ */
+public final class LZ4Block {
+
+  /** The HTTP content coding token used when a response body is framed with {@link LZ4BlockOutputStream} */
+  public static final String CONTENT_ENCODING = "x-solr-lz4";
+
+  static final int MIN_MATCH = 4;
+  static final int MAX_DISTANCE = 1 << 16; // exclusive
+  static final int LAST_LITERALS = 5;
+  static final int MF_LIMIT = 12; // a match may not start in the last 12 bytes of a block
+  static final int HASH_LOG = 14;
+  public static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+
+  private LZ4Block() {}
+
+  /** Upper bound of the compressed size of {@code len} bytes of input */
+  public static int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  private static int hash(int i) {
+    return (i * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+  }
+
+  private static int commonBytes(byte[] b, int o1, int o2, int limit) {
+    int count = 0;
+    while (o2 < limit && b[o1++] == b[o2++]) {
+      ++count;
+    }
+    return count;
+  }
+
+  private static int writeLen(int len, byte[] dest, int dOff) {
+    while (len >= 0xFF) {
+      dest[dOff++] = (byte) 0xFF;
+      len -= 0xFF;
+    }
+    dest[dOff++] = (byte) len;
+    return dOff;
+  }
+
+  private static int writeLiterals(int token, int literalLen, byte[] src, int anchor, byte[] dest, int dOff) {
+    if (literalLen >= 0x0F) {
+      dest[dOff++] = (byte) (token | 0xF0);
+      dOff = writeLen(literalLen - 0x0F, dest, dOff);
+    } else {
+      dest[dOff++] = (byte) (token | (literalLen << 4));
+    }
+    System.arraycopy(src, anchor, dest, dOff, literalLen);
+    return dOff + literalLen;
+  }
+
+  /**
+   * Compresses {@code src[srcOff:srcOff+len]} into {@code dest} starting at {@code destOff}, which must have room
+   * for at least {@link #maxCompressedLength(int)} bytes.
+   *
+   * @param hashTable scratch space of {@link #HASH_TABLE_SIZE} ints, may be reused across calls
+   * @return the number of bytes written to {@code dest}
+   */
+  public static int compress(byte[] src, int srcOff, int len, byte[] dest, int destOff, int[] hashTable) {
+    final int srcEnd = srcOff + len;
+    int dOff = destOff;
+    int anchor = srcOff;
+
+    if (len > MF_LIMIT) {
+      Arrays.fill(hashTable, -1);
+      final int limit = srcEnd - MF_LIMIT;
+      final int matchLimit = srcEnd - LAST_LITERALS;
+      int off = srcOff;
+
+      main:
+      while (off < limit) {
+        int ref;
+        while (true) {
+          if (off >= limit) {
+            break main;
+          }
+          final int v = readInt(src, off);
+          final int h = hash(v);
+          ref = hashTable[h];
+          hashTable[h] = off;
+          if (ref != -1 && off - ref < MAX_DISTANCE && readInt(src, ref) == v) {
+            break;
+          }
+          ++off;
+        }
+
+        final int matchLen = MIN_MATCH + commonBytes(src, ref + MIN_MATCH, off + MIN_MATCH, matchLimit);
+
+        // token, literals, then the match
+        final int tokenOff = dOff;
+        dOff = writeLiterals(0, off - anchor, src, anchor, dest, dOff);
+        final int matchDec = off - ref;
+        dest[dOff++] = (byte) matchDec;
+        dest[dOff++] = (byte) (matchDec >>> 8);
+        final int encodedMatchLen = matchLen - MIN_MATCH;
+        if (encodedMatchLen >= 0x0F) {
+          dest[tokenOff] |= 0x0F;
+          dOff = writeLen(encodedMatchLen - 0x0F, dest, dOff);
+        } else {
+          dest[tokenOff] |= encodedMatchLen;
+        }
+
+        off += matchLen;
+        anchor = off;
+      }
+    }
+
+    return writeLiterals(0, srcEnd - anchor, src, anchor, dest, dOff) - destOff;
+  }
+
+  /**
+   * Decompresses a block produced by {@link #compress} into {@code dest[destOff:destOff+destLen]}, where
+   * {@code destLen} is the exact uncompressed length.
+   *
+   * @return the number of bytes consumed from {@code src}
+   * @throws IOException if the input is not a valid LZ4 block
+   */
+  public static int decompress(byte[] src, int srcOff, byte[] dest, int destOff, int destLen) throws IOException {
+    final int destEnd = destOff + destLen;
+    int sOff = srcOff;
+    int dOff = destOff;
+    try {
+      while (true) {
+        final int token = src[sOff++] & 0xFF;
+
+        int literalLen = token >>> 4;
+        if (literalLen == 0x0F) {
+          byte b;
+          while ((b = src[sOff++]) == (byte) 0xFF) {
+            literalLen += 0xFF;
+          }
+          literalLen += b & 0xFF;
+        }
+        if (literalLen > destEnd - dOff) {
+          throw new IOException("Corrupt LZ4 block: literals exceed the block length");
+        }
+        System.arraycopy(src, sOff, dest, dOff, literalLen);
+        sOff += literalLen;
+        dOff += literalLen;
+
+        if (dOff >= destEnd) {
+          return sOff - srcOff;
+        }
+
+        final int matchDec = (src[sOff++] & 0xFF) | ((src[sOff++] & 0xFF) << 8);
+        int matchLen = token & 0x0F;
+        if (matchLen == 0x0F) {
+          byte b;
+          while ((b = src[sOff++]) == (byte) 0xFF) {
+            matchLen += 0xFF;
+          }
+          matchLen += b & 0xFF;
+        }
+        matchLen += MIN_MATCH;
+
+        final int ref = dOff - matchDec;
+        if (matchDec == 0 || ref < destOff || matchLen > destEnd - dOff) {
+          throw new IOException("Corrupt LZ4 block: invalid match");
+        }
+        if (matchDec >= matchLen) {
+          System.arraycopy(dest, ref, dest, dOff, matchLen);
+        } else {
+          // overlapping copy, e.g. a run of a repeated byte
+          for (int i = 0; i < matchLen; ++i) {
+            dest[dOff + i] = dest[ref + i];
+          }
+        }
+        dOff += matchLen;
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Corrupt LZ4 block: truncated input", e);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by {@link LZ4BlockOutputStream}.
+ * Internal Solr use only, subject to change.
+ */
+public class LZ4BlockInputStream extends InputStream {
+  /** guards against allocating huge buffers when reading a corrupt or hostile header */
+  private static final int MAX_BLOCK_SIZE = 1 << 24;
+
+  private final InputStream in;
+  private byte[] buf = new byte[0];
+  private byte[] compressed = new byte[0];
+  private int pos;
+  private int limit;
+  private boolean eof;
+
+  public LZ4BlockInputStream(InputStream in) {
+    this.in = in;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (pos == limit && !refill()) {
+      return -1;
+    }
+    return buf[pos++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    if (pos == limit && !refill()) {
+      return -1;
+    }
+    final int n = Math.min(len, limit - pos);
+    System.arraycopy(buf, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return limit - pos;
+  }
+
+  private boolean refill() throws IOException {
+    while (!eof) {
+      final int type = in.read();
+      if (type == LZ4BlockOutputStream.END) {
+        eof = true;
+        return false;
+      }
+      if (type == -1) {
+        throw new EOFException("Truncated LZ4 stream: missing end marker");
+      }
+      final int rawLen = readLength();
+      if (buf.length < rawLen) {
+        buf = new byte[rawLen];
+      }
+      if (type == LZ4BlockOutputStream.STORED) {
+        readFully(buf, rawLen);
+      } else if (type == LZ4BlockOutputStream.COMPRESSED) {
+        final int compressedLen = readLength();
+        if (compressed.length < compressedLen) {
+          compressed = new byte[compressedLen];
+        }
+        readFully(compressed, compressedLen);
+        final int consumed = LZ4Block.decompress(compressed, 0, buf, 0, rawLen);
+        if (consumed != compressedLen) {
+          throw new IOException("Corrupt LZ4 stream: block length mismatch");
+        }
+      } else {
+        throw new IOException("Corrupt LZ4 stream: unknown block type " + type);
+      }
+      pos = 0;
+      limit = rawLen;
+      if (rawLen > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int readLength() throws IOException {
+    int v = 0;
+    for (int i = 0; i < 4; i++) {
+      final int b = in.read();
+      if (b == -1) {
+        throw new EOFException("Truncated LZ4 stream");
+      }
+      v = (v << 8) | b;
+    }
+    if (v < 0 || v > MAX_BLOCK_SIZE) {
+      throw new IOException("Corrupt LZ4 stream: invalid block length " + v);
+    }
+    return v;
+  }
+
+  private void readFully(byte[] b, int len) throws IOException {
+    int off = 0;
+    while (off < len) {
+      final int n = in.read(b, off, len - off);
+      if (n == -1) {
+        throw new EOFException("Truncated LZ4 stream");
+      }
+      off += n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
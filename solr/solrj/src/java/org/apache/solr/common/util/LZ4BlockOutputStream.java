@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses a stream as a sequence of independent {@link LZ4Block LZ4 blocks}. Every block starts with a one byte
+ * type followed by the uncompressed length as a 4 byte int; compressed blocks additionally carry their compressed
+ * length. Blocks that do not shrink are stored as is, and the stream is terminated by an end marker so that a
+ * truncated body is detected by {@link LZ4BlockInputStream}.
+ * <p>
+ * {@link #flush()} does not force out a partial block, since response writers flush eagerly and small blocks
+ * compress badly; call {@link #finish()} to complete the stream without closing the underlying one.
+ * Internal Solr use only, subject to change.
+ */
+public class LZ4BlockOutputStream extends OutputStream {
+  static final int END = 0;
+  static final int COMPRESSED = 1;
+  static final int STORED = 2;
+
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+  private final OutputStream out;
+  private final byte[] buf;
+  private final byte[] compressed;
+  private final int[] hashTable = new int[LZ4Block.HASH_TABLE_SIZE];
+  private int pos;
+  private long bytesIn;
+  private long bytesOut;
+  private boolean finished;
+
+  public LZ4BlockOutputStream(OutputStream out) {
+    this(out, DEFAULT_BLOCK_SIZE);
+  }
+
+  public LZ4BlockOutputStream(OutputStream out, int blockSize) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+    }
+    this.out = out;
+    this.buf = new byte[blockSize];
+    this.compressed = new byte[9 + LZ4Block.maxCompressedLength(blockSize)];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (pos == buf.length) {
+      writeBlock();
+    }
+    buf[pos++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      if (pos == buf.length) {
+        writeBlock();
+      }
+      final int n = Math.min(len, buf.length - pos);
+      System.arraycopy(b, off, buf, pos, n);
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if (pos == 0) return;
+    final int compressedLen = LZ4Block.compress(buf, 0, pos, compressed, 9, hashTable);
+    if (compressedLen < pos) {
+      compressed[0] = COMPRESSED;
+      writeInt(compressed, 1, pos);
+      writeInt(compressed, 5, compressedLen);
+      out.write(compressed, 0, 9 + compressedLen);
+      bytesOut += 9 + compressedLen;
+    } else {
+      compressed[0] = STORED;
+      writeInt(compressed, 1, pos);
+      out.write(compressed, 0, 5);
+      out.write(buf, 0, pos);
+      bytesOut += 5 + pos;
+    }
+    bytesIn += pos;
+    pos = 0;
+  }
+
+  private static void writeInt(byte[] b, int off, int v) {
+    b[off] = (byte) (v >>> 24);
+    b[off + 1] = (byte) (v >>> 16);
+    b[off + 2] = (byte) (v >>> 8);
+    b[off + 3] = (byte) v;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (finished) {
+      throw new IOException("Stream already finished");
+    }
+  }
+
+  /** Ignored until {@link #finish()}, see the class documentation */
+  @Override
+  public void flush() throws IOException {
+  }
+
+  /** Writes any buffered data and the end marker and flushes the underlying stream, without closing it. */
+  public void finish() throws IOException {
+    if (finished) return;
+    writeBlock();
+    out.write(END);
+    bytesOut++;
+    finished = true;
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      out.close();
+    }
+  }
+
+  /** The number of uncompressed bytes written so far, excluding the current partial block */
+  public long getBytesIn() {
+    return bytesIn;
+  }
+
+  /** The number of bytes written to the underlying stream so far */
+  public long getBytesOut() {
+    return bytesOut;
+  }
+}
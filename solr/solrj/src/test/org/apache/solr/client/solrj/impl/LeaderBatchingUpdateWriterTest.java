@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.cloud.SolrCloudTestCase;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.util.TestInjection;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LeaderBatchingUpdateWriterTest extends SolrCloudTestCase {
+  private static final String COLLECTION = "batchingWriter";
+
+  private static CloudHttp2SolrClient solrClient;
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    configureCluster(2)
+        .addConfig("conf", getFile("solrj").toPath().resolve("solr").resolve("configsets").resolve("streaming").resolve("conf"))
+        .configure();
+    solrClient = new CloudHttp2SolrClient.Builder(Collections.singletonList(cluster.getZkServer().getZkAddress()), Optional.empty()).build();
+    CollectionAdminRequest.createCollection(COLLECTION, "conf", 3, 1).process(solrClient);
+    cluster.waitForActiveCollection(COLLECTION, 3, 3);
+  }
+
+  @AfterClass
+  public static void closeClient() throws Exception {
+    if (solrClient != null) {
+      solrClient.close();
+      solrClient = null;
+    }
+  }
+
+  @Test
+  public void testBatchesAreIndexed() throws Exception {
+    solrClient.deleteByQuery(COLLECTION, "*:*");
+    List<SolrInputDocument> failed = new CopyOnWriteArrayList<>();
+    try (LeaderBatchingUpdateWriter writer = new LeaderBatchingUpdateWriter.Builder(solrClient, COLLECTION)
+        .withBatchSize(7)
+        .withFlushInterval(50, TimeUnit.MILLISECONDS)
+        .withMaxInFlightBatchesPerLeader(1)
+        .withFailureListener((doc, t) -> failed.add(doc))
+        .build()) {
+      for (int i = 0; i < 100; i++) {
+        writer.add(new SolrInputDocument("id", String.valueOf(i), "a_t", "doc" + i));
+      }
+      writer.flush();
+    }
+    assertTrue("Unexpected failures: " + failed, failed.isEmpty());
+    solrClient.commit(COLLECTION);
+    assertEquals(100, solrClient.query(COLLECTION, new SolrQuery("*:*")).getResults().getNumFound());
+  }
+
+  @Test
+  public void testFailuresAreReportedPerDocument() throws Exception {
+    List<SolrInputDocument> failed = new CopyOnWriteArrayList<>();
+    TestInjection.failUpdateRequests = "true:100";
+    try (LeaderBatchingUpdateWriter writer = new LeaderBatchingUpdateWriter.Builder(solrClient, COLLECTION)
+        .withBatchSize(5)
+        .withFailureListener((doc, t) -> failed.add(doc))
+        .build()) {
+      for (int i = 0; i < 12; i++) {
+        writer.add(new SolrInputDocument("id", "fail" + i));
+      }
+      writer.flush();
+    } finally {
+      TestInjection.reset();
+    }
+    assertEquals(12, failed.size());
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.SolrTestCase;
+import org.slf4j.MDC;
+
+public class TestExecutorUtil extends SolrTestCase {
+
+  public void testVirtualThreadFactoryUnsupported() {
+    assumeFalse("JVM supports virtual threads", ExecutorUtil.isVirtualThreadsSupported());
+    expectThrows(UnsupportedOperationException.class, () -> ExecutorUtil.newVirtualThreadFactory("test"));
+  }
+
+  public void testVirtualThreadExecutorPropagatesContext() throws Exception {
+    assumeTrue("JVM does not support virtual threads", ExecutorUtil.isVirtualThreadsSupported());
+    final AtomicReference<Object> seen = new AtomicReference<>();
+    ExecutorUtil.addThreadLocalProvider(new ExecutorUtil.InheritableThreadLocalProvider() {
+      @Override
+      public void store(AtomicReference<?> ctx) {
+        @SuppressWarnings("unchecked")
+        AtomicReference<Object> c = (AtomicReference<Object>) ctx;
+        c.set("fromSubmitter");
+      }
+
+      @Override
+      public void set(AtomicReference<?> ctx) {
+        seen.set(ctx.get());
+      }
+
+      @Override
+      public void clean(AtomicReference<?> ctx) {
+      }
+    });
+    ExecutorService executor = ExecutorUtil.newMDCAwareVirtualThreadPerTaskExecutor("testExecutor", true);
+    MDC.put("core", "collection1");
+    try {
+      Future<String> future = executor.submit(() -> MDC.get("core"));
+      assertEquals("collection1", future.get(30, TimeUnit.SECONDS));
+      assertEquals("fromSubmitter", seen.get());
+    } finally {
+      MDC.remove("core");
+      ExecutorUtil.resetThreadLocalProviders();
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+
+public class TestJavaBinStringDictionary extends SolrTestCase {
+
+  public void testStringsAreShared() throws IOException {
+    JavaBinStringDictionary dictionary = new JavaBinStringDictionary(64);
+    BinaryResponseParser parser = new BinaryResponseParser();
+    parser.setStringCache(dictionary);
+
+    byte[] response = marshal("category", "electronics", "description", "x".repeat(JavaBinStringDictionary.DEFAULT_MAX_STRING_LENGTH + 1));
+    NamedList<Object> first = parser.processResponse(new ByteArrayInputStream(response), null);
+    NamedList<Object> second = parser.processResponse(new ByteArrayInputStream(response), null);
+
+    assertEquals("electronics", first.get("category"));
+    assertSame(first.get("category"), second.get("category"));
+    assertSame(first.getName(0), second.getName(0));
+    // too long to be cached
+    assertNotSame(first.get("description"), second.get("description"));
+    assertEquals(first.get("description"), second.get("description"));
+    assertEquals(2, dictionary.getSkipped());
+    assertTrue(dictionary.getHits() > 0);
+    assertTrue(dictionary.getHitRatio() > 0.0);
+  }
+
+  public void testCollisionsReplaceEntries() {
+    JavaBinStringDictionary dictionary = new JavaBinStringDictionary(1);
+    assertEquals(1, dictionary.getCapacity());
+    assertEquals("a", dictionary.get(bytes("a")));
+    assertEquals("b", dictionary.get(bytes("b")));
+    assertEquals("b", dictionary.get(bytes("b")));
+    assertEquals("a", dictionary.get(bytes("a")));
+    assertEquals(1, dictionary.getHits());
+    assertEquals(3, dictionary.getMisses());
+    assertEquals(1024, new JavaBinStringDictionary(1000).getCapacity());
+  }
+
+  private static StringBytes bytes(String s) {
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    return new StringBytes(b, 0, b.length);
+  }
+
+  private static byte[] marshal(Object... keyVals) throws IOException {
+    NamedList<Object> nl = new NamedList<>();
+    for (int i = 0; i < keyVals.length; i += 2) {
+      nl.add((String) keyVals[i], keyVals[i + 1]);
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      codec.marshal(nl, baos);
+    }
+    return baos.toByteArray();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+
+public class TestLZ4BlockStreams extends SolrTestCase {
+
+  public void testRandomRoundTrip() throws IOException {
+    Random r = random();
+    for (int iter = 0; iter < 200; iter++) {
+      byte[] data = new byte[r.nextInt(iter % 20 == 0 ? 300_000 : 2_000)];
+      switch (r.nextInt(3)) {
+        case 0:
+          r.nextBytes(data);
+          break;
+        case 1:
+          for (int i = 0; i < data.length; i++) data[i] = (byte) r.nextInt(3);
+          break;
+        default:
+          for (int i = 0; i < data.length; i++) data[i] = (byte) ('a' + (i / 7) % 11);
+      }
+      int blockSize = 1 + r.nextInt(LZ4BlockOutputStream.DEFAULT_BLOCK_SIZE);
+      byte[] compressed = compress(data, blockSize, r);
+      assertArrayEquals(data, decompress(compressed));
+    }
+  }
+
+  public void testJavabinResponse() throws IOException {
+    SolrDocumentList docs = new SolrDocumentList();
+    for (int i = 0; i < 1000; i++) {
+      SolrDocument doc = new SolrDocument();
+      doc.addField("id", "doc-" + i);
+      doc.addField("category_s", "category-" + (i % 10));
+      doc.addField("price_d", i * 1.5d);
+      docs.add(doc);
+    }
+    NamedList<Object> response = new NamedList<>();
+    response.add("response", docs);
+
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      codec.marshal(response, raw);
+    }
+    try (JavaBinCodec codec = new JavaBinCodec(); LZ4BlockOutputStream out = new LZ4BlockOutputStream(compressed)) {
+      codec.marshal(response, out);
+      out.finish();
+      assertEquals(raw.size(), out.getBytesIn());
+      assertEquals(compressed.size(), out.getBytesOut());
+    }
+    assertTrue("expected " + compressed.size() + " to be smaller than " + raw.size(),
+        compressed.size() < raw.size());
+
+    Object read;
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      read = codec.unmarshal(new LZ4BlockInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+    }
+    SolrDocumentList readDocs = (SolrDocumentList) ((NamedList<?>) read).get("response");
+    assertEquals(1000, readDocs.size());
+    assertEquals("doc-999", readDocs.get(999).getFieldValue("id"));
+    assertEquals("category-9", readDocs.get(999).getFieldValue("category_s"));
+  }
+
+  public void testIncompressibleDataIsStored() throws IOException {
+    byte[] data = new byte[10_000];
+    random().nextBytes(data);
+    byte[] compressed = compress(data, LZ4BlockOutputStream.DEFAULT_BLOCK_SIZE, random());
+    // one stored block header and the end marker
+    assertEquals(data.length + 5 + 1, compressed.length);
+    assertArrayEquals(data, decompress(compressed));
+  }
+
+  public void testTruncatedStream() throws IOException {
+    byte[] data = new byte[5_000];
+    Arrays.fill(data, (byte) 'x');
+    byte[] compressed = compress(data, 1024, random());
+    expectThrows(EOFException.class, () -> decompress(Arrays.copyOf(compressed, compressed.length - 1)));
+    expectThrows(IOException.class, () -> decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+  }
+
+  public void testCorruptBlock() {
+    // a compressed block claiming 10 bytes, whose match points before the start of the block
+    byte[] corrupt = new byte[] {1, 0, 0, 0, 10, 0, 0, 0, 4, 0x10, 'a', 5, 0, 0};
+    expectThrows(IOException.class, () -> decompress(corrupt));
+  }
+
+  private static byte[] compress(byte[] data, int blockSize, Random r) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (LZ4BlockOutputStream out = new LZ4BlockOutputStream(bytes, blockSize)) {
+      int pos = 0;
+      while (pos < data.length) {
+        int len = Math.min(data.length - pos, 1 + r.nextInt(5000));
+        if (len == 1) {
+          out.write(data[pos]);
+        } else {
+          out.write(data, pos, len);
+        }
+        pos += len;
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] compressed) throws IOException {
+    try (LZ4BlockInputStream in = new LZ4BlockInputStream(new ByteArrayInputStream(compressed))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      int n;
+      while ((n = in.read(buf, 0, buf.length)) != -1) {
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+}